@@ -0,0 +1,89 @@
+package org.snpsift.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.annotate.AnnotateVcfDb;
+import org.snpsift.annotate.AnnotateVcfDbMem;
+import org.snpsift.annotate.AnnotateVcfDbSorted;
+import org.snpsift.annotate.VcfEntryCache;
+import org.snpsift.annotate.VcfIndexTree;
+
+/**
+ * Benchmark: Annotate VCF entries using a VCF database (AnnotateVcfDb.annotate)
+ * Scores are 'VCF entries per second'
+ *
+ * @author pcingola
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotateBenchmark {
+
+	public static final int BATCH_SIZE = 1000;
+
+	@Param({ "100000" })
+	int numEntries;
+
+	@Param({ "sorted", "mem" })
+	String method;
+
+	AnnotateVcfDb annotateDb;
+	List<List<VcfEntry>> batches;
+	int next;
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public boolean[] annotateBatch() throws IOException {
+		List<VcfEntry> batch = batches.get(next++);
+		if (next >= batches.size()) next = 0;
+		return annotateDb.annotate(batch);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		String dbFile = data.vcf("db.vcf", numEntries, 0);
+
+		// Query every other database entry (plus some entries that are not in the database)
+		List<VcfEntry> entries = BenchmarkData.entries(data.vcf("input.vcf", numEntries / 2, 0));
+		List<VcfEntry> dbEntries = BenchmarkData.entries(dbFile);
+		for (int i = 0; i < dbEntries.size(); i += 2)
+			entries.add(dbEntries.get(i));
+		entries.sort(null);
+
+		batches = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i += BATCH_SIZE)
+			batches.add(new ArrayList<>(entries.subList(i, Math.min(i + BATCH_SIZE, entries.size()))));
+
+		if (method.equals("mem")) annotateDb = new AnnotateVcfDbMem(dbFile);
+		else annotateDb = new AnnotateVcfDbSorted(dbFile, VcfIndexTree.DEFAULT_MAX_BLOCK_SIZE, VcfEntryCache.DEFAULT_MAX_SIZE);
+		annotateDb.open();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		annotateDb.close();
+	}
+
+}
@@ -0,0 +1,231 @@
+package org.snpsift.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.vcf.VcfEntry;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+
+/**
+ * Reproducible synthetic data sets for benchmarks.
+ *
+ * All files are created using a fixed random seed, so two runs
+ * (or two releases) are benchmarked using exactly the same data.
+ *
+ * @author pcingola
+ */
+public class BenchmarkData {
+
+	public static final long SEED = 20200101L;
+	public static final String CHROMOSOMES[] = { "1", "2", "3" };
+	public static final char BASES[] = { 'A', 'C', 'G', 'T' };
+	public static final String EFFECTS[] = { "missense_variant", "synonymous_variant", "stop_gained", "intron_variant", "upstream_gene_variant", "3_prime_UTR_variant" };
+	public static final String IMPACTS[] = { "MODERATE", "LOW", "HIGH", "MODIFIER", "MODIFIER", "MODIFIER" };
+	public static final int MAX_GAP = 50; // Maximum distance between consecutive variants
+	public static final int NUM_GENES = 1000;
+
+	Random random;
+	File dir;
+	List<String[]> dbNsfpVariants; // Variants in dbNSFP file: chr, pos, ref, alt
+
+	public BenchmarkData() {
+		random = new Random(SEED);
+		try {
+			dir = Files.createTempDirectory("snpsift_benchmark").toFile();
+			dir.deleteOnExit();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Alternative allele different from 'ref'
+	 */
+	char alt(char ref) {
+		char alt;
+		do {
+			alt = base();
+		} while (alt == ref);
+		return alt;
+	}
+
+	/**
+	 * 'ANN' field: One annotation per gene / transcript
+	 */
+	String ann(char alt) {
+		StringBuilder sb = new StringBuilder();
+		int numAnn = 1 + random.nextInt(4);
+		for (int i = 0; i < numAnn; i++) {
+			int eff = random.nextInt(EFFECTS.length);
+			int gene = random.nextInt(NUM_GENES);
+			if (sb.length() > 0) sb.append(',');
+			sb.append(alt + "|" + EFFECTS[eff] + "|" + IMPACTS[eff] + "|GENE" + gene + "|GENE" + gene + "|transcript|TR" + gene + "." + i + "|protein_coding|" + (i + 1) + "/10|c.100A>G|p.Lys34Glu|100/1000|100/900|34/300||");
+		}
+		return sb.toString();
+	}
+
+	char base() {
+		return BASES[random.nextInt(BASES.length)];
+	}
+
+	/**
+	 * Create a file in the benchmark's (temporary) directory
+	 */
+	File file(String name) {
+		File file = new File(dir, name);
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * Create a dbNSFP-like file (bgzip compressed and tabix indexed).
+	 * Each position has one line for each alternative allele (as dbNSFP does)
+	 *
+	 * @return File name
+	 */
+	public String dbNsfp(int numPositions) {
+		File file = file("dbNSFP_benchmark.txt.gz");
+		dbNsfpVariants = new ArrayList<>();
+		TabixIndexCreator indexCreator = new TabixIndexCreator(new TabixFormat(TabixFormat.GENERIC_FLAGS, 1, 2, 2, '#', 0));
+
+		try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+			write(out, "#chr\tpos(1-based)\tref\talt\taaref\taaalt\tgenename\tSIFT_score\tPolyphen2_HVAR_score\tCADD_phred\t1000Gp1_AF\n");
+
+			for (String chr : CHROMOSOMES) {
+				int pos = 0;
+				for (int i = 0; i < numPositions / CHROMOSOMES.length; i++) {
+					pos += 1 + random.nextInt(MAX_GAP);
+					char ref = base();
+					for (char alt : BASES) {
+						if (alt == ref) continue;
+						String line = chr + "\t" + pos + "\t" + ref + "\t" + alt //
+								+ "\tK\tE" //
+								+ "\tGENE" + random.nextInt(NUM_GENES) //
+								+ "\t" + score(3) + ";" + score(3) //
+								+ "\t" + score(3) //
+								+ "\t" + (random.nextInt(4000) / 100.0) //
+								+ "\t" + (random.nextInt(10) == 0 ? "." : score(4)) //
+								+ "\n";
+						dbNsfpVariants.add(new String[] { chr, "" + pos, "" + ref, "" + alt });
+						indexCreator.addFeature(new SimpleFeature(chr, pos, pos), out.getFilePointer());
+						write(out, line);
+					}
+				}
+			}
+
+			out.flush();
+			Index index = indexCreator.finalizeIndex(out.getFilePointer());
+			index.write(new File(file.getPath() + ".tbi"));
+			new File(file.getPath() + ".tbi").deleteOnExit();
+			new File(file.getPath() + ".data_types").deleteOnExit();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return file.getPath();
+	}
+
+	/**
+	 * Variants in the latest dbNSFP file created: chr, pos (one-based), ref, alt
+	 */
+	public List<String[]> dbNsfpVariants() {
+		return dbNsfpVariants;
+	}
+
+	/**
+	 * Read all entries from a VCF file
+	 */
+	public static List<VcfEntry> entries(String vcfFileName) {
+		List<VcfEntry> list = new ArrayList<>();
+		for (VcfEntry ve : new VcfFileIterator(vcfFileName))
+			list.add(ve);
+		return list;
+	}
+
+	/**
+	 * A random score in [0, 1] with 'digits' decimal places
+	 */
+	String score(int digits) {
+		return String.format(Locale.US, "%." + digits + "f", random.nextDouble());
+	}
+
+	/**
+	 * Create a sorted VCF file, with annotations (ANN) and genotypes
+	 *
+	 * @return File name
+	 */
+	public String vcf(String name, int numEntries, int numSamples) {
+		File file = file(name);
+
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			// Header
+			out.write("##fileformat=VCFv4.1\n");
+			out.write("##INFO=<ID=AF,Number=A,Type=Float,Description=\"Allele frequency\">\n");
+			out.write("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n");
+			out.write("##INFO=<ID=CAF,Number=.,Type=String,Description=\"Allele frequencies\">\n");
+			out.write("##INFO=<ID=COMMON,Number=0,Type=Flag,Description=\"Common variant\">\n");
+			out.write("##INFO=<ID=ANN,Number=.,Type=String,Description=\"Functional annotations: 'Allele | Annotation | Annotation_Impact | Gene_Name | Gene_ID | Feature_Type | Feature_ID | Transcript_BioType | Rank | HGVS.c | HGVS.p | cDNA.pos / cDNA.length | CDS.pos / CDS.length | AA.pos / AA.length | Distance | ERRORS / WARNINGS / INFO'\">\n");
+			if (numSamples > 0) out.write("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+			out.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO" + (numSamples > 0 ? "\tFORMAT" : ""));
+			for (int s = 0; s < numSamples; s++)
+				out.write("\tS" + s);
+			out.write('\n');
+
+			// Entries
+			for (String chr : CHROMOSOMES) {
+				int pos = 0;
+				for (int i = 0; i < numEntries / CHROMOSOMES.length; i++) {
+					pos += 1 + random.nextInt(MAX_GAP);
+					char ref = base();
+					char alt = alt(ref);
+					double af = random.nextInt(10000) / 10000.0;
+
+					out.write(chr + "\t" + pos + "\trs" + (1000000 + random.nextInt(9000000)) + "\t" + ref + "\t" + alt //
+							+ "\t" + (random.nextInt(1000) / 10.0) //
+							+ "\t" + (random.nextInt(5) == 0 ? "LowQual" : "PASS") //
+							+ "\tAF=" + af //
+							+ ";DP=" + random.nextInt(200) //
+							+ ";CAF=" + (1 - af) + "," + af //
+							+ (af > 0.05 ? ";COMMON" : "") //
+							+ ";ANN=" + ann(alt) //
+					);
+
+					// Genotypes
+					if (numSamples > 0) {
+						out.write("\tGT");
+						for (int s = 0; s < numSamples; s++) {
+							int gt = random.nextInt(10);
+							out.write(gt < 6 ? "\t0/0" : gt < 9 ? "\t0/1" : "\t1/1");
+						}
+					}
+					out.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return file.getPath();
+	}
+
+	void write(BlockCompressedOutputStream out, String str) throws IOException {
+		out.write(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.snpsift.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snpeff.interval.Variant;
+import org.snpsift.fileIterator.DbNsfp;
+import org.snpsift.fileIterator.DbNsfpEntry;
+
+/**
+ * Benchmark: Query dbNSFP (DbNsfp.query)
+ * Variants are queried in genomic order (as SnpSiftCmdDbNsfp does)
+ *
+ * @author pcingola
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbNsfpBenchmark {
+
+	@Param({ "30000" })
+	int numPositions;
+
+	DbNsfp dbNsfp;
+	List<Variant> queries;
+	int next;
+
+	@Benchmark
+	public Collection<DbNsfpEntry> query() {
+		Variant variant = queries.get(next++);
+		if (next >= queries.size()) next = 0;
+		return dbNsfp.query(variant);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		String dbFile = data.dbNsfp(numPositions);
+
+		dbNsfp = new DbNsfp(dbFile);
+		dbNsfp.open();
+
+		queries = new ArrayList<>();
+		for (String var[] : data.dbNsfpVariants()) {
+			int start = Integer.parseInt(var[1]) - 1;
+			queries.add(new Variant(dbNsfp.getChromosome(var[0]), start, var[2], var[3], ""));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dbNsfp.close();
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.snpsift.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snpsift.SnpSift;
+import org.snpsift.SnpSiftCmdExtractFields;
+
+/**
+ * Benchmark: Extract fields from a VCF file (SnpSiftCmdExtractFields), including VCF parsing.
+ * Scores are 'VCF entries per second'
+ *
+ * @author pcingola
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExtractFieldsBenchmark {
+
+	public static final int NUM_ENTRIES = 10000;
+
+	String vcfFile;
+
+	@Param({ "CHROM POS REF ALT", "CHROM POS AF DP ANN[*].EFFECT ANN[*].GENE", "CHROM POS GEN[*].GT" })
+	String fields;
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_ENTRIES)
+	public List<String> extractFields() {
+		String fieldsArray[] = fields.split(" ");
+		String args[] = new String[fieldsArray.length + 2];
+		args[0] = "extractFields";
+		args[1] = vcfFile;
+		System.arraycopy(fieldsArray, 0, args, 2, fieldsArray.length);
+
+		SnpSiftCmdExtractFields cmd = (SnpSiftCmdExtractFields) new SnpSift(args).cmd();
+		return cmd.run(true);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		vcfFile = new BenchmarkData().vcf("input.vcf", NUM_ENTRIES, 10);
+	}
+
+}
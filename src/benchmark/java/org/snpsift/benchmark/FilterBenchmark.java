@@ -0,0 +1,78 @@
+package org.snpsift.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.SnpSiftCmdFilter;
+import org.snpsift.lang.LangFactory;
+import org.snpsift.lang.expression.Expression;
+
+/**
+ * Benchmark: Compile filter expressions (LangFactory.compile) and
+ * evaluate them on VCF entries (Expression.eval, through SnpSiftCmdFilter)
+ *
+ * @author pcingola
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+	@Param({ "10000" })
+	int numEntries;
+
+	@Param({ "10" })
+	int numSamples;
+
+	@Param({ //
+			"(QUAL > 30) && (DP >= 20)", //
+			"(AF < 0.01) || (FILTER = 'PASS')", //
+			"ANN[*].EFFECT =~ 'missense'", //
+			"(ANN[*].IMPACT = 'HIGH') && (countHet() > 2)", //
+			"(exists COMMON) && (CHROM = '2') && (POS > 1000) && (AF[0] > 0.1) && (DP < 150)" //
+	})
+	String expression;
+
+	SnpSiftCmdFilter filter;
+	List<VcfEntry> entries;
+	int next;
+
+	@Benchmark
+	public Expression compile() {
+		return new LangFactory().compile(expression);
+	}
+
+	@Benchmark
+	public boolean eval() {
+		VcfEntry ve = entries.get(next++);
+		if (next >= entries.size()) next = 0;
+		return filter.annotate(ve);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		BenchmarkData data = new BenchmarkData();
+		entries = BenchmarkData.entries(data.vcf("input.vcf", numEntries, numSamples));
+
+		filter = new SnpSiftCmdFilter();
+		filter.setExpression(expression);
+		filter.parseExpression(expression);
+	}
+
+}
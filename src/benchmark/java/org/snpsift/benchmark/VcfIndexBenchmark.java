@@ -0,0 +1,70 @@
+package org.snpsift.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snpeff.interval.Markers;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.annotate.VcfIndex;
+
+/**
+ * Benchmark: Query a VCF index (VcfIndexTree.query)
+ *
+ * @author pcingola
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VcfIndexBenchmark {
+
+	@Param({ "100000" })
+	int numEntries;
+
+	@Param({ "0", "1000" })
+	int cacheSize;
+
+	VcfIndex vcfIndex;
+	List<VcfEntry> queries;
+	int next;
+
+	@Benchmark
+	public Markers query() {
+		VcfEntry ve = queries.get(next++);
+		if (next >= queries.size()) next = 0;
+		return vcfIndex.query(ve);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		String dbFile = data.vcf("db.vcf", numEntries, 0);
+		queries = BenchmarkData.entries(dbFile);
+
+		vcfIndex = new VcfIndex(dbFile);
+		vcfIndex.setCacheSize(cacheSize);
+		vcfIndex.open();
+		vcfIndex.index();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		vcfIndex.close();
+	}
+
+}
@@ -1,5 +1,10 @@
 package org.snpsift;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -17,6 +22,7 @@ import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfHeaderEntry;
 import org.snpsift.caseControl.SnpSiftCmdCaseControlSummary;
 import org.snpsift.hwe.SnpSiftCmdHwe;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Generic SnpSift tool caller
@@ -37,6 +43,7 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	public static int SHOW_EVERY_VCFLINES = 100; // Show a mark every N vcf lines processed
 	public static final String[] EMPTY_ARGS = new String[0];
 
+	protected boolean bgzip; // Compress output using BGZF (commands using a VcfPipeline)
 	protected boolean dbTabix; // Is this database supposed to be in tabix indexed form?
 	protected boolean debug; // Debug mode
 	protected boolean download = true; // Download database, if not available
@@ -50,6 +57,7 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	protected boolean showVcfHeader = true; // Should VCF header be shown
 	protected boolean showVersion = true; // Show version number and exit
 	protected boolean suppressOutput = false; // Do not show output (used for debugging and test cases)
+	protected boolean tabixIndex; // Create a tabix index for the output file (requires 'bgzip' and 'outputFile')
 	protected boolean vcfHeaderProcessed = false; // Has the VCF header been processed?
 	protected boolean vcfHeaderAddProgramVersion = true; // Add program verison and command line to VCF header
 	protected boolean verbose; // Be verbose
@@ -59,6 +67,7 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	protected String dbType;
 	protected String genomeVersion;
 	protected String vcfInputFile; // VCF Input file
+	protected String outputFile; // Write output to this file instead of STDOUT (commands using a VcfPipeline)
 	protected int numWorkers = 1; //  Max number of threads (if multi-threaded version is available)
 	protected StringBuilder output = new StringBuilder();
 	protected HashMap<String, Integer> errCount;
@@ -67,6 +76,17 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	protected String dataDir; // Override data_dir in config file
 	protected String shiftArgs[];
 
+	/**
+	 * Check output options. BGZF compressed output files must end in '.gz', otherwise
+	 * tabix indexing fails (htsjdk detects BGZF files by their extension)
+	 * @return An error message, or null if the options are valid
+	 */
+	public static String checkOutputArgs(String outputFile, boolean bgzip, boolean tabixIndex) {
+		if (tabixIndex && outputFile == null) return "Option '-tbi' requires an output file ('-out')";
+		if ((bgzip || tabixIndex) && outputFile != null && !outputFile.endsWith(".gz")) return "Option '" + (tabixIndex ? "-tbi" : "-bgzip") + "' requires an output file name ending in '.gz' ('-out " + outputFile + ".gz')";
+		return null;
+	}
+
 	/**
 	 * Main
 	 */
@@ -172,6 +192,9 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 		case "covariancematrix":
 			return new SnpSiftCmdCovarianceMatrix();
 
+		case "db":
+			return new SnpSiftCmdDb();
+
 		case "dbnsfp":
 			return new SnpSiftCmdDbNsfp();
 
@@ -292,6 +315,9 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	 */
 	void copyValues(SnpSift cmd) {
 		cmd.args = shiftArgs;
+		cmd.bgzip = bgzip;
+		cmd.outputFile = outputFile;
+		cmd.tabixIndex = tabixIndex;
 		cmd.config = config;
 		cmd.configFile = configFile;
 		cmd.dbFileName = dbFileName;
@@ -448,6 +474,28 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 		return vcf;
 	}
 
+	/**
+	 * Is 'annotate(VcfEntry)' thread safe?
+	 * If so, pipelines (see 'newVcfPipeline()') use 'numWorkers' worker threads
+	 */
+	protected boolean isAnnotateThreadSafe() {
+		return false;
+	}
+
+	/**
+	 * Create a pipeline to process a VCF file: A reader thread, worker threads and an ordered writer.
+	 * The VCF header is processed (and shown) once the first entry has been read
+	 */
+	protected VcfPipeline newVcfPipeline(VcfFileIterator vcfFile, VcfPipeline.VcfBatchProcessor processor) {
+		VcfPipeline pipeline = new VcfPipeline(vcfFile, processor);
+		pipeline.setNumWorkers(isAnnotateThreadSafe() ? numWorkers : 1);
+		pipeline.setHeaderProcessor(this::processVcfHeaderStr);
+		pipeline.setBgzip(bgzip && !saveOutput);
+		pipeline.setBgzipThreads(numWorkers);
+		pipeline.setDebug(debug);
+		return pipeline;
+	}
+
 	/**
 	 * Parse command line arguments
 	 */
@@ -466,6 +514,10 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 
 			if (isOpt(arg)) {
 				switch (arg.toLowerCase()) {
+				case "-bgzip":
+					bgzip = true;
+					break;
+
 				case "-c":
 				case "-config":
 					if ((i + 1) < args.length) configFile = args[++i];
@@ -473,7 +525,8 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 					break;
 
 				case "-cpus":
-					if (args.length <= i) usage("Missing argument for command line option '-cpus'");
+				case "-t":
+					if ((i + 1) >= args.length) usage("Missing argument for command line option '" + arg + "'");
 					numWorkers = Gpr.parseIntSafe(args[++i]);
 					if (numWorkers <= 0) usage("Error: Number of cpus must be positive");
 					break;
@@ -517,11 +570,20 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 					suppressOutput = true;
 					break;
 
+				case "-out":
+					if ((i + 1) < args.length) outputFile = args[++i];
+					else usage("Option '-out' without file argument");
+					break;
+
 				case "-q":
 				case "-quiet":
 					quiet = true;
 					break;
 
+				case "-tbi":
+					tabixIndex = bgzip = true;
+					break;
+
 				case "-v":
 				case "-verbose":
 					verbose = true;
@@ -539,6 +601,9 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 			} else argsList.add(args[i]);
 		}
 
+		String outputArgsError = checkOutputArgs(outputFile, bgzip, tabixIndex);
+		if (outputArgsError != null) usage(outputArgsError);
+
 		shiftArgs = argsList.toArray(new String[0]);
 	}
 
@@ -551,9 +616,19 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	}
 
 	/**
-	 * Process VCF header related issues
+	 * Process VCF header related issues and show header
 	 */
 	protected String processVcfHeader(VcfFileIterator vcf) {
+		String headerStr = processVcfHeaderStr(vcf);
+		if (!headerStr.isEmpty()) print(headerStr);
+		return headerStr;
+	}
+
+	/**
+	 * Process VCF header related issues
+	 * @return Header to show (empty string if nothing should be shown)
+	 */
+	protected String processVcfHeaderStr(VcfFileIterator vcf) {
 		if (vcfHeaderProcessed // Already processed? Skip
 				|| (!vcf.isHeadeSection() && vcf.getLineNum() > 1) // First line is header (when missing)
 		) return "";
@@ -562,15 +637,37 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 		addHeaders(vcf);
 		vcfHeaderProcessed = true;
 
-		if (showVcfHeader) {
-			String headerStr = vcf.getVcfHeader().toString();
-			if (!headerStr.isEmpty()) print(headerStr);
-			return headerStr;
-		}
-
+		if (showVcfHeader) return vcf.getVcfHeader().toString();
 		return "";
 	}
 
+	/**
+	 * Run a pipeline, output is shown, saved or suppressed (see 'print()')
+	 */
+	protected void runVcfPipeline(VcfPipeline pipeline) {
+		if (saveOutput) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			pipeline.setOutput(buffer);
+			pipeline.run();
+			output.append(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+		} else if (outputFile != null && !suppressOutput) {
+			// Write to output file (and create tabix index)
+			try (OutputStream os = new FileOutputStream(outputFile)) {
+				pipeline.setOutput(os);
+				pipeline.run();
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing output file '" + outputFile + "'", e);
+			}
+			if (tabixIndex) {
+				if (verbose) Log.info("Creating tabix index for '" + outputFile + "'");
+				VcfPipeline.createTabixIndex(outputFile);
+			}
+		} else {
+			pipeline.setOutput(suppressOutput ? null : System.out);
+			pipeline.run();
+		}
+	}
+
 	@Override
 	public boolean run() {
 		SnpSift cmd = cmd();
@@ -613,6 +710,10 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 		this.debug = debug;
 	}
 
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+
 	public void setQuiet(boolean quiet) {
 		this.quiet = quiet;
 	}
@@ -703,6 +804,7 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 				+ "\n\tccs           : Case control summary. Case and control summaries by region, allele frequency and variant's functional effect." //
 				+ "\n\tconcordance   : Concordance metrics between two VCF files." //
 				+ "\n\tcovMat        : Create an covariance matrix output (allele matrix as input)." //
+				+ "\n\tdb            : Database operations (e.g. 'db build' creates a binary database for 'annotate')." //
 				+ "\n\tdbnsfp        : Annotate with multiple entries from dbNSFP." //
 				+ "\n\textractFields : Extract fields from VCF file into tab separated format." //
 				+ "\n\tfilter        : Filter using arbitrary expressions" //
@@ -738,7 +840,9 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 	 */
 	protected void usageGenericAndDb() {
 		System.err.println("\nOptions common to all SnpSift commands:\n" //
+				+ "\t-bgzip               : Compress output using BGZF (for commands that have a pipelined mode). Uses '-cpus' compression threads.\n" //
 				+ (needsConfig ? "\t-c , -config <file>  : Specify config file\n" : "") //
+				+ "\t-cpus, -t <num>      : Number of worker threads (for commands that have a multi-threaded mode). Default: " + numWorkers + ".\n" //
 				+ "\t-d                   : Debug.\n" //
 				+ (needsDb ? "\t-db <file>           : Database file name (for commands that require databases).\n" : "") //
 				+ "\t-download            : Download database, if not available locally. Default: " + download + ".\n" //
@@ -746,6 +850,8 @@ public class SnpSift implements VcfAnnotator, CommandLine {
 				+ "\t-noDownload          : Do not download a database, if not available locally.\n" //
 				+ "\t-noLog               : Do not report usage statistics to server.\n" //
 				+ "\t-h                   : Help.\n" //
+				+ "\t-out <file>          : Write output to 'file' instead of STDOUT (for commands that have a pipelined mode).\n" //
+				+ "\t-tbi                 : Compress output using BGZF and create a tabix index (requires '-out' with a '.gz' file name).\n" //
 				+ "\t-v                   : Verbose.\n" //
 		);
 	}
@@ -3,6 +3,8 @@ package org.snpsift;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.snpeff.fileIterator.VcfFileIterator;
 import org.snpeff.util.Gpr;
@@ -13,10 +15,14 @@ import org.snpeff.vcf.VcfHeaderEntry;
 import org.snpeff.vcf.VcfHeaderInfo;
 import org.snpeff.vcf.VcfInfoType;
 import org.snpsift.annotate.AnnotateVcfDb;
+import org.snpsift.annotate.AnnotateVcfDbBin;
 import org.snpsift.annotate.AnnotateVcfDbMem;
 import org.snpsift.annotate.AnnotateVcfDbSorted;
 import org.snpsift.annotate.AnnotateVcfDbTabix;
+import org.snpsift.annotate.DbVcfBin;
+import org.snpsift.annotate.VcfEntryCache;
 import org.snpsift.annotate.VcfIndexTree;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Annotate a VCF file with ID from another VCF file (database)
@@ -28,10 +34,11 @@ import org.snpsift.annotate.VcfIndexTree;
 public class SnpSiftCmdAnnotate extends SnpSift {
 
 	enum AnnotationMethod {
-		SORTED_VCF, MEMORY, TABIX,
+		SORTED_VCF, MEMORY, TABIX, BINARY,
 	}
 
 	public static final int SHOW = 100;
+	public static final int BATCH_SIZE = 10 * 1000; // Number of VCF entries sent to workers in each batch
 
 	protected boolean annotateEmpty; // Annotate empty fields as well?
 	protected boolean useId; // Annotate ID fields
@@ -40,13 +47,16 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 	protected AnnotationMethod method;
 	protected int countBadRef = 0;
 	protected int maxBlockSize;
+	protected int cacheSize;
 	int countAnnotated = 0, count = 0;
+	protected int posPrev = -1;
 	protected String chrPrev = "";
 	protected String prependInfoFieldName;
 	protected String existsInfoField;
 	protected ArrayList<String> infoFields; // Use only info fields
 	protected VcfFileIterator vcfFile;
 	protected AnnotateVcfDb annotateDb;
+	protected List<AnnotateVcfDb> annotateDbWorkers; // One database per worker thread (multi-threaded mode)
 
 	public SnpSiftCmdAnnotate() {
 		super();
@@ -72,35 +82,7 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 			throw new RuntimeException(e);
 		}
 
-		int pos = -1;
-		String chr = "";
-		for (VcfEntry vcfEntry : vcfFile) {
-			try {
-				processVcfHeader(vcfFile);
-
-				// Check if file is sorted
-				if (vcfEntry.getChromosomeName().equals(chr) && vcfEntry.getStart() < pos) {
-					System.err.println("WARNING: VCF input file is not sorted!" //
-							+ "\n\tPrevious entry " + chr + ":" + pos//
-							+ "\n\tCurrent entry  " + vcfEntry.getChromosomeName() + ":" + (vcfEntry.getStart() + 1)//
-					);
-				}
-
-				// Annotate variants
-				annotate(vcfEntry);
-
-				// Show
-				if (!suppressOutput) print(vcfEntry);
-
-				if (list != null) list.add(vcfEntry);
-
-				// Update chr:pos
-				chr = vcfEntry.getChromosomeName();
-				pos = vcfEntry.getStart();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
+		annotateBatches(list);
 
 		// Finish up
 		annotateFinish(vcfFile);
@@ -121,23 +103,118 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 
 	@Override
 	public boolean annotate(VcfEntry vcfEntry) {
-		boolean annotated = false;
+		boolean annotated = annotate(annotateDb, vcfEntry);
+		countAnnotated(annotated);
+		return annotated;
+	}
 
-		if (vcfEntry.isVariant()) {
-			try {
-				annotated = annotateDb.annotate(vcfEntry);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+	/**
+	 * Annotate a VCF entry using database 'annotateDb'
+	 */
+	boolean annotate(AnnotateVcfDb annotateDb, VcfEntry vcfEntry) {
+		if (!vcfEntry.isVariant()) return false;
+
+		try {
+			return annotateDb.annotate(vcfEntry);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
+	}
 
-		if (annotated) countAnnotated++;
-		count++;
-		if (verbose) Gpr.showMark(count, SHOW);
+	/**
+	 * Read VCF entries in batches and annotate them using a pipeline.
+	 * In multi-threaded mode, each worker thread uses its own database.
+	 * Entries are shown in the same order as the input
+	 */
+	void annotateBatches(List<VcfEntry> list) {
+		// Databases available to workers
+		BlockingQueue<AnnotateVcfDb> dbPool = new LinkedBlockingQueue<>();
+		if (annotateDbWorkers != null) dbPool.addAll(annotateDbWorkers);
+		else dbPool.add(annotateDb);
+
+		VcfPipeline pipeline = newVcfPipeline(vcfFile, batch -> annotateBatch(dbPool, batch));
+		pipeline.setBatchSize(BATCH_SIZE);
+		pipeline.setReadListener(this::checkSorted);
+		pipeline.setList(list);
+		runVcfPipeline(pipeline);
+	}
+
+	/**
+	 * Annotate a batch of VCF entries using a database from 'dbPool'
+	 * Note: Invoked from a worker thread
+	 *
+	 * @return Output lines
+	 */
+	String[] annotateBatch(BlockingQueue<AnnotateVcfDb> dbPool, List<VcfEntry> batch) {
+		AnnotateVcfDb annDb;
+		try {
+			annDb = dbPool.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		boolean annotated[];
+		try {
+			annotated = annotateChunk(annDb, batch);
+		} finally {
+			dbPool.add(annDb);
+		}
+
+		// Update counters and create output lines
+		String lines[] = new String[batch.size()];
+		for (int i = 0; i < lines.length; i++) {
+			countAnnotated(annotated[i]);
+			lines[i] = batch.get(i).toString();
+		}
+		return lines;
+	}
+
+	/**
+	 * Annotate all entries in 'chunk' using a single batched database query
+	 * Note: Invoked from a worker thread
+	 *
+	 * @return An array indicating whether each entry was annotated
+	 */
+	boolean[] annotateChunk(AnnotateVcfDb annotateDb, List<VcfEntry> chunk) {
+		boolean annotated[] = new boolean[chunk.size()];
+
+		// Only variants are annotated
+		List<VcfEntry> variants = new ArrayList<>(chunk.size());
+		for (VcfEntry vcfEntry : chunk)
+			if (vcfEntry.isVariant()) variants.add(vcfEntry);
+
+		boolean annotatedVariants[];
+		try {
+			annotatedVariants = annotateDb.annotate(variants);
+		} catch (IOException e) {
+			throw new RuntimeException("Error annotating entries " + chunk.get(0).toStr() + " to " + chunk.get(chunk.size() - 1).toStr(), e);
+		}
+
+		// Map results back to chunk entries
+		int i = 0, j = 0;
+		for (VcfEntry vcfEntry : chunk) {
+			if (vcfEntry.isVariant()) annotated[i] = annotatedVariants[j++];
+			i++;
+		}
 
 		return annotated;
 	}
 
+	/**
+	 * Close databases
+	 */
+	@Override
+	public boolean annotateFinish(VcfFileIterator vcfFile) {
+		if (annotateDbWorkers != null) {
+			for (AnnotateVcfDb annDb : annotateDbWorkers)
+				annDb.close();
+		} else if (annotateDb != null) annotateDb.close();
+
+		annotateDb = null;
+		annotateDbWorkers = null;
+		return super.annotateFinish(vcfFile);
+	}
+
 	/**
 	 * Initialize database for annotation process
 	 */
@@ -159,37 +236,42 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 
 		if (verbose) Log.info("Annotating method: " + method);
 
-		// Create annotateDb object
-		switch (method) {
-
-		case MEMORY:
-			annotateDb = new AnnotateVcfDbMem(dbFileName);
-			break;
-
-		case SORTED_VCF:
-			annotateDb = new AnnotateVcfDbSorted(dbFileName, maxBlockSize);
-			break;
+		// Create annotateDb objects
+		annotateDb = newAnnotateVcfDb();
+		if (isParallel()) {
+			if (verbose) Log.info("Using " + numWorkers + " worker threads");
+			annotateDbWorkers = new ArrayList<>();
+			annotateDbWorkers.add(annotateDb);
+			for (int i = 1; i < numWorkers; i++)
+				annotateDbWorkers.add(newAnnotateVcfDb());
+		}
 
-		case TABIX:
-			annotateDb = new AnnotateVcfDbTabix(dbFileName);
-			break;
+		return false;
+	}
 
-		default:
-			throw new RuntimeException("Unknwon method '" + method + "'");
+	/**
+	 * Check if the input VCF file is sorted (show a warning if it is not)
+	 */
+	void checkSorted(VcfEntry vcfEntry) {
+		if (vcfEntry.getChromosomeName().equals(chrPrev) && vcfEntry.getStart() < posPrev) {
+			System.err.println("WARNING: VCF input file is not sorted!" //
+					+ "\n\tPrevious entry " + chrPrev + ":" + posPrev//
+					+ "\n\tCurrent entry  " + vcfEntry.getChromosomeName() + ":" + (vcfEntry.getStart() + 1)//
+			);
 		}
 
-		// Set parameters & open database file
-		annotateDb.setAnnotateEmpty(annotateEmpty);
-		annotateDb.setUseId(useId);
-		annotateDb.setUseRefAlt(useRefAlt);
-		annotateDb.setInfoFields(useInfoField, infoFields);
-		annotateDb.setExistsInfoField(existsInfoField);
-		annotateDb.setPrependInfoFieldName(prependInfoFieldName);
-		annotateDb.setDebug(debug);
-		annotateDb.setVerbose(verbose);
-		annotateDb.open();// Open database
+		// Update chr:pos
+		chrPrev = vcfEntry.getChromosomeName();
+		posPrev = vcfEntry.getStart();
+	}
 
-		return false;
+	/**
+	 * Update annotation counters
+	 */
+	synchronized void countAnnotated(boolean annotated) {
+		if (annotated) countAnnotated++;
+		count++;
+		if (verbose) Gpr.showMark(count, SHOW);
 	}
 
 	String fixDbName() {
@@ -208,6 +290,8 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 	AnnotationMethod guessAnnotationMethod() {
 		if (method != null) return method;
 
+		if (DbVcfBin.isDbVcfBin(dbFileName)) return AnnotationMethod.BINARY;
+
 		if (dbFileName.endsWith(".gz")) {
 			if (Gpr.exists(dbFileName + ".tbi") || Gpr.exists(dbFileName + ".gz.tbi")) return AnnotationMethod.TABIX;
 			throw new RuntimeException("Index not found for file '" + dbFileName + "'.\n\tERROR: Compressed VCF files require a tabix index.");
@@ -231,8 +315,9 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 		// Read database header and add INFO fields to the output vcf header
 		if (useInfoField) {
 			// Read VCF header
-			VcfFileIterator vcfDb = new VcfFileIterator(dbFileName);
-			VcfHeader vcfDbHeader = vcfDb.readHeader();
+			VcfHeader vcfDbHeader;
+			if (DbVcfBin.isDbVcfBin(dbFileName)) vcfDbHeader = DbVcfBin.readVcfHeader(dbFileName);
+			else vcfDbHeader = (new VcfFileIterator(dbFileName)).readHeader();
 
 			// Add all corresponding INFO headers
 			for (VcfHeaderInfo vcfHeaderDb : vcfDbHeader.getVcfHeaderInfo()) {
@@ -278,6 +363,7 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 		dbTabix = true;
 
 		maxBlockSize = VcfIndexTree.DEFAULT_MAX_BLOCK_SIZE;
+		cacheSize = VcfEntryCache.DEFAULT_MAX_SIZE;
 	}
 
 	/**
@@ -294,6 +380,63 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 		return false;
 	}
 
+	/**
+	 * Each worker thread uses its own database (see 'annotateBatches()')
+	 */
+	@Override
+	protected boolean isAnnotateThreadSafe() {
+		return isParallel();
+	}
+
+	/**
+	 * Use multi-threaded annotation?
+	 * Note: In-memory databases are not replicated for each worker
+	 */
+	boolean isParallel() {
+		return numWorkers > 1 && method != AnnotationMethod.MEMORY;
+	}
+
+	/**
+	 * Create and open a new database annotation object
+	 */
+	AnnotateVcfDb newAnnotateVcfDb() {
+		AnnotateVcfDb annDb;
+		switch (method) {
+
+		case BINARY:
+			annDb = new AnnotateVcfDbBin(dbFileName);
+			break;
+
+		case MEMORY:
+			annDb = new AnnotateVcfDbMem(dbFileName);
+			break;
+
+		case SORTED_VCF:
+			annDb = new AnnotateVcfDbSorted(dbFileName, maxBlockSize, cacheSize);
+			break;
+
+		case TABIX:
+			annDb = new AnnotateVcfDbTabix(dbFileName);
+			break;
+
+		default:
+			throw new RuntimeException("Unknwon method '" + method + "'");
+		}
+
+		// Set parameters & open database file
+		annDb.setAnnotateEmpty(annotateEmpty);
+		annDb.setUseId(useId);
+		annDb.setUseRefAlt(useRefAlt);
+		annDb.setInfoFields(useInfoField, infoFields);
+		annDb.setExistsInfoField(existsInfoField);
+		annDb.setPrependInfoFieldName(prependInfoFieldName);
+		annDb.setDebug(debug);
+		annDb.setVerbose(verbose);
+		annDb.open();// Open database
+
+		return annDb;
+	}
+
 	/**
 	 * Parse command line arguments
 	 */
@@ -311,6 +454,15 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 					annotateEmpty = true;
 					break;
 
+				case "-binary":
+					method = AnnotationMethod.BINARY;
+					break;
+
+				case "-cachesize":
+					if (args.length > (i + 1)) cacheSize = Gpr.parseIntSafe(args[++i]);
+					else usage("Missing parameter -cacheSize");
+					break;
+
 				case "-clinvar":
 					dbType = "clinvar";
 					method = AnnotationMethod.TABIX;
@@ -433,6 +585,8 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 		System.err.println("\t-clinvar             : Use ClinVar database.");
 		System.err.println("\nCommand Options:");
 		System.err.println("\t-a                   : Annotate fields, even if the database has an empty value (annotates using '.' for empty).");
+		System.err.println("\t-binary              : Database is a binary database created using 'db build'. Default: " + (method == AnnotationMethod.BINARY));
+		System.err.println("\t-cacheSize <int>     : Maximum number of parsed database entries kept in memory ('-sorted' command line option). Default: " + cacheSize);
 		System.err.println("\t-exists <tag>        : Annotate whether the variant exists or not in the database (using 'tag' as an INFO field FLAG).");
 		System.err.println("\t-id                  : Only annotate ID field. Default: " + useId);
 		System.err.println("\t-info <list>         : Annotate using a list of info fields (list is a comma separated list of fields). Default: ALL.");
@@ -449,6 +603,7 @@ public class SnpSiftCmdAnnotate extends SnpSift {
 		System.err.println("Note: According the the VCF's database format provided, SnpSift annotate uses different strategies");
 		System.err.println("\t  i) plain VCF       : SnpSift indexes the VCF file (creating an index file *.sidx).");
 		System.err.println("\t ii) bgzip+tabix     : SnpSift uses tabix's index.");
+		System.err.println("\tiii) binary (*." + DbVcfBin.EXT + ")  : Pre-built database created using 'SnpSift db build'.");
 
 		System.exit(1);
 	}
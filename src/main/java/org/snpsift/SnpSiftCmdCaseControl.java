@@ -15,6 +15,7 @@ import org.snpeff.util.Timer;
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
 import org.snpeff.vcf.VcfHeaderEntry;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Count number of cases and controls
@@ -329,10 +330,10 @@ public class SnpSiftCmdCaseControl extends SnpSift {
 	}
 
 	@Override
-	protected String processVcfHeader(VcfFileIterator vcf) {
+	protected String processVcfHeaderStr(VcfFileIterator vcf) {
 		if (!vcf.isHeadeSection()) return "";
 
-		String header = super.processVcfHeader(vcf); // Add lines and print header
+		String header = super.processVcfHeaderStr(vcf); // Add lines
 
 		// Parse pedigree from TFAM?
 		if (pedigree != null) {
@@ -440,22 +441,27 @@ public class SnpSiftCmdCaseControl extends SnpSift {
 		if (tfamFile != null) parseCaseControlTfam();
 		else parseCaseControlString();
 
-		// Read all vcfEntries
+		// Read and annotate all vcfEntries
+		// Note: annotate() is not thread safe (minimum p-value), so the pipeline uses a single worker
 		VcfFileIterator vcf = openVcfInputFile();
 		vcf.setDebug(debug);
 
-		int i = 1;
-		for (VcfEntry vcfEntry : vcf) {
-			processVcfHeader(vcf); // Handle header stuff
-			annotate(vcfEntry); // Annotate
-
-			// Show
-			if (createList) list.add(vcfEntry);
-			else System.out.println(vcfEntry);
-
-			if (verbose) Gpr.showMark(i++, SHOW_EVERY);
+		VcfPipeline pipeline = newVcfPipeline(vcf, VcfPipeline.processor(vcfEntry -> {
+			annotate(vcfEntry);
+			return vcfEntry.toString();
+		}));
+		if (verbose) {
+			int count[] = { 0 };
+			pipeline.setReadListener(ve -> Gpr.showMark(++count[0], SHOW_EVERY));
 		}
 
+		if (createList) {
+			// Do not show, just add to the list (used in test cases)
+			pipeline.setList(list);
+			pipeline.setOutput(null);
+			pipeline.run();
+		} else runVcfPipeline(pipeline);
+
 		if (verbose) {
 			Log.info("Done.\n\tMinimum pValue: " + pValueMin + "\tVcf entry: " + posMin);
 		}
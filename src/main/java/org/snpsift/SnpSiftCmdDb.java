@@ -0,0 +1,149 @@
+package org.snpsift;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Log;
+import org.snpsift.annotate.DbVcfBin;
+import org.snpsift.annotate.DbVcfBinBuilder;
+import org.snpsift.fileIterator.DbNsfpBin;
+import org.snpsift.fileIterator.DbNsfpBinBuilder;
+
+/**
+ * Database operations.
+ *
+ * Build: Create a binary database from a VCF file, which can be
+ * used by 'annotate' (see DbVcfBin), or from a dbNSFP file, which
+ * can be used by 'dbnsfp' (see DbNsfpBin)
+ *
+ * @author pcingola
+ */
+public class SnpSiftCmdDb extends SnpSift {
+
+	String action;
+	String vcfFileName;
+	String outFileName;
+	List<String> infoFields;
+	int blockSize;
+	boolean dbNsfp; // Input is a dbNSFP file
+
+	public SnpSiftCmdDb() {
+		super();
+	}
+
+	public SnpSiftCmdDb(String[] args) {
+		super(args);
+	}
+
+	@Override
+	public void init() {
+		super.init();
+		blockSize = DbVcfBinBuilder.DEFAULT_BLOCK_SIZE;
+	}
+
+	@Override
+	public void parseArgs(String[] args) {
+		if (args.length == 0) usage(null);
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+
+			if (isOpt(arg)) {
+				switch (arg.toLowerCase()) {
+				case "-blocksize":
+					if (args.length > (i + 1)) blockSize = Gpr.parseIntSafe(args[++i]);
+					else usage("Missing parameter -blockSize");
+					break;
+
+				case "-dbnsfp":
+					dbNsfp = true;
+					break;
+
+				case "-info":
+					if (args.length > (i + 1)) {
+						infoFields = new ArrayList<>();
+						for (String infoField : args[++i].split(","))
+							infoFields.add(infoField);
+					} else usage("Missing parameter -info");
+					break;
+
+				case "-o":
+					if (args.length > (i + 1)) outFileName = args[++i];
+					else usage("Missing parameter -o");
+					break;
+
+				default:
+					usage("Unknown command line option '" + arg + "'");
+				}
+			} else if (action == null) action = arg.toLowerCase();
+			else if (vcfFileName == null) vcfFileName = arg;
+			else usage("Unknown parameter '" + arg + "'");
+		}
+
+		// Sanity check
+		if (action == null) usage("Missing action");
+		if (!action.equals("build")) usage("Unknown action '" + action + "'");
+		if (vcfFileName == null) usage("Missing VCF file");
+		if (blockSize <= 0) usage("Block size must be a positive number");
+		if (dbNsfp && infoFields != null) usage("Option '-info' cannot be used with '-dbnsfp'");
+		if (outFileName == null) outFileName = vcfFileName + "." + (dbNsfp ? DbNsfpBin.EXT : DbVcfBin.EXT);
+	}
+
+	/**
+	 * Build database
+	 */
+	@Override
+	public boolean run() {
+		if (dbNsfp) return runDbNsfp();
+
+		DbVcfBinBuilder builder = new DbVcfBinBuilder(vcfFileName, outFileName);
+		builder.setVerbose(verbose);
+		builder.setDebug(debug);
+		builder.setBlockSize(blockSize);
+		builder.setInfoFields(infoFields);
+		builder.build();
+
+		if (verbose) Log.info("Database '" + outFileName + "' created");
+		return true;
+	}
+
+	/**
+	 * Build binary dbNSFP database
+	 */
+	boolean runDbNsfp() {
+		DbNsfpBinBuilder builder = new DbNsfpBinBuilder(vcfFileName, outFileName);
+		builder.setVerbose(verbose);
+		builder.setDebug(debug);
+		builder.setBlockSize(blockSize);
+		builder.build();
+
+		if (verbose) Log.info("Database '" + outFileName + "' created");
+		return true;
+	}
+
+	@Override
+	public void usage(String msg) {
+		if (msg != null) {
+			System.err.println("Error: " + msg);
+			showCmd();
+		}
+
+		showVersion();
+
+		System.err.println("Usage: java -jar " + SnpSift.class.getSimpleName() + ".jar db build [options] database.vcf");
+		System.err.println("\nCreates a binary database that can be used by 'annotate' (the file name must end with '." + DbVcfBin.EXT + "').");
+		System.err.println("Using '-dbnsfp', creates a binary dbNSFP database from 'dbNSFP.txt.gz' that can be used by 'dbnsfp' (the file name must end with '." + DbNsfpBin.EXT + "').");
+		System.err.println("Note: VCF file should be sorted by position (unsorted files create overlapping blocks, which makes queries slower).");
+		System.err.println("\nOptions:");
+		System.err.println("\t-blockSize <int>     : Maximum number of records per compressed block. Default: " + blockSize);
+		System.err.println("\t-dbnsfp              : Input is a dbNSFP file (bgzip compressed, tab separated). Column types are inferred as in 'dbnsfp'.");
+		System.err.println("\t-info <list>         : Only store these INFO fields (list is a comma separated list of fields). Default: ALL.");
+		System.err.println("\t-o <file>            : Output file. Default: 'database.vcf." + DbVcfBin.EXT + "'");
+
+		usageGenericAndDb();
+
+		System.exit(1);
+	}
+
+}
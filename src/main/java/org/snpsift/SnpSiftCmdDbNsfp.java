@@ -7,10 +7,15 @@ import org.snpeff.util.Log;
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfInfoType;
 import org.snpsift.fileIterator.DbNsfp;
+import org.snpsift.fileIterator.DbNsfpBin;
 import org.snpsift.fileIterator.DbNsfpEntry;
+import org.snpsift.fileIterator.DbNsfpWindow;
+import org.snpsift.pipeline.VcfPipeline;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Annotate a VCF file with dbNSFP.
@@ -56,6 +61,7 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
     public static final int MIN_JUMP = 100;
 
     public static final int SHOW_EVERY = 100;
+    public static final int BATCH_SIZE = 10 * 1000; // Number of VCF entries sent to workers in each batch (multi-threaded mode)
     public final String CONFIG_DBNSFP_DB_NAME = "dbnsfp";
 
     protected Map<String, String> fieldsToAdd;
@@ -66,11 +72,16 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
     protected boolean collapseRepeatedValues; // Collapse values if repeated?
     protected boolean inverseFieldSelection; // Inverse field selection
     protected boolean tabixCheck = true;
+    protected int batchSize = BATCH_SIZE;
+    protected int windowSize = DbNsfpWindow.DEFAULT_WINDOW_SIZE; // Keep dbNSFP entries this many bases behind the latest query
     protected String vcfFileName;
     protected int count = 0;
     protected int countAnnotated = 0;
     protected int countVariants = 0;
+    protected int posPrev = -1;
+    protected String chrPrev = "";
     protected DbNsfp dbNsfp;
+    protected List<DbNsfp> dbNsfpWorkers; // One database reader (tabix handle) per worker thread, the first one is 'dbNsfp' (multi-threaded mode)
     protected VcfFileIterator vcfFile;
     protected DbNsfpEntry currentDbEntry;
     protected String fieldsNamesToAdd;
@@ -122,43 +133,34 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
             throw new RuntimeException(e);
         }
 
-        // Annotate VCF file
+        // Annotate VCF file: Reading, annotating and writing run in parallel.
+        // In multi-threaded mode, each worker annotates whole batches (i.e. consecutive
+        // genomic regions) using its own dbNSFP reader, output is written in input order
         if (verbose) Log.info("Annotating file '" + vcfFileName + "'");
-        boolean showHeader = true;
-        int pos = -1;
-        String chr = "";
-        for (VcfEntry vcfEntry : vcfFile) {
-            try {
-                // Show header?
-                if (showHeader) {
-                    processVcfHeader(vcfFile); // Add VCF header
-                    showHeader = false;
-                    checkFieldsToAdd(); // Check that the fields we want to add are actually in the database
-                }
-
-                // Check if file is sorted
-                if (vcfEntry.getChromosomeName().equals(chr) && vcfEntry.getStart() < pos) {
-                    Log.fatalError("Your VCF file should be sorted!" //
-                            + "\n\tPrevious entry " + chr + ":" + pos//
-                            + "\n\tCurrent entry  " + vcfEntry.getChromosomeName() + ":" + (vcfEntry.getStart() + 1)//
-                    );
-                }
-
-                // Annotate
+        VcfPipeline pipeline;
+        if (isParallel()) {
+            BlockingQueue<DbNsfp> dbPool = new LinkedBlockingQueue<>(dbNsfpWorkers);
+            pipeline = newVcfPipeline(vcfFile, batch -> annotateBatch(dbPool, batch));
+            pipeline.setBatchSize(batchSize);
+        } else {
+            pipeline = newVcfPipeline(vcfFile, VcfPipeline.processor(vcfEntry -> {
                 annotate(vcfEntry);
-
-                // Show
-                print(vcfEntry);
-                if (list != null) list.add(vcfEntry);
-                count++;
-
-                // Update chr:pos
-                chr = vcfEntry.getChromosomeName();
-                pos = vcfEntry.getStart();
+                return vcfEntry.toString();
+            }));
+        }
+        pipeline.setHeaderProcessor(vcf -> {
+            String header = processVcfHeaderStr(vcf); // Add VCF header
+            try {
+                checkFieldsToAdd(); // Check that the fields we want to add are actually in the database
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        }
+            return header;
+        });
+        pipeline.setReadListener(this::checkSorted);
+        pipeline.setList(list);
+        runVcfPipeline(pipeline);
+        count += pipeline.getCountIn();
 
         annotateFinish(vcfFile);
 
@@ -182,8 +184,19 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
      * @return True if entries were added to the map
      */
     public boolean annotate(Variant variant, Map<String, String> info) {
-        if (verbose) Gpr.showMark(++countVariants, SHOW_EVERY);
+        boolean annotated = annotate(dbNsfp, variant, info);
+        countAnnotated(1, annotated ? 1 : 0);
+        if (annotated && debug) Log.debug("Annotated: " + variant.toStr());
+        return annotated;
+    }
 
+    /**
+     * Annotate a variant using database reader 'dbNsfp'
+     *
+     * @param info Add values to 'info' map. Note that we may have some previous values in the map
+     * @return True if entries were added to the map
+     */
+    boolean annotate(DbNsfp dbNsfp, Variant variant, Map<String, String> info) {
         // dbNSFP only has SNP information
         if (!variant.isSnp()) return false;
 
@@ -220,12 +233,6 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
             }
         }
 
-        // Show progress
-        if (annotated) {
-            countAnnotated++;
-            if (debug) Log.debug("Annotated: " + variant.toStr());
-        }
-
         return annotated;
     }
 
@@ -238,8 +245,51 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         for (Variant var : vcfEntry.variants())
             annotated |= annotate(var, info);
 
-        // Add annotations to VcfEntry
-        if (annotated) {
+        addInfo(vcfEntry, info);
+        return annotated;
+    }
+
+    /**
+     * Annotate a batch of VCF entries using a database reader from 'dbPool'
+     * Note: Invoked from a worker thread
+     *
+     * @return Output lines
+     */
+    String[] annotateBatch(BlockingQueue<DbNsfp> dbPool, List<VcfEntry> batch) {
+        DbNsfp db;
+        try {
+            db = dbPool.take();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        int countVars = 0, countAnn = 0;
+        String lines[] = new String[batch.size()];
+        try {
+            for (int i = 0; i < lines.length; i++) {
+                VcfEntry vcfEntry = batch.get(i);
+                Map<String, String> info = new HashMap<>();
+                for (Variant var : vcfEntry.variants()) {
+                    countVars++;
+                    if (annotate(db, var, info)) countAnn++;
+                }
+
+                addInfo(vcfEntry, info);
+                lines[i] = vcfEntry.toString();
+            }
+        } finally {
+            dbPool.add(db);
+        }
+
+        countAnnotated(countVars, countAnn);
+        return lines;
+    }
+
+    /**
+     * Add annotations to VcfEntry (sorted by key)
+     */
+    void addInfo(VcfEntry vcfEntry, Map<String, String> info) {
+        if (!info.isEmpty()) {
             // Sort keys and add them to VcfEntry
             ArrayList<String> keys = new ArrayList<>();
             keys.addAll(info.keySet());
@@ -250,16 +300,18 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
                 String infoKey = VcfEntry.vcfInfoKeySafe(DBNSFP_VCF_INFO_PREFIX + key);
                 vcfEntry.addInfo(infoKey, info.get(key));
             }
-
         }
-
-        return annotated;
     }
 
     @Override
     public boolean annotateFinish(VcfFileIterator vcfFile) {
         super.annotateFinish(vcfFile);
         if (dbNsfp != null) dbNsfp.close();
+        if (dbNsfpWorkers != null) {
+            for (DbNsfp db : dbNsfpWorkers)
+                if (db != dbNsfp) db.close();
+            dbNsfpWorkers = null;
+        }
         return true;
     }
 
@@ -277,13 +329,22 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         }
 
         // Check and open dbNsfp
-        dbNsfp = new DbNsfp(dbFileName);
-        dbNsfp.setDebug(debug);
-        dbNsfp.setVerbose(verbose);
-        dbNsfp.open();
+        dbNsfp = newDbNsfp();
 
-        // Initialize fields to annotate
+        // Initialize fields to annotate (only these columns are parsed from dbNSFP)
         annotateInitFields();
+        dbNsfp.setFields(fieldsToAdd.keySet());
+
+        // Multi-threaded mode: One database reader per worker (the main reader is also used by a worker)
+        if (isParallel()) {
+            dbNsfpWorkers = new ArrayList<>();
+            dbNsfpWorkers.add(dbNsfp);
+            for (int i = 1; i < numWorkers; i++) {
+                DbNsfp db = newDbNsfp();
+                db.setFields(fieldsToAdd.keySet());
+                dbNsfpWorkers.add(db);
+            }
+        }
 
         return true;
     }
@@ -383,6 +444,22 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
                 Log.fatalError("dbNsfp does not have field '" + fieldKey + "' (file '" + dbFileName + "')");
     }
 
+    /**
+     * Check if the input VCF file is sorted (invoked for each entry, in input order)
+     */
+    void checkSorted(VcfEntry vcfEntry) {
+        if (vcfEntry.getChromosomeName().equals(chrPrev) && vcfEntry.getStart() < posPrev) {
+            Log.fatalError("Your VCF file should be sorted!" //
+                    + "\n\tPrevious entry " + chrPrev + ":" + posPrev//
+                    + "\n\tCurrent entry  " + vcfEntry.getChromosomeName() + ":" + (vcfEntry.getStart() + 1)//
+            );
+        }
+
+        // Update chr:pos
+        chrPrev = vcfEntry.getChromosomeName();
+        posPrev = vcfEntry.getStart();
+    }
+
     String collapseRepeated(String csvalues) {
         String values[] = csvalues.split(",");
         if (values.length <= 1) return csvalues;
@@ -399,6 +476,15 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         return sb.toString();
     }
 
+    /**
+     * Update annotation counters
+     */
+    synchronized void countAnnotated(int countVars, int countAnn) {
+        for (int i = 0; i < countVars; i++)
+            if (verbose) Gpr.showMark(++countVariants, SHOW_EVERY);
+        countAnnotated += countAnn;
+    }
+
     public Map<String, String> getFieldsType() {
         return fieldsType;
 
@@ -442,6 +528,14 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         collapseRepeatedValues = false;
     }
 
+    /**
+     * Each worker thread uses its own database reader (see 'annotateBatch()')
+     */
+    @Override
+    protected boolean isAnnotateThreadSafe() {
+        return isParallel();
+    }
+
     /**
      * Are all values empty?
      */
@@ -456,6 +550,25 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         return true;
     }
 
+    /**
+     * Use multi-threaded annotation?
+     */
+    boolean isParallel() {
+        return numWorkers > 1;
+    }
+
+    /**
+     * Create and open a new database reader
+     */
+    DbNsfp newDbNsfp() {
+        DbNsfp db = DbNsfpBin.isDbNsfpBin(dbFileName) ? new DbNsfpBin(dbFileName) : new DbNsfp(dbFileName);
+        db.setDebug(debug);
+        db.setVerbose(verbose);
+        db.setWindowSize(windowSize);
+        db.open();
+        return db;
+    }
+
     /**
      * Parse command line arguments
      */
@@ -491,6 +604,12 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
                     inverseFieldSelection = true;
                     break;
 
+                case "-window":
+                    if ((i + 1) < args.length) windowSize = Gpr.parseIntSafe(args[++i]);
+                    else usage("Option '-window' without size argument");
+                    if (windowSize < 0) usage("Window size must be non-negative");
+                    break;
+
                 default:
                     if (vcfFileName == null) vcfFileName = arg;
                     else usage("Unknown extra parameter '" + arg + "'");
@@ -528,6 +647,10 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         return annotate(createList);
     }
 
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public void setFieldsNamesToAdd(String fieldsNamesToAdd) {
         this.fieldsNamesToAdd = fieldsNamesToAdd;
     }
@@ -536,6 +659,10 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
         this.tabixCheck = tabixCheck;
     }
 
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
     /**
      * Show usage message
      */
@@ -556,11 +683,12 @@ public class SnpSiftCmdDbNsfp extends SnpSift {
                 + "Options:\n" //
                 + "\t-a            : Annotate fields, even if the database has an empty value (annotates using '.' for empty).\n" //
                 + "\t-collapse     : Collapse repeated values from dbNSFP. Default: " + collapseRepeatedValues + "\n" //
-                + "\t-db <file>    : Path to dbNSFP database file (bgzip + tabix).\n" //
+                + "\t-db <file>    : Path to dbNSFP database file (bgzip + tabix), or binary database created by 'db build -dbnsfp' (file name ending with '." + DbNsfpBin.EXT + "').\n" //
                 + "\t-g <name>     : Genome version.\n" //
                 + "\t-noCollapse   : Switch off 'collapsing' repeated values from dbNSFP. Default: " + !collapseRepeatedValues + "\n" //
                 + "\t-m            : Annotate fields even if there are no database matching entries (annotates using '.').\n" //
                 + "\t-n            : Invert 'fields to add' selection (i.e. use all fields except the ones specified in option '-f').\n" //
+                + "\t-window <num> : Keep dbNSFP entries <num> bases behind the latest variant, seek on larger jumps. Default: " + windowSize + "\n" //
                 + "\t-f            : A comma separated list of fields to add.\n" //
                 + "\t                Default fields to add: " + sb //
         );
@@ -1,11 +1,20 @@
 package org.snpsift;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.snpeff.fileIterator.BedFileIterator;
 import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
 import org.snpeff.util.Log;
 import org.snpeff.vcf.EffFormatVersion;
@@ -13,9 +22,16 @@ import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfHeaderEntry;
 import org.snpsift.lang.LangFactory;
 import org.snpsift.lang.Value;
+import org.snpsift.lang.expression.CompiledExpression;
 import org.snpsift.lang.expression.Expression;
+import org.snpsift.lang.expression.ExpressionCompiler;
+import org.snpsift.lang.expression.ExpressionRegions;
 import org.snpsift.lang.expression.Field;
 import org.snpsift.lang.expression.FieldIterator;
+import org.snpsift.lang.expression.RawLineFilter;
+import org.snpsift.lang.expression.SharedExpression;
+import org.snpsift.pipeline.RegionReader;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Generic SnpSift filter
@@ -53,13 +69,24 @@ public class SnpSiftCmdFilter extends SnpSift {
 	boolean usePassField; // Use Filter field
 	boolean inverse; // Inverse filter (i.e. do NOT show lines that match the filter)
 	boolean exceptionIfNotFound; // Throw an exception of a field is not found?
+	boolean compile; // Compile expression (instead of interpreting the expression tree)
+	boolean rawLineFilter; // Discard lines using a raw line filter, before parsing them
+	boolean useIndex; // Use tabix / sidx index to read only regions that can satisfy the expression (or 'regionsFile')
+	String regionsFile; // Only process VCF entries overlapping regions in this BED file
 	String expression; // Expression (as a string)
 	Expression expr; // Expression (parsed expression)
+	CompiledExpression compiledExpr; // Compiled expression (null if expression is interpreted)
 	String filterId; // FilterID string to add to FILTER field if the filter does NOT pass.
 	String addFilterField; // Add a string to FILTER field.
 	String rmFilterField; // Remove String from FILTER field
 	ArrayList<HashSet<String>> sets;
 	EffFormatVersion formatVersion;
+	String exprsFile; // Named expressions file, all expressions are evaluated in a single pass
+	String exprsOutPrefix; // Write entries matching each named expression to '<prefix><name>.vcf' (null means 'add name to FILTER field')
+	List<String> exprNames; // Named expressions: Names
+	List<Expression> exprs; // Named expressions: Parsed expressions (sharing sub-expressions)
+	List<CompiledExpression> compiledExprs; // Named expressions: Compiled expressions (null if interpreted)
+	Writer[] exprOuts; // Named expressions: Output files
 
 	public SnpSiftCmdFilter() {
 		super();
@@ -120,18 +147,49 @@ public class SnpSiftCmdFilter extends SnpSift {
 
 		try {
 			// Parse expression
-			parseExpression(expression);
+			if (exprsFile != null) parseExpressions(exprsFile);
+			else parseExpression(expression);
 		} catch (Exception e) {
 			e.printStackTrace();
-			usage("Error parsing expression: '" + expression + "'");
+			usage("Error parsing expression: '" + (exprsFile != null ? exprsFile : expression) + "'");
 		}
 		return true;
 	}
 
+	/**
+	 * Can lines be skipped using the expression, without evaluating it (see RawLineFilter, ExpressionRegions)?
+	 * Not if missing fields are errors ('--errMissing'): skipped lines would never report them
+	 * @param discard : Can lines that do not satisfy the expression be discarded?
+	 */
+	boolean canSkipLines(boolean discard) {
+		return discard && !exceptionIfNotFound;
+	}
+
+	/**
+	 * Close named expressions' output files
+	 */
+	void closeExprOuts() {
+		if (exprOuts == null) return;
+		try {
+			for (Writer out : exprOuts)
+				if (out != null) out.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error closing output files", e);
+		}
+		exprOuts = null;
+	}
+
 	/**
 	 * Iterate over all possible 'FieldIterator' values until one 'true' is found, otherwise return false.
 	 */
 	boolean evaluate(VcfEntry vcfEntry) {
+		return evaluate(vcfEntry, expr, compiledExpr);
+	}
+
+	/**
+	 * Evaluate an expression (use 'compiledExpr' if not null)
+	 */
+	boolean evaluate(VcfEntry vcfEntry, Expression expr, CompiledExpression compiledExpr) {
 		FieldIterator fieldIterator = FieldIterator.get();
 		fieldIterator.reset();
 
@@ -140,11 +198,17 @@ public class SnpSiftCmdFilter extends SnpSift {
 		if (debug) Log.debug("VCF entry:" + vcfEntry.toStringNoGt());
 
 		do {
-			Value eval = expr.eval(vcfEntry);
-			if (debug) Log.debug("\tEval: " + eval + "\tFieldIterator: " + fieldIterator);
+			boolean eval;
+			if (compiledExpr != null) {
+				eval = compiledExpr.test(vcfEntry);
+			} else {
+				Value val = expr.eval(vcfEntry);
+				if (debug) Log.debug("\tEval: " + val + "\tFieldIterator: " + fieldIterator);
+				eval = val.asBool();
+			}
 
-			all &= eval.asBool();
-			any |= eval.asBool();
+			all &= eval;
+			any |= eval;
 
 			if ((fieldIterator.getType() == Field.TYPE_ALL) && !all) {
 				boolean ret = inverse ^ all;
@@ -193,7 +257,13 @@ public class SnpSiftCmdFilter extends SnpSift {
 	protected List<VcfHeaderEntry> headers() {
 		List<VcfHeaderEntry> addHeader = super.headers();
 
-		if (!filterId.isEmpty()) {
+		if (exprsFile != null) {
+			// Named expressions are added to FILTER field
+			if (exprsOutPrefix == null) {
+				for (String name : exprNames)
+					addHeader.add(new VcfHeaderEntry("##FILTER=<ID=" + name + ",Description=\"" + (vcfHeaderAddProgramVersion ? VERSION_NO_NAME + ", " : "") + "Named expression from file: " + exprsFile + "\">"));
+			}
+		} else if (!filterId.isEmpty()) {
 
 			String expr = expression.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ').trim();
 			addHeader.add(new VcfHeaderEntry("##FILTER=<ID=" + filterId + ",Description=\"" + (vcfHeaderAddProgramVersion ? VERSION_NO_NAME + ", " : "") + "Expression used: " + expr + "\">"));
@@ -222,6 +292,65 @@ public class SnpSiftCmdFilter extends SnpSift {
 		sets = new ArrayList<>();
 		formatVersion = null; // VcfEffect.FormatVersion.FORMAT_SNPEFF_3;
 		exceptionIfNotFound = false;
+		compile = true;
+		rawLineFilter = true;
+		useIndex = true;
+		regionsFile = null;
+	}
+
+	/**
+	 * Expressions can be evaluated by many threads (field iterators are
+	 * thread-confined). Debug mode is single threaded, to keep the log readable
+	 */
+	@Override
+	protected boolean isAnnotateThreadSafe() {
+		return !debug;
+	}
+
+	/**
+	 * Open VCF input: Lines that cannot satisfy the expression are discarded before being parsed (see RawLineFilter).
+	 * Only lines in 'regions' are read, seeking into the file if it is indexed (see RegionReader)
+	 * @param discard : Can lines that do not satisfy the expression be discarded?
+	 */
+	VcfFileIterator openVcfInputFileFilter(boolean discard) {
+		if (vcfInputFile == null || vcfInputFile.isEmpty()) vcfInputFile = "-";
+		if (verbose) Log.info("Opening VCF input '" + (vcfInputFile.equals("-") ? "STDIN" : vcfInputFile) + "'");
+
+		RegionReader reader = RegionReader.open(vcfInputFile);
+		reader.setUseIndex(useIndex);
+		reader.setVerbose(verbose);
+		VcfFileIterator vcf = new VcfFileIterator(reader);
+		vcf.setDebug(debug);
+
+		// Filter and regions are created once the header has been read
+		if (rawLineFilter && canSkipLines(discard)) {
+			reader.setFilterFactory(() -> {
+				RawLineFilter filter = (expr != null ? RawLineFilter.create(expr, vcf.getVcfHeader()) : null);
+				if (verbose && filter != null) Log.info("Using " + filter);
+				return filter;
+			});
+		}
+		reader.setRegionsFactory(() -> regions(discard));
+
+		return vcf;
+	}
+
+	/**
+	 * Open one output file for each named expression and write VCF header
+	 */
+	void openExprOuts(String header) {
+		exprOuts = new Writer[exprNames.size()];
+		for (int i = 0; i < exprOuts.length; i++) {
+			String fileName = exprsOutPrefix + exprNames.get(i) + ".vcf";
+			if (verbose) Log.info("Writing entries matching expression '" + exprNames.get(i) + "' to file '" + fileName + "'");
+			try {
+				exprOuts[i] = new BufferedWriter(new FileWriter(fileName), VcfPipeline.OUTPUT_BUFFER_SIZE);
+				exprOuts[i].write(header);
+				exprOuts[i].write('\n');
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing file '" + fileName + "'", e);
+			}
+		}
 	}
 
 	/**
@@ -260,6 +389,23 @@ public class SnpSiftCmdFilter extends SnpSift {
 					exceptionIfNotFound = true;
 					break;
 
+				case "--nocompile":
+					compile = false;
+					break;
+
+				case "--noindex":
+					useIndex = false;
+					break;
+
+				case "--norawfilter":
+					rawLineFilter = false;
+					break;
+
+				case "--regions":
+					if ((i + 1) < args.length) regionsFile = args[++i];
+					else usage("Option '--regions' without BED file argument");
+					break;
+
 				case "-i":
 				case "--filterid":
 					usePassField = true;
@@ -281,6 +427,16 @@ public class SnpSiftCmdFilter extends SnpSift {
 					inverse = true;
 					break;
 
+				case "--exprs":
+					if ((i + 1) < args.length) exprsFile = args[++i];
+					else usage("Option '--exprs' without file argument");
+					break;
+
+				case "--exprsout":
+					if ((i + 1) < args.length) exprsOutPrefix = args[++i];
+					else usage("Option '--exprsOut' without prefix argument");
+					break;
+
 				case "--format":
 					String formatVer = args[++i];
 					if (formatVer.equals("2")) formatVersion = EffFormatVersion.FORMAT_EFF_2;
@@ -303,7 +459,57 @@ public class SnpSiftCmdFilter extends SnpSift {
 			else usage("Unknown parameter '" + arg + "'");
 		}
 
-		if (expression == null) usage("Missing filter expression!");
+		// Named expressions: First parameter is the input file
+		if (exprsFile != null && expression != null) {
+			if (vcfInputFile != null) usage("Cannot use both '--exprs' and an expression");
+			vcfInputFile = expression;
+			expression = null;
+		}
+
+		if (expression == null && exprsFile == null) usage("Missing filter expression!");
+		if (exprsFile != null && (usePassField || addFilterField != null || rmFilterField != null)) usage("Option '--exprs' cannot be used with '-p', '-a' or '-r' (expression names are added to the FILTER field)");
+
+		// Entries outside the regions are not read, so they cannot be shown
+		if (regionsFile != null && (usePassField || addFilterField != null || rmFilterField != null)) usage("Option '--regions' cannot be used with '-p', '-a' or '-r'");
+	}
+
+	/**
+	 * Parse named expressions from a file: One 'name <tab> expression' per line, empty lines and lines starting with '#' are ignored.
+	 * Sub-expressions appearing in several expressions are evaluated only once per VCF entry (see SharedExpression)
+	 */
+	public List<Expression> parseExpressions(String fileName) throws Exception {
+		String file = Gpr.readFile(fileName);
+		if (file.isEmpty()) throw new RuntimeException("Could not read any expressions from file '" + fileName + "'");
+
+		// Create a language factory, used for all expressions
+		LangFactory langFactory = new LangFactory(sets, formatVersion, exceptionIfNotFound);
+
+		// Parse expressions
+		exprNames = new ArrayList<>();
+		List<Expression> parsed = new ArrayList<>();
+		int lineNum = 0;
+		for (String line : file.split("\n")) {
+			lineNum++;
+			if (line.trim().isEmpty() || line.startsWith("#")) continue;
+
+			int tab = line.indexOf('\t');
+			String name = (tab > 0 ? line.substring(0, tab).trim() : "");
+			if (name.isEmpty() || name.contains(" ") || name.contains(";")) throw new RuntimeException("Error parsing file '" + fileName + "', line " + lineNum + ": Expecting 'name <tab> expression', names cannot contain spaces or ';'");
+			if (exprNames.contains(name)) throw new RuntimeException("Error parsing file '" + fileName + "', line " + lineNum + ": Duplicated expression name '" + name + "'");
+
+			if (debug) Log.debug("Parse expression '" + name + "': \"" + line.substring(tab + 1) + "\"");
+			exprNames.add(name);
+			parsed.add(langFactory.compile(line.substring(tab + 1)));
+		}
+		if (verbose) Log.info("Read " + exprNames.size() + " expressions from file '" + fileName + "'");
+
+		// Share sub-expressions and compile
+		exprs = SharedExpression.share(parsed);
+		compiledExprs = new ArrayList<>();
+		for (Expression e : exprs)
+			compiledExprs.add(compile && !debug ? ExpressionCompiler.compile(e) : null);
+
+		return exprs;
 	}
 
 	/**
@@ -324,9 +530,66 @@ public class SnpSiftCmdFilter extends SnpSift {
 		}
 
 		if (debug) Log.debug("Expression: " + expression);
+
+		// Compile expression (debug mode uses the interpreter, so we can show intermediate values)
+		compiledExpr = (compile && !debug && expr != null ? ExpressionCompiler.compile(expr) : null);
+
 		return expr;
 	}
 
+	/**
+	 * Process VCF header and bind expression's fields to it.
+	 * Note: The header is not available in 'annotateInit()', it is read
+	 * together with the first VCF entry (before any entry is evaluated)
+	 */
+	@Override
+	protected String processVcfHeaderStr(VcfFileIterator vcf) {
+		String header = super.processVcfHeaderStr(vcf);
+		if (expr != null) expr.bind(vcf.getVcfHeader());
+		if (exprs != null) {
+			for (Expression e : exprs)
+				e.bind(vcf.getVcfHeader());
+			if (exprsOutPrefix != null && exprOuts == null) openExprOuts(vcf.getVcfHeader().toString());
+		}
+		return header;
+	}
+
+	/**
+	 * Regions to read: Regions in 'regionsFile' and regions that can satisfy the expression
+	 * @param discard : Can lines that do not satisfy the expression be discarded?
+	 * @return Regions or null (i.e. read the whole file)
+	 */
+	Markers regions(boolean discard) {
+		Genome genome = new Genome("genome");
+
+		// Read regions from BED file
+		Markers regions = null;
+		if (regionsFile != null) {
+			if (verbose) Log.info("Reading regions from file '" + regionsFile + "'");
+			BedFileIterator bedFile = new BedFileIterator(regionsFile, genome);
+			bedFile.setCreateChromos(true);
+
+			regions = new Markers();
+			for (Variant var : bedFile.load())
+				regions.add(var);
+		}
+
+		// Regions that can satisfy the expression
+		Markers exprRegions = (canSkipLines(discard) && useIndex && expr != null ? ExpressionRegions.regions(expr, genome) : null);
+		if (exprRegions == null) return regions;
+		if (verbose) Log.info("Expression constrains regions: " + exprRegions);
+		if (regions == null) return exprRegions;
+
+		// Both: Intersect
+		Markers intersect = new Markers();
+		for (Marker er : exprRegions)
+			for (Marker r : regions)
+				if (r.getChromosomeName().equals(er.getChromosomeName()) && r.intersects(er)) {
+					intersect.add(new Marker(r.getParent(), Math.max(r.getStart(), er.getStart()), Math.min(r.getEnd(), er.getEnd())));
+				}
+		return intersect;
+	}
+
 	@Override
 	public boolean run() {
 		run(false);
@@ -341,31 +604,95 @@ public class SnpSiftCmdFilter extends SnpSift {
 	public List<VcfEntry> run(boolean createList) {
 		// Debug mode?
 		if (debug) Expression.debug = true;
+		if (exprsFile != null) return runExprs(createList);
 
 		// Initialize
 		LinkedList<VcfEntry> passEntries = (createList ? new LinkedList<VcfEntry>() : null);
 
-		// Open and read entries
+		// Always show entries (just change FILTER field)?
+		boolean showAll = usePassField || (addFilterField != null) || (rmFilterField != null);
+
+		// Open and read entries. Lines can only be discarded before parsing if they are not shown
 		showVcfHeader = !createList;
-		VcfFileIterator vcfFile = openVcfInputFile();
+		boolean discard = !showAll && !inverse && !debug;
+		VcfFileIterator vcfFile = (((rawLineFilter || useIndex) && canSkipLines(discard)) || (regionsFile != null) ? openVcfInputFileFilter(discard) : openVcfInputFile());
 		annotateInit(vcfFile);
-		for (VcfEntry vcfEntry : vcfFile) {
-			processVcfHeader(vcfFile);
 
-			// Annotate (evaluate expression)
+		// Process entries: Evaluate expression in worker threads
+		VcfPipeline pipeline = newVcfPipeline(vcfFile, VcfPipeline.processor(vcfEntry -> {
 			boolean show = annotate(vcfEntry);
+			return show || showAll ? vcfEntry.toString() : null;
+		}));
+		pipeline.setList(passEntries);
+		if (createList) {
+			pipeline.setOutput(null); // Do not show. just add to the list (this is used for debugging and testing)
+			pipeline.run();
+		} else runVcfPipeline(pipeline); // Output to STDOUT or '-out' file
+
+		annotateFinish(vcfFile);
 
-			// Always show entries (just change FILTER field)
-			if (usePassField || (addFilterField != null) || (rmFilterField != null)) show = true;
+		return passEntries;
+	}
 
-			// Show
-			if (show) {
-				if (passEntries != null) passEntries.add(vcfEntry); // Do not show. just add to the list (this is used for debugging and testing)
-				else System.out.println(vcfEntry);
+	/**
+	 * Run all named expressions in a single pass: Entries matching each expression are written to
+	 * '<exprsOutPrefix><name>.vcf', or (if 'exprsOutPrefix' is null) all entries are shown, adding
+	 * the names of matching expressions to the FILTER field.
+	 * @param createList : If true, create a list with the entries matching any expression (or all entries, if names are added to FILTER field)
+	 */
+	List<VcfEntry> runExprs(boolean createList) {
+		LinkedList<VcfEntry> passEntries = (createList ? new LinkedList<VcfEntry>() : null);
+		boolean toFiles = (exprsOutPrefix != null);
+
+		showVcfHeader = !createList && !toFiles;
+		VcfFileIterator vcfFile = openVcfInputFile();
+		annotateInit(vcfFile);
+
+		// Evaluate all expressions in worker threads
+		VcfPipeline pipeline = newVcfPipeline(vcfFile, VcfPipeline.processor(vcfEntry -> {
+			// Evaluate all expressions before changing the entry (expressions using FILTER must not see names added by other expressions)
+			boolean[] matches = new boolean[exprs.size()];
+			for (int i = 0; i < exprs.size(); i++)
+				matches[i] = evaluate(vcfEntry, exprs.get(i), compiledExprs.get(i));
+
+			StringBuilder matched = null; // Indexes of matching expressions
+			for (int i = 0; i < matches.length; i++) {
+				if (!matches[i]) continue;
+				if (!toFiles) vcfEntry.addFilter(exprNames.get(i));
+				else if (matched == null) matched = new StringBuilder().append(i);
+				else matched.append(',').append(i);
 			}
+
+			if (!toFiles) return vcfEntry.toString();
+			return matched != null ? matched + "\t" + vcfEntry : null;
+		}));
+		pipeline.setList(passEntries);
+		if (createList || toFiles) pipeline.setOutput(null);
+
+		// Route entries to output files (in the writer thread, in input order)
+		if (toFiles) {
+			pipeline.setWriteListener((vcfEntry, line) -> {
+				int tab = line.indexOf('\t');
+				try {
+					for (String idx : line.substring(0, tab).split(",")) {
+						Writer out = exprOuts[Integer.parseInt(idx)];
+						out.write(line, tab + 1, line.length() - tab - 1);
+						out.write('\n');
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("Error writing output", e);
+				}
+			});
+		}
+
+		try {
+			if (createList || toFiles) pipeline.run();
+			else runVcfPipeline(pipeline); // Output to STDOUT or '-out' file
+		} finally {
+			closeExprOuts();
 		}
-		annotateFinish(vcfFile);
 
+		annotateFinish(vcfFile);
 		return passEntries;
 	}
 
@@ -373,6 +700,10 @@ public class SnpSiftCmdFilter extends SnpSift {
 		this.addFilterField = addFilterField;
 	}
 
+	public void setCompile(boolean compile) {
+		this.compile = compile;
+	}
+
 	public void setExceptionIfNotFound(boolean exceptionIfNotFound) {
 		this.exceptionIfNotFound = exceptionIfNotFound;
 	}
@@ -381,6 +712,14 @@ public class SnpSiftCmdFilter extends SnpSift {
 		this.expression = expression;
 	}
 
+	public void setExprsFile(String exprsFile) {
+		this.exprsFile = exprsFile;
+	}
+
+	public void setExprsOutPrefix(String exprsOutPrefix) {
+		this.exprsOutPrefix = exprsOutPrefix;
+	}
+
 	public void setFilterId(String filterId) {
 		this.filterId = filterId;
 	}
@@ -393,6 +732,14 @@ public class SnpSiftCmdFilter extends SnpSift {
 		this.inverse = inverse;
 	}
 
+	public void setRawLineFilter(boolean rawLineFilter) {
+		this.rawLineFilter = rawLineFilter;
+	}
+
+	public void setRegionsFile(String regionsFile) {
+		this.regionsFile = regionsFile;
+	}
+
 	public void setRmFilterField(String rmFilterField) {
 		this.rmFilterField = rmFilterField;
 	}
@@ -401,6 +748,10 @@ public class SnpSiftCmdFilter extends SnpSift {
 		this.sets = sets;
 	}
 
+	public void setUseIndex(boolean useIndex) {
+		this.useIndex = useIndex;
+	}
+
 	public void setUsePassField(boolean usePassField) {
 		this.usePassField = usePassField;
 	}
@@ -428,8 +779,14 @@ public class SnpSiftCmdFilter extends SnpSift {
 		System.err.println("\t-r|--rmFilter <str>   : Remove a string from FILTER VCF field if 'expression' is true (and 'str' is in the field). Default: '' (none)");
 		System.err.println("\t-s|--set <file>       : Create a SET using 'file'");
 		System.err.println("\t--errMissing          : Error is a field is missing. Default: " + exceptionIfNotFound);
+		System.err.println("\t--exprs <file>        : Evaluate many named expressions in a single pass. File format: one 'name <tab> expression' per line. Matching expression names are added to FILTER field. Cannot be used with '-p', '-a' or '-r'.");
+		System.err.println("\t--exprsOut <prefix>   : Used with '--exprs': Write entries matching each expression to file '<prefix><name>.vcf' instead of adding names to FILTER field.");
 		System.err.println("\t--format <format>     : SnpEff format version: {2, 3}. Default: " + (formatVersion == null ? "Auto" : formatVersion));
 		System.err.println("\t--galaxy              : Used from Galaxy (expressions have been sanitized).");
+		System.err.println("\t--noCompile           : Do not compile the expression, evaluate it using the interpreter.");
+		System.err.println("\t--noIndex             : Do not use the input's index (bgzip + tabix, or '.sidx') to read only regions constrained by 'expression' (CHROM, POS). Not used with '--errMissing'.");
+		System.err.println("\t--noRawFilter         : Do not discard lines (using fixed columns, e.g. CHROM, POS, QUAL) before parsing them. Not used with '--errMissing'.");
+		System.err.println("\t--regions <file.bed>  : Only process (and show) VCF entries overlapping regions in a BED file. Indexed inputs are only read in these regions. Cannot be used with '-p', '-a' or '-r'.");
 		System.exit(-1);
 	}
 
@@ -9,6 +9,7 @@ import org.snpeff.vcf.VcfHeaderEntry;
 import org.snpeff.vcf.VcfHeaderInfo;
 import org.snpeff.vcf.VcfHeaderInfo.VcfInfoNumber;
 import org.snpeff.vcf.VcfInfoType;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Add genotype information to INFO fields
@@ -42,6 +43,14 @@ public class SnpSiftCmdGt extends SnpSift {
 		return newHeaders;
 	}
 
+	/**
+	 * Entries are processed independently
+	 */
+	@Override
+	protected boolean isAnnotateThreadSafe() {
+		return true;
+	}
+
 	/**
 	 * Parse command line arguments
 	 */
@@ -64,23 +73,23 @@ public class SnpSiftCmdGt extends SnpSift {
 	 */
 	@Override
 	public boolean run() {
-		int i = 1;
 		VcfFileIterator vcf = openVcfInputFile();
 		annotateInit(vcf);
-		for (VcfEntry ve : vcf) {
-			processVcfHeader(vcf);
-
-			if (uncompress) {
-				// Uncompress
-				print(ve.uncompressGenotypes().toString());
-			} else {
-				// Compress
-				if (ve.compressGenotypes()) print(ve.toStringNoGt());
-				else print(ve.toString());
-			}
-
-			if (verbose) Gpr.showMark(i++, SHOW_EVERY);
+
+		VcfPipeline pipeline = newVcfPipeline(vcf, VcfPipeline.processor(ve -> {
+			// Uncompress
+			if (uncompress) return ve.uncompressGenotypes().toString();
+
+			// Compress
+			if (ve.compressGenotypes()) return ve.toStringNoGt();
+			return ve.toString();
+		}));
+		if (verbose) {
+			int count[] = { 0 };
+			pipeline.setReadListener(ve -> Gpr.showMark(++count[0], SHOW_EVERY));
 		}
+		runVcfPipeline(pipeline);
+
 		annotateFinish(vcf);
 		return true;
 	}
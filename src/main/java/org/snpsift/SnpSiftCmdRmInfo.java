@@ -4,7 +4,7 @@ import java.util.HashSet;
 
 import org.snpeff.fileIterator.VcfFileIterator;
 import org.snpeff.util.Log;
-import org.snpeff.vcf.VcfEntry;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Removes INFO fields
@@ -25,6 +25,14 @@ public class SnpSiftCmdRmInfo extends SnpSift {
 		super(args);
 	}
 
+	/**
+	 * Entries are processed independently
+	 */
+	@Override
+	protected boolean isAnnotateThreadSafe() {
+		return true;
+	}
+
 	@Override
 	public void parseArgs(String[] args) {
 		infos = new HashSet<String>();
@@ -54,23 +62,16 @@ public class SnpSiftCmdRmInfo extends SnpSift {
 		vcfFile.setDebug(debug);
 
 		// Read all vcfEntries
-		int entryNum = 1;
-		for (VcfEntry vcfEntry : vcfFile) {
-			// Show header?
-			if (entryNum == 1) {
-				String headerStr = vcfFile.getVcfHeader().toString();
-				if (!headerStr.isEmpty()) System.out.println(headerStr);
-			}
-
+		VcfPipeline pipeline = newVcfPipeline(vcfFile, VcfPipeline.processor(vcfEntry -> {
 			for (String info : infos)
 				vcfEntry.rmInfo(info);
 
 			if (rmId) vcfEntry.setId("");
 
-			// Show entry
-			System.out.println(vcfEntry);
-			entryNum++;
-		}
+			return vcfEntry.toString();
+		}));
+		pipeline.setHeaderProcessor(vcf -> vcf.getVcfHeader().toString()); // Header is shown unchanged
+		runVcfPipeline(pipeline);
 
 		Log.info("Done");
 		return true;
@@ -12,6 +12,7 @@ import org.snpeff.vcf.VcfHeaderEntry;
 import org.snpeff.vcf.VcfHeaderInfo;
 import org.snpeff.vcf.VcfHeaderInfo.VcfInfoNumber;
 import org.snpeff.vcf.VcfInfoType;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Annotate a VCF file with variant type
@@ -94,6 +95,14 @@ public class SnpSiftCmdVarType extends SnpSift {
 		return newHeaders;
 	}
 
+	/**
+	 * Entries are annotated independently
+	 */
+	@Override
+	protected boolean isAnnotateThreadSafe() {
+		return true;
+	}
+
 	/**
 	 * Parse command line arguments
 	 */
@@ -116,19 +125,11 @@ public class SnpSiftCmdVarType extends SnpSift {
 		VcfFileIterator vcf = new VcfFileIterator(vcfFile);
 		vcf.setDebug(debug);
 
-		boolean showHeader = true;
-		for (VcfEntry vcfEntry : vcf) {
-			// Show header?
-			if (showHeader) {
-				addHeaders(vcf);
-				String headerStr = vcf.getVcfHeader().toString();
-				if (!headerStr.isEmpty()) System.out.println(headerStr);
-				showHeader = false;
-			}
-
+		VcfPipeline pipeline = newVcfPipeline(vcf, VcfPipeline.processor(vcfEntry -> {
 			annotate(vcfEntry);
-			System.out.println(vcfEntry);
-		}
+			return vcfEntry.toString();
+		}));
+		runVcfPipeline(pipeline);
 		return true;
 	}
 
@@ -44,33 +44,72 @@ public abstract class AnnotateVcfDb {
      * Annotate a VCF entry
      */
     public boolean annotate(VcfEntry vcfEntry) throws IOException {
-        boolean annotated = false;
-        Set<String> idSet = new HashSet<>();
-        Map<String, String> infos = new HashMap<>();
-        boolean exists = false;
-
         //---
         // Find all matching database entries
         // Note that QueryResult.variantVcfEntry can be 'null'
         //---
         List<QueryResult> queryResults = new LinkedList<>();
-        Set<VcfEntry> uniqueVcfEntries = new HashSet<>();
-        for (Variant var : vcfEntry.variants()) {
-            // Skip huge structural variants
-            if (var.isStructuralHuge()) continue;
+        for (Variant var : queryVariants(vcfEntry)) {
+            QueryResult qr = new QueryResult(var, query(var));
+            queryResults.add(qr);
+            if (debug) Log.debug("Adding QueryResult: " + qr);
+        }
 
-            Collection<VariantVcfEntry> results = query(var);
+        return annotate(vcfEntry, queryResults);
+    }
 
-            // Make sure we add all found VcfEntries
-            for (VariantVcfEntry dbEntry : results)
-                uniqueVcfEntries.add(dbEntry.getVcfEntry());
+    /**
+     * Annotate a list of VCF entries.
+     * All variants are queried in a single batch, which is much faster
+     * than querying one variant at a time when entries are sorted
+     *
+     * @return An array indicating whether each entry was annotated
+     */
+    public boolean[] annotate(List<VcfEntry> vcfEntries) throws IOException {
+        // Collect all variants
+        List<List<Variant>> varsByEntry = new ArrayList<>(vcfEntries.size());
+        List<Variant> vars = new ArrayList<>();
+        for (VcfEntry vcfEntry : vcfEntries) {
+            List<Variant> entryVars = queryVariants(vcfEntry);
+            varsByEntry.add(entryVars);
+            vars.addAll(entryVars);
+        }
 
-            // Add query and result
-            QueryResult qr = new QueryResult(var, results);
-            queryResults.add(qr);
-            if (debug) Log.debug("Adding QueryResult: " + qr);
+        // Query all variants
+        List<Collection<VariantVcfEntry>> results = query(vars);
+
+        // Annotate each entry
+        boolean[] annotated = new boolean[vcfEntries.size()];
+        int varIdx = 0;
+        for (int i = 0; i < vcfEntries.size(); i++) {
+            List<QueryResult> queryResults = new LinkedList<>();
+            for (Variant var : varsByEntry.get(i)) {
+                QueryResult qr = new QueryResult(var, results.get(varIdx++));
+                queryResults.add(qr);
+                if (debug) Log.debug("Adding QueryResult: " + qr);
+            }
+
+            annotated[i] = annotate(vcfEntries.get(i), queryResults);
         }
 
+        return annotated;
+    }
+
+    /**
+     * Annotate a VCF entry using database query results (one QueryResult per variant)
+     */
+    protected boolean annotate(VcfEntry vcfEntry, List<QueryResult> queryResults) {
+        boolean annotated = false;
+        Set<String> idSet = new HashSet<>();
+        Map<String, String> infos = new HashMap<>();
+        boolean exists = false;
+
+        // Make sure we add all found VcfEntries
+        Set<VcfEntry> uniqueVcfEntries = new HashSet<>();
+        for (QueryResult qr : queryResults)
+            for (VariantVcfEntry dbEntry : qr.results)
+                uniqueVcfEntries.add(dbEntry.getVcfEntry());
+
         // Try to find INFO fields that we might have not seen before
         if (useAllInfoFields) {
             for (VcfEntry ve : uniqueVcfEntries)
@@ -382,6 +421,9 @@ public abstract class AnnotateVcfDb {
     }
 
     public void open() {
+        // Only parse INFO fields we are going to use from database entries
+        if (!useAllInfoFields) dbVcf.setInfoFields(useInfoFields && infoFields != null ? infoFields : Collections.emptySet());
+        dbVcf.setMatchRefAlt(useRefAlt); // Entries not matching REF and ALT can be skipped
         dbVcf.open();
         discoverInfoFields();
     }
@@ -405,8 +447,26 @@ public abstract class AnnotateVcfDb {
     protected Collection<VariantVcfEntry> query(Variant variant) {
         // Query database
         Collection<VariantVcfEntry> results = dbVcf.query(variant);
+        return queryMatch(variant, results);
+    }
+
+    /**
+     * Query database (batch) and find results matching each variant
+     */
+    protected List<Collection<VariantVcfEntry>> query(List<Variant> variants) {
+        List<Collection<VariantVcfEntry>> results = dbVcf.query(variants);
 
-        // Filter results to match 'variant'
+        List<Collection<VariantVcfEntry>> matches = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++)
+            matches.add(queryMatch(variants.get(i), results.get(i)));
+
+        return matches;
+    }
+
+    /**
+     * Filter database results matching 'variant'
+     */
+    protected Collection<VariantVcfEntry> queryMatch(Variant variant, Collection<VariantVcfEntry> results) {
         List<VariantVcfEntry> list = new LinkedList<>();
         for (VariantVcfEntry dbEntry : results) {
             if (match(variant, dbEntry)) {
@@ -421,6 +481,18 @@ public abstract class AnnotateVcfDb {
         return list;
     }
 
+    /**
+     * Variants from a VCF entry to be queried in the database
+     */
+    protected List<Variant> queryVariants(VcfEntry vcfEntry) {
+        List<Variant> vars = new ArrayList<>();
+        for (Variant var : vcfEntry.variants()) {
+            // Skip huge structural variants
+            if (!var.isStructuralHuge()) vars.add(var);
+        }
+        return vars;
+    }
+
     public void setAnnotateEmpty(boolean annotateEmpty) {
         this.annotateEmpty = annotateEmpty;
     }
@@ -0,0 +1,15 @@
+package org.snpsift.annotate;
+
+/**
+ * Annotate using a pre-built binary "database" (see DbVcfBin)
+ *
+ * @author pcingola
+ *
+ */
+public class AnnotateVcfDbBin extends AnnotateVcfDb {
+
+	public AnnotateVcfDbBin(String dbFileName) {
+		super();
+		dbVcf = new DbVcfBin(dbFileName);
+	}
+}
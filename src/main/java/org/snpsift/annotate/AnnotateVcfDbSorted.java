@@ -14,9 +14,14 @@ package org.snpsift.annotate;
 public class AnnotateVcfDbSorted extends AnnotateVcfDb {
 
 	public AnnotateVcfDbSorted(String dbFileName, int maxBlockSize) {
+		this(dbFileName, maxBlockSize, VcfEntryCache.DEFAULT_MAX_SIZE);
+	}
+
+	public AnnotateVcfDbSorted(String dbFileName, int maxBlockSize, int cacheSize) {
 		super();
 		DbVcfSorted dbVcfSorted = new DbVcfSorted(dbFileName);
 		dbVcfSorted.setMaxBlockSize(maxBlockSize);
+		dbVcfSorted.setCacheSize(cacheSize);
 		dbVcf = dbVcfSorted;
 	}
 
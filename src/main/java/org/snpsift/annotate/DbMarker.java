@@ -1,6 +1,8 @@
 package org.snpsift.annotate;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.snpeff.interval.Marker;
 
@@ -31,6 +33,20 @@ public interface DbMarker<Q extends Marker, R extends Marker> {
 	 */
 	public abstract Collection<R> query(Q queryMarker);
 
+	/**
+	 * Find matching entries in the database for a list of query markers.
+	 * Implementations can take advantage of queries sorted by position
+	 * (e.g. by reading the database in a single forward pass).
+	 *
+	 * @return A list of results, one for each query marker (in the same order as 'queryMarkers')
+	 */
+	public default List<Collection<R>> query(List<Q> queryMarkers) {
+		List<Collection<R>> results = new ArrayList<>(queryMarkers.size());
+		for (Q queryMarker : queryMarkers)
+			results.add(query(queryMarker));
+		return results;
+	}
+
 	public void setDebug(boolean debug);
 
 	public void setVerbose(boolean verbose);
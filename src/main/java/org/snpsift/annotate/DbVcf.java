@@ -1,9 +1,18 @@
 package org.snpsift.annotate;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Marker;
 import org.snpeff.interval.Variant;
 import org.snpeff.vcf.VariantVcfEntry;
+import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfHeader;
 
 /**
@@ -27,15 +36,121 @@ import org.snpeff.vcf.VcfHeader;
  *   queries, creating an intervalTree from the VCF entries matching the region
  *   might be effective
  *
+ *   Database lines are parsed using a VcfFileIteratorDb, so only the INFO fields
+ *   used for annotations are parsed and genotype columns are skipped.
+ *
+ *   Batched queries (see 'query(List<Variant>)') sort the variants and group
+ *   nearby ones into 'windows'. Each window is queried only once and the
+ *   results are merge-joined with the variants. Database entries in the
+ *   window that cannot intersect any of the variants (or cannot match their
+ *   REF and ALT, see 'matchRefAlt') are skipped before they are parsed
+ *   (see WindowVariants).
+ *
  *
  * @author pcingola
  */
 public abstract class DbVcf implements DbMarker<Variant, VariantVcfEntry> {
 
+	/**
+	 * Variants in a window (sorted by start position), used to skip database
+	 * entries that cannot intersect any variant, before they are parsed.
+	 *
+	 * Note: Database entries should be checked in increasing start position,
+	 * otherwise the search starts over from the first variant
+	 */
+	public static class WindowVariants {
+		int starts[], ends[];
+		String refs[], alts[]; // Variants' REF and ALT (null if REF and ALT are not compared)
+		int first; // Variants before this one end before the last database entry checked
+		int lastStart = Integer.MIN_VALUE; // Start of the last database entry checked
+
+		/**
+		 * Does 'str' contain 'sub' (ignoring case)?
+		 */
+		static boolean containsIgnoreCase(String str, String sub) {
+			for (int i = 0; i + sub.length() <= str.length(); i++)
+				if (str.regionMatches(true, i, sub, 0, sub.length())) return true;
+			return false;
+		}
+
+		/**
+		 * Is ALT symbolic (e.g. '<DEL>'), a breakend or a spanning deletion?
+		 */
+		static boolean isSymbolic(String alt) {
+			for (int i = 0; i < alt.length(); i++) {
+				char c = alt.charAt(i);
+				if (c == '<' || c == '[' || c == ']' || c == '*') return true;
+			}
+			return false;
+		}
+
+		public WindowVariants(List<Variant> variants, List<Integer> group) {
+			this(variants, group, false);
+		}
+
+		public WindowVariants(List<Variant> variants, List<Integer> group, boolean matchRefAlt) {
+			starts = new int[group.size()];
+			ends = new int[group.size()];
+			if (matchRefAlt) {
+				refs = new String[group.size()];
+				alts = new String[group.size()];
+			}
+
+			for (int i = 0; i < starts.length; i++) {
+				Variant var = variants.get(group.get(i));
+				starts[i] = var.getStart();
+				ends[i] = var.getEnd();
+				if (matchRefAlt) {
+					refs[i] = var.getReference();
+					alts[i] = var.getAlt();
+				}
+			}
+		}
+
+		/**
+		 * Can a database entry spanning [start, end] intersect any variant in the window?
+		 * Note: Coordinates are extended by one base (e.g. insertions right after the entry)
+		 */
+		public boolean intersects(int start, int end) {
+			return intersects(start, end, null, null);
+		}
+
+		/**
+		 * Can a database entry spanning [start, end] having (unparsed) REF and ALT columns
+		 * match any variant in the window? REF and ALT are ignored if they are null.
+		 *
+		 * Note: Matching compares the variants' (normalized) REF and ALT, which
+		 * are always substrings of the entry's REF and ALT columns, except
+		 * for symbolic ALTs (these are not compared)
+		 */
+		public boolean intersects(int start, int end, String ref, String alt) {
+			if (start < lastStart) first = 0; // Entries are not sorted: Start over
+			lastStart = start;
+			while (first < starts.length && ends[first] < start - 1)
+				first++;
+
+			boolean compareRefAlt = (refs != null && ref != null && alt != null && !isSymbolic(alt));
+			for (int i = first; i < starts.length && starts[i] <= end + 1; i++) {
+				if (ends[i] < start - 1) continue;
+				if (!compareRefAlt) return true;
+				if (refs[i] == null || alts[i] == null) return true;
+				if (containsIgnoreCase(ref, refs[i]) && containsIgnoreCase(alt, alts[i])) return true;
+			}
+
+			return false;
+		}
+	}
+
+	public static int BATCH_MAX_GAP = 1000; // Variants closer than this are queried as a single window (batched queries)
+
+	protected int batchMaxGap = BATCH_MAX_GAP;
 	protected boolean debug = false;
 	protected boolean verbose = false;
+	protected boolean parseGenotypes = false; // Genotypes are not used for annotations
 	protected String dbFileName;
 	protected VcfHeader vcfHeader;
+	protected Set<String> infoFields; // Only parse these INFO fields from database entries (null means 'all fields')
+	protected boolean matchRefAlt = false; // Query results are only used if they match variant's REF and ALT (entries that cannot match may be skipped)
 
 	public DbVcf(String dbFileName) {
 		this.dbFileName = dbFileName;
@@ -48,6 +163,16 @@ public abstract class DbVcf implements DbMarker<Variant, VariantVcfEntry> {
 		return vcfHeader;
 	}
 
+	/**
+	 * Create a file iterator that only parses the required parts of each database line
+	 */
+	protected VcfFileIteratorDb newVcfFileIterator(String fileName) {
+		VcfFileIteratorDb vcf = new VcfFileIteratorDb(fileName);
+		vcf.setInfoFields(infoFields);
+		vcf.setParseGenotypes(parseGenotypes);
+		return vcf;
+	}
+
 	@Override
 	public abstract void open();
 
@@ -57,11 +182,142 @@ public abstract class DbVcf implements DbMarker<Variant, VariantVcfEntry> {
 	@Override
 	public abstract Collection<VariantVcfEntry> query(Variant variant);
 
+	/**
+	 * Find matching entries for a list of variants.
+	 * Variants are sorted by position and nearby variants are grouped
+	 * into windows, so the database is queried only once per window
+	 */
+	@Override
+	public List<Collection<VariantVcfEntry>> query(List<Variant> variants) {
+		List<Collection<VariantVcfEntry>> results = new ArrayList<>(variants.size());
+		for (int i = 0; i < variants.size(); i++)
+			results.add(new ArrayList<>());
+
+		// Sort variants by chromosome and position
+		List<Integer> idxs = new ArrayList<>(variants.size());
+		for (int i = 0; i < variants.size(); i++)
+			idxs.add(i);
+		idxs.sort(Comparator.comparing((Integer i) -> variants.get(i).getChromosomeName()).thenComparingInt(i -> variants.get(i).getStart()));
+
+		// Group nearby variants and query each group as a window
+		List<Integer> group = new ArrayList<>();
+		Variant first = null;
+		int windowEnd = -1;
+		for (int idx : idxs) {
+			Variant var = variants.get(idx);
+
+			// Start a new window?
+			if (first != null //
+					&& (!first.getChromosomeName().equals(var.getChromosomeName()) || (var.getStart() - windowEnd) > batchMaxGap) //
+			) {
+				queryWindow(variants, group, first.getChromosome(), first.getStart(), windowEnd, results);
+				group.clear();
+				first = null;
+			}
+
+			// Add to window
+			if (first == null) {
+				first = var;
+				windowEnd = var.getEnd();
+			}
+			group.add(idx);
+			windowEnd = Math.max(windowEnd, var.getEnd());
+		}
+
+		if (first != null) queryWindow(variants, group, first.getChromosome(), first.getStart(), windowEnd, results);
+
+		return results;
+	}
+
+	/**
+	 * Query a window and merge-join the database entries with all
+	 * variants in the window (variant indexes in 'group' are sorted by position)
+	 */
+	protected void queryWindow(List<Variant> variants, List<Integer> group, Marker chromosome, int start, int end, List<Collection<VariantVcfEntry>> results) {
+		// Query database
+		List<VariantVcfEntry> dbEntries = new ArrayList<>(queryWindow(new Marker(chromosome, start, end), new WindowVariants(variants, group, matchRefAlt)));
+		dbEntries.sort(Comparator.comparingInt(VariantVcfEntry::getStart));
+
+		// Single forward pass over sorted database entries
+		List<VariantVcfEntry> active = new LinkedList<>(); // Entries that may intersect the current (or next) variants
+		int next = 0;
+		for (int idx : group) {
+			Variant var = variants.get(idx);
+
+			// Add entries starting before the variant's end
+			while (next < dbEntries.size() && dbEntries.get(next).getStart() <= var.getEnd())
+				active.add(dbEntries.get(next++));
+
+			// Remove entries ending before the variant's start: Variants are sorted, so these cannot match any further variant
+			active.removeIf(dbEntry -> dbEntry.getEnd() < var.getStart());
+
+			// Add intersecting entries
+			Collection<VariantVcfEntry> res = results.get(idx);
+			for (VariantVcfEntry dbEntry : active)
+				if (dbEntry.intersects(var)) res.add(dbEntry);
+		}
+	}
+
+	/**
+	 * Find all entries in the database intersecting a genomic window
+	 */
+	protected abstract Collection<VariantVcfEntry> queryWindow(Marker window);
+
+	/**
+	 * Find entries in the database intersecting a genomic window, entries that cannot intersect
+	 * any variant in 'windowVariants' may be skipped. By default, all entries are returned
+	 */
+	protected Collection<VariantVcfEntry> queryWindow(Marker window, WindowVariants windowVariants) {
+		return queryWindow(window);
+	}
+
+	/**
+	 * Create a (minimal) VcfEntry from column values: QUAL and FILTER are missing, no genotypes.
+	 * INFO fields defining coordinates (e.g. 'END') are parsed by VcfEntry, other
+	 * INFO fields are added directly from their columns
+	 */
+	protected static VcfEntry vcfEntry(VcfFileIterator vcf, Chromosome chr, int pos, String id, String ref, String alt, Collection<InfoColumn> infoColumns, int idx) {
+		StringBuilder coordinatesInfo = new StringBuilder();
+		for (InfoColumn col : infoColumns) {
+			if (!col.has(idx) || !VcfFileIteratorDb.COORDINATE_INFO_FIELDS.contains(col.getName())) continue;
+			if (coordinatesInfo.length() > 0) coordinatesInfo.append(';');
+			coordinatesInfo.append(col.getName());
+			String value = col.get(idx);
+			if (value != null) coordinatesInfo.append('=').append(value);
+		}
+
+		VcfEntry ve = new VcfEntry(vcf, chr, chr.getId(), pos - 1, id != null ? id : "", ref, alt, 0, VcfFileIterator.MISSING, coordinatesInfo.toString(), null);
+		for (InfoColumn col : infoColumns)
+			if (col.has(idx) && !VcfFileIteratorDb.COORDINATE_INFO_FIELDS.contains(col.getName())) ve.addInfo(col.getName(), col.get(idx));
+
+		return ve;
+	}
+
 	@Override
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
 
+	/**
+	 * Only parse these INFO fields from database entries (null means 'all fields')
+	 * Note: Must be set before opening the database
+	 */
+	public void setInfoFields(Set<String> infoFields) {
+		this.infoFields = infoFields;
+	}
+
+	/**
+	 * Query results are only used if they match the variant's REF and ALT,
+	 * so entries that cannot match may be skipped
+	 */
+	public void setMatchRefAlt(boolean matchRefAlt) {
+		this.matchRefAlt = matchRefAlt;
+	}
+
+	public void setParseGenotypes(boolean parseGenotypes) {
+		this.parseGenotypes = parseGenotypes;
+	}
+
 	@Override
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
@@ -0,0 +1,239 @@
+package org.snpsift.annotate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Variant;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VariantVcfEntry;
+import org.snpeff.vcf.VcfEntry;
+import org.snpeff.vcf.VcfHeader;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Use a pre-built binary database (see DbVcfBinBuilder) for annotations
+ *
+ * File format:
+ *   - Magic number and format version
+ *   - VCF header (text)
+ *   - Blocks: Records from one chromosome, stored in columns and compressed (see DbVcfBinBlock)
+ *   - Index: Chromosome, genomic interval, file position and length for each block
+ *   - Index file position (last 8 bytes)
+ *
+ * VcfEntries are created directly from the block's columns, records that cannot
+ * match any queried variant (coordinates, REF and ALT) are skipped before that.
+ *
+ * @author pcingola
+ */
+public class DbVcfBin extends DbVcf {
+
+	public static final int MAGIC = 0x53534442; // File magic number: "SSDB"
+	public static final int FORMAT_VERSION = 2;
+	public static final String EXT = "sdb";
+	public static final int BLOCK_CACHE_SIZE = 16; // Number of decompressed blocks kept in memory
+
+	RandomAccessFile file;
+	VcfFileIteratorDb vcf; // VcfEntries' file iterator
+	Genome genome; // Chromosomes for VcfEntries
+	Map<String, DbVcfMemChromo> chromos; // Blocks intervals by chromosome
+	String blockChr[]; // Chromosome for each block
+	long blockFilePos[]; // File position for each block
+	int blockLen[]; // Compressed size for each block
+	Map<Integer, DbVcfBinBlock> blockCache;
+
+	/**
+	 * Is this a binary database file?
+	 */
+	public static boolean isDbVcfBin(String fileName) {
+		return fileName.endsWith("." + EXT);
+	}
+
+	/**
+	 * Parse a VCF header
+	 */
+	static VcfFileIteratorDb parseHeader(String headerStr) {
+		VcfFileIteratorDb vcf = new VcfFileIteratorDb(new BufferedReader(new StringReader(headerStr)));
+		vcf.readHeader();
+		return vcf;
+	}
+
+	/**
+	 * Read VCF header from a binary database file
+	 */
+	public static VcfHeader readVcfHeader(String fileName) {
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+			return parseHeader(readHeaderStr(raf, fileName)).getVcfHeader();
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		}
+	}
+
+	/**
+	 * Check magic number and version, read VCF header string
+	 */
+	static String readHeaderStr(RandomAccessFile raf, String fileName) throws IOException {
+		raf.seek(0);
+		if (raf.readInt() != MAGIC) throw new RuntimeException("File '" + fileName + "' is not a binary SnpSift database");
+		int version = raf.readInt();
+		if (version != FORMAT_VERSION) throw new RuntimeException("Unsupported binary database version " + version + " in file '" + fileName + "'. Expected version " + FORMAT_VERSION + ", please rebuild the database");
+
+		byte bytes[] = new byte[raf.readInt()];
+		raf.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public DbVcfBin(String dbFileName) {
+		super(dbFileName);
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (file != null) file.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error closing file '" + dbFileName + "'", e);
+		}
+		file = null;
+		vcf = null;
+		genome = null;
+		chromos = null;
+		blockCache = null;
+	}
+
+	/**
+	 * Read (or get from cache) a block
+	 */
+	DbVcfBinBlock getBlock(int blockIdx) {
+		DbVcfBinBlock block = blockCache.get(blockIdx);
+		if (block != null) return block;
+
+		try {
+			byte bytes[] = new byte[blockLen[blockIdx]];
+			file.seek(blockFilePos[blockIdx]);
+			file.readFully(bytes);
+
+			DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+			block = DbVcfBinBlock.read(in, blockChr[blockIdx]);
+			if (debug) Log.debug("Reading block " + blockIdx + ": " + block);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading block " + blockIdx + " from file '" + dbFileName + "'", e);
+		}
+
+		blockCache.put(blockIdx, block);
+		return block;
+	}
+
+	/**
+	 * Open database: Read header and index
+	 */
+	@SuppressWarnings("serial")
+	@Override
+	public void open() {
+		try {
+			file = new RandomAccessFile(dbFileName, "r");
+			vcf = parseHeader(readHeaderStr(file, dbFileName));
+			vcf.setInfoFields(infoFields);
+			vcfHeader = vcf.getVcfHeader();
+			genome = new Genome("genome");
+
+			// Read index
+			file.seek(file.length() - Long.BYTES);
+			file.seek(file.readLong());
+			int numBlocks = file.readInt();
+			blockChr = new String[numBlocks];
+			blockFilePos = new long[numBlocks];
+			blockLen = new int[numBlocks];
+			chromos = new HashMap<>();
+			for (int i = 0; i < numBlocks; i++) {
+				blockChr[i] = file.readUTF();
+				int start = file.readInt();
+				int end = file.readInt();
+				blockFilePos[i] = file.readLong();
+				blockLen[i] = file.readInt();
+
+				DbVcfMemChromo dbChr = chromos.get(blockChr[i]);
+				if (dbChr == null) {
+					dbChr = new DbVcfMemChromo(blockChr[i]);
+					chromos.put(blockChr[i], dbChr);
+				}
+				dbChr.add(start, end, i);
+			}
+
+			for (DbVcfMemChromo dbChr : chromos.values())
+				dbChr.build();
+
+			if (verbose) Log.info("Opened binary database '" + dbFileName + "': " + numBlocks + " blocks, " + chromos.size() + " chromosomes");
+		} catch (IOException e) {
+			throw new RuntimeException("Error opening file '" + dbFileName + "'", e);
+		}
+
+		blockCache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, DbVcfBinBlock> eldest) {
+				return size() > BLOCK_CACHE_SIZE;
+			}
+		};
+	}
+
+	@Override
+	public List<VariantVcfEntry> query(Variant variant) {
+		return queryWindow(variant, new WindowVariants(Collections.singletonList(variant), Collections.singletonList(0), matchRefAlt));
+	}
+
+	@Override
+	protected List<VariantVcfEntry> queryWindow(Marker window) {
+		return queryWindow(window, null);
+	}
+
+	/**
+	 * Query the window and create VcfEntries for records that can match any variant in 'windowVariants' (null means 'all records')
+	 */
+	@Override
+	protected List<VariantVcfEntry> queryWindow(Marker window, WindowVariants windowVariants) {
+		List<VariantVcfEntry> list = new LinkedList<>();
+
+		DbVcfMemChromo dbChr = chromos.get(window.getChromosomeName());
+		if (dbChr == null) return list;
+		Chromosome chr = genome.getOrCreateChromosome(window.getChromosomeName());
+
+		// Find blocks intersecting the window (blocks are sorted by position)
+		TIntArrayList blockIdxs = dbChr.query(window.getStart(), window.getEnd());
+		int blocks[] = blockIdxs.toArray();
+		Arrays.sort(blocks);
+
+		for (int blockIdx : blocks) {
+			DbVcfBinBlock block = getBlock(blockIdx);
+			Collection<InfoColumn> cols = block.getInfoColumns(infoFields);
+			for (int i = 0; i < block.size(); i++) {
+				if (!block.intersects(i, window.getStart(), window.getEnd())) continue;
+				if (windowVariants != null && !block.intersects(i, windowVariants)) continue; // Skip before creating the VcfEntry
+
+				// Add variants intersecting the query window
+				VcfEntry ve = block.vcfEntry(vcf, chr, cols, i);
+				for (VariantVcfEntry varVe : VariantVcfEntry.factory(ve))
+					if (varVe.intersects(window)) list.add(varVe);
+			}
+		}
+
+		return list;
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Variant;
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * A block of consecutive records from one chromosome in a binary database (see DbVcfBin)
+ *
+ * Records are stored in columns: Positions and intervals as int arrays,
+ * ID, REF and ALT as strings and INFO fields as typed columns
+ *
+ * @author pcingola
+ */
+public class DbVcfBinBlock {
+
+	String chromosome;
+	int size;
+	int pos[]; // VCF 'POS' field (one-based)
+	int start[], end[]; // Genomic interval (includes all variants)
+	String id[], ref[], alt[];
+	Map<String, InfoColumn> infoColumns;
+
+	/**
+	 * Read a block (see 'write()')
+	 */
+	public static DbVcfBinBlock read(DataInputStream in, String chromosome) throws IOException {
+		int size = in.readInt();
+		DbVcfBinBlock block = new DbVcfBinBlock(chromosome, size);
+		block.size = size;
+
+		for (int i = 0; i < size; i++)
+			block.pos[i] = in.readInt();
+		for (int i = 0; i < size; i++)
+			block.start[i] = in.readInt();
+		for (int i = 0; i < size; i++)
+			block.end[i] = in.readInt();
+		for (int i = 0; i < size; i++)
+			block.id[i] = InfoColumn.readString(in);
+		for (int i = 0; i < size; i++)
+			block.ref[i] = InfoColumn.readString(in);
+		for (int i = 0; i < size; i++)
+			block.alt[i] = InfoColumn.readString(in);
+
+		int numCols = in.readInt();
+		for (int i = 0; i < numCols; i++) {
+			String name = InfoColumn.readString(in);
+			block.infoColumns.put(name, InfoColumn.read(in, name));
+		}
+
+		return block;
+	}
+
+	public DbVcfBinBlock(String chromosome, int capacity) {
+		this.chromosome = chromosome;
+		pos = new int[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		id = new String[capacity];
+		ref = new String[capacity];
+		alt = new String[capacity];
+		infoColumns = new LinkedHashMap<>();
+		size = 0;
+	}
+
+	/**
+	 * Add a VCF entry
+	 */
+	public void add(VcfEntry ve) {
+		if (size >= pos.length) grow();
+
+		pos[size] = ve.getStart() + 1;
+		id[size] = ve.getId();
+		ref[size] = ve.getRef();
+		alt[size] = ve.getAltsStr();
+		InfoColumn.addInfo(infoColumns, size, ve.getInfoStr());
+
+		// Genomic interval: Make sure it includes all variants
+		int s = ve.getStart(), e = ve.getEnd();
+		for (Variant var : ve.variants()) {
+			s = Math.min(s, var.getStart());
+			e = Math.max(e, var.getEnd());
+		}
+		start[size] = s;
+		end[size] = e;
+
+		size++;
+	}
+
+	public String getChromosome() {
+		return chromosome;
+	}
+
+	/**
+	 * INFO columns in 'infoFields' (null means 'all columns'), columns
+	 * defining coordinates are always included (see VcfFileIteratorDb)
+	 */
+	public Collection<InfoColumn> getInfoColumns(Set<String> infoFields) {
+		if (infoFields == null) return infoColumns.values();
+
+		List<InfoColumn> cols = new ArrayList<>();
+		for (InfoColumn col : infoColumns.values())
+			if (infoFields.contains(col.getName()) || VcfFileIteratorDb.COORDINATE_INFO_FIELDS.contains(col.getName())) cols.add(col);
+		return cols;
+	}
+
+	/**
+	 * Maximum end coordinate
+	 */
+	public int getEnd() {
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < size; i++)
+			max = Math.max(max, end[i]);
+		return max;
+	}
+
+	/**
+	 * Minimum start coordinate
+	 */
+	public int getStart() {
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < size; i++)
+			min = Math.min(min, start[i]);
+		return min;
+	}
+
+	void grow() {
+		int newCapacity = Math.max(16, pos.length + (pos.length >> 1));
+		pos = Arrays.copyOf(pos, newCapacity);
+		start = Arrays.copyOf(start, newCapacity);
+		end = Arrays.copyOf(end, newCapacity);
+		id = Arrays.copyOf(id, newCapacity);
+		ref = Arrays.copyOf(ref, newCapacity);
+		alt = Arrays.copyOf(alt, newCapacity);
+	}
+
+	/**
+	 * Does record 'idx' intersect [qstart, qend]?
+	 */
+	public boolean intersects(int idx, int qstart, int qend) {
+		return start[idx] <= qend && qstart <= end[idx];
+	}
+
+	/**
+	 * Can record 'idx' match any variant in 'windowVariants'?
+	 * Only coordinates, REF and ALT columns are compared
+	 */
+	public boolean intersects(int idx, DbVcf.WindowVariants windowVariants) {
+		return windowVariants.intersects(start[idx], end[idx], ref[idx], alt[idx]);
+	}
+
+	public boolean isEmpty() {
+		return size <= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "Chromosome: " + chromosome + ", size: " + size + ", info columns: " + infoColumns.size();
+	}
+
+	/**
+	 * Create a VcfEntry from record 'idx', using only INFO columns 'cols' (see 'getInfoColumns()')
+	 */
+	public VcfEntry vcfEntry(VcfFileIterator vcf, Chromosome chr, Collection<InfoColumn> cols, int idx) {
+		return DbVcf.vcfEntry(vcf, chr, pos[idx], id[idx], ref[idx], alt[idx], cols, idx);
+	}
+
+	/**
+	 * Write block (columns)
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+
+		for (int i = 0; i < size; i++)
+			out.writeInt(pos[i]);
+		for (int i = 0; i < size; i++)
+			out.writeInt(start[i]);
+		for (int i = 0; i < size; i++)
+			out.writeInt(end[i]);
+		for (int i = 0; i < size; i++)
+			InfoColumn.writeString(out, id[i]);
+		for (int i = 0; i < size; i++)
+			InfoColumn.writeString(out, ref[i]);
+		for (int i = 0; i < size; i++)
+			InfoColumn.writeString(out, alt[i]);
+
+		out.writeInt(infoColumns.size());
+		for (InfoColumn col : infoColumns.values()) {
+			InfoColumn.writeString(out, col.getName());
+			col.write(out);
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package org.snpsift.annotate;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * Build a binary database (see DbVcfBin) from a VCF file
+ *
+ * Records are grouped into blocks of consecutive entries in the same
+ * chromosome. Each block is stored in columns and compressed.
+ *
+ * @author pcingola
+ */
+public class DbVcfBinBuilder {
+
+	public static final int DEFAULT_BLOCK_SIZE = 4 * 1024; // Maximum number of records per block
+	public static final int SHOW_EVERY = 100 * 1000;
+
+	boolean verbose;
+	boolean debug;
+	int blockSize = DEFAULT_BLOCK_SIZE;
+	long filePos; // Current output file position
+	String vcfFileName, dbFileName;
+	Collection<String> infoFields; // Only store these INFO fields (null means 'all fields')
+	DataOutputStream out;
+	List<String> blockChr;
+	List<Integer> blockStart, blockEnd, blockLen;
+	List<Long> blockFilePos;
+
+	public DbVcfBinBuilder(String vcfFileName, String dbFileName) {
+		this.vcfFileName = vcfFileName;
+		this.dbFileName = dbFileName;
+	}
+
+	/**
+	 * Build database
+	 */
+	public void build() {
+		if (verbose) Log.info("Building binary database '" + dbFileName + "' from VCF file '" + vcfFileName + "'");
+
+		blockChr = new ArrayList<>();
+		blockStart = new ArrayList<>();
+		blockEnd = new ArrayList<>();
+		blockLen = new ArrayList<>();
+		blockFilePos = new ArrayList<>();
+
+		VcfFileIteratorDb vcf = new VcfFileIteratorDb(vcfFileName);
+		vcf.setInfoFields(infoFields);
+		vcf.setParseGenotypes(false);
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dbFileName)));
+
+			// Write header
+			out.writeInt(DbVcfBin.MAGIC);
+			out.writeInt(DbVcfBin.FORMAT_VERSION);
+			byte header[] = vcf.readHeader().toString().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(header.length);
+			out.write(header);
+			filePos = 3 * Integer.BYTES + header.length;
+
+			// Write blocks
+			int count = 0;
+			DbVcfBinBlock block = null;
+			for (VcfEntry ve : vcf) {
+				// New chromosome or block is full?
+				if (block != null && (block.size() >= blockSize || !block.getChromosome().equals(ve.getChromosomeName()))) {
+					writeBlock(block);
+					block = null;
+				}
+
+				if (block == null) block = new DbVcfBinBlock(ve.getChromosomeName(), blockSize);
+				block.add(ve);
+
+				count++;
+				if (verbose) Gpr.showMark(count, SHOW_EVERY);
+			}
+			if (block != null && !block.isEmpty()) writeBlock(block);
+
+			// Write index and index position
+			long indexPos = filePos;
+			writeIndex();
+			out.writeLong(indexPos);
+
+			if (verbose) Log.info("Done. Records: " + count + ", blocks: " + blockFilePos.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing file '" + dbFileName + "'", e);
+		} finally {
+			vcf.close();
+			try {
+				if (out != null) out.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Only store these INFO fields (null means 'all fields')
+	 */
+	public void setInfoFields(Collection<String> infoFields) {
+		this.infoFields = infoFields;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Compress and write a block
+	 */
+	void writeBlock(DbVcfBinBlock block) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream blockOut = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+			block.write(blockOut);
+		}
+
+		blockChr.add(block.getChromosome());
+		blockStart.add(block.getStart());
+		blockEnd.add(block.getEnd());
+		blockFilePos.add(filePos);
+		blockLen.add(bytes.size());
+		if (debug) Log.debug("Writing block: " + block + ", file position: " + filePos + ", compressed size: " + bytes.size());
+
+		bytes.writeTo(out);
+		filePos += bytes.size();
+	}
+
+	/**
+	 * Write blocks index
+	 */
+	void writeIndex() throws IOException {
+		out.writeInt(blockFilePos.size());
+		for (int i = 0; i < blockFilePos.size(); i++) {
+			out.writeUTF(blockChr.get(i));
+			out.writeInt(blockStart.get(i));
+			out.writeInt(blockEnd.get(i));
+			out.writeLong(blockFilePos.get(i));
+			out.writeInt(blockLen.get(i));
+		}
+	}
+
+}
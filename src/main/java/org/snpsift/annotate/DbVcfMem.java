@@ -1,25 +1,33 @@
 package org.snpsift.annotate;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Genome;
 import org.snpeff.interval.Marker;
-import org.snpeff.interval.Markers;
 import org.snpeff.interval.Variant;
-import org.snpeff.interval.tree.IntervalTreeArray;
-import org.snpeff.interval.tree.Itree;
 import org.snpeff.util.Log;
 import org.snpeff.vcf.VariantVcfEntry;
 import org.snpeff.vcf.VcfEntry;
 
+import gnu.trove.list.array.TIntArrayList;
+
 /**
  * Loads a VCF file into memory.
  *
+ * Database records are stored in a compact, columnar format:
+ *   - Genomic intervals are stored in primitive arrays for each chromosome (see DbVcfMemChromo)
+ *   - REF and ALT are stored in an allele dictionary
+ *   - IDs are stored as plain strings (they are mostly unique, a dictionary would not save memory)
+ *   - INFO fields are stored in typed columns (see InfoColumn)
  *
- * WARNING: This is used only for testing and debugging purposes and should
- * never be used in production!
- *
+ * Matching records are converted to VcfEntries (directly from their columns) when queried.
  *
  * @author pcingola
  */
@@ -27,16 +35,81 @@ public class DbVcfMem extends DbVcf {
 
 	public static final int SHOW = 10000;
 	public static final int SHOW_LINES = 100 * SHOW;
-
-	Itree itree; // Use an interval tree as 'database'.
+	public static final int INITIAL_CAPACITY = 1024;
+
+	int size; // Number of records
+	int pos[]; // VCF 'POS' field (one-based) for each record
+	int ref[], alt[]; // REF and ALT codes (allele dictionary) for each record
+	StringDictionary alleles; // Alleles dictionary (REF and ALT)
+	String ids[]; // VCF 'ID' field (null if missing)
+	Map<String, InfoColumn> infoColumns; // INFO fields
+	Map<String, DbVcfMemChromo> chromos; // Genomic intervals by chromosome
+	VcfFileIterator vcf; // VcfEntries' file iterator
+	Genome genome; // Chromosomes for VcfEntries
 
 	public DbVcfMem(String dbFileName) {
 		super(dbFileName);
 	}
 
+	/**
+	 * Add a record
+	 */
+	void add(VcfEntry ve) {
+		if (size >= pos.length) grow();
+		int recIdx = size++;
+
+		pos[recIdx] = ve.getStart() + 1;
+		ref[recIdx] = alleles.add(ve.getRef());
+		alt[recIdx] = alleles.add(ve.getAltsStr());
+		if (!ve.getId().isEmpty()) ids[recIdx] = ve.getId();
+		InfoColumn.addInfo(infoColumns, recIdx, ve.getInfoStr());
+
+		// Genomic interval: Make sure it includes all variants
+		int start = ve.getStart(), end = ve.getEnd();
+		for (Variant var : ve.variants()) {
+			start = Math.min(start, var.getStart());
+			end = Math.max(end, var.getEnd());
+		}
+
+		String chr = ve.getChromosomeName();
+		DbVcfMemChromo dbChr = chromos.get(chr);
+		if (dbChr == null) {
+			dbChr = new DbVcfMemChromo(chr);
+			chromos.put(chr, dbChr);
+		}
+		dbChr.add(start, end, recIdx);
+	}
+
+	/**
+	 * Release memory only needed while loading (dictionary lookup maps, unused capacity)
+	 */
+	void compact() {
+		pos = Arrays.copyOf(pos, size);
+		ref = Arrays.copyOf(ref, size);
+		alt = Arrays.copyOf(alt, size);
+		ids = Arrays.copyOf(ids, size);
+		alleles.compact();
+		for (InfoColumn col : infoColumns.values())
+			col.compact();
+	}
+
 	@Override
 	public void close() {
-		// Nothing to do
+		pos = ref = alt = null;
+		alleles = null;
+		ids = null;
+		infoColumns = null;
+		chromos = null;
+		vcf = null;
+		genome = null;
+	}
+
+	void grow() {
+		int newCapacity = pos.length + (pos.length >> 1);
+		pos = Arrays.copyOf(pos, newCapacity);
+		ref = Arrays.copyOf(ref, newCapacity);
+		alt = Arrays.copyOf(alt, newCapacity);
+		ids = Arrays.copyOf(ids, newCapacity);
 	}
 
 	/**
@@ -44,37 +117,45 @@ public class DbVcfMem extends DbVcf {
 	 */
 	void loadDatabase() {
 		if (verbose) Log.info("Loading database: '" + dbFileName + "'");
-		VcfFileIterator dbFile = new VcfFileIterator(dbFileName);
+		VcfFileIterator dbFile = newVcfFileIterator(dbFileName);
 		dbFile.setDebug(debug);
 
-		int count = 0;
-		itree = new IntervalTreeArray();
+		size = 0;
+		pos = new int[INITIAL_CAPACITY];
+		ref = new int[INITIAL_CAPACITY];
+		alt = new int[INITIAL_CAPACITY];
+		alleles = new StringDictionary();
+		ids = new String[INITIAL_CAPACITY];
+		infoColumns = new LinkedHashMap<>();
+		chromos = new HashMap<>();
+
 		for (VcfEntry vcfDbEntry : dbFile) {
 			// Update header
 			if (vcfHeader == null) vcfHeader = dbFile.getVcfHeader();
 
-			// Make sure all variants from the VcfEntry are added to
-			// the interval tree (e.g. multi-allelic VcfEntries)
-			for (VariantVcfEntry varVe : VariantVcfEntry.factory(vcfDbEntry)) {
-				itree.add(varVe);
+			add(vcfDbEntry);
 
-				count++;
-				if (verbose) {
-					if (count % SHOW_LINES == 0) System.err.print("\n" + count + "\t.");
-					else if (count % SHOW == 0) System.err.print('.');
-				}
+			if (verbose) {
+				if (size % SHOW_LINES == 0) System.err.print("\n" + size + "\t.");
+				else if (size % SHOW == 0) System.err.print('.');
 			}
 		}
+		vcf = dbFile;
+		genome = new Genome("genome");
+		compact();
 
-		// Show time
+		// Show statistics
 		if (verbose) {
 			System.err.println("");
-			Log.info("Done. Added: " + itree.size());
+			Log.info("Done. Added: " + size + " records, alleles: " + alleles);
+			for (InfoColumn col : infoColumns.values())
+				Log.info("\t" + col);
 		}
 
-		// Build interval tree
-		if (verbose) Log.info("Building interval tree");
-		itree.build();
+		// Sort intervals
+		if (verbose) Log.info("Building interval index");
+		for (DbVcfMemChromo dbChr : chromos.values())
+			dbChr.build();
 		if (verbose) Log.info("Done");
 	}
 
@@ -88,13 +169,47 @@ public class DbVcfMem extends DbVcf {
 
 	@Override
 	public List<VariantVcfEntry> query(Variant variant) {
-		Markers results = itree.query(variant);
+		return queryWindow(variant);
+	}
+
+	@Override
+	protected List<VariantVcfEntry> queryWindow(Marker window) {
+		return queryWindow(window, null);
+	}
 
+	/**
+	 * Query the window and create VcfEntries for records that can intersect any variant in 'windowVariants' (null means 'all records')
+	 */
+	@Override
+	protected List<VariantVcfEntry> queryWindow(Marker window, WindowVariants windowVariants) {
 		List<VariantVcfEntry> list = new LinkedList<VariantVcfEntry>();
-		for (Marker m : results)
-			list.add((VariantVcfEntry) m);
+
+		DbVcfMemChromo dbChr = chromos.get(window.getChromosomeName());
+		if (dbChr == null) return list;
+
+		Chromosome chr = genome.getOrCreateChromosome(dbChr.getChromosome());
+		TIntArrayList recIdxs = dbChr.query(window.getStart(), window.getEnd(), windowVariants);
+		for (int i = 0; i < recIdxs.size(); i++) {
+			VcfEntry ve = vcfEntry(chr, recIdxs.get(i));
+
+			// Add variants intersecting the query window
+			for (VariantVcfEntry varVe : VariantVcfEntry.factory(ve))
+				if (varVe.intersects(window)) list.add(varVe);
+		}
 
 		return list;
 	}
 
+	/**
+	 * Create a VcfEntry from record 'recIdx'
+	 */
+	VcfEntry vcfEntry(Chromosome chr, int recIdx) {
+		return vcfEntry(vcf, chr, pos[recIdx] //
+				, ids[recIdx] //
+				, alleles.get(ref[recIdx]) //
+				, alleles.get(alt[recIdx]) //
+				, infoColumns.values(), recIdx //
+		);
+	}
+
 }
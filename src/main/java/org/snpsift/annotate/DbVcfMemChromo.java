@@ -0,0 +1,196 @@
+package org.snpsift.annotate;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Genomic intervals of all records in one chromosome, stored in primitive arrays.
+ *
+ * After 'build()' intervals are sorted by start position and indexed as an
+ * implicit interval tree: The sorted array is seen as a binary tree (leaves
+ * are even indexes, a node at level 'k' has its lowest 'k' bits set) and each
+ * node stores the maximum end of its sub-tree (see 'maxEnd'). Queries only
+ * descend into sub-trees that can intersect the query, so a few long
+ * intervals (e.g. structural variants) do not slow down other queries.
+ *
+ * Reference: H. Li, 'cgranges' (https://github.com/lh3/cgranges)
+ *
+ * @author pcingola
+ */
+public class DbVcfMemChromo {
+
+	public static final int INITIAL_CAPACITY = 1024;
+	public static final int SCAN_LEVEL = 3; // Sub-trees up to this level are scanned linearly
+
+	String chromosome;
+	int start[]; // Interval start
+	int end[]; // Interval end
+	int recordIdx[]; // Record index (see DbVcfMem)
+	int maxEnd[]; // Maximum end in each node's sub-tree (implicit interval tree)
+	int maxLevel; // Tree's root level
+	int size;
+
+	public DbVcfMemChromo(String chromosome) {
+		this.chromosome = chromosome;
+		start = new int[INITIAL_CAPACITY];
+		end = new int[INITIAL_CAPACITY];
+		recordIdx = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Add interval [start, end] for record 'recIdx'
+	 */
+	public void add(int start, int end, int recIdx) {
+		if (size >= this.start.length) grow();
+
+		this.start[size] = start;
+		this.end[size] = end;
+		recordIdx[size] = recIdx;
+		size++;
+	}
+
+	/**
+	 * Sort intervals by start position, trim arrays and build the interval tree
+	 */
+	public void build() {
+		// Already sorted? This is the most common case (VCF files are usually sorted)
+		boolean sorted = true;
+		for (int i = 1; i < size && sorted; i++)
+			sorted = start[i - 1] <= start[i];
+
+		if (!sorted) {
+			// Sort indexes by start position
+			Integer idxs[] = new Integer[size];
+			for (int i = 0; i < size; i++)
+				idxs[i] = i;
+			Arrays.sort(idxs, (i, j) -> Integer.compare(start[i], start[j]));
+
+			int newStart[] = new int[size], newEnd[] = new int[size], newRecordIdx[] = new int[size];
+			for (int i = 0; i < size; i++) {
+				newStart[i] = start[idxs[i]];
+				newEnd[i] = end[idxs[i]];
+				newRecordIdx[i] = recordIdx[idxs[i]];
+			}
+			start = newStart;
+			end = newEnd;
+			recordIdx = newRecordIdx;
+		} else {
+			start = Arrays.copyOf(start, size);
+			end = Arrays.copyOf(end, size);
+			recordIdx = Arrays.copyOf(recordIdx, size);
+		}
+
+		index();
+	}
+
+	public String getChromosome() {
+		return chromosome;
+	}
+
+	void grow() {
+		int newCapacity = start.length + (start.length >> 1);
+		start = Arrays.copyOf(start, newCapacity);
+		end = Arrays.copyOf(end, newCapacity);
+		recordIdx = Arrays.copyOf(recordIdx, newCapacity);
+	}
+
+	/**
+	 * Calculate the maximum end of each node's sub-tree.
+	 * Nodes missing from an incomplete tree use the maximum end of the last node ('last')
+	 */
+	void index() {
+		maxEnd = new int[size];
+		maxLevel = -1;
+		if (size == 0) return;
+
+		// Leaves
+		int lastIdx = 0, last = 0;
+		for (int i = 0; i < size; i += 2) {
+			lastIdx = i;
+			last = maxEnd[i] = end[i];
+		}
+
+		// Internal nodes, one level at a time
+		int k;
+		for (k = 1; (1L << k) <= size; k++) {
+			int x = 1 << (k - 1);
+			for (int i = (x << 1) - 1; i < size; i += x << 2) {
+				int endLeft = maxEnd[i - x];
+				int endRight = (i + x < size ? maxEnd[i + x] : last);
+				maxEnd[i] = Math.max(end[i], Math.max(endLeft, endRight));
+			}
+
+			lastIdx = (((lastIdx >> k) & 1) != 0 ? lastIdx - x : lastIdx + x);
+			if (lastIdx < size && maxEnd[lastIdx] > last) last = maxEnd[lastIdx];
+		}
+		maxLevel = k - 1;
+	}
+
+	/**
+	 * Find the records intersecting [qstart, qend].
+	 * Results are sorted by interval start
+	 */
+	public TIntArrayList query(int qstart, int qend) {
+		return query(qstart, qend, null);
+	}
+
+	/**
+	 * Find the records intersecting [qstart, qend] that can also intersect
+	 * a variant in 'windowVariants' (null means 'any record').
+	 * Results are sorted by interval start
+	 */
+	public TIntArrayList query(int qstart, int qend, DbVcf.WindowVariants windowVariants) {
+		TIntArrayList results = new TIntArrayList();
+		if (size == 0) return results;
+
+		// Nodes to visit: Index, level and whether the left sub-tree has already been visited
+		int stackNode[] = new int[64], stackLevel[] = new int[64];
+		boolean stackLeftDone[] = new boolean[64];
+		int top = 0;
+		stackNode[top] = (1 << maxLevel) - 1; // Root
+		stackLevel[top] = maxLevel;
+		stackLeftDone[top++] = false;
+
+		while (top > 0) {
+			top--;
+			int x = stackNode[top], k = stackLevel[top];
+
+			if (k <= SCAN_LEVEL) {
+				// Small sub-tree: Linear scan
+				int i0 = (x >> k) << k;
+				int i1 = Math.min(i0 + (1 << (k + 1)) - 1, size);
+				for (int i = i0; i < i1 && start[i] <= qend; i++)
+					if (end[i] >= qstart && (windowVariants == null || windowVariants.intersects(start[i], end[i]))) results.add(recordIdx[i]);
+			} else if (!stackLeftDone[top]) {
+				// Visit left sub-tree first, then come back to this node
+				int left = x - (1 << (k - 1)); // Note: May be out of range in incomplete trees
+				stackLeftDone[top++] = true;
+				if (left >= size || maxEnd[left] >= qstart) {
+					stackNode[top] = left;
+					stackLevel[top] = k - 1;
+					stackLeftDone[top++] = false;
+				}
+			} else if (x < size && start[x] <= qend) {
+				// This node and its right sub-tree
+				if (end[x] >= qstart && (windowVariants == null || windowVariants.intersects(start[x], end[x]))) results.add(recordIdx[x]);
+				stackNode[top] = x + (1 << (k - 1));
+				stackLevel[top] = k - 1;
+				stackLeftDone[top++] = false;
+			}
+		}
+
+		return results;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "Chromosome: " + chromosome + ", size: " + size + ", tree levels: " + (maxLevel + 1);
+	}
+
+}
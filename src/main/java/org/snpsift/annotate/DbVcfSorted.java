@@ -26,9 +26,11 @@ public class DbVcfSorted extends DbVcf {
 
 	VcfIndex vcfIndex;
 	int maxBlockSize = VcfIndexTree.DEFAULT_MAX_BLOCK_SIZE;
+	int cacheSize = VcfEntryCache.DEFAULT_MAX_SIZE;
 
 	public DbVcfSorted(String dbFileName) {
 		super(dbFileName);
+		batchMaxGap = 0; // Index nodes are read (and parsed) as a whole, so only overlapping variants share a window
 	}
 
 	@Override
@@ -50,6 +52,9 @@ public class DbVcfSorted extends DbVcf {
 		vcfIndex.setVerbose(verbose);
 		vcfIndex.setDebug(debug);
 		if (maxBlockSize > 0) vcfIndex.setMaxBlockSize(maxBlockSize);
+		if (cacheSize >= 0) vcfIndex.setCacheSize(cacheSize);
+		vcfIndex.setInfoFields(infoFields);
+		vcfIndex.setParseGenotypes(parseGenotypes);
 		vcfIndex.open();
 		vcfHeader = vcfIndex.getVcf().getVcfHeader();
 		vcfIndex.index();
@@ -57,7 +62,12 @@ public class DbVcfSorted extends DbVcf {
 
 	@Override
 	public List<VariantVcfEntry> query(Variant variant) {
-		Markers results = vcfIndex.query(variant);
+		return queryWindow(variant);
+	}
+
+	@Override
+	protected List<VariantVcfEntry> queryWindow(Marker window) {
+		Markers results = vcfIndex.query(window);
 
 		List<VariantVcfEntry> list = new LinkedList<VariantVcfEntry>();
 		for (Marker m : results) {
@@ -68,6 +78,10 @@ public class DbVcfSorted extends DbVcf {
 		return list;
 	}
 
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
 	public void setMaxBlockSize(int maxBlockSize) {
 		this.maxBlockSize = maxBlockSize;
 	}
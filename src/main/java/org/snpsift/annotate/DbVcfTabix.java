@@ -3,6 +3,7 @@ package org.snpsift.annotate;
 import htsjdk.tribble.readers.TabixReader;
 import org.snpeff.fileIterator.VcfFileIterator;
 import org.snpeff.interval.ChromosomeSimpleName;
+import org.snpeff.interval.Marker;
 import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
 import org.snpeff.vcf.VariantVcfEntry;
@@ -47,8 +48,8 @@ public class DbVcfTabix extends DbVcf {
     /**
      * Get chromosome name with same prefix as the one in Tabix index (i.e. prepend `chrPrepend` if necesary)
      */
-    private String chrName(Variant variant) {
-        var chr = variant.getChromosomeName();
+    private String chrName(Marker marker) {
+        var chr = marker.getChromosomeName();
         if (chrPrepend.isEmpty()) return chr; // No need to prepend prefix
         if (chr.startsWith(chrPrepend)) return chr; // Already starts with prefix
         return chrPrepend + chr; // Add prefix
@@ -140,7 +141,7 @@ public class DbVcfTabix extends DbVcf {
     @Override
     public void open() {
         // Open VCF file and read header
-        vcf = new VcfFileIterator(dbFileName);
+        vcf = newVcfFileIterator(dbFileName);
         vcfHeader = vcf.readHeader();
 
         // Open tabix index
@@ -149,12 +150,58 @@ public class DbVcfTabix extends DbVcf {
 
     @Override
     public List<VariantVcfEntry> query(Variant variant) {
+        return queryWindow(variant);
+    }
+
+    /**
+     * Can a database line intersect any variant in the window?
+     * Only POS, REF and the INFO field 'END' are looked at (the line is not parsed)
+     */
+    boolean intersects(WindowVariants windowVariants, String line) {
+        // Find POS, REF and INFO columns
+        int tabs[] = new int[8];
+        for (int i = 0, idx = -1; i < tabs.length; i++) {
+            idx = line.indexOf('\t', idx + 1);
+            if (idx < 0) {
+                if (i < 7) return true; // Cannot find columns: Let the parser handle this line
+                idx = line.length();
+            }
+            tabs[i] = idx;
+        }
+
+        int start = Gpr.parseIntSafe(line.substring(tabs[0] + 1, tabs[1])) - 1;
+        int end = start + (tabs[3] - tabs[2] - 1) - 1; // Reference length
+
+        // Is there an 'END' field in INFO?
+        int infoStart = tabs[6] + 1, infoEnd = tabs[7];
+        for (int idx = line.indexOf("END=", infoStart); idx >= 0 && idx < infoEnd; idx = line.indexOf("END=", idx + 1)) {
+            if (idx > infoStart && line.charAt(idx - 1) != ';') continue; // Other field ending in 'END' (e.g. 'SVEND')
+            int valEnd = idx + 4;
+            while (valEnd < infoEnd && line.charAt(valEnd) != ';')
+                valEnd++;
+            end = Math.max(end, Gpr.parseIntSafe(line.substring(idx + 4, valEnd)) - 1);
+            break;
+        }
+
+        return windowVariants.intersects(start, end);
+    }
+
+    @Override
+    protected List<VariantVcfEntry> queryWindow(Marker window) {
+        return queryWindow(window, null);
+    }
+
+    /**
+     * Query the window and parse the lines that can intersect any variant in 'windowVariants' (null means 'all lines')
+     */
+    @Override
+    protected List<VariantVcfEntry> queryWindow(Marker window, WindowVariants windowVariants) {
         List<VariantVcfEntry> results = new LinkedList<>();
 
         // Query and parse results
-        var chr = chrName(variant);
-        var start = variant.getStart() - 1; // Why '-1'? We want to capture deletions that happen right before the start base
-        var end = variant.getEnd() + 1; // Why '+1'? Tabix query interval does not include the 'end' base
+        var chr = chrName(window);
+        var start = window.getStart() - 1; // Why '-1'? We want to capture deletions that happen right before the start base
+        var end = window.getEnd() + 1; // Why '+1'? Tabix query interval does not include the 'end' base
         TabixReader.Iterator ti = tabixReader.query(chr, start, end);
 
         // Any results?
@@ -163,6 +210,7 @@ public class DbVcfTabix extends DbVcf {
                 String line;
                 while ((line = ti.next()) != null) {
                     line = Gpr.removeBackslashR(line);
+                    if (windowVariants != null && !intersects(windowVariants, line)) continue; // Skip before parsing
                     VcfEntry ve = vcf.parseVcfLine(line);
                     results.addAll(VariantVcfEntry.factory(ve));
                 }
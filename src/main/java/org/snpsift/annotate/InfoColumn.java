@@ -0,0 +1,269 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+
+/**
+ * A column of INFO field values stored in memory.
+ * Values are indexed by record number.
+ *
+ * Typed columns (e.g. integers) only accept values whose string representation
+ * can be re-created. When a value is not accepted, the column is promoted to a
+ * type that accepts it, e.g. integers to floats, or any type to a 'string'
+ * column (see 'promote()')
+ *
+ * Note: A 'null' value means that the field is a flag (i.e. present without a value)
+ *
+ * Columns can be serialized (see 'write()' and 'read()'). Only values for
+ * records where the field is present are written.
+ *
+ * @author pcingola
+ */
+public abstract class InfoColumn {
+
+	public static final int INITIAL_CAPACITY = 1024;
+
+	public static final byte TYPE_FLAG = 0;
+	public static final byte TYPE_INT = 1;
+	public static final byte TYPE_FLOAT = 2;
+	public static final byte TYPE_STRING = 3;
+
+	protected String name;
+	protected BitSet present; // Is the field present in record 'idx'?
+
+	/**
+	 * Create a column for the type of 'value'
+	 */
+	public static InfoColumn factory(String name, String value) {
+		if (value == null) return new InfoColumnFlag(name);
+		if (InfoColumnInt.accepts(value)) return new InfoColumnInt(name);
+		if (InfoColumnFloat.accepts(value)) return new InfoColumnFloat(name);
+		return new InfoColumnString(name);
+	}
+
+	/**
+	 * Add all INFO fields from 'infoStr' to record 'idx'.
+	 * Columns are created (or promoted to other types) as needed
+	 */
+	public static void addInfo(Map<String, InfoColumn> columns, int idx, String infoStr) {
+		if (infoStr == null || infoStr.isEmpty() || infoStr.equals(VcfFileIterator.MISSING)) return;
+
+		for (String info : infoStr.split(";")) {
+			if (info.isEmpty()) continue;
+
+			// Parse 'key=value' or 'key' (flag)
+			int eq = info.indexOf('=');
+			String key = (eq >= 0 ? info.substring(0, eq) : info);
+			String value = (eq >= 0 ? info.substring(eq + 1) : null);
+
+			// Add to column, change column type if needed
+			InfoColumn col = columns.get(key);
+			if (col == null) {
+				col = factory(key, value);
+				columns.put(key, col);
+			}
+
+			if (!col.add(idx, value)) {
+				col = col.promote(value);
+				col.add(idx, value);
+				columns.put(key, col);
+			}
+		}
+	}
+
+	/**
+	 * Create a VCF INFO string for record 'idx' using all columns
+	 */
+	public static String infoStr(Collection<InfoColumn> columns, int idx) {
+		List<String> infos = new ArrayList<>();
+		for (InfoColumn col : columns) {
+			if (!col.has(idx)) continue;
+			String value = col.get(idx);
+			infos.add(value == null ? col.getName() : col.getName() + "=" + value);
+		}
+		return infos.isEmpty() ? VcfFileIterator.MISSING : String.join(";", infos);
+	}
+
+	/**
+	 * Read a column (see 'write()')
+	 */
+	public static InfoColumn read(DataInputStream in, String name) throws IOException {
+		InfoColumn col;
+		byte type = in.readByte();
+		switch (type) {
+		case TYPE_FLAG:
+			col = new InfoColumnFlag(name);
+			break;
+
+		case TYPE_INT:
+			col = new InfoColumnInt(name);
+			break;
+
+		case TYPE_FLOAT:
+			col = new InfoColumnFloat(name);
+			break;
+
+		case TYPE_STRING:
+			col = new InfoColumnString(name);
+			break;
+
+		default:
+			throw new RuntimeException("Unknown INFO column type " + type + " for field '" + name + "'");
+		}
+
+		// Read presence bitmap and values
+		byte bits[] = new byte[in.readInt()];
+		in.readFully(bits);
+		col.present = BitSet.valueOf(bits);
+		for (int idx = col.present.nextSetBit(0); idx >= 0; idx = col.present.nextSetBit(idx + 1))
+			col.readValue(in, idx);
+		col.compact();
+
+		return col;
+	}
+
+	/**
+	 * Read a string written by 'writeString()'
+	 */
+	public static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) return null;
+		byte bytes[] = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a string (no length limit, unlike 'writeUTF')
+	 */
+	public static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte bytes[] = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public InfoColumn(String name) {
+		this.name = name;
+		present = new BitSet();
+	}
+
+	/**
+	 * Add a value for record 'idx'
+	 * @return false if the value cannot be stored in this column
+	 */
+	public boolean add(int idx, String value) {
+		if (!set(idx, value)) return false;
+		present.set(idx);
+		return true;
+	}
+
+	/**
+	 * Release unused capacity once all values are added
+	 */
+	public void compact() {
+		// Nothing to do by default
+	}
+
+	/**
+	 * Copy all values to column 'col'
+	 * @return Column 'col'
+	 */
+	protected InfoColumn copyTo(InfoColumn col) {
+		for (int idx = present.nextSetBit(0); idx >= 0; idx = present.nextSetBit(idx + 1))
+			if (!col.add(idx, get(idx))) throw new RuntimeException("Cannot copy value '" + get(idx) + "' from column " + this + " to column " + col);
+		return col;
+	}
+
+	/**
+	 * Value for record 'idx' (null for flags)
+	 * Note: Use 'has(idx)' to check whether the field is present
+	 */
+	public abstract String get(int idx);
+
+	public String getName() {
+		return name;
+	}
+
+	public abstract byte getType();
+
+	/**
+	 * New capacity to fit index 'idx'
+	 */
+	protected int growCapacity(int capacity, int idx) {
+		int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+		while (newCapacity <= idx)
+			newCapacity += (newCapacity >> 1);
+		return newCapacity;
+	}
+
+	/**
+	 * Is the field present in record 'idx'
+	 */
+	public boolean has(int idx) {
+		return present.get(idx);
+	}
+
+	/**
+	 * Convert to a column that accepts 'value' (and all current values).
+	 * By default, convert to a string column
+	 */
+	public InfoColumn promote(String value) {
+		return toInfoColumnString();
+	}
+
+	/**
+	 * Read value for record 'idx'
+	 */
+	protected abstract void readValue(DataInputStream in, int idx) throws IOException;
+
+	/**
+	 * Set value in record 'idx'
+	 * @return false if the value cannot be stored in this column
+	 */
+	protected abstract boolean set(int idx, String value);
+
+	/**
+	 * Convert to a string column (accepts any value)
+	 */
+	public InfoColumnString toInfoColumnString() {
+		return (InfoColumnString) copyTo(new InfoColumnString(name));
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " '" + name + "', records: " + present.cardinality();
+	}
+
+	/**
+	 * Write column: Type, presence bitmap and values
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeByte(getType());
+
+		byte bits[] = present.toByteArray();
+		out.writeInt(bits.length);
+		out.write(bits);
+
+		for (int idx = present.nextSetBit(0); idx >= 0; idx = present.nextSetBit(idx + 1))
+			writeValue(out, idx);
+	}
+
+	/**
+	 * Write value for record 'idx'
+	 */
+	protected abstract void writeValue(DataOutputStream out, int idx) throws IOException;
+
+}
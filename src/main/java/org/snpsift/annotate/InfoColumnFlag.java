@@ -0,0 +1,42 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+/**
+ * An INFO column for flags (only presence is stored)
+ *
+ * @author pcingola
+ */
+public class InfoColumnFlag extends InfoColumn {
+
+	public InfoColumnFlag(String name) {
+		super(name);
+	}
+
+	@Override
+	public String get(int idx) {
+		return null;
+	}
+
+	@Override
+	public byte getType() {
+		return TYPE_FLAG;
+	}
+
+	@Override
+	protected void readValue(DataInputStream in, int idx) {
+		// Nothing to read
+	}
+
+	@Override
+	protected boolean set(int idx, String value) {
+		return value == null;
+	}
+
+	@Override
+	protected void writeValue(DataOutputStream out, int idx) {
+		// Nothing to write
+	}
+
+}
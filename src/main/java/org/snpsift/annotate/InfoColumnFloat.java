@@ -0,0 +1,184 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An INFO column of floating point values
+ *
+ * Each value is stored as a float and a 'format' (number of decimals, exponent
+ * notation, etc.), so that its original string representation can be re-created
+ * (e.g. '0.25', '0.10', '1.23e-05', '1E-4'). Values whose representation cannot
+ * be re-created from a float (e.g. too many significant digits) keep their
+ * original text.
+ *
+ * @author pcingola
+ */
+public class InfoColumnFloat extends InfoColumn {
+
+	public static final int MAX_LEN = 32; // Maximum length of a value
+
+	// Formats: Float.toString(), original text or decimals (bits 0-4), exponent notation flags and exponent digits (bits 8-9)
+	public static final short FORMAT_SHORTEST = -1;
+	public static final short FORMAT_TEXT = -2;
+	static final int DECIMALS_MASK = 0x1f;
+	static final int EXPONENT = 1 << 5;
+	static final int EXPONENT_UPPER = 1 << 6; // 'E' instead of 'e'
+	static final int EXPONENT_PLUS = 1 << 7; // '+' sign in positive exponents
+	static final int EXPONENT_DIGITS_SHIFT = 8; // Minimum number of exponent digits (1 to 3)
+
+	float values[];
+	short formats[];
+	Map<Integer, String> texts; // Original text of values having FORMAT_TEXT (null if there are none)
+
+	/**
+	 * Can 'value' be stored as a float? (decimal or exponent notation, no 'NaN', 'Inf', etc.)
+	 */
+	public static boolean accepts(String value) {
+		if (value == null || value.isEmpty() || value.length() > MAX_LEN) return false;
+
+		boolean digits = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (Character.isDigit(c)) digits = true;
+			else if (c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') return false;
+		}
+		if (!digits) return false;
+
+		try {
+			return Float.isFinite(Float.parseFloat(value));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Format that re-creates 'value' from its float representation 'f', FORMAT_TEXT if there is none
+	 */
+	static short format(String value, float f) {
+		if (Float.toString(f).equals(value)) return FORMAT_SHORTEST;
+
+		int exp = Math.max(value.indexOf('e'), value.indexOf('E'));
+		String mantissa = (exp < 0 ? value : value.substring(0, exp));
+		int dot = mantissa.indexOf('.');
+		int decimals = (dot < 0 ? 0 : mantissa.length() - dot - 1);
+		if (decimals > DECIMALS_MASK) return FORMAT_TEXT;
+
+		int format = decimals;
+		if (exp >= 0) {
+			format |= EXPONENT;
+			if (value.charAt(exp) == 'E') format |= EXPONENT_UPPER;
+
+			int expStart = exp + 1;
+			if (expStart < value.length() && value.charAt(expStart) == '+') {
+				format |= EXPONENT_PLUS;
+				expStart++;
+			} else if (expStart < value.length() && value.charAt(expStart) == '-') expStart++;
+
+			int expDigits = value.length() - expStart;
+			if (expDigits < 1 || expDigits > 3) return FORMAT_TEXT;
+			format |= expDigits << EXPONENT_DIGITS_SHIFT;
+		}
+
+		return toString(f, (short) format).equals(value) ? (short) format : FORMAT_TEXT;
+	}
+
+	/**
+	 * String representation of 'f' using 'format'
+	 */
+	static String toString(float f, short format) {
+		if (format == FORMAT_SHORTEST) return Float.toString(f);
+
+		int decimals = format & DECIMALS_MASK;
+		BigDecimal num = new BigDecimal(Float.toString(f));
+		if ((format & EXPONENT) == 0) return num.setScale(decimals, RoundingMode.HALF_EVEN).toPlainString();
+
+		// Exponent notation: Mantissa has one digit before the decimal point
+		int exp = 0;
+		if (num.signum() != 0) {
+			num = num.round(new MathContext(decimals + 1, RoundingMode.HALF_EVEN));
+			exp = num.precision() - num.scale() - 1;
+			num = num.movePointLeft(exp);
+		}
+
+		StringBuilder sb = new StringBuilder(num.setScale(decimals, RoundingMode.HALF_EVEN).toPlainString());
+		sb.append((format & EXPONENT_UPPER) != 0 ? 'E' : 'e');
+		if (exp < 0) sb.append('-');
+		else if ((format & EXPONENT_PLUS) != 0) sb.append('+');
+
+		String expStr = Integer.toString(Math.abs(exp));
+		for (int i = expStr.length(); i < (format >>> EXPONENT_DIGITS_SHIFT); i++)
+			sb.append('0');
+		return sb.append(expStr).toString();
+	}
+
+	public InfoColumnFloat(String name) {
+		super(name);
+		values = new float[INITIAL_CAPACITY];
+		formats = new short[INITIAL_CAPACITY];
+	}
+
+	@Override
+	public void compact() {
+		values = Arrays.copyOf(values, present.length());
+		formats = Arrays.copyOf(formats, present.length());
+	}
+
+	@Override
+	public String get(int idx) {
+		if (formats[idx] == FORMAT_TEXT) return texts.get(idx);
+		return toString(values[idx], formats[idx]);
+	}
+
+	@Override
+	public byte getType() {
+		return TYPE_FLOAT;
+	}
+
+	@Override
+	protected void readValue(DataInputStream in, int idx) throws IOException {
+		short format = in.readShort();
+		if (format == FORMAT_TEXT) {
+			String value = readString(in);
+			setFloat(idx, Float.parseFloat(value), format, value);
+		} else setFloat(idx, in.readFloat(), format, null);
+	}
+
+	@Override
+	protected boolean set(int idx, String value) {
+		if (!accepts(value)) return false;
+		float f = Float.parseFloat(value);
+		short format = format(value, f);
+		setFloat(idx, f, format, format == FORMAT_TEXT ? value : null);
+		return true;
+	}
+
+	void setFloat(int idx, float value, short format, String text) {
+		if (idx >= values.length) {
+			values = Arrays.copyOf(values, growCapacity(values.length, idx));
+			formats = Arrays.copyOf(formats, values.length);
+		}
+		values[idx] = value;
+		formats[idx] = format;
+
+		if (text != null) {
+			if (texts == null) texts = new HashMap<>();
+			texts.put(idx, text);
+		} else if (texts != null) texts.remove(idx);
+	}
+
+	@Override
+	protected void writeValue(DataOutputStream out, int idx) throws IOException {
+		out.writeShort(formats[idx]);
+		if (formats[idx] == FORMAT_TEXT) writeString(out, texts.get(idx));
+		else out.writeFloat(values[idx]);
+	}
+
+}
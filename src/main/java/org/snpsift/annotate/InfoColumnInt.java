@@ -0,0 +1,86 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An INFO column of integer values
+ *
+ * @author pcingola
+ */
+public class InfoColumnInt extends InfoColumn {
+
+	int values[];
+
+	/**
+	 * Can 'value' be stored as an int without changing its string representation?
+	 */
+	public static boolean accepts(String value) {
+		if (value == null || value.isEmpty() || value.length() > 10) return false;
+
+		// Only digits and an optional minus sign, no leading zeros
+		int start = (value.charAt(0) == '-' ? 1 : 0);
+		if (start >= value.length()) return false;
+		if (value.charAt(start) == '0' && (value.length() > start + 1 || start > 0)) return false;
+		for (int i = start; i < value.length(); i++)
+			if (!Character.isDigit(value.charAt(i))) return false;
+
+		// Check range
+		long num = Long.parseLong(value);
+		return Integer.MIN_VALUE <= num && num <= Integer.MAX_VALUE;
+	}
+
+	public InfoColumnInt(String name) {
+		super(name);
+		values = new int[INITIAL_CAPACITY];
+	}
+
+	@Override
+	public void compact() {
+		values = Arrays.copyOf(values, present.length());
+	}
+
+	@Override
+	public String get(int idx) {
+		return Integer.toString(values[idx]);
+	}
+
+	@Override
+	public byte getType() {
+		return TYPE_INT;
+	}
+
+	/**
+	 * Integers are promoted to floats if 'value' is a float
+	 */
+	@Override
+	public InfoColumn promote(String value) {
+		if (InfoColumnFloat.accepts(value)) return copyTo(new InfoColumnFloat(name));
+		return super.promote(value);
+	}
+
+	@Override
+	protected void readValue(DataInputStream in, int idx) throws IOException {
+		setInt(idx, in.readInt());
+	}
+
+	@Override
+	protected boolean set(int idx, String value) {
+		if (!accepts(value)) return false;
+		setInt(idx, Integer.parseInt(value));
+		return true;
+	}
+
+	void setInt(int idx, int value) {
+		if (idx >= values.length) values = Arrays.copyOf(values, growCapacity(values.length, idx));
+		values[idx] = value;
+	}
+
+	@Override
+	protected void writeValue(DataOutputStream out, int idx) throws IOException {
+		out.writeInt(values[idx]);
+	}
+
+}
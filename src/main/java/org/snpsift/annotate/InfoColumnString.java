@@ -0,0 +1,76 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An INFO column of dictionary encoded strings.
+ * Accepts any value (including flags)
+ *
+ * @author pcingola
+ */
+public class InfoColumnString extends InfoColumn {
+
+	StringDictionary dictionary;
+	int codes[];
+
+	public InfoColumnString(String name) {
+		this(name, new StringDictionary());
+	}
+
+	public InfoColumnString(String name, StringDictionary dictionary) {
+		super(name);
+		this.dictionary = dictionary;
+		codes = new int[INITIAL_CAPACITY];
+	}
+
+	@Override
+	public void compact() {
+		codes = Arrays.copyOf(codes, present.length());
+		dictionary.compact();
+	}
+
+	@Override
+	public String get(int idx) {
+		return dictionary.get(codes[idx]);
+	}
+
+	@Override
+	public byte getType() {
+		return TYPE_STRING;
+	}
+
+	@Override
+	protected void readValue(DataInputStream in, int idx) throws IOException {
+		setCode(idx, dictionary.add(readString(in)));
+	}
+
+	@Override
+	protected boolean set(int idx, String value) {
+		setCode(idx, dictionary.add(value));
+		return true;
+	}
+
+	void setCode(int idx, int code) {
+		if (idx >= codes.length) codes = Arrays.copyOf(codes, growCapacity(codes.length, idx));
+		codes[idx] = code;
+	}
+
+	@Override
+	public InfoColumnString toInfoColumnString() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + ", " + dictionary;
+	}
+
+	@Override
+	protected void writeValue(DataOutputStream out, int idx) throws IOException {
+		writeString(out, get(idx));
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.snpsift.annotate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary of strings: Each distinct string is stored only once and
+ * is referenced by an integer code
+ *
+ * Once all strings are added, 'compact()' releases the (string to code)
+ * lookup map, which is only needed to add strings
+ *
+ * @author pcingola
+ */
+public class StringDictionary {
+
+	public static final int MISSING = -1; // Code for 'null' strings
+
+	Map<String, Integer> codeByStr; // Lookup map, null after 'compact()'
+	ArrayList<String> strs;
+
+	public StringDictionary() {
+		codeByStr = new HashMap<>();
+		strs = new ArrayList<>();
+	}
+
+	/**
+	 * Add a string (if not already in the dictionary) and return its code
+	 */
+	public int add(String str) {
+		if (str == null) return MISSING;
+		if (codeByStr == null) rebuildCodes();
+
+		Integer code = codeByStr.get(str);
+		if (code != null) return code;
+
+		code = strs.size();
+		str = new String(str); // Make sure we don't keep a reference to a larger string (e.g. a substring of a VCF line)
+		strs.add(str);
+		codeByStr.put(str, code);
+		return code;
+	}
+
+	/**
+	 * Release the lookup map and unused capacity.
+	 * Strings can still be added afterwards (the lookup map is re-created)
+	 */
+	public void compact() {
+		codeByStr = null;
+		strs.trimToSize();
+	}
+
+	/**
+	 * Get string by code
+	 */
+	public String get(int code) {
+		if (code < 0) return null;
+		return strs.get(code);
+	}
+
+	void rebuildCodes() {
+		codeByStr = new HashMap<>();
+		for (int code = 0; code < strs.size(); code++)
+			codeByStr.put(strs.get(code), code);
+	}
+
+	public int size() {
+		return strs.size();
+	}
+
+	@Override
+	public String toString() {
+		return "Dictionary size: " + size();
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.snpsift.annotate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * A size bounded (LRU) cache of parsed VCF entries, keyed by file position.
+ * Each cached entry also stores the file position of the next entry, so
+ * that consecutive entries in a file region can be retrieved without
+ * reading the file.
+ *
+ * Note: This class is not thread safe (each VcfIndex has its own cache)
+ *
+ * @author pcingola
+ */
+public class VcfEntryCache {
+
+	public static final int DEFAULT_MAX_SIZE = 10 * 1000;
+
+	/**
+	 * A cached VCF entry and the file position of the next entry
+	 */
+	public static class CachedVcfEntry {
+		public final VcfEntry vcfEntry;
+		public final long filePosNext;
+
+		public CachedVcfEntry(VcfEntry vcfEntry, long filePosNext) {
+			this.vcfEntry = vcfEntry;
+			this.filePosNext = filePosNext;
+		}
+	}
+
+	int maxSize;
+	long hits, misses;
+	LinkedHashMap<Long, CachedVcfEntry> cache;
+
+	public VcfEntryCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	@SuppressWarnings("serial")
+	public VcfEntryCache(int maxSize) {
+		this.maxSize = maxSize;
+		cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CachedVcfEntry> eldest) {
+				return size() > VcfEntryCache.this.maxSize;
+			}
+		};
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Get a cached entry at file position 'filePos' (null if not found)
+	 */
+	public CachedVcfEntry get(long filePos) {
+		CachedVcfEntry ce = cache.get(filePos);
+		if (ce != null) hits++;
+		else misses++;
+		return ce;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Add a VCF entry read from file position 'filePos'
+	 */
+	public CachedVcfEntry put(long filePos, VcfEntry vcfEntry, long filePosNext) {
+		CachedVcfEntry ce = new CachedVcfEntry(vcfEntry, filePosNext);
+		if (maxSize > 0) cache.put(filePos, ce);
+		return ce;
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		long total = hits + misses;
+		double hitRate = total > 0 ? (100.0 * hits) / total : 0.0;
+		return "VCF entries cache: size " + size() + " / " + maxSize //
+				+ ", hits: " + hits //
+				+ ", misses: " + misses //
+				+ String.format(", hit rate: %.2f%%", hitRate) //
+		;
+	}
+
+}
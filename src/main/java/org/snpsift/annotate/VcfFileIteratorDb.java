@@ -0,0 +1,123 @@
+package org.snpsift.annotate;
+
+import java.io.BufferedReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * A VCF file iterator for annotation databases.
+ *
+ * Database lines are 'projected' before being parsed: Only the requested
+ * INFO fields are kept and genotype columns (FORMAT and samples) are
+ * skipped, so wide multi-sample databases do not need to be fully
+ * parsed when we only use a few INFO fields.
+ *
+ * INFO fields that define an entry's coordinates (e.g. 'END' in structural
+ * variants) are always kept, otherwise database entries would not match.
+ *
+ * @author pcingola
+ */
+public class VcfFileIteratorDb extends VcfFileIterator {
+
+	public static final int INFO_COLUMN = 7; // Zero-based column number for INFO field
+	public static final Set<String> COORDINATE_INFO_FIELDS = new HashSet<>(Arrays.asList("END", "SVTYPE", "SVLEN")); // INFO fields defining coordinates (always kept)
+
+	boolean parseGenotypes = true; // Keep genotype columns
+	Set<String> infoFields; // Keep only these INFO fields (null means 'all fields')
+
+	/**
+	 * Project a VCF line: Keep only INFO fields in 'infoFields' (all fields if null) and
+	 * remove genotype columns (unless 'parseGenotypes' is set).
+	 * Fields in COORDINATE_INFO_FIELDS are always kept
+	 */
+	public static String project(String line, Set<String> infoFields, boolean parseGenotypes) {
+		// Find INFO column
+		int infoStart = -1, infoEnd = -1;
+		for (int i = 0, col = 0; i < line.length(); i++) {
+			if (line.charAt(i) == '\t') {
+				col++;
+				if (col == INFO_COLUMN) infoStart = i + 1;
+				else if (col == INFO_COLUMN + 1) {
+					infoEnd = i;
+					break;
+				}
+			}
+		}
+
+		if (infoStart < 0) return line; // Not enough columns, let VcfEntry report the error
+		if (infoEnd < 0) {
+			if (infoFields == null) return line; // No genotypes and nothing to remove
+			infoEnd = line.length();
+		}
+
+		// Keep all INFO fields? Remove genotypes
+		if (infoFields == null) return parseGenotypes ? line : line.substring(0, infoEnd);
+
+		// Keep only requested INFO fields
+		StringBuilder sb = new StringBuilder(parseGenotypes ? line.length() : infoEnd);
+		sb.append(line, 0, infoStart);
+		int len = sb.length();
+		for (int start = infoStart; start < infoEnd;) {
+			int end = line.indexOf(';', start);
+			if (end < 0 || end > infoEnd) end = infoEnd;
+
+			// INFO key (flags do not have '=')
+			int keyEnd = line.indexOf('=', start);
+			if (keyEnd < 0 || keyEnd > end) keyEnd = end;
+
+			String key = (keyEnd > start ? line.substring(start, keyEnd) : null);
+			if (key != null && (infoFields.contains(key) || COORDINATE_INFO_FIELDS.contains(key))) {
+				if (sb.length() > len) sb.append(';');
+				sb.append(line, start, end);
+			}
+
+			start = end + 1;
+		}
+		if (sb.length() == len) sb.append(VcfFileIterator.MISSING); // No INFO fields
+
+		if (parseGenotypes) sb.append(line, infoEnd, line.length());
+		return sb.toString();
+	}
+
+	public VcfFileIteratorDb(BufferedReader reader) {
+		super(reader);
+	}
+
+	public VcfFileIteratorDb(String fileName) {
+		super(fileName);
+	}
+
+	public Set<String> getInfoFields() {
+		return infoFields;
+	}
+
+	public boolean isParseGenotypes() {
+		return parseGenotypes;
+	}
+
+	/**
+	 * Parse a (projected) VCF line
+	 */
+	@Override
+	public VcfEntry parseVcfLine(String line) {
+		if (infoFields != null || !parseGenotypes) line = project(line, infoFields, parseGenotypes);
+		return super.parseVcfLine(line);
+	}
+
+	/**
+	 * Keep only these INFO fields (null means 'all fields')
+	 */
+	public void setInfoFields(Collection<String> infoFields) {
+		this.infoFields = (infoFields != null ? new HashSet<>(infoFields) : null);
+	}
+
+	public void setParseGenotypes(boolean parseGenotypes) {
+		this.parseGenotypes = parseGenotypes;
+	}
+
+}
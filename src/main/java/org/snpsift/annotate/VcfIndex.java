@@ -1,5 +1,6 @@
 package org.snpsift.annotate;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -7,6 +8,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -15,7 +19,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.snpeff.fileIterator.SeekableBufferedReader;
 import org.snpeff.fileIterator.VcfFileIterator;
@@ -32,11 +35,18 @@ import org.snpeff.vcf.VcfEntry;
 /**
  * An index for a VCF file
  *
+ * Index format versions:
+ *   1 : GZIP compressed stream, loaded into arrays (see VcfIndexTree.load())
+ *   2 : Uncompressed, queried directly from a memory mapped file (see VcfIndexTreeMapped)
+ *
  * @author pcingola
  */
 public class VcfIndex {
 
-	public static int INDEX_FORMAT_VERSION = 1;
+	public static int INDEX_FORMAT_VERSION = 2;
+	public static final int INDEX_FORMAT_VERSION_GZIP = 1;
+	public static final int INDEX_MAGIC = 0x53494458; // Index file magic number: "SIDX"
+	public static final int GZIP_MAGIC = 0x1f8b; // First two bytes in GZIP files
 	public static int SHOW_EVERY = 1000000;
 
 	public static final String INDEX_EXT = "sidx";
@@ -44,11 +54,15 @@ public class VcfIndex {
 	boolean verbose;
 	boolean debug;
 	int maxBlockSize = VcfIndexTree.DEFAULT_MAX_BLOCK_SIZE;
+	int cacheSize = VcfEntryCache.DEFAULT_MAX_SIZE;
+	boolean parseGenotypes = true;
+	Set<String> infoFields; // Only parse these INFO fields (null means 'all fields')
 	String fileName;
 	Map<String, VcfIndexDataChromo> vcfIndexByChromo;
 	Map<String, VcfIndexTree> forest; // A hash of trees
 	Genome genome;
 	VcfFileIterator vcf;
+	VcfEntryCache cache; // Parsed VCF entries, shared by all trees
 
 	public VcfIndex(String fileName) {
 		this.fileName = fileName;
@@ -94,8 +108,10 @@ public class VcfIndex {
 	 * Close file and free memory
 	 */
 	public void close() {
+		if (verbose && cache != null) Log.info(cache);
 		if (vcf != null) vcf.close();
 		vcf = null;
+		cache = null;
 		vcfIndexByChromo = null;
 		forest = null;
 	}
@@ -122,6 +138,18 @@ public class VcfIndex {
 		if (verbose) Log.info("Creating interval forest: Done");
 	}
 
+	public VcfEntryCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * File position of a chromosome's first entry (Long.MAX_VALUE if the chromosome is not in the index)
+	 */
+	public long getFilePosStart(String chromosome) {
+		VcfIndexTree tree = getTree(chromosome);
+		return tree != null ? tree.getFilePosStartMin() : Long.MAX_VALUE;
+	}
+
 	public Genome getGenome() {
 		return genome;
 	}
@@ -162,11 +190,30 @@ public class VcfIndex {
 		if (Gpr.exists(indexFile)) {
 			File fileIdx = new File(indexFile);
 			File file = new File(fileName);
-			return fileIdx.lastModified() > file.lastModified();
+			return fileIdx.lastModified() > file.lastModified() //
+					&& indexFormatVersion(indexFile) > 0 // Can we read this index format?
+			;
 		}
 		return false;
 	}
 
+	/**
+	 * Find index file format version
+	 * @return Index format version or -1 if the format is unknown
+	 */
+	int indexFormatVersion(String indexFile) {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(indexFile))) {
+			int magic = in.readInt();
+			if ((magic >>> 16) == GZIP_MAGIC) return INDEX_FORMAT_VERSION_GZIP;
+			if (magic != INDEX_MAGIC) return -1;
+
+			int version = in.readInt();
+			return version == INDEX_FORMAT_VERSION ? version : -1;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
 	/**
 	 * Load or create index
 	 */
@@ -192,6 +239,14 @@ public class VcfIndex {
 	 * Load index form a file
 	 */
 	protected void loadIndex(String indexFile) {
+		if (indexFormatVersion(indexFile) == INDEX_FORMAT_VERSION_GZIP) loadIndexGzip(indexFile);
+		else loadIndexMapped(indexFile);
+	}
+
+	/**
+	 * Load index form a (GZIP compressed) file
+	 */
+	protected void loadIndexGzip(String indexFile) {
 		if (verbose) Log.info("Loading index file '" + indexFile + "'");
 
 		DataInputStream in = null;
@@ -225,6 +280,32 @@ public class VcfIndex {
 		}
 	}
 
+	/**
+	 * Load index form an uncompressed file, by mapping it into memory.
+	 * Trees are queried directly from the mapped file, so loading is
+	 * fast and index pages are shared (OS page cache) between processes
+	 */
+	protected void loadIndexMapped(String indexFile) {
+		if (verbose) Log.info("Mapping index file '" + indexFile + "'");
+
+		forest = new HashMap<>();
+		try (FileChannel channel = FileChannel.open(Paths.get(indexFile), StandardOpenOption.READ)) {
+			if (genome == null) genome = new Genome("genome");
+			channel.position(2 * Integer.BYTES); // Skip magic number and version
+
+			// Map data for each chromosome
+			VcfIndexTreeMapped vcfTree;
+			while ((vcfTree = VcfIndexTreeMapped.load(channel)) != null) {
+				vcfTree.setVerbose(verbose);
+				vcfTree.setDebug(debug);
+				if (verbose) Log.info("\tMapped index for chromosome '" + vcfTree.getChromosome() + "' (index size: " + vcfTree.size() + " )");
+				forest.put(vcfTree.getChromosome(), vcfTree);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Parse input VCF file and load intervals
 	 */
@@ -295,7 +376,10 @@ public class VcfIndex {
 		try {
 			// Open file as random access
 			SeekableBufferedReader seekableReader = new SeekableBufferedReader(fileName);
-			vcf = new VcfFileIterator(seekableReader); // Prepare file iterator and genome
+			VcfFileIteratorDb vcfDb = new VcfFileIteratorDb(seekableReader); // Prepare file iterator and genome
+			vcfDb.setInfoFields(infoFields);
+			vcfDb.setParseGenotypes(parseGenotypes);
+			vcf = vcfDb;
 			vcf.readHeader();
 			genome = vcf.getGenome();
 		} catch (FileNotFoundException e) {
@@ -310,8 +394,7 @@ public class VcfIndex {
 	 * Query interval forest
 	 */
 	public Markers query(Marker marker) {
-		String chr = marker.getChromosomeName();
-		VcfIndexTree tree = forest.get(chr);
+		VcfIndexTree tree = getTree(marker.getChromosomeName());
 		if (tree == null) return new Markers();
 		return tree.query(marker);
 	}
@@ -343,11 +426,14 @@ public class VcfIndex {
 
 		DataOutputStream out = null;
 		try {
-			out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(indexFile)));
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_FORMAT_VERSION);
+			long pos = 2 * Integer.BYTES;
 
 			// Save each chromosome index
 			for (String chr : chromosomes())
-				getTree(chr).save(out);
+				pos = getTree(chr).saveMapped(out, pos);
 
 		} catch (Exception e) {
 			throw new RuntimeException(e);
@@ -362,6 +448,13 @@ public class VcfIndex {
 		if (verbose) Log.info("Saving index: Done.");
 	}
 
+	/**
+	 * Maximum number of parsed VCF entries to keep in memory
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 
@@ -371,16 +464,31 @@ public class VcfIndex {
 		}
 	}
 
+	/**
+	 * Only parse these INFO fields from VCF entries (null means 'all fields')
+	 */
+	public void setInfoFields(Set<String> infoFields) {
+		this.infoFields = infoFields;
+	}
+
 	public void setMaxBlockSize(int maxBlockSize) {
 		this.maxBlockSize = maxBlockSize;
 	}
 
+	public void setParseGenotypes(boolean parseGenotypes) {
+		this.parseGenotypes = parseGenotypes;
+	}
+
 	/**
-	 * Set VCF in tree structures
+	 * Set VCF (and a shared cache) in tree structures
 	 */
 	void setVcfTree(VcfFileIterator vcf) {
-		for (String chr : chromosomes())
-			getTree(chr).setVcf(vcf);
+		cache = new VcfEntryCache(cacheSize);
+		for (String chr : chromosomes()) {
+			VcfIndexTree tree = getTree(chr);
+			tree.setVcf(vcf);
+			tree.setCache(cache);
+		}
 	}
 
 	public void setVerbose(boolean verbose) {
@@ -4,12 +4,11 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 import org.snpeff.fileIterator.VcfFileIterator;
 import org.snpeff.interval.Genome;
@@ -23,6 +22,7 @@ import org.snpeff.util.Timer;
 import org.snpeff.vcf.VcfEntry;
 
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TLongHashSet;
 
 /**
  * Interval tree structure for an 'VcfIndexChromo'
@@ -52,15 +52,20 @@ public class VcfIndexTree implements Itree {
 	long intersectFilePosEnd[][]; // Intervals (file position end) intersecting 'mid-point'
 	int size; // Arrays size (index of first unused element in the arrays)
 	int maxBlockSize = DEFAULT_MAX_BLOCK_SIZE;
-	List<VcfEntry> intersect[]; // Cache entries for non-leaf nodes
-	int cachedLeafNodeIdx = -1;
-	List<VcfEntry> cachedLeafNode = null;
+	VcfEntryCache cache; // Parsed VCF entries, keyed by file position (shared by all trees in a VcfIndex)
 
 	public VcfIndexTree() {
 		this(null, null);
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Constructor for trees that are not backed by arrays (see VcfIndexTreeMapped)
+	 */
+	protected VcfIndexTree(String chromosome) {
+		this.chromosome = chromosome;
+		inSync = true;
+	}
+
 	public VcfIndexTree(VcfFileIterator vcf, VcfIndexDataChromo vcfIndexChromo) {
 		this.vcfIndexChromo = vcfIndexChromo;
 		chromosome = (vcfIndexChromo != null ? vcfIndexChromo.getChromosome() : null);
@@ -70,7 +75,6 @@ public class VcfIndexTree implements Itree {
 		mid = new int[INITIAL_CAPACITY];
 		intersectFilePosStart = new long[INITIAL_CAPACITY][];
 		intersectFilePosEnd = new long[INITIAL_CAPACITY][];
-		intersect = new List[INITIAL_CAPACITY];
 		size = 0;
 	}
 
@@ -214,11 +218,58 @@ public class VcfIndexTree implements Itree {
 		return chromosome;
 	}
 
+	/**
+	 * Smallest file position of all intervals (i.e. the chromosome's first entry in the file)
+	 * @return File position or Long.MAX_VALUE if the tree is empty
+	 */
+	public long getFilePosStartMin() {
+		long min = Long.MAX_VALUE;
+		for (int idx = 0; idx < size; idx++)
+			for (int i = 0; i < intersectSize(idx); i++)
+				min = Math.min(min, getIntersectFilePosStart(idx, i));
+		return min;
+	}
+
+	/**
+	 * File position (end) of the i-th interval intersecting node 'idx'
+	 */
+	protected long getIntersectFilePosEnd(int idx, int i) {
+		return intersectFilePosEnd[idx][i];
+	}
+
+	/**
+	 * File position (start) of the i-th interval intersecting node 'idx'
+	 */
+	protected long getIntersectFilePosStart(int idx, int i) {
+		return intersectFilePosStart[idx][i];
+	}
+
 	@Override
 	public Markers getIntervals() {
 		throw new RuntimeException("Unimplemented! This IntervalTree is backed by a VcfIndexDataChromo class instead of a set of markers");
 	}
 
+	/**
+	 * Left subtree for node 'idx'
+	 */
+	protected int getLeft(int idx) {
+		return left[idx];
+	}
+
+	/**
+	 * Middle position for node 'idx'
+	 */
+	protected int getMid(int idx) {
+		return mid[idx];
+	}
+
+	/**
+	 * Right subtree for node 'idx'
+	 */
+	protected int getRight(int idx) {
+		return right[idx];
+	}
+
 	void grow() {
 		int oldCapacity = capacity();
 		int newCapacity = oldCapacity + (oldCapacity >> 1);
@@ -228,7 +279,13 @@ public class VcfIndexTree implements Itree {
 		mid = Arrays.copyOf(mid, newCapacity);
 		intersectFilePosStart = Arrays.copyOf(intersectFilePosStart, newCapacity);
 		intersectFilePosEnd = Arrays.copyOf(intersectFilePosEnd, newCapacity);
-		intersect = Arrays.copyOf(intersect, newCapacity);
+	}
+
+	/**
+	 * Number of file intervals intersecting node 'idx'
+	 */
+	protected int intersectSize(int idx) {
+		return intersectFilePosStart[idx] != null ? intersectFilePosStart[idx].length : 0;
 	}
 
 	/**
@@ -272,7 +329,7 @@ public class VcfIndexTree implements Itree {
 	 * Is node 'idx' a leaf node?
 	 */
 	boolean isLeaf(int idx) {
-		return (left[idx] == -1) && (right[idx] == -1);
+		return (getLeft(idx) == -1) && (getRight(idx) == -1);
 	}
 
 	@Override
@@ -284,7 +341,6 @@ public class VcfIndexTree implements Itree {
 	 * Read data from input stream
 	 * @return true on success
 	 */
-	@SuppressWarnings("unchecked")
 	public boolean load(DataInputStream in) {
 		try {
 			chromosome = in.readUTF();
@@ -301,7 +357,6 @@ public class VcfIndexTree implements Itree {
 
 			intersectFilePosStart = new long[size][];
 			intersectFilePosEnd = new long[size][];
-			intersect = new List[size];
 
 			// Read array data
 			for (int i = 0; i < size; i++) {
@@ -391,13 +446,15 @@ public class VcfIndexTree implements Itree {
 		queryIntersects(queryMarker, idx, results);
 
 		// Recurse left or right
-		int midPos = mid[idx];
-		if ((queryMarker.getEnd() < midPos) && (left[idx] >= 0)) {
-			query(queryMarker, left[idx], results);
+		int midPos = getMid(idx);
+		int leftIdx = getLeft(idx);
+		if ((queryMarker.getEnd() < midPos) && (leftIdx >= 0)) {
+			query(queryMarker, leftIdx, results);
 		}
 
-		if ((midPos < queryMarker.getStart()) && (right[idx] >= 0)) {
-			query(queryMarker, right[idx], results);
+		int rightIdx = getRight(idx);
+		if ((midPos < queryMarker.getStart()) && (rightIdx >= 0)) {
+			query(queryMarker, rightIdx, results);
 		}
 	}
 
@@ -405,7 +462,7 @@ public class VcfIndexTree implements Itree {
 	 * Query VCF entries intersecting 'marker' at node 'idx'
 	 */
 	protected void queryIntersects(Interval queryMarker, int idx, Markers results) {
-		if (intersectFilePosStart[idx] == null) return;
+		if (intersectSize(idx) == 0) return;
 		if (debug) Log.debug("queryIntersects\tidx: " + idx);
 
 		// Read entries from disk
@@ -428,47 +485,46 @@ public class VcfIndexTree implements Itree {
 		}
 	}
 
+	/**
+	 * Read all VCF entries from the file regions intersecting node 'idx'
+	 * Entries are retrieved from the cache when possible
+	 */
 	List<VcfEntry> readEntries(int idx) {
-		// Cached?
-		if (cachedLeafNodeIdx == idx) return cachedLeafNode;
-		List<VcfEntry> vcfEntries = intersect[idx];
-		if (vcfEntries != null) return vcfEntries;
+		if (cache == null) cache = new VcfEntryCache();
 
 		try {
 			// There might be several non-contiguous file regions
-			int len = intersectFilePosStart[idx].length;
+			int len = intersectSize(idx);
 
 			// Read each file region
-			vcfEntries = new ArrayList<VcfEntry>();
-			Set<VcfEntry> added = new HashSet<>();
+			List<VcfEntry> vcfEntries = new ArrayList<>();
+			TLongHashSet added = new TLongHashSet();
+			long filePosRead = -1; // File position after the last entry read from the file
 			for (int i = 0; i < len; i++) {
-				if (debug) Log.debug("\tintersect[" + idx + "][" + i + "]:\t[" + intersectFilePosStart[idx][i] + " , " + intersectFilePosEnd[idx][i] + " ]");
-
-				long startPos = intersectFilePosStart[idx][i];
-				long endPos = intersectFilePosEnd[idx][i];
-
-				// No cache? Read from file
-				vcf.seek(startPos);
-
-				// Read entries from file
-				for (VcfEntry ve : vcf) {
-					if (added.add(ve)) { // Make sure we add entries only once
-						vcfEntries.add(ve);
-						if (debug) Log.debug("\tParsing VcfEntry [" + vcf.getFilePointer() + "]: " + ve);
+				long startPos = getIntersectFilePosStart(idx, i);
+				long endPos = getIntersectFilePosEnd(idx, i);
+				if (debug) Log.debug("\tintersect[" + idx + "][" + i + "]:\t[" + startPos + " , " + endPos + " ]");
+
+				// Read entries until we reach the end of the region
+				long pos = startPos;
+				do {
+					VcfEntryCache.CachedVcfEntry ce = cache.get(pos);
+
+					// Not in cache? Read from file (seek only if we are not already there)
+					if (ce == null) {
+						if (pos != filePosRead) vcf.seek(pos);
+						VcfEntry ve = vcf.next();
+						if (ve == null) break; // End of file
+						filePosRead = vcf.getFilePointer();
+						ce = cache.put(pos, ve, filePosRead);
+						if (debug) Log.debug("\tParsing VcfEntry [" + filePosRead + "]: " + ve);
 					}
 
-					// Finished reading?
-					if (vcf.getFilePointer() >= endPos) break;
-				}
-			}
+					// Make sure we add entries only once
+					if (added.add(pos)) vcfEntries.add(ce.vcfEntry);
 
-			// Cache data
-			if (isLeaf(idx)) {
-				cachedLeafNodeIdx = idx;
-				cachedLeafNode = vcfEntries;
-			} else if (intersect[idx] == null) {
-				// Cache non-leaf nodes, which have very few intersect entries
-				intersect[idx] = vcfEntries;
+					pos = ce.filePosNext;
+				} while (pos < endPos);
 			}
 
 			return vcfEntries;
@@ -478,28 +534,74 @@ public class VcfIndexTree implements Itree {
 	}
 
 	/**
-	 * Save to output stream
+	 * Save to output stream using an uncompressed layout that can be
+	 * queried directly from a memory mapped file (see VcfIndexTreeMapped).
+	 *
+	 * Layout:
+	 *   int    : chromosome name length (bytes)
+	 *   byte[] : chromosome name (UTF-8)
+	 *   int    : number of nodes ('size')
+	 *   int    : number of intersecting intervals ('numIntersect')
+	 *   byte[] : padding, so that the data section is aligned to 8 bytes
+	 *   long[numIntersect] : intersecting intervals, file position start
+	 *   long[numIntersect] : intersecting intervals, file position end
+	 *   int[size]          : left subtree
+	 *   int[size]          : right subtree
+	 *   int[size]          : middle position
+	 *   int[size + 1]      : index of first intersecting interval for each node
+	 *
+	 * @param pos : Number of bytes already written to the file (used for alignment)
+	 * @return Number of bytes written to the file after saving this tree
 	 */
-	public void save(DataOutputStream out) {
+	public long saveMapped(DataOutputStream out, long pos) {
 		try {
-			out.writeUTF(chromosome);
+			// Count intersecting intervals
+			int numIntersect = 0;
+			for (int i = 0; i < size; i++)
+				numIntersect += intersectSize(i);
+
+			// Header
+			byte name[] = chromosome.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(name.length);
+			out.write(name);
 			out.writeInt(size);
+			out.writeInt(numIntersect);
+			pos += 4 + name.length + 4 + 4;
 
-			// Dump array data
-			for (int i = 0; i < size; i++) {
-				out.writeInt(left[i]);
-				out.writeInt(right[i]);
-				out.writeInt(mid[i]);
+			// Align data section
+			int padding = VcfIndexTreeMapped.padding(pos);
+			for (int i = 0; i < padding; i++)
+				out.writeByte(0);
+			pos += padding;
 
-				// Intersect data
+			// Intersect data
+			for (int i = 0; i < size; i++)
+				for (int j = 0; j < intersectSize(i); j++)
+					out.writeLong(getIntersectFilePosStart(i, j));
 
-				int len = intersectFilePosStart[i] != null ? intersectFilePosStart[i].length : 0;
-				out.writeInt(len);
-				for (int j = 0; j < len; j++) {
-					out.writeLong(intersectFilePosStart[i][j]);
-					out.writeLong(intersectFilePosEnd[i][j]);
-				}
+			for (int i = 0; i < size; i++)
+				for (int j = 0; j < intersectSize(i); j++)
+					out.writeLong(getIntersectFilePosEnd(i, j));
+
+			// Tree structure
+			for (int i = 0; i < size; i++)
+				out.writeInt(getLeft(i));
+
+			for (int i = 0; i < size; i++)
+				out.writeInt(getRight(i));
+
+			for (int i = 0; i < size; i++)
+				out.writeInt(getMid(i));
+
+			// Index into intersect data
+			int intersectIdx = 0;
+			for (int i = 0; i < size; i++) {
+				out.writeInt(intersectIdx);
+				intersectIdx += intersectSize(i);
 			}
+			out.writeInt(intersectIdx);
+
+			return pos + VcfIndexTreeMapped.dataSize(size, numIntersect);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -544,6 +646,10 @@ public class VcfIndexTree implements Itree {
 		}
 	}
 
+	public void setCache(VcfEntryCache cache) {
+		this.cache = cache;
+	}
+
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
@@ -583,18 +689,21 @@ public class VcfIndexTree implements Itree {
 
 		StringBuilder sb = new StringBuilder();
 		sb.append(idx //
-				+ "\tleftIdx: " + left[idx] //
-				+ "\trightIdx: " + right[idx] //
-				+ "\tmidPos: " + mid[idx] //
+				+ "\tleftIdx: " + getLeft(idx) //
+				+ "\trightIdx: " + getRight(idx) //
+				+ "\tmidPos: " + getMid(idx) //
 		);
 
-		if (intersectFilePosStart[idx] != null) {
-			sb.append("\tintersect: (" + intersectFilePosStart[idx].length + "): ");
-			for (int i = 0; i < intersectFilePosStart[idx].length; i++)
-				sb.append("\t[" + intersectFilePosStart[idx][i] + ", " + intersectFilePosEnd[idx][i] + "] size " + (intersectFilePosEnd[idx][i] - intersectFilePosStart[idx][i] + 1));
+		int len = intersectSize(idx);
+		if (len > 0) {
+			sb.append("\tintersect: (" + len + "): ");
+			for (int i = 0; i < len; i++) {
+				long startPos = getIntersectFilePosStart(idx, i);
+				long endPos = getIntersectFilePosEnd(idx, i);
+				sb.append("\t[" + startPos + ", " + endPos + "] size " + (endPos - startPos + 1));
+			}
 		}
 
-		if (intersect[idx] != null) sb.append("\tCache: " + intersect[idx].size());
 		return sb.toString();
 	}
 
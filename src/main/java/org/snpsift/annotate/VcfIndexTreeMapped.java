@@ -0,0 +1,148 @@
+package org.snpsift.annotate;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interval tree for an 'VcfIndexChromo' that is queried directly
+ * from a memory mapped index file (no data is copied to the heap).
+ *
+ * The file layout is created by VcfIndexTree.saveMapped()
+ *
+ * @author pcingola
+ */
+public class VcfIndexTreeMapped extends VcfIndexTree {
+
+	public static final int ALIGN = 8; // Data section is aligned to this number of bytes
+
+	IntBuffer leftBuf; // Left subtree
+	IntBuffer rightBuf; // Right subtree
+	IntBuffer midBuf; // Middle position (genomic coordinate)
+	IntBuffer intersectIdxBuf; // Index of first intersecting interval for each node
+	LongBuffer intersectFilePosStartBuf; // Intervals (file position start) intersecting 'mid-point'
+	LongBuffer intersectFilePosEndBuf; // Intervals (file position end) intersecting 'mid-point'
+
+	/**
+	 * Size of the data section (in bytes)
+	 */
+	public static long dataSize(int size, int numIntersect) {
+		return 2L * Long.BYTES * numIntersect + (4L * size + 1) * Integer.BYTES;
+	}
+
+	/**
+	 * Read a tree from 'channel' (at the current channel position) and map its data section
+	 * @return A tree or null if there are no more trees in the file
+	 */
+	public static VcfIndexTreeMapped load(FileChannel channel) throws IOException {
+		if (channel.position() >= channel.size()) return null;
+
+		// Read header. Note: DataInputStream is not buffered, so the channel's position is exact
+		DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+		byte name[] = new byte[in.readInt()];
+		in.readFully(name);
+		int size = in.readInt();
+		int numIntersect = in.readInt();
+
+		// Map data section
+		long pos = channel.position();
+		pos += padding(pos);
+		long len = dataSize(size, numIntersect);
+		if (len > Integer.MAX_VALUE) throw new RuntimeException("Index data section too large to be mapped: " + len + " bytes");
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+		channel.position(pos + len);
+
+		return new VcfIndexTreeMapped(new String(name, StandardCharsets.UTF_8), size, numIntersect, buffer);
+	}
+
+	/**
+	 * Number of bytes required to align position 'pos'
+	 */
+	public static int padding(long pos) {
+		return (int) ((ALIGN - (pos % ALIGN)) % ALIGN);
+	}
+
+	public VcfIndexTreeMapped(String chromosome, int size, int numIntersect, ByteBuffer buffer) {
+		super(chromosome);
+		this.size = size;
+
+		// Create views for each array in the data section
+		int pos = 0;
+		intersectFilePosStartBuf = slice(buffer, pos, numIntersect * Long.BYTES).asLongBuffer();
+		pos += numIntersect * Long.BYTES;
+
+		intersectFilePosEndBuf = slice(buffer, pos, numIntersect * Long.BYTES).asLongBuffer();
+		pos += numIntersect * Long.BYTES;
+
+		leftBuf = slice(buffer, pos, size * Integer.BYTES).asIntBuffer();
+		pos += size * Integer.BYTES;
+
+		rightBuf = slice(buffer, pos, size * Integer.BYTES).asIntBuffer();
+		pos += size * Integer.BYTES;
+
+		midBuf = slice(buffer, pos, size * Integer.BYTES).asIntBuffer();
+		pos += size * Integer.BYTES;
+
+		intersectIdxBuf = slice(buffer, pos, (size + 1) * Integer.BYTES).asIntBuffer();
+	}
+
+	@Override
+	protected long getIntersectFilePosEnd(int idx, int i) {
+		return intersectFilePosEndBuf.get(intersectIdxBuf.get(idx) + i);
+	}
+
+	@Override
+	protected long getIntersectFilePosStart(int idx, int i) {
+		return intersectFilePosStartBuf.get(intersectIdxBuf.get(idx) + i);
+	}
+
+	@Override
+	protected int getLeft(int idx) {
+		return leftBuf.get(idx);
+	}
+
+	@Override
+	protected int getMid(int idx) {
+		return midBuf.get(idx);
+	}
+
+	@Override
+	protected int getRight(int idx) {
+		return rightBuf.get(idx);
+	}
+
+	@Override
+	protected int intersectSize(int idx) {
+		return intersectIdxBuf.get(idx + 1) - intersectIdxBuf.get(idx);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size <= 0;
+	}
+
+	/**
+	 * Create a view of 'len' bytes starting at 'pos'
+	 */
+	ByteBuffer slice(ByteBuffer buffer, int pos, int len) {
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(pos);
+		dup.limit(pos + len);
+		return dup.slice();
+	}
+
+	@Override
+	public String toString() {
+		return "Chromosome: " + chromosome //
+				+ ", size: " + size //
+				+ ", mapped" //
+		;
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.snpsift.fileIterator;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import org.snpeff.fileIterator.LineFileIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.function.Consumer;
+
+/**
+ * Sample lines from a (bgzip compressed) text file, e.g. a dbNSFP or any other TSV database.
+ *
+ * Samples start at BGZF blocks spread evenly across the whole file, so that lines
+ * from the beginning, middle and end of the file can be analyzed without
+ * decompressing the whole file. Each sample covers the lines from its first
+ * block up to the next sample, and uses its own stream (samples can be read
+ * in parallel).
+ *
+ * Files that are not BGZF compressed have a single sample (the first lines of the file).
+ *
+ * @author pcingola
+ */
+public class BgzfLineSampler {
+
+    public static final int BLOCK_HEADER_SIZE = 18; // BGZF block header size (bytes)
+    public static final int MAX_BLOCK_SIZE = 64 * 1024; // Maximum BGZF block size (bytes)
+
+    String fileName;
+    boolean bgzf; // Is the file BGZF compressed?
+    long fileSize;
+    long[] blocks; // File offset of each sample's first block (sorted, unique)
+
+    /**
+     * Is there a BGZF block header at position 'i' in 'buf'?
+     */
+    static boolean isBlockHeader(byte[] buf, int i) {
+        return (buf[i] & 0xff) == 0x1f && (buf[i + 1] & 0xff) == 0x8b // GZIP magic number
+                && buf[i + 2] == 8 // Compression method 'deflate'
+                && (buf[i + 3] & 0x04) != 0 // Extra fields present
+                && buf[i + 10] == 6 && buf[i + 11] == 0 // Extra fields length
+                && buf[i + 12] == 'B' && buf[i + 13] == 'C' // BGZF sub-field ID
+                && buf[i + 14] == 2 && buf[i + 15] == 0; // BGZF sub-field length
+    }
+
+    /**
+     * Size of the block whose header is at position 'i' in 'buf' (bytes)
+     */
+    static int blockSize(byte[] buf, int i) {
+        return ((buf[i + 16] & 0xff) | ((buf[i + 17] & 0xff) << 8)) + 1;
+    }
+
+    public BgzfLineSampler(String fileName, int numSamples) {
+        this.fileName = fileName;
+        fileSize = new File(fileName).length();
+
+        try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+            bgzf = (findBlock(raf, 0) == 0);
+            blocks = bgzf ? findBlocks(raf, numSamples) : new long[] { 0 };
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file '" + fileName + "'", e);
+        }
+    }
+
+    /**
+     * File offset of the first BGZF block starting at or after 'pos' (-1 if none is found)
+     *
+     * Note: A block header candidate is only accepted if it is followed by
+     * another block header (or the end of the file), since the signature
+     * could also appear within compressed data.
+     */
+    long findBlock(RandomAccessFile raf, long pos) throws IOException {
+        byte[] buf = new byte[2 * MAX_BLOCK_SIZE + BLOCK_HEADER_SIZE];
+        raf.seek(pos);
+        int len = raf.read(buf);
+
+        for (int i = 0; i + BLOCK_HEADER_SIZE <= len; i++) {
+            if (!isBlockHeader(buf, i)) continue;
+
+            // Is the next block where the header says it is?
+            long next = i + blockSize(buf, i);
+            if (pos + next == fileSize) return pos + i;
+            if (next + BLOCK_HEADER_SIZE <= len && isBlockHeader(buf, (int) next)) return pos + i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Find each sample's first block: The first block at or after evenly spaced file offsets
+     */
+    long[] findBlocks(RandomAccessFile raf, int numSamples) throws IOException {
+        long[] offsets = new long[numSamples];
+        int count = 0;
+        for (int i = 0; i < numSamples; i++) {
+            long block = findBlock(raf, (fileSize * i) / numSamples);
+            if (block < 0) break;
+            if (count > 0 && block <= offsets[count - 1]) continue; // Same block as previous sample
+            offsets[count++] = block;
+        }
+
+        long[] blocks = new long[count];
+        System.arraycopy(offsets, 0, blocks, 0, count);
+        return blocks;
+    }
+
+    /**
+     * Invoke 'consumer' on (at most 'maxLines') lines from sample number 'sampleNum'.
+     * The first line of each sample (except the first one) is skipped, since it
+     * usually starts in the previous block.
+     */
+    public void forEachLine(int sampleNum, int maxLines, Consumer<String> consumer) {
+        if (!bgzf) {
+            forEachLineText(maxLines, consumer);
+            return;
+        }
+
+        long end = (sampleNum + 1 < blocks.length ? blocks[sampleNum + 1] : Long.MAX_VALUE); // Next sample's first block
+        try (BlockCompressedInputStream in = new BlockCompressedInputStream(new File(fileName))) {
+            in.seek(blocks[sampleNum] << 16); // Virtual file pointer: Block offset and offset within the block
+            if (sampleNum > 0) in.readLine(); // Partial line
+
+            for (int n = 0; n < maxLines && (in.getFilePointer() >>> 16) < end; n++) {
+                String line = in.readLine();
+                if (line == null) break;
+                consumer.accept(line);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file '" + fileName + "'", e);
+        }
+    }
+
+    /**
+     * Invoke 'consumer' on the first 'maxLines' lines from a file that is not BGZF compressed
+     */
+    void forEachLineText(int maxLines, Consumer<String> consumer) {
+        LineFileIterator lfi = new LineFileIterator(fileName);
+        int n = 0;
+        for (String line : lfi) {
+            if (n++ >= maxLines) break;
+            consumer.accept(line);
+        }
+        lfi.close();
+    }
+
+    public int getNumSamples() {
+        return blocks.length;
+    }
+
+    public boolean isBgzf() {
+        return bgzf;
+    }
+
+}
@@ -4,7 +4,6 @@ import htsjdk.tribble.readers.TabixReader;
 import org.snpeff.fileIterator.LineFileIterator;
 import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Genome;
-import org.snpeff.interval.Marker;
 import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
 import org.snpeff.util.Log;
@@ -14,6 +13,10 @@ import org.snpsift.annotate.DbMarker;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * DbNSFP database:
@@ -24,10 +27,28 @@ import java.util.*;
  */
 public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
 
+    /**
+     * Data types guessed from a sample of lines
+     */
+    static class DataTypesSample {
+        VcfInfoType[] types;
+        boolean[] multipleValues;
+
+        DataTypesSample(int numFields) {
+            types = new VcfInfoType[numFields];
+            multipleValues = new boolean[numFields];
+        }
+    }
+
     public static final String DATA_TYPES_CACHE_EXT = ".data_types";
 
-    public static final int DATA_TYPES_MIN_LINES = 10 * 1000; // Analyze at least this many lines (because some types might change)
-    public static final int DATA_TYPES_MAX_LINES = 100 * 1000; // Analyze at most this many lines
+    /**
+     * @deprecated Data types are guessed from samples spread across the file, not from the first lines. See DATA_TYPES_SAMPLES and DATA_TYPES_MAX_LINES
+     */
+    @Deprecated
+    public static final int DATA_TYPES_MIN_LINES = 10 * 1000;
+    public static final int DATA_TYPES_MAX_LINES = 100 * 1000; // Analyze at most this many lines (in all samples)
+    public static final int DATA_TYPES_SAMPLES = 64; // Number of samples (spread across the file) used to guess data types
 
     public static final String HEADER_PREFIX = "#";
     public static final String COLUMN_SEPARATOR = "\t";
@@ -57,25 +78,23 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
     protected VcfInfoType[] types = null; // VCF data types
     protected Genome genome;
     protected HashMap<String, Integer> names2index; // Map column name to index
+    protected boolean[] projection; // Columns to parse in each entry (null means 'all columns')
+    protected int projectionMaxIdx = -1; // Max of the projected column indexes
     protected TabixReader tabixReader;
-    protected List<DbNsfpEntry> latestResults; // Latest results when searching in the tabix file
-    protected Marker latestResultsInterval; // Latest interval queried in tabix file
+    protected DbNsfpWindow window; // Entries around the latest query (streamed from the tabix file)
+    protected int windowSize = DbNsfpWindow.DEFAULT_WINDOW_SIZE;
 
     public DbNsfp(String fileName) {
         this.fileName = fileName;
         genome = new Genome();
-        latestResults = new LinkedList<>();
-
-        // Initialize with an invalid marker
-        Genome genome = new Genome("NULL_GENOME");
-        Chromosome chr = new Chromosome(genome, -1, -1, "NULL_CHROMOSOME");
-        latestResultsInterval = new Marker(chr, -1, -1);
     }
 
     @Override
     public void close() {
+        if (window != null && verbose) Log.info("dbNSFP: Read " + window.getCountLines() + " lines, " + window.getCountSeek() + " seeks");
         if (tabixReader != null) tabixReader.close();
         tabixReader = null;
+        window = null;
     }
 
     /**
@@ -150,6 +169,14 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
         return names2index;
     }
 
+    public boolean[] getProjection() {
+        return projection;
+    }
+
+    public int getProjectionMaxIdx() {
+        return projectionMaxIdx;
+    }
+
     public int getRefIdx() {
         return refIdx;
     }
@@ -190,19 +217,8 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
         //---
         // There is only one value. Let's try to guess what it is
         //---
-        try {
-            Long.parseLong(value);
-            return VcfInfoType.Integer;
-        } catch (Exception e) {
-            // OK, it was not an integer
-        }
-
-        try {
-            Double.parseDouble(value);
-            return VcfInfoType.Float;
-        } catch (Exception e) {
-            // OK, it was not a float
-        }
+        if (isInteger(value)) return VcfInfoType.Integer;
+        if (isFloat(value)) return VcfInfoType.Float;
 
         // Is it a character?
         if (value.length() == 1) return VcfInfoType.Character;
@@ -217,83 +233,82 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
     }
 
     /**
-     * Guess data types from file
+     * Guess data types from file: Lines are sampled from BGZF blocks spread across
+     * the whole file (see BgzfLineSampler) and samples are analyzed in parallel
+     *
+     * @return true if the data types for all columns were guessed
      */
     protected boolean guessDataTypes() {
         if (verbose) Log.info("Guessing data types for file '" + fileName + "'");
 
-        boolean header = true;
         fieldNames = null;
         types = null;
         multipleValues = null;
         names2index = null;
 
-        // Iterate parsing lines until we guessed all data types (lines
-        // can have empty values, so we may not be able to guess them in
-        // the first line).
+        // Parse header (first line)
+        String header = null;
         LineFileIterator lfi = new LineFileIterator(fileName);
-
-        int entryNum = 0;
         for (String line : lfi) {
-            if (line == null) {
-                lfi.close();
-                return false; // End of file?
-            }
-
-            if (header) {
-                // Parse header
-                header = false;
-                parseHeader(line);
-            } else {
-                //---
-                // Parse values
-                //---
-                if (multipleValues == null)
-                    throw new RuntimeException("Cannot parse file '" + fileName + "'. Missing header?");
-
-                boolean done = true;
-                String[] values = line.split(COLUMN_SEPARATOR, -1);
-
-                // Process each field
-                for (int i = 0; i < fieldNames.length; i++) {
-                    // We don't know the type yet? Try to guess it
-                    VcfInfoType type = guessDataType(values[i]);
-
-                    // New data type? Set it
-                    if (types[i] == null) {
-                        types[i] = type;
-                    } else {
-                        // Some types can 'change'
-                        if (types[i] == VcfInfoType.Integer && type == VcfInfoType.Float) types[i] = type;
-                        else if (type == VcfInfoType.String) types[i] = type;
-                    }
-
-                    // Do we have multiple values per field?
-                    multipleValues[i] |= isMultipleValues(values[i]);
-                    done &= (types[i] != null);
-                }
+            header = line;
+            break;
+        }
+        lfi.close();
+        if (header == null) return false; // Empty file?
+        parseHeader(header);
 
-                if (verbose) Gpr.showMark(entryNum, 1000);
+        // Analyze samples in parallel
+        BgzfLineSampler sampler = new BgzfLineSampler(fileName, DATA_TYPES_SAMPLES);
+        int numSamples = sampler.getNumSamples();
+        int maxLines = Math.max(DATA_TYPES_MAX_LINES / numSamples, 1);
+        if (verbose) Log.info("Guessing data types using " + numSamples + " samples, up to " + maxLines + " lines each");
 
-                // Have we guessed all types? => We are done
-                if (done && entryNum > DATA_TYPES_MIN_LINES) {
-                    lfi.close();
-                    return true;
-                }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numSamples, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<DataTypesSample>> futures = new ArrayList<>();
+            for (int i = 0; i < numSamples; i++) {
+                int sampleNum = i;
+                futures.add(executor.submit(() -> guessDataTypes(sampler, sampleNum, maxLines)));
+            }
 
-                // Too many lines analyzed? We should be done...
-                if (entryNum > DATA_TYPES_MAX_LINES) {
-                    lfi.close();
-                    return false;
+            // Merge samples (in file order)
+            for (Future<DataTypesSample> future : futures) {
+                DataTypesSample sample = future.get();
+                for (int i = 0; i < fieldNames.length; i++) {
+                    types[i] = mergeDataType(types[i], sample.types[i]);
+                    multipleValues[i] |= sample.multipleValues[i];
                 }
-
-                entryNum++;
             }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error guessing data types for file '" + fileName + "'", e);
+        } finally {
+            executor.shutdownNow();
         }
 
+        // Have we guessed all types?
+        for (VcfInfoType type : types)
+            if (type == null) return false;
         return true;
     }
 
+    /**
+     * Guess data types from lines in sample number 'sampleNum'
+     */
+    DataTypesSample guessDataTypes(BgzfLineSampler sampler, int sampleNum, int maxLines) {
+        DataTypesSample sample = new DataTypesSample(fieldNames.length);
+        sampler.forEachLine(sampleNum, maxLines, line -> {
+            if (line.isEmpty() || line.startsWith(HEADER_PREFIX)) return; // Skip header
+
+            String[] values = line.split(COLUMN_SEPARATOR, -1);
+            int len = Math.min(values.length, fieldNames.length);
+            for (int i = 0; i < len; i++) {
+                sample.types[i] = mergeDataType(sample.types[i], guessDataType(values[i]));
+                sample.multipleValues[i] |= isMultipleValues(values[i]);
+            }
+        });
+        return sample;
+    }
+
     /**
      * Do we have a column 'colName'?
      */
@@ -313,6 +328,8 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
             // Open tabix reader
             if (verbose) Log.info("Opening database file and loading index");
             tabixReader = new TabixReader(fileName);
+            window = new DbNsfpWindow(this, tabixReader, windowSize);
+            window.setDebug(debug);
         } catch (IOException e) {
             throw new RuntimeException("Error opening tabix file '" + fileName + "'", e);
         }
@@ -320,6 +337,62 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
         return true;
     }
 
+    /**
+     * Is 'value' a floating point number? (same as 'Double.parseDouble()' not throwing
+     * an exception, except for hexadecimal, suffixed and whitespace padded forms)
+     */
+    static boolean isFloat(String value) {
+        int len = value.length();
+        int i = 0;
+        if (i < len && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+        if (value.startsWith("NaN", i)) return len == i + 3;
+        if (value.startsWith("Infinity", i)) return len == i + 8;
+
+        // Mantissa: Digits and an optional decimal point
+        int digits = 0;
+        for (; i < len && Character.isDigit(value.charAt(i)); i++)
+            digits++;
+        if (i < len && value.charAt(i) == '.') {
+            for (i++; i < len && Character.isDigit(value.charAt(i)); i++)
+                digits++;
+        }
+        if (digits == 0) return false;
+
+        // Optional exponent
+        if (i < len && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < len && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+            int expDigits = 0;
+            for (; i < len && Character.isDigit(value.charAt(i)); i++)
+                expDigits++;
+            if (expDigits == 0) return false;
+        }
+
+        return i == len;
+    }
+
+    /**
+     * Is 'value' an integer number within 'long' range? (same as 'Long.parseLong()' not throwing an exception)
+     */
+    static boolean isInteger(String value) {
+        int len = value.length();
+        int start = (len > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) ? 1 : 0;
+        if (start == len) return false;
+
+        for (int i = start; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+
+        // Check 'long' range (ignoring leading zeros)
+        while (start < len - 1 && value.charAt(start) == '0')
+            start++;
+        int digits = len - start;
+        if (digits != 19) return digits < 19;
+        String max = (value.charAt(0) == '-' ? "9223372036854775808" : "9223372036854775807"); // Same number of digits: Compare as strings
+        return value.substring(start).compareTo(max) <= 0;
+    }
+
     /**
      * Do we have multiple values separated by 'subfieldSeparator'?
      */
@@ -395,6 +468,38 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
                 ;
     }
 
+    /**
+     * Do the 'ref' and 'alt' columns of a database line match the variant?
+     * Only the first columns are scanned and no strings are created, so
+     * lines can be discarded before parsing them
+     */
+    protected boolean matchRefAlt(Variant var, String line) {
+        int colStart = 0;
+        for (int i = 0; i <= maxChrPosRefAltIdx; i++) {
+            int colEnd = line.indexOf('\t', colStart);
+            if (colEnd < 0) colEnd = line.length();
+
+            if (i == refIdx && !regionEqualsIgnoreCase(var.getReference(), line, colStart, colEnd)) return false;
+            if (i == altIdx && !regionEqualsIgnoreCase(var.getAlt(), line, colStart, colEnd)) return false;
+
+            if (colEnd >= line.length()) break;
+            colStart = colEnd + 1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Data type for a column, given the current type and the type of a new value
+     * Note: Some types can 'change' (e.g. Integer to Float, anything to String)
+     */
+    static VcfInfoType mergeDataType(VcfInfoType current, VcfInfoType type) {
+        if (current == null) return type;
+        if (current == VcfInfoType.Integer && type == VcfInfoType.Float) return type;
+        if (type == VcfInfoType.String) return type;
+        return current;
+    }
+
     @Override
     public void open() {
         dataTypes();
@@ -441,55 +546,34 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
     }
 
     /**
-     * Query tabix file to get dbNsfp entries (or cached entries from latest results)
+     * Query tabix file to get dbNsfp entries (entries are streamed from the
+     * tabix file and kept in a window around the latest query, see DbNsfpWindow)
      *
      * @param variant: Variant to query in DnNSFP
      * @return A list of result
      */
     @Override
     public Collection<DbNsfpEntry> query(Variant variant) {
-        LinkedList<DbNsfpEntry> results = new LinkedList<>();
-
-        // Check if we've already retrieved these results last time
-        if (latestResultsInterval.includes(variant)) {
-            // Match: We can find the results in `latestResults`
-            for (DbNsfpEntry de : latestResults)
-                if (match(variant, de)) results.add(de);
-            return results;
-        }
+        List<DbNsfpEntry> entries = window.query(variant);
+        if (entries == null) return null; // No results?
 
-        // Query tabix file
-        TabixReader.Iterator tabixIterator = tabixReader.query(variant.getChromosomeName(), variant.getStart(), variant.getEnd() + 1);
-        latestResults = new LinkedList<>(); // Clear latest results
-        latestResultsInterval = variant; // Update latest results interval
-        if (tabixIterator == null) return null; // No results?
+        // Select the ones the match query
+        List<DbNsfpEntry> results = new LinkedList<>();
+        for (DbNsfpEntry de : entries)
+            if (match(variant, de)) results.add(de);
 
-        //---
-        // Read and parse all entries, select the ones the match query
-        //---
-        int numLines = 0;
-        String line;
-        try {
-            while ((line = tabixIterator.next()) != null) {
-                // Parse
-                line = Gpr.removeBackslashR(line);
-                if (debug) Log.debug("Query: Parse line " + line);
-                DbNsfpEntry de = new DbNsfpEntry(this, line);
-
-                // Add to results & latestResults
-                if (match(variant, de)) results.add(de);
-                latestResults.add(de);
-                numLines++;
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading tabix file '" + fileName + "'", e);
-        }
-
-        if (debug) Log.debug("Query: " + variant.toStr() + "\tParsed lines: " + numLines);
+        if (debug) Log.debug("Query: " + variant.toStr() + "\tEntries at position: " + entries.size() + "\tResults: " + results.size());
 
         return results;
     }
 
+    /**
+     * Is 'str' equal to the region [start, end) of 'line' (ignoring case)?
+     */
+    static boolean regionEqualsIgnoreCase(String str, String line, int start, int end) {
+        return str != null && str.length() == end - start && str.regionMatches(true, 0, line, start, end - start);
+    }
+
     /**
      * Save data types to cache file
      */
@@ -506,6 +590,26 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
     @Override
     public void setDebug(boolean debug) {
         this.debug = debug;
+        if (window != null) window.setDebug(debug);
+    }
+
+    /**
+     * Only parse these fields (columns) from each database entry, other columns are skipped.
+     * Note: Must be invoked after 'open()'. A null value means 'parse all columns'
+     */
+    public void setFields(Collection<String> fields) {
+        projection = null;
+        projectionMaxIdx = -1;
+        if (fields == null) return;
+
+        projection = new boolean[fieldNames.length];
+        for (String field : fields) {
+            Integer idx = names2index.get(field);
+            if (idx != null) {
+                projection[idx] = true;
+                projectionMaxIdx = Math.max(projectionMaxIdx, idx);
+            }
+        }
     }
 
     @Override
@@ -513,6 +617,14 @@ public class DbNsfp implements DbMarker<Variant, DbNsfpEntry> {
         this.verbose = verbose;
     }
 
+    /**
+     * Window size: Keep entries this many bases behind the latest query. Larger jumps forward query the tabix index (seek)
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+        if (window != null) window.setWindowSize(windowSize);
+    }
+
     /**
      * Update indexes
      */
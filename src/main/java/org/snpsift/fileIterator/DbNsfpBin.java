@@ -0,0 +1,222 @@
+package org.snpsift.fileIterator;
+
+import org.snpeff.interval.Variant;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfInfoType;
+import org.snpsift.annotate.DbVcfMemChromo;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A pre-built binary dbNSFP database (see DbNsfpBinBuilder)
+ *
+ * File format:
+ *   - Magic number and format version
+ *   - Fields: Name, data type and 'multiple values' for each column
+ *   - Blocks: Entries from one chromosome, stored in columns (see DbNsfpBinBlock).
+ *     Each block has one compressed segment for positions, ref and alt, plus one
+ *     compressed segment for each column
+ *   - Index: Chromosome, genomic interval, file position and segment lengths for each block
+ *   - Index file position (last 8 bytes)
+ *
+ * Only the segments for the columns requested (see 'setFields()') are read
+ * and decompressed, no text is parsed.
+ *
+ * @author pcingola
+ */
+public class DbNsfpBin extends DbNsfp {
+
+    public static final int MAGIC = 0x53534E46; // File magic number: "SSNF"
+    public static final int FORMAT_VERSION = 2;
+    public static final String EXT = "sdbnsfp";
+    public static final int BLOCK_CACHE_SIZE = 16; // Number of decompressed blocks kept in memory
+
+    RandomAccessFile file;
+    Map<String, DbVcfMemChromo> chromos; // Blocks intervals by chromosome
+    String blockChr[]; // Chromosome for each block
+    long blockFilePos[]; // File position for each block
+    int segmentLen[][]; // Compressed size for each segment in each block (entries, then one segment per column)
+    Map<Integer, DbNsfpBinBlock> blockCache;
+
+    /**
+     * Is this a binary dbNSFP database file?
+     */
+    public static boolean isDbNsfpBin(String fileName) {
+        return fileName.endsWith("." + EXT);
+    }
+
+    public DbNsfpBin(String fileName) {
+        super(fileName);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (file != null) file.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Error closing file '" + fileName + "'", e);
+        }
+        file = null;
+        chromos = null;
+        blockCache = null;
+    }
+
+    public int getBlockCount() {
+        return blockChr.length;
+    }
+
+    /**
+     * Read (or get from cache) a block. Only the columns in the projection are read
+     */
+    public DbNsfpBinBlock getBlock(int blockIdx) {
+        DbNsfpBinBlock block = blockCache.get(blockIdx);
+        if (block != null) return block;
+
+        try {
+            // Read entries segment
+            long pos = blockFilePos[blockIdx];
+            int lens[] = segmentLen[blockIdx];
+            block = DbNsfpBinBlock.readEntries(readSegment(pos, lens[0]), blockChr[blockIdx], fieldNames.length);
+            pos += lens[0];
+
+            // Read columns
+            for (int i = 0; i < fieldNames.length; i++) {
+                if (projection == null || projection[i]) block.readColumn(readSegment(pos, lens[i + 1]), i, fieldNames[i]);
+                pos += lens[i + 1];
+            }
+
+            if (debug) Log.debug("Reading block " + blockIdx + ": " + block);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading block " + blockIdx + " from file '" + fileName + "'", e);
+        }
+
+        blockCache.put(blockIdx, block);
+        return block;
+    }
+
+    /**
+     * Open database: Read fields and index
+     */
+    @SuppressWarnings("serial")
+    @Override
+    public void open() {
+        try {
+            file = new RandomAccessFile(fileName, "r");
+            if (file.readInt() != MAGIC) throw new RuntimeException("File '" + fileName + "' is not a binary dbNSFP database");
+            int version = file.readInt();
+            if (version != FORMAT_VERSION) throw new RuntimeException("Unsupported binary dbNSFP database version " + version + " in file '" + fileName + "'. Expected version " + FORMAT_VERSION + ", please rebuild the database");
+
+            // Read fields
+            int numFields = file.readInt();
+            fieldNames = new String[numFields];
+            types = new VcfInfoType[numFields];
+            multipleValues = new boolean[numFields];
+            names2index = new HashMap<>();
+            chromosomeIdx = startIdx = altIdx = refIdx = -1;
+            for (int i = 0; i < numFields; i++) {
+                fieldNames[i] = file.readUTF();
+                String type = file.readUTF();
+                types[i] = (type.isEmpty() ? null : VcfInfoType.valueOf(type));
+                multipleValues[i] = file.readBoolean();
+                names2index.put(fieldNames[i], i);
+                updateIndexes(fieldNames[i], i);
+            }
+            updateChrPosRefAltIndex();
+            forceMissingTypesAsString();
+
+            // Read index
+            file.seek(file.length() - Long.BYTES);
+            file.seek(file.readLong());
+            int numBlocks = file.readInt();
+            blockChr = new String[numBlocks];
+            blockFilePos = new long[numBlocks];
+            segmentLen = new int[numBlocks][];
+            chromos = new HashMap<>();
+            for (int i = 0; i < numBlocks; i++) {
+                blockChr[i] = file.readUTF();
+                int start = file.readInt();
+                int end = file.readInt();
+                blockFilePos[i] = file.readLong();
+                segmentLen[i] = new int[file.readInt()];
+                for (int j = 0; j < segmentLen[i].length; j++)
+                    segmentLen[i][j] = file.readInt();
+
+                DbVcfMemChromo dbChr = chromos.get(blockChr[i]);
+                if (dbChr == null) {
+                    dbChr = new DbVcfMemChromo(blockChr[i]);
+                    chromos.put(blockChr[i], dbChr);
+                }
+                dbChr.add(start, end, i);
+            }
+
+            for (DbVcfMemChromo dbChr : chromos.values())
+                dbChr.build();
+
+            if (verbose) Log.info("Opened binary dbNSFP database '" + fileName + "': " + numBlocks + " blocks, " + chromos.size() + " chromosomes, " + numFields + " fields");
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening file '" + fileName + "'", e);
+        }
+
+        blockCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DbNsfpBinBlock> eldest) {
+                return size() > BLOCK_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Find database entries matching the variant
+     *
+     * @return A list of results or null if the chromosome is not in the database
+     */
+    @Override
+    public Collection<DbNsfpEntry> query(Variant variant) {
+        DbVcfMemChromo dbChr = chromos.get(variant.getChromosomeName());
+        if (dbChr == null) return null;
+
+        // Find blocks including the position (blocks are sorted by position)
+        int pos = variant.getStart();
+        int blocks[] = dbChr.query(pos, pos).toArray();
+        Arrays.sort(blocks);
+
+        List<DbNsfpEntry> results = new LinkedList<>();
+        for (int blockIdx : blocks) {
+            DbNsfpBinBlock block = getBlock(blockIdx);
+            for (int i = block.find(pos); i < block.size() && block.getStart(i) == pos; i++) {
+                // Compare ref and alt before creating the entry
+                if (!variant.getReference().equalsIgnoreCase(block.getRef(i)) || !variant.getAlt().equalsIgnoreCase(block.getAlt(i))) continue;
+
+                DbNsfpEntry de = block.dbNsfpEntry(this, i);
+                if (match(variant, de)) results.add(de);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Read and decompress a segment
+     */
+    DataInputStream readSegment(long pos, int len) throws IOException {
+        byte bytes[] = new byte[len];
+        file.seek(pos);
+        file.readFully(bytes);
+        return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Only read these fields (columns). Blocks already read are discarded
+     */
+    @Override
+    public void setFields(Collection<String> fields) {
+        super.setFields(fields);
+        if (blockCache != null) blockCache.clear();
+    }
+
+}
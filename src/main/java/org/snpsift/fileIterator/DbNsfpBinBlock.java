@@ -0,0 +1,278 @@
+package org.snpsift.fileIterator;
+
+import org.snpeff.vcf.VcfInfoType;
+import org.snpsift.annotate.InfoColumn;
+import org.snpsift.annotate.InfoColumnFloat;
+import org.snpsift.annotate.InfoColumnInt;
+import org.snpsift.annotate.InfoColumnString;
+import org.snpsift.annotate.StringDictionary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A block of consecutive dbNSFP entries from one chromosome in a binary database (see DbNsfpBin)
+ *
+ * Entries are stored in columns: Positions as an int array, ref and alt as
+ * strings and one column for each database field. Columns are typed using the
+ * data types inferred for the database (see DbNsfp.getTypes()), numeric values
+ * are stored as numbers and strings are dictionary encoded. A value that cannot
+ * be stored in a column promotes it to a type that accepts it (integer columns
+ * to float columns, others to string columns, see 'InfoColumn.promote()').
+ *
+ * Entries (positions, ref, alt) and each column are written as separate
+ * 'segments', so that only the columns requested have to be read.
+ *
+ * Note: Missing values (empty or '.') are not stored
+ *
+ * @author pcingola
+ */
+public class DbNsfpBinBlock {
+
+    public static final byte ENCODING_COLUMN = 0; // Column serialized by 'InfoColumn.write()'
+    public static final byte ENCODING_DICTIONARY = 1; // String column: Dictionary and codes
+
+    String chromosome;
+    int size;
+    int start[]; // Zero-based position
+    String ref[], alt[];
+    InfoColumn columns[]; // One column for each database field (null if the column has not been read)
+
+    /**
+     * Create a column for a data type
+     */
+    static InfoColumn newColumn(String name, VcfInfoType type) {
+        if (type == VcfInfoType.Integer) return new InfoColumnInt(name);
+        if (type == VcfInfoType.Float) return new InfoColumnFloat(name);
+        return new InfoColumnString(name);
+    }
+
+    /**
+     * Read entries segment (see 'writeEntries()')
+     */
+    public static DbNsfpBinBlock readEntries(DataInputStream in, String chromosome, int numFields) throws IOException {
+        int size = in.readInt();
+        DbNsfpBinBlock block = new DbNsfpBinBlock(chromosome, size, numFields);
+
+        for (int i = 0; i < size; i++)
+            block.start[i] = in.readInt();
+        for (int i = 0; i < size; i++)
+            block.ref[i] = InfoColumn.readString(in);
+        for (int i = 0; i < size; i++)
+            block.alt[i] = InfoColumn.readString(in);
+
+        block.size = size;
+        return block;
+    }
+
+    /**
+     * Create an empty block, columns are typed according to 'types'
+     */
+    public DbNsfpBinBlock(String chromosome, int capacity, String fieldNames[], VcfInfoType types[]) {
+        this(chromosome, capacity, fieldNames.length);
+        for (int i = 0; i < fieldNames.length; i++)
+            columns[i] = newColumn(fieldNames[i], types[i]);
+    }
+
+    DbNsfpBinBlock(String chromosome, int capacity, int numFields) {
+        this.chromosome = chromosome;
+        start = new int[capacity];
+        ref = new String[capacity];
+        alt = new String[capacity];
+        columns = new InfoColumn[numFields];
+        size = 0;
+    }
+
+    /**
+     * Add an entry: Position, ref, alt and all values (one per column)
+     */
+    public void add(int pos, String refStr, String altStr, String values[]) {
+        if (size >= start.length) grow();
+
+        start[size] = pos;
+        ref[size] = refStr;
+        alt[size] = altStr;
+
+        for (int i = 0; i < columns.length && i < values.length; i++) {
+            String val = values[i];
+            if (val.isEmpty() || val.equals(".")) continue; // Missing value
+
+            // Add to column, change column type if needed
+            if (!columns[i].add(size, val)) {
+                columns[i] = columns[i].promote(val);
+                columns[i].add(size, val);
+            }
+        }
+
+        size++;
+    }
+
+    /**
+     * Create a database entry from record 'idx'. Only columns that have been read are added
+     */
+    public DbNsfpEntry dbNsfpEntry(DbNsfp dbNsfp, int idx) {
+        DbNsfpEntry de = new DbNsfpEntry(dbNsfp, dbNsfp.getChromosome(chromosome), start[idx], ref[idx], alt[idx]);
+        for (InfoColumn col : columns)
+            if (col != null) de.add(col.getName(), col.has(idx) ? col.get(idx) : "");
+        return de;
+    }
+
+    /**
+     * Index of the first record at position 'pos' or later (records are sorted by position)
+     */
+    public int find(int pos) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start[mid] < pos) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public String getAlt(int idx) {
+        return alt[idx];
+    }
+
+    public String getChromosome() {
+        return chromosome;
+    }
+
+    /**
+     * Column for field 'colIdx' (null if the column has not been read)
+     */
+    public InfoColumn getColumn(int colIdx) {
+        return columns[colIdx];
+    }
+
+    /**
+     * Maximum position
+     */
+    public int getEnd() {
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++)
+            max = Math.max(max, start[i]);
+        return max;
+    }
+
+    public String getRef(int idx) {
+        return ref[idx];
+    }
+
+    /**
+     * Minimum position
+     */
+    public int getStart() {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++)
+            min = Math.min(min, start[i]);
+        return min;
+    }
+
+    public int getStart(int idx) {
+        return start[idx];
+    }
+
+    void grow() {
+        int newCapacity = Math.max(16, start.length + (start.length >> 1));
+        start = Arrays.copyOf(start, newCapacity);
+        ref = Arrays.copyOf(ref, newCapacity);
+        alt = Arrays.copyOf(alt, newCapacity);
+    }
+
+    public boolean isEmpty() {
+        return size <= 0;
+    }
+
+    /**
+     * Read column 'colIdx' (see 'writeColumn()')
+     */
+    public void readColumn(DataInputStream in, int colIdx, String name) throws IOException {
+        byte encoding = in.readByte();
+        switch (encoding) {
+            case ENCODING_COLUMN:
+                columns[colIdx] = InfoColumn.read(in, name);
+                break;
+
+            case ENCODING_DICTIONARY:
+                byte bits[] = new byte[in.readInt()];
+                in.readFully(bits);
+                BitSet present = BitSet.valueOf(bits);
+
+                String dictionary[] = new String[in.readInt()];
+                for (int i = 0; i < dictionary.length; i++)
+                    dictionary[i] = InfoColumn.readString(in);
+
+                InfoColumnString col = new InfoColumnString(name);
+                for (int idx = present.nextSetBit(0); idx >= 0; idx = present.nextSetBit(idx + 1))
+                    col.add(idx, dictionary[in.readInt()]);
+                col.compact();
+                columns[colIdx] = col;
+                break;
+
+            default:
+                throw new RuntimeException("Unknown column encoding " + encoding + " for field '" + name + "'");
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "Chromosome: " + chromosome + ", size: " + size + ", columns: " + columns.length;
+    }
+
+    /**
+     * Write column 'colIdx': String columns are written as a dictionary and codes, other columns use 'InfoColumn.write()'
+     */
+    public void writeColumn(DataOutputStream out, int colIdx) throws IOException {
+        InfoColumn col = columns[colIdx];
+        if (!(col instanceof InfoColumnString)) {
+            out.writeByte(ENCODING_COLUMN);
+            col.write(out);
+            return;
+        }
+
+        // Presence bitmap
+        BitSet present = new BitSet(size);
+        for (int idx = 0; idx < size; idx++)
+            if (col.has(idx)) present.set(idx);
+
+        // Dictionary (only the strings used in this block) and codes
+        StringDictionary dictionary = new StringDictionary();
+        int codes[] = new int[size];
+        for (int idx = present.nextSetBit(0); idx >= 0; idx = present.nextSetBit(idx + 1))
+            codes[idx] = dictionary.add(col.get(idx));
+
+        out.writeByte(ENCODING_DICTIONARY);
+        byte bits[] = present.toByteArray();
+        out.writeInt(bits.length);
+        out.write(bits);
+
+        out.writeInt(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++)
+            InfoColumn.writeString(out, dictionary.get(i));
+
+        for (int idx = present.nextSetBit(0); idx >= 0; idx = present.nextSetBit(idx + 1))
+            out.writeInt(codes[idx]);
+    }
+
+    /**
+     * Write entries segment: Positions, ref and alt
+     */
+    public void writeEntries(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++)
+            out.writeInt(start[i]);
+        for (int i = 0; i < size; i++)
+            InfoColumn.writeString(out, ref[i]);
+        for (int i = 0; i < size; i++)
+            InfoColumn.writeString(out, alt[i]);
+    }
+
+}
@@ -0,0 +1,193 @@
+package org.snpsift.fileIterator;
+
+import org.snpeff.fileIterator.LineFileIterator;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfInfoType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Build a binary dbNSFP database (see DbNsfpBin) from a dbNSFP file
+ *
+ * Column types are the data types inferred for the database (see
+ * 'DbNsfp.dataTypes()', which uses the '.data_types' cache file if available).
+ * Entries are grouped into blocks of consecutive entries in the same chromosome,
+ * each block is stored in columns and each column is compressed separately.
+ *
+ * @author pcingola
+ */
+public class DbNsfpBinBuilder {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024; // Maximum number of entries per block
+    public static final int SHOW_EVERY = 100 * 1000;
+
+    boolean verbose;
+    boolean debug;
+    int blockSize = DEFAULT_BLOCK_SIZE;
+    long filePos; // Current output file position
+    String dbNsfpFileName, dbFileName;
+    DataOutputStream out;
+    List<String> blockChr;
+    List<Integer> blockStart, blockEnd;
+    List<Long> blockFilePos;
+    List<int[]> blockSegmentLen;
+
+    public DbNsfpBinBuilder(String dbNsfpFileName, String dbFileName) {
+        this.dbNsfpFileName = dbNsfpFileName;
+        this.dbFileName = dbFileName;
+    }
+
+    /**
+     * Build database
+     */
+    public void build() {
+        if (verbose) Log.info("Building binary dbNSFP database '" + dbFileName + "' from file '" + dbNsfpFileName + "'");
+
+        blockChr = new ArrayList<>();
+        blockStart = new ArrayList<>();
+        blockEnd = new ArrayList<>();
+        blockFilePos = new ArrayList<>();
+        blockSegmentLen = new ArrayList<>();
+
+        // Field names and data types
+        DbNsfp dbNsfp = new DbNsfp(dbNsfpFileName);
+        dbNsfp.setVerbose(verbose);
+        dbNsfp.setDebug(debug);
+        dbNsfp.dataTypes();
+        String fieldNames[] = dbNsfp.getFieldNamesSorted();
+        VcfInfoType types[] = dbNsfp.getTypes();
+
+        LineFileIterator lfi = new LineFileIterator(dbNsfpFileName);
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dbFileName)));
+
+            // Write header
+            out.writeInt(DbNsfpBin.MAGIC);
+            out.writeInt(DbNsfpBin.FORMAT_VERSION);
+            out.writeInt(fieldNames.length);
+            for (int i = 0; i < fieldNames.length; i++) {
+                out.writeUTF(fieldNames[i]);
+                out.writeUTF(types[i] != null ? types[i].toString() : "");
+                out.writeBoolean(dbNsfp.multipleValues[i]);
+            }
+            out.flush();
+            filePos = out.size();
+
+            // Write blocks
+            int count = 0;
+            DbNsfpBinBlock block = null;
+            for (String line : lfi) {
+                if (line.startsWith(DbNsfp.HEADER_PREFIX) || line.isEmpty()) continue;
+
+                String values[] = Gpr.removeBackslashR(line).split(DbNsfp.COLUMN_SEPARATOR, -1);
+                String chr = values[dbNsfp.getChromosomeIdx()];
+
+                // New chromosome or block is full?
+                if (block != null && (block.size() >= blockSize || !block.getChromosome().equals(chr))) {
+                    writeBlock(block);
+                    block = null;
+                }
+
+                if (block == null) block = new DbNsfpBinBlock(chr, blockSize, fieldNames, types);
+                int pos = Gpr.parseIntSafe(values[dbNsfp.getStartIdx()]) - 1;
+                block.add(pos, values[dbNsfp.getRefIdx()], values[dbNsfp.getAltIdx()], values);
+
+                count++;
+                if (verbose) Gpr.showMark(count, SHOW_EVERY);
+            }
+            if (block != null && !block.isEmpty()) writeBlock(block);
+
+            // Write index and index position
+            long indexPos = filePos;
+            writeIndex();
+            out.writeLong(indexPos);
+
+            if (verbose) Log.info("Done. Entries: " + count + ", blocks: " + blockFilePos.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing file '" + dbFileName + "'", e);
+        } finally {
+            lfi.close();
+            try {
+                if (out != null) out.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Write a block: Entries segment and one segment per column, each one compressed separately
+     */
+    void writeBlock(DbNsfpBinBlock block) throws IOException {
+        int numCols = block.columns.length;
+        int lens[] = new int[numCols + 1];
+        long pos = filePos;
+
+        lens[0] = writeSegment(block, -1);
+        for (int i = 0; i < numCols; i++)
+            lens[i + 1] = writeSegment(block, i);
+
+        blockChr.add(block.getChromosome());
+        blockStart.add(block.getStart());
+        blockEnd.add(block.getEnd());
+        blockFilePos.add(pos);
+        blockSegmentLen.add(lens);
+        if (debug) Log.debug("Writing block: " + block + ", file position: " + pos + ", compressed size: " + (filePos - pos));
+    }
+
+    /**
+     * Write blocks index
+     */
+    void writeIndex() throws IOException {
+        out.writeInt(blockFilePos.size());
+        for (int i = 0; i < blockFilePos.size(); i++) {
+            out.writeUTF(blockChr.get(i));
+            out.writeInt(blockStart.get(i));
+            out.writeInt(blockEnd.get(i));
+            out.writeLong(blockFilePos.get(i));
+
+            int lens[] = blockSegmentLen.get(i);
+            out.writeInt(lens.length);
+            for (int len : lens)
+                out.writeInt(len);
+        }
+    }
+
+    /**
+     * Compress and write a segment: Entries (colIdx < 0) or a column
+     *
+     * @return Compressed size
+     */
+    int writeSegment(DbNsfpBinBlock block, int colIdx) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream segmentOut = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            if (colIdx < 0) block.writeEntries(segmentOut);
+            else block.writeColumn(segmentOut, colIdx);
+        }
+
+        bytes.writeTo(out);
+        filePos += bytes.size();
+        return bytes.size();
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.snpsift.fileIterator;
 
+import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
 import org.snpeff.vcf.VcfEntry;
@@ -29,6 +30,21 @@ public class DbNsfpEntry extends Variant {
         parseChrPosRefAlt();
     }
 
+    /**
+     * Create an entry from values that have already been parsed (e.g. from a binary database).
+     * Values are added using 'add()'
+     */
+    public DbNsfpEntry(DbNsfp dbNsfp, Chromosome chromosome, int start, String ref, String alt) {
+        super();
+        this.dbNsfp = dbNsfp;
+        parent = chromosome;
+        this.start = this.end = start;
+        variantType = VariantType.SNP;
+        this.ref = ref;
+        this.alt = genotype = alt;
+        values = new HashMap<>();
+    }
+
     public static String[] splitValuesField(String value) {
         if (value.contains(DbNsfp.SUBFIELD_SEPARATOR_2)) return value.split(DbNsfp.SUBFIELD_SEPARATOR_2);
         return value.split(DbNsfp.SUBFIELD_SEPARATOR);
@@ -87,21 +103,30 @@ public class DbNsfpEntry extends Variant {
 
     /**
      * Parse dbSNFP 'Chr, pos, ref, alt' values from a single line
+     * Note: Only the first columns (up to 'dbNsfp.getChrPosRefAltIdx()') are scanned
      */
     protected void parseChrPosRefAlt() {
-        String[] vals = line.split(DbNsfp.COLUMN_SEPARATOR, -1);
+        int maxIdx = dbNsfp.getChrPosRefAltIdx();
+        int colStart = 0;
+        for (int i = 0; i <= maxIdx; i++) {
+            int colEnd = line.indexOf('\t', colStart);
+            if (colEnd < 0) colEnd = line.length();
 
-        // Parse chromosome
-        String chromosome = vals[dbNsfp.getChromosomeIdx()];
-        parent = dbNsfp.getChromosome(chromosome);
+            // Parse chromosome
+            if (i == dbNsfp.getChromosomeIdx()) parent = dbNsfp.getChromosome(line.substring(colStart, colEnd));
 
-        // Parse start & end
-        start = end = parsePosition(vals[dbNsfp.getStartIdx()]);
-        variantType = VariantType.SNP;
+            // Parse start & end
+            if (i == dbNsfp.getStartIdx()) start = end = parsePosition(line.substring(colStart, colEnd));
 
-        // Ref & Alt entries
-        ref = vals[dbNsfp.getRefIdx()];
-        alt = genotype = vals[dbNsfp.getAltIdx()];
+            // Ref & Alt entries
+            if (i == dbNsfp.getRefIdx()) ref = line.substring(colStart, colEnd);
+            if (i == dbNsfp.getAltIdx()) alt = genotype = line.substring(colStart, colEnd);
+
+            if (colEnd >= line.length()) break;
+            colStart = colEnd + 1;
+        }
+
+        variantType = VariantType.SNP;
     }
 
     /**
@@ -110,15 +135,27 @@ public class DbNsfpEntry extends Variant {
      * Note: This method is supposed to be a lazy parsing of the key/value
      * pairs, so it DOES NOT store 'chr, pos, ref, alt'. You can use
      * `parseChrPosRefAlt()` for that.
+     * <p>
+     * Note: If the database has a projection (see 'DbNsfp.setFields()'),
+     * only those columns are stored, the line is scanned once and
+     * scanning stops after the last projected column.
      */
     protected void parseKeyValues() {
-        // Initialize DbNsfpEntry
-        String[] vals = line.split(DbNsfp.COLUMN_SEPARATOR, -1);
+        boolean[] projection = dbNsfp.getProjection();
+        int maxIdx = (projection != null ? dbNsfp.getProjectionMaxIdx() : dbNsfp.getFieldCount() - 1);
 
         // Add 'key=value' pairs
         values = new HashMap<>();
-        for (int i = 0; i < dbNsfp.getFieldCount(); i++)
-            add(dbNsfp.getFieldName(i), vals[i]);
+        int colStart = 0;
+        for (int i = 0; i <= maxIdx; i++) {
+            int colEnd = line.indexOf('\t', colStart);
+            if (colEnd < 0) colEnd = line.length();
+
+            if (projection == null || projection[i]) add(dbNsfp.getFieldName(i), line.substring(colStart, colEnd));
+
+            if (colEnd >= line.length()) break;
+            colStart = colEnd + 1;
+        }
     }
 
     /**
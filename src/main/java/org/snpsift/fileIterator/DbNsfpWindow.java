@@ -0,0 +1,242 @@
+package org.snpsift.fileIterator;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.snpeff.interval.Variant;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sliding window over a (sorted, tabix indexed) dbNSFP file.
+ *
+ * Database lines are streamed forward from the tabix file, instead of querying
+ * the index for each variant. This avoids decompressing the same BGZF blocks
+ * and re-reading the same lines for consecutive variants in a sorted VCF file.
+ * Each tabix query covers 'querySize' bases (an open ended query would collect
+ * the index chunks for the rest of the chromosome on every seek), streaming
+ * continues with the next query when the current one is exhausted.
+ *
+ * Lines within 'windowSize' bases behind the latest query are kept (lines are
+ * only parsed into DbNsfpEntry when their position, ref and alt match a
+ * query, see 'DbNsfp.matchRefAlt()'). The file is only
+ * queried again (seek) when changing chromosomes, going back before the
+ * window or jumping forward more than 'windowSize' bases.
+ *
+ * @author pcingola
+ */
+public class DbNsfpWindow {
+
+    public static final int DEFAULT_WINDOW_SIZE = 100; // Default window size (bases)
+    public static final int DEFAULT_QUERY_SIZE = 1000 * 1000; // Default tabix query size (bases)
+    public static final int INITIAL_CAPACITY = 1024;
+
+    DbNsfp dbNsfp;
+    TabixReader tabixReader;
+    int windowSize;
+    int querySize = DEFAULT_QUERY_SIZE;
+    boolean debug;
+    String chr; // Chromosome being streamed
+    boolean chrFound; // Is the chromosome in the database?
+    TabixReader.Iterator iterator; // Stream of lines (null if there is nothing else to read in the current query)
+    int queryStart, queryEnd; // Current tabix query [queryStart, queryEnd) (zero-based)
+    int windowStart; // Lines before this position have been discarded
+    int loadedEnd = -1; // All lines up to this position have been read
+    String[] lines = new String[INITIAL_CAPACITY]; // Lines in the window (sorted by position)
+    int[] positions = new int[INITIAL_CAPACITY]; // Position of each line (zero-based)
+    DbNsfpEntry[] entries = new DbNsfpEntry[INITIAL_CAPACITY]; // Parsed entries (lazy)
+    int first, size; // Lines in the window are [first, size)
+    int countSeek, countLines;
+
+    public DbNsfpWindow(DbNsfp dbNsfp, TabixReader tabixReader, int windowSize) {
+        this.dbNsfp = dbNsfp;
+        this.tabixReader = tabixReader;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Add a line to the window
+     */
+    void add(String line, int pos) {
+        if (size >= lines.length) {
+            if (first > 0) compact();
+            if (size >= lines.length) {
+                int len = 2 * lines.length;
+                lines = Arrays.copyOf(lines, len);
+                positions = Arrays.copyOf(positions, len);
+                entries = Arrays.copyOf(entries, len);
+            }
+        }
+
+        lines[size] = line;
+        positions[size] = pos;
+        entries[size] = null;
+        size++;
+    }
+
+    /**
+     * Remove discarded lines from the beginning of the arrays
+     */
+    void compact() {
+        int len = size - first;
+        System.arraycopy(lines, first, lines, 0, len);
+        System.arraycopy(positions, first, positions, 0, len);
+        System.arraycopy(entries, first, entries, 0, len);
+        Arrays.fill(lines, len, size, null);
+        Arrays.fill(entries, len, size, null);
+        first = 0;
+        size = len;
+    }
+
+    /**
+     * Discard lines before 'pos'
+     */
+    void discard(int pos) {
+        if (pos <= windowStart) return;
+        windowStart = pos;
+        while (first < size && positions[first] < pos) {
+            lines[first] = null;
+            entries[first] = null;
+            first++;
+        }
+    }
+
+    /**
+     * Index of the first line at position 'pos' or later
+     */
+    int find(int pos) {
+        int lo = first, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (positions[mid] < pos) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public int getCountLines() {
+        return countLines;
+    }
+
+    public int getCountSeek() {
+        return countSeek;
+    }
+
+    /**
+     * Read lines until all lines up to position 'pos' are in the window
+     */
+    void load(int pos) {
+        try {
+            while (loadedEnd < pos) {
+                String line = (iterator != null ? iterator.next() : null);
+                if (line == null) {
+                    // End of query: All lines before 'queryEnd' have been read, continue with the next query
+                    loadedEnd = queryEnd - 1;
+                    if (loadedEnd < pos) queryTabix(queryEnd, Math.max(pos + 1, (int) Math.min((long) queryEnd + querySize, Integer.MAX_VALUE)));
+                    continue;
+                }
+
+                line = Gpr.removeBackslashR(line);
+                int linePos = position(line);
+                if (linePos < queryStart) continue; // Already read by the previous query
+                add(line, linePos);
+                loadedEnd = linePos - 1; // Lines are sorted: There are no more lines before 'linePos'
+                countLines++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading tabix file '" + dbNsfp.fileName + "'", e);
+        }
+    }
+
+    /**
+     * Parse position (zero-based) from a database line, without splitting the whole line
+     */
+    int position(String line) {
+        int start = 0;
+        for (int i = 0; i < dbNsfp.getStartIdx() && start >= 0; i++) {
+            start = line.indexOf('\t', start);
+            if (start >= 0) start++;
+        }
+        if (start < 0) return -1;
+
+        int end = line.indexOf('\t', start);
+        try {
+            return Integer.parseInt(line, start, end < 0 ? line.length() : end, 10) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Find database entries at the variant's position, having the same ref and alt
+     *
+     * @return Entries matching the variant or null if the chromosome is not in the database
+     */
+    public List<DbNsfpEntry> query(Variant variant) {
+        int pos = variant.getStart();
+        if (!variant.getChromosomeName().equals(chr) || pos < windowStart || pos > (long) loadedEnd + windowSize) seek(variant);
+        else {
+            load(pos);
+            discard(Math.max(pos - windowSize, 0));
+        }
+
+        if (!chrFound) return null;
+
+        // Entries at this position (only lines matching ref / alt are parsed)
+        List<DbNsfpEntry> results = new ArrayList<>();
+        for (int i = find(pos); i < size && positions[i] == pos; i++) {
+            if (entries[i] == null) {
+                if (!dbNsfp.matchRefAlt(variant, lines[i])) continue;
+                entries[i] = new DbNsfpEntry(dbNsfp, lines[i]);
+            }
+            results.add(entries[i]);
+        }
+
+        return results;
+    }
+
+    /**
+     * Query tabix index for lines in [start, end) (zero-based)
+     */
+    void queryTabix(int start, int end) {
+        queryStart = start;
+        queryEnd = end;
+        iterator = tabixReader.query(chr, start, end);
+    }
+
+    /**
+     * Discard all lines and start streaming from the variant's position
+     */
+    void seek(Variant variant) {
+        Arrays.fill(lines, first, size, null);
+        Arrays.fill(entries, first, size, null);
+        first = size = 0;
+
+        chr = variant.getChromosomeName();
+        windowStart = variant.getStart();
+        loadedEnd = windowStart - 1;
+        queryTabix(windowStart, (int) Math.min((long) windowStart + querySize, Integer.MAX_VALUE));
+        countSeek++;
+        if (debug) Log.debug("Seek: " + chr + ":" + (windowStart + 1));
+
+        chrFound = (iterator != null);
+        if (chrFound) load(windowStart);
+        else loadedEnd = Integer.MAX_VALUE; // Nothing to read
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public void setQuerySize(int querySize) {
+        this.querySize = querySize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+}
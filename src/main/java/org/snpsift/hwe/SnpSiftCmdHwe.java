@@ -10,6 +10,7 @@ import org.snpeff.vcf.VcfHeaderEntry;
 import org.snpeff.vcf.VcfHeaderInfo;
 import org.snpeff.vcf.VcfInfoType;
 import org.snpsift.SnpSift;
+import org.snpsift.pipeline.VcfPipeline;
 
 /**
  * Calculate Hardy-Weinberg equilibrium and goodness of fit for each entry in a VCF file
@@ -20,6 +21,8 @@ public class SnpSiftCmdHwe extends SnpSift {
 
 	public static final int SHOW_EVERY = 1000;
 
+	VcfHwe vcfHwe = new VcfHwe();
+
 	/**
 	 * Main
 	 */
@@ -36,6 +39,15 @@ public class SnpSiftCmdHwe extends SnpSift {
 		super(args);
 	}
 
+	/**
+	 * Add Hardy-Weinberg INFO fields
+	 */
+	@Override
+	public boolean annotate(VcfEntry vcfEntry) {
+		vcfHwe.hwe(vcfEntry, true);
+		return true;
+	}
+
 	@Override
 	protected List<VcfHeaderEntry> headers() {
 		List<VcfHeaderEntry> addh = super.headers();
@@ -70,36 +82,33 @@ public class SnpSiftCmdHwe extends SnpSift {
 	}
 
 	/**
-	 * Analyze the file (run multi-thread mode)
+	 * Entries are annotated independently (VcfHwe has no state)
+	 */
+	@Override
+	protected boolean isAnnotateThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * Analyze the file
 	 */
 	@Override
 	public boolean run() {
-		Log.info("Reading '" + vcfInputFile + "'. Running single threaded mode.");
+		Log.info("Reading '" + vcfInputFile + "'");
 
 		VcfFileIterator vcfFile = new VcfFileIterator(vcfInputFile);
 		vcfFile.setDebug(debug);
-
-		VcfHwe vcfHwe = new VcfHwe();
 		VcfHwe.debug = debug;
 
-		// Read all vcfEntries
-		int entryNum = 1;
-		for (VcfEntry vcfEntry : vcfFile) {
-
-			if (entryNum == 1) {
-				headers();
-				String headerStr = vcfFile.getVcfHeader().toString();
-				if (!headerStr.isEmpty()) System.out.println(headerStr);
-			}
-
-			vcfHwe.hwe(vcfEntry, true);
-			System.out.println(vcfEntry);
-
-			// Show progress
-			Gpr.showMark(entryNum++, SHOW_EVERY);
-		}
+		VcfPipeline pipeline = newVcfPipeline(vcfFile, VcfPipeline.processor(vcfEntry -> {
+			annotate(vcfEntry);
+			return vcfEntry.toString();
+		}));
+		int count[] = { 0 };
+		pipeline.setReadListener(ve -> Gpr.showMark(++count[0], SHOW_EVERY));
+		runVcfPipeline(pipeline);
 
-		Log.info("Done: " + entryNum + " entries processed.");
+		Log.info("Done: " + pipeline.getCountIn() + " entries processed.");
 		return true;
 	}
 
@@ -82,6 +82,7 @@ public class LangFactory {
 	protected static boolean debug = false;
 
 	ArrayList<HashSet<String>> sets = new ArrayList<HashSet<String>>();
+	ArrayList<StringSet> stringSets = new ArrayList<StringSet>(); // Look-up sets, created from 'sets' (shared by all 'in' expressions)
 	EffFormatVersion formatVersion;
 	boolean exceptionIfNotFound = false;
 
@@ -285,7 +286,7 @@ public class LangFactory {
 		Expression exprSetIdx = expressionFactory(tree.getChild(4));
 		Function fun = null;
 
-		fun = new In(sets, expr, exprSetIdx);
+		fun = new In(sets, stringSets, expr, exprSetIdx);
 		return fun;
 	}
 
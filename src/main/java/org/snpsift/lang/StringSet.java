@@ -0,0 +1,97 @@
+package org.snpsift.lang;
+
+import java.util.Collection;
+
+/**
+ * An immutable set of strings, optimized for look-ups (e.g. 'in SET[n]' with large gene lists).
+ *
+ * Open addressing (linear probing) on arrays of keys and hash codes, created
+ * once when the set is loaded. Hash codes are the same as 'String.hashCode()',
+ * so a region of a string (e.g. a sub-field 'a,b,c') can be looked-up without
+ * creating a new string.
+ *
+ * @author pcingola
+ */
+public class StringSet {
+
+	String[] keys;
+	int[] hashes;
+	int mask;
+	int size;
+
+	/**
+	 * Hash code of a region [start, end) of a string (same as 'str.substring(start, end).hashCode()')
+	 */
+	public static int hash(String str, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + str.charAt(i);
+		return h;
+	}
+
+	/**
+	 * Spread hash bits, so that lower bits can be used as table index
+	 */
+	static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	public StringSet(Collection<String> strs) {
+		// Table size: Power of two, load factor at most 0.5
+		int capacity = 2;
+		while (capacity < 2 * strs.size())
+			capacity <<= 1;
+
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+
+		for (String str : strs)
+			if (str != null) add(str);
+	}
+
+	void add(String str) {
+		int h = str.hashCode();
+		for (int i = spread(h) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == null) {
+				keys[i] = str;
+				hashes[i] = h;
+				size++;
+				return;
+			}
+			if (hashes[i] == h && keys[i].equals(str)) return; // Already in the set
+		}
+	}
+
+	/**
+	 * Is 'str' in the set?
+	 */
+	public boolean contains(String str) {
+		if (str == null) return false;
+
+		int h = str.hashCode(); // Cached by String
+		for (int i = spread(h) & mask; keys[i] != null; i = (i + 1) & mask)
+			if (hashes[i] == h && keys[i].equals(str)) return true;
+
+		return false;
+	}
+
+	/**
+	 * Is the region [start, end) of 'str' in the set? (same as 'contains(str.substring(start, end))')
+	 */
+	public boolean contains(String str, int start, int end) {
+		int len = end - start;
+		int h = hash(str, start, end);
+		for (int i = spread(h) & mask; keys[i] != null; i = (i + 1) & mask) {
+			String key = keys[i];
+			if (hashes[i] == h && key.length() == len && key.regionMatches(0, str, start, len)) return true;
+		}
+
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+}
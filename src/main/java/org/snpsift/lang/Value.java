@@ -3,48 +3,183 @@ package org.snpsift.lang;
 import org.snpeff.util.Gpr;
 import org.snpeff.vcf.VcfInfoType;
 
+/**
+ * A value: null, boolean, integer, float or string
+ *
+ * Values are stored in primitive slots plus a type tag, so numeric and
+ * boolean values do not create boxed (Long, Double, Boolean) objects
+ *
+ * @author pcingola
+ */
 public class Value {
 
 	public static boolean debug = false;
 
+	// Value types
+	static final byte NULL_TYPE = 0;
+	static final byte BOOL_TYPE = 1;
+	static final byte INT_TYPE = 2;
+	static final byte FLOAT_TYPE = 3;
+	static final byte STRING_TYPE = 4;
+
 	public static final Value FALSE = new Value(false);
 	public static final Value TRUE = new Value(true);
-	public static final Value NULL = new Value(null);
+	public static final Value NULL = new Value((Object) null);
+
+	// Small integer values are cached (e.g. counts, flags, depths), so they do not create new objects
+	public static final int CACHE_MIN = -128;
+	public static final int CACHE_MAX = 1024;
+	private static final Value CACHE[] = new Value[CACHE_MAX - CACHE_MIN];
+
+	static {
+		for (int i = 0; i < CACHE.length; i++)
+			CACHE[i] = new Value((long) (i + CACHE_MIN));
+	}
+
+	final byte valueType;
+	final long longValue; // Integer and boolean values (boolean: 1 or 0)
+	final double floatValue;
+	final String strValue;
+
+	/**
+	 * Boolean value (no new object is created)
+	 */
+	public static Value valueOf(boolean b) {
+		return b ? TRUE : FALSE;
+	}
+
+	/**
+	 * Float value
+	 */
+	public static Value valueOf(double d) {
+		return new Value(d);
+	}
+
+	/**
+	 * Integer value (small values are cached)
+	 */
+	public static Value valueOf(long l) {
+		if (CACHE_MIN <= l && l < CACHE_MAX) return CACHE[(int) (l - CACHE_MIN)];
+		return new Value(l);
+	}
 
-	final Object value;
+	/**
+	 * Value from a (nullable) string
+	 */
+	public static Value valueOf(String s) {
+		return s == null ? NULL : new Value(s);
+	}
+
+	public Value(boolean b) {
+		this(BOOL_TYPE, b ? 1L : 0L, 0.0, null);
+	}
 
+	private Value(byte valueType, long longValue, double floatValue, String strValue) {
+		this.valueType = valueType;
+		this.longValue = longValue;
+		this.floatValue = floatValue;
+		this.strValue = strValue;
+	}
+
+	public Value(double d) {
+		this(FLOAT_TYPE, 0L, d, null);
+	}
+
+	public Value(long l) {
+		this(INT_TYPE, l, 0.0, null);
+	}
+
+	/**
+	 * Value from an object: null, Boolean, Long, Double or String
+	 */
 	public Value(Object value) {
-		this.value = value;
-		sanityCheck();
+		if (value == null) {
+			valueType = NULL_TYPE;
+			longValue = 0L;
+			floatValue = 0.0;
+			strValue = null;
+		} else if (value instanceof Boolean) {
+			valueType = BOOL_TYPE;
+			longValue = ((Boolean) value) ? 1L : 0L;
+			floatValue = 0.0;
+			strValue = null;
+		} else if (value instanceof Long) {
+			valueType = INT_TYPE;
+			longValue = (Long) value;
+			floatValue = 0.0;
+			strValue = null;
+		} else if (value instanceof Double) {
+			valueType = FLOAT_TYPE;
+			longValue = 0L;
+			floatValue = (Double) value;
+			strValue = null;
+		} else if (value instanceof String) {
+			valueType = STRING_TYPE;
+			longValue = 0L;
+			floatValue = 0.0;
+			strValue = (String) value;
+		} else throw new RuntimeException("Cannot assign value type '" + value.getClass().getSimpleName() + "'");
+	}
+
+	public Value(String s) {
+		this(s == null ? NULL_TYPE : STRING_TYPE, 0L, 0.0, s);
 	}
 
 	public boolean asBool() {
-		if (value == null) return false;
-		if (isBool()) return (Boolean) value;
-		if (isInt()) return (asInt() != 0L);
-		if (isFloat()) return (asFloat() != 0.0);
-		return !asString().isEmpty();
+		switch (valueType) {
+		case NULL_TYPE:
+			return false;
+		case BOOL_TYPE:
+		case INT_TYPE:
+			return longValue != 0L;
+		case FLOAT_TYPE:
+			return floatValue != 0.0;
+		default:
+			return !strValue.isEmpty();
+		}
 	}
 
 	public double asFloat() {
-		if (value == null) return 0.0;
-		if (isBool()) return asBool() ? 1.0 : 0.0;
-		if (isInt()) return asInt();
-		if (isFloat()) return (Double) value;
-		return Gpr.parseDoubleSafe(value.toString());
+		switch (valueType) {
+		case NULL_TYPE:
+			return 0.0;
+		case BOOL_TYPE:
+		case INT_TYPE:
+			return longValue;
+		case FLOAT_TYPE:
+			return floatValue;
+		default:
+			return Gpr.parseDoubleSafe(strValue);
+		}
 	}
 
 	public long asInt() {
-		if (value == null) return 0L;
-		if (isBool()) return asBool() ? 1L : 0L;
-		if (isInt()) return (Long) value;
-		if (isFloat()) return ((long) asFloat());
-		return Gpr.parseIntSafe(value.toString());
+		switch (valueType) {
+		case NULL_TYPE:
+			return 0L;
+		case BOOL_TYPE:
+		case INT_TYPE:
+			return longValue;
+		case FLOAT_TYPE:
+			return (long) floatValue;
+		default:
+			return Gpr.parseIntSafe(strValue);
+		}
 	}
 
 	public String asString() {
-		if (value == null) return "";
-		return value.toString();
+		switch (valueType) {
+		case NULL_TYPE:
+			return "";
+		case BOOL_TYPE:
+			return Boolean.toString(longValue != 0L);
+		case INT_TYPE:
+			return Long.toString(longValue);
+		case FLOAT_TYPE:
+			return Double.toString(floatValue);
+		default:
+			return strValue;
+		}
 	}
 
 	public boolean canBeFloat() {
@@ -69,61 +204,67 @@ public class Value {
 		if (!isNull() && val.isNull()) return 1;
 
 		// One of them is float?
-		if (canBeFloat() || val.canBeFloat()) return ((Double) asFloat()).compareTo(val.asFloat());
-		if (canBeInt() || val.canBeInt()) return ((Long) asInt()).compareTo(val.asInt());
-		if (isBool() || val.isBool()) return ((Boolean) asBool()).compareTo(val.asBool());
+		if (canBeFloat() || val.canBeFloat()) return Double.compare(asFloat(), val.asFloat());
+		if (canBeInt() || val.canBeInt()) return Long.compare(asInt(), val.asInt());
+		if (isBool() || val.isBool()) return Boolean.compare(asBool(), val.asBool());
 		return asString().compareTo(val.asString());
 	}
 
 	@Override
 	public boolean equals(Object o) {
-		if (value == o) return true;
+		if (this == o) return true;
+		if (!(o instanceof Value)) return false;
 
 		Value val = (Value) o;
+		if (valueType != val.valueType) return false;
 
-		// Compare null
-		if (isNull() && val.isNull()) return true;
-		if (isNull() && !val.isNull()) return false;
-		if (!isNull() && val.isNull()) return false;
-
-		return value.equals(val.value);
+		switch (valueType) {
+		case NULL_TYPE:
+			return true;
+		case BOOL_TYPE:
+		case INT_TYPE:
+			return longValue == val.longValue;
+		case FLOAT_TYPE:
+			return Double.compare(floatValue, val.floatValue) == 0;
+		default:
+			return strValue.equals(val.strValue);
+		}
 	}
 
 	@Override
 	public int hashCode() {
-		if (value == null) return 0;
-		return value.hashCode();
+		switch (valueType) {
+		case NULL_TYPE:
+			return 0;
+		case BOOL_TYPE:
+			return Boolean.hashCode(longValue != 0L);
+		case INT_TYPE:
+			return Long.hashCode(longValue);
+		case FLOAT_TYPE:
+			return Double.hashCode(floatValue);
+		default:
+			return strValue.hashCode();
+		}
 	}
 
 	public boolean isBool() {
-		return value instanceof Boolean;
+		return valueType == BOOL_TYPE;
 	}
 
 	public boolean isFloat() {
-		return value instanceof Double;
+		return valueType == FLOAT_TYPE;
 	}
 
 	public boolean isInt() {
-		return value instanceof Long || value instanceof Integer;
+		return valueType == INT_TYPE;
 	}
 
 	public boolean isNull() {
-		return value == null;
+		return valueType == NULL_TYPE;
 	}
 
 	public boolean isString() {
-		return value instanceof String;
-	}
-
-	void sanityCheck() {
-		if (value == null //
-				|| value instanceof Boolean //
-				|| value instanceof Long //
-				|| value instanceof Double //
-				|| value instanceof String //
-		) return;
-
-		throw new RuntimeException("Cannot assign value type '" + value.getClass().getSimpleName() + "'");
+		return valueType == STRING_TYPE;
 	}
 
 	@Override
@@ -0,0 +1,44 @@
+package org.snpsift.lang.expression;
+
+import java.lang.invoke.MethodHandle;
+
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * A boolean expression compiled by ExpressionCompiler
+ *
+ * @author pcingola
+ */
+public class CompiledExpression {
+
+	Expression expression; // Original expression
+	MethodHandle predicate; // Compiled expression: (VcfEntry)boolean
+
+	public CompiledExpression(Expression expression, MethodHandle predicate) {
+		this.expression = expression;
+		this.predicate = predicate;
+	}
+
+	public Expression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Evaluate expression, same result as 'expression.eval(vcfEntry).asBool()'
+	 */
+	public boolean test(VcfEntry vcfEntry) {
+		try {
+			return (boolean) predicate.invokeExact(vcfEntry);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "compiled" + expression;
+	}
+
+}
@@ -19,6 +19,6 @@ public class Eq extends ExpressionBinary {
 		if (!lval.canCompare(rval)) return Value.FALSE;
 
 		boolean eq = lval.equals(rval);
-		return new Value(negated ? !eq : eq);
+		return Value.valueOf(negated ? !eq : eq);
 	}
 }
@@ -2,6 +2,8 @@ package org.snpsift.lang.expression;
 
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
+import org.snpsift.lang.StringSet;
 import org.snpsift.lang.Value;
 
 /**
@@ -13,6 +15,7 @@ import org.snpsift.lang.Value;
 public abstract class Expression {
 
 	public static boolean debug = false;
+	public static final int NOT_COMPARABLE = Integer.MIN_VALUE; // Result of 'compareFloat()' when the value is null
 
 	protected boolean negated;
 	protected String operator;
@@ -27,6 +30,31 @@ public abstract class Expression {
 		negated = false;
 	}
 
+	/**
+	 * Bind expression to a VCF header: Resolve all fields once (instead of
+	 * looking them up for every VCF entry). By default, nothing is done
+	 */
+	public void bind(VcfHeader vcfHeader) {
+	}
+
+	/**
+	 * Compare the expression's value to a numeric constant (primitive path, no Value objects are created)
+	 * Same result as 'eval(vcfEntry).compareTo(new Value(constant))', or NOT_COMPARABLE if the value is null
+	 */
+	public int compareFloat(VcfEntry vcfEntry, double constant) {
+		Value val = eval(vcfEntry);
+		if (val.isNull()) return NOT_COMPARABLE;
+		return Double.compare(val.asFloat(), constant);
+	}
+
+	/**
+	 * Is the expression's value in a set? (subclasses can avoid creating Value objects or strings)
+	 * Same result as 'set.contains(eval(vcfEntry).asString())'
+	 */
+	public boolean in(VcfEntry vcfEntry, StringSet set) {
+		return set.contains(eval(vcfEntry).asString());
+	}
+
 	/**
 	 * Evaluate expression using VcfEntry
 	 */
@@ -2,6 +2,7 @@ package org.snpsift.lang.expression;
 
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
 import org.snpsift.lang.Value;
 
 /**
@@ -20,6 +21,12 @@ public abstract class ExpressionBinary extends Expression {
 		this.left = left;
 	}
 
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		left.bind(vcfHeader);
+		if (right != null) right.bind(vcfHeader);
+	}
+
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
 		Value lval = left.eval(vcfEntry);
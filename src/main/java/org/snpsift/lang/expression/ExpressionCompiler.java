@@ -0,0 +1,301 @@
+package org.snpsift.lang.expression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.lang.StringSet;
+import org.snpsift.lang.Value;
+import org.snpsift.lang.function.In;
+
+/**
+ * Compile an expression tree into a chain of method handles.
+ *
+ * Boolean operators ('&', '|', '!') are compiled into guarded method
+ * handles (short-circuit, no intermediate Value objects), comparisons
+ * against numeric literals use primitive 'double' comparisons and
+ * constant sub-expressions are folded. Set look-ups with a constant set
+ * index (e.g. 'GENE in SET[0]') are bound to the set when compiled.
+ *
+ * Nodes that cannot be compiled (e.g. functions, arithmetic, non-boolean
+ * operands of '&' or '|') are evaluated by the interpreter (i.e. 'Expression.eval()'),
+ * so the compiled expression always has the same semantics as the expression tree.
+ *
+ * @author pcingola
+ */
+public class ExpressionCompiler {
+
+	static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	static final MethodType PREDICATE_TYPE = MethodType.methodType(boolean.class, VcfEntry.class); // Compiled boolean expressions
+	static final MethodType VALUE_TYPE = MethodType.methodType(Value.class, VcfEntry.class); // Compiled (or interpreted) values
+
+	static final MethodHandle EVAL; // Expression.eval(VcfEntry)
+	static final MethodHandle AS_BOOL; // Value.asBool()
+	static final MethodHandle NOT; // !boolean
+	static final MethodHandle COMPARE; // compare(op, negated, Value, Value)
+	static final MethodHandle COMPARE_FLOAT; // compareFloat(op, negated, double, Expression, VcfEntry)
+	static final MethodHandle EQ; // eq(negated, Value, Value)
+	static final MethodHandle EVAL_OP_BINARY; // evalOpBinary(ExpressionBinary, Value, Value)
+	static final MethodHandle EVAL_OP_UNARY; // evalOpUnary(ExpressionUnary, Value)
+	static final MethodHandle IN; // in(Expression, StringSet, VcfEntry)
+
+	// Comparison operators
+	static final int OP_LT = 0, OP_LE = 1, OP_GT = 2, OP_GE = 3;
+
+	static {
+		try {
+			EVAL = LOOKUP.findVirtual(Expression.class, "eval", VALUE_TYPE);
+			AS_BOOL = LOOKUP.findVirtual(Value.class, "asBool", MethodType.methodType(boolean.class));
+			NOT = LOOKUP.findStatic(ExpressionCompiler.class, "not", MethodType.methodType(boolean.class, boolean.class));
+			COMPARE = LOOKUP.findStatic(ExpressionCompiler.class, "compare", MethodType.methodType(boolean.class, int.class, boolean.class, Value.class, Value.class));
+			COMPARE_FLOAT = LOOKUP.findStatic(ExpressionCompiler.class, "compareFloat", MethodType.methodType(boolean.class, int.class, boolean.class, double.class, Expression.class, VcfEntry.class));
+			EQ = LOOKUP.findStatic(ExpressionCompiler.class, "eq", MethodType.methodType(boolean.class, boolean.class, Value.class, Value.class));
+			EVAL_OP_BINARY = LOOKUP.findStatic(ExpressionCompiler.class, "evalOpBinary", MethodType.methodType(boolean.class, ExpressionBinary.class, Value.class, Value.class));
+			EVAL_OP_UNARY = LOOKUP.findStatic(ExpressionCompiler.class, "evalOpUnary", MethodType.methodType(boolean.class, ExpressionUnary.class, Value.class));
+			IN = LOOKUP.findStatic(ExpressionCompiler.class, "in", MethodType.methodType(boolean.class, Expression.class, StringSet.class, VcfEntry.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Apply a binary operator handle '(Value, Value)boolean' to the values of both operands
+	 */
+	static MethodHandle binary(MethodHandle op, ExpressionBinary eb) {
+		MethodHandle h = MethodHandles.filterArguments(op, 0, value(eb.left), value(eb.right)); // (VcfEntry, VcfEntry)boolean
+		return MethodHandles.permuteArguments(h, PREDICATE_TYPE, 0, 0);
+	}
+
+	/**
+	 * Compare two values, same semantics as Lt, Le, Gt and Ge
+	 */
+	static boolean compare(int op, boolean negated, Value lval, Value rval) {
+		if (!lval.canCompare(rval)) return false; // Cannot be compared? Return false
+		return result(op, lval.compareTo(rval), negated);
+	}
+
+	/**
+	 * Compare the value of 'expr' to a numeric constant (primitive path, see Expression.compareFloat()).
+	 * Note: When one of the values is numeric, Value.compareTo() compares them as 'double'
+	 */
+	static boolean compareFloat(int op, boolean negated, double constant, Expression expr, VcfEntry vcfEntry) {
+		int cmp = expr.compareFloat(vcfEntry, constant);
+		if (cmp == Expression.NOT_COMPARABLE) return false; // Cannot be compared? Return false
+		return result(op, cmp, negated);
+	}
+
+	/**
+	 * Compare the value of 'expr' to a numeric constant
+	 */
+	static MethodHandle compareFloat(int op, boolean negated, double constant, Expression expr) {
+		return MethodHandles.insertArguments(COMPARE_FLOAT, 0, op, negated, constant, expr); // (VcfEntry)boolean
+	}
+
+	/**
+	 * Compile an expression
+	 */
+	public static CompiledExpression compile(Expression expr) {
+		return new CompiledExpression(expr, predicate(expr));
+	}
+
+	/**
+	 * Comparison operator code (or -1 if this is not a comparison)
+	 */
+	static int compareOp(Expression expr) {
+		if (expr instanceof Lt) return OP_LT;
+		if (expr instanceof Le) return OP_LE;
+		if (expr instanceof Gt) return OP_GT;
+		if (expr instanceof Ge) return OP_GE;
+		return -1;
+	}
+
+	/**
+	 * A predicate that always returns 'value'
+	 */
+	static MethodHandle constant(boolean value) {
+		return MethodHandles.dropArguments(MethodHandles.constant(boolean.class, value), 0, VcfEntry.class);
+	}
+
+	/**
+	 * Equality, same semantics as Eq and Neq
+	 */
+	static boolean eq(boolean negated, Value lval, Value rval) {
+		if (!lval.canCompare(rval)) return false; // Cannot be compared? Return false
+		boolean eq = lval.equals(rval);
+		return negated ? !eq : eq;
+	}
+
+	static boolean evalOpBinary(ExpressionBinary expr, Value lval, Value rval) {
+		return expr.evalOp(lval, rval).asBool();
+	}
+
+	static boolean evalOpUnary(ExpressionUnary expr, Value val) {
+		return expr.evalOp(val).asBool();
+	}
+
+	/**
+	 * Is the value of 'expr' in a set?
+	 */
+	static boolean in(Expression expr, StringSet set, VcfEntry vcfEntry) {
+		return expr.in(vcfEntry, set);
+	}
+
+	/**
+	 * Set look-up: If the set index is constant, the set is resolved once
+	 */
+	static MethodHandle in(In in) {
+		if (!isConstant(in.getSetIdxExpr())) return interpret(in);
+
+		Value idx = in.getSetIdxExpr().eval((VcfEntry) null);
+		if (!idx.isInt() || idx.asInt() < 0 || idx.asInt() >= in.getSets().size()) return interpret(in); // Invalid index: Let the interpreter report the error
+		return MethodHandles.insertArguments(IN, 0, in.getExpression(), in.getStringSet((int) idx.asInt())); // (VcfEntry)boolean
+	}
+
+	/**
+	 * Interpret an expression
+	 */
+	static MethodHandle interpret(Expression expr) {
+		return MethodHandles.filterReturnValue(value(expr), AS_BOOL);
+	}
+
+	/**
+	 * Is this expression a constant?
+	 */
+	static boolean isConstant(Expression expr) {
+		return expr instanceof Literal;
+	}
+
+	/**
+	 * Does this expression always evaluate to a boolean value?
+	 */
+	static boolean isPredicate(Expression expr) {
+		if (expr instanceof Literal) return ((Literal) expr).value.isBool();
+		if (expr instanceof SharedExpression) return isPredicate(((SharedExpression) expr).expr);
+		if (expr instanceof And || expr instanceof Or) {
+			ExpressionBinary eb = (ExpressionBinary) expr;
+			return eb.right != null && isPredicate(eb.left) && isPredicate(eb.right);
+		}
+		return expr instanceof Not //
+				|| expr instanceof Exists //
+				|| expr instanceof Eq //
+				|| expr instanceof Has //
+				|| expr instanceof In //
+				|| expr instanceof Match //
+				|| compareOp(expr) >= 0 //
+		;
+	}
+
+	static boolean not(boolean b) {
+		return !b;
+	}
+
+	/**
+	 * Compile an expression into a method handle: (VcfEntry)boolean
+	 */
+	static MethodHandle predicate(Expression expr) {
+		// Constant folding: Literals do not depend on the VcfEntry
+		if (isConstant(expr)) return constant(expr.eval((VcfEntry) null).asBool());
+
+		if (!isPredicate(expr)) return interpret(expr);
+		if (expr instanceof SharedExpression) return interpret(expr); // Value is cached (see SharedExpression)
+
+		// Boolean operators: short-circuit
+		if (expr instanceof And) {
+			And and = (And) expr;
+			return MethodHandles.guardWithTest(predicate(and.left), predicate(and.right), constant(false));
+		}
+
+		if (expr instanceof Or) {
+			Or or = (Or) expr;
+			return MethodHandles.guardWithTest(predicate(or.left), constant(true), predicate(or.right));
+		}
+
+		if (expr instanceof Not) return MethodHandles.filterReturnValue(predicate(((Not) expr).expr), NOT);
+		if (expr instanceof In) return in((In) expr);
+
+		// Unary operators
+		if (expr instanceof ExpressionUnary) {
+			ExpressionUnary eu = (ExpressionUnary) expr;
+			return MethodHandles.filterArguments(EVAL_OP_UNARY.bindTo(eu), 0, value(eu.expr));
+		}
+
+		ExpressionBinary eb = (ExpressionBinary) expr;
+		if (isConstant(eb.left) && isConstant(eb.right)) return constant(eb.eval((VcfEntry) null).asBool());
+
+		// Comparison against a numeric constant: Primitive comparison
+		int op = compareOp(eb);
+		if (op >= 0) {
+			Value rconst = isConstant(eb.right) ? eb.right.eval((VcfEntry) null) : null;
+			if (rconst != null && rconst.canBeFloat()) return compareFloat(op, eb.negated, rconst.asFloat(), eb.left);
+
+			Value lconst = isConstant(eb.left) ? eb.left.eval((VcfEntry) null) : null;
+			if (lconst != null && lconst.canBeFloat()) return compareFloat(swap(op), eb.negated, lconst.asFloat(), eb.right);
+
+			return binary(MethodHandles.insertArguments(COMPARE, 0, op, eb.negated), eb);
+		}
+
+		if (eb instanceof Eq) return binary(MethodHandles.insertArguments(EQ, 0, eb.negated), eb);
+		return binary(EVAL_OP_BINARY.bindTo(eb), eb);
+	}
+
+	/**
+	 * Result of a comparison operator
+	 */
+	static boolean result(int op, int cmp, boolean negated) {
+		boolean ret;
+		switch (op) {
+		case OP_LT:
+			ret = cmp < 0;
+			break;
+
+		case OP_LE:
+			ret = cmp <= 0;
+			break;
+
+		case OP_GT:
+			ret = cmp > 0;
+			break;
+
+		case OP_GE:
+			ret = cmp >= 0;
+			break;
+
+		default:
+			throw new RuntimeException("Unknown comparison operator " + op);
+		}
+
+		return negated ? !ret : ret;
+	}
+
+	/**
+	 * Swap operands in a comparison: 'a < b' is equivalent to 'b > a'
+	 */
+	static int swap(int op) {
+		switch (op) {
+		case OP_LT:
+			return OP_GT;
+
+		case OP_LE:
+			return OP_GE;
+
+		case OP_GT:
+			return OP_LT;
+
+		case OP_GE:
+			return OP_LE;
+
+		default:
+			throw new RuntimeException("Unknown comparison operator " + op);
+		}
+	}
+
+	/**
+	 * A method handle that evaluates an expression's value: (VcfEntry)Value
+	 */
+	static MethodHandle value(Expression expr) {
+		if (isConstant(expr)) return MethodHandles.dropArguments(MethodHandles.constant(Value.class, expr.eval((VcfEntry) null)), 0, VcfEntry.class);
+		return EVAL.bindTo(expr);
+	}
+
+}
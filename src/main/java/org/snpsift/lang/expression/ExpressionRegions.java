@@ -0,0 +1,113 @@
+package org.snpsift.lang.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpsift.lang.Value;
+import org.snpsift.lang.expression.Field.VcfColumn;
+
+/**
+ * Positional constraints of a filter expression.
+ *
+ * The top level conjuncts ('&') of an expression comparing CHROM or POS
+ * to constants (e.g. "(CHROM = '1') & (POS >= 1000) & (POS < 2000)")
+ * define a region. VCF entries outside this region cannot satisfy the
+ * expression, so an indexed file only needs to be read in this region.
+ *
+ * @author pcingola
+ */
+public class ExpressionRegions {
+
+	public static final int POS_MAX = Integer.MAX_VALUE - 1; // Maximum (one-based) position
+
+	String chr; // Chromosome name (null if unconstrained)
+	boolean empty; // No VCF entry can satisfy the expression (e.g. "(CHROM = '1') & (CHROM = '2')")
+	long posMin = 1, posMax = POS_MAX; // One-based positions
+
+	/**
+	 * Regions containing all VCF entries that can satisfy the expression
+	 * @return Regions (possibly empty) or null if the expression does not constrain the chromosome
+	 */
+	public static Markers regions(Expression expr, Genome genome) {
+		ExpressionRegions er = new ExpressionRegions();
+
+		List<Expression> exprs = new ArrayList<>();
+		RawLineFilter.conjuncts(expr, exprs);
+		for (Expression e : exprs)
+			er.constraint(e);
+
+		if (er.chr == null) return null; // We don't know which chromosome to read
+
+		Markers regions = new Markers();
+		if (er.empty || er.posMin > er.posMax) return regions;
+
+		Chromosome chromo = genome.getOrCreateChromosome(er.chr);
+		regions.add(new Marker(chromo, (int) er.posMin - 1, (int) er.posMax - 1)); // Markers use zero-based coordinates
+		return regions;
+	}
+
+	/**
+	 * Update constraints using a conjunct
+	 */
+	void constraint(Expression expr) {
+		int op = ExpressionCompiler.compareOp(expr);
+		if (op < 0 && !(expr instanceof Eq)) return;
+
+		ExpressionBinary eb = (ExpressionBinary) expr;
+		if (eb.negated) return; // Only intervals, e.g. 'CHROM != 1' or '!(POS < 10)' are ignored
+
+		Field field;
+		Value constant;
+		if (RawLineFilter.isField(eb.left) && eb.right instanceof Literal) {
+			field = (Field) eb.left;
+			constant = ((Literal) eb.right).value;
+		} else if (RawLineFilter.isField(eb.right) && eb.left instanceof Literal) {
+			field = (Field) eb.right;
+			constant = ((Literal) eb.left).value;
+			if (op >= 0) op = ExpressionCompiler.swap(op);
+		} else return;
+
+		if (field.column == VcfColumn.CHROM) {
+			if (op >= 0 || !constant.isString()) return;
+			String c = constant.asString();
+			if (chr != null && !chr.equals(c)) empty = true;
+			chr = c;
+		} else if (field.column == VcfColumn.POS) {
+			if (op < 0) {
+				// Equality: Integer values are only equal to integer constants
+				if (!constant.isInt()) return;
+				posMin = Math.max(posMin, constant.asInt());
+				posMax = Math.min(posMax, constant.asInt());
+				return;
+			}
+
+			if (!constant.canBeFloat()) return;
+			double c = constant.asFloat();
+			switch (op) {
+			case ExpressionCompiler.OP_LT:
+				posMax = Math.min(posMax, (long) Math.ceil(c) - 1);
+				break;
+
+			case ExpressionCompiler.OP_LE:
+				posMax = Math.min(posMax, (long) Math.floor(c));
+				break;
+
+			case ExpressionCompiler.OP_GT:
+				posMin = Math.max(posMin, (long) Math.floor(c) + 1);
+				break;
+
+			case ExpressionCompiler.OP_GE:
+				posMin = Math.max(posMin, (long) Math.ceil(c));
+				break;
+
+			default:
+				throw new RuntimeException("Unknown comparison operator " + op);
+			}
+		}
+	}
+
+}
@@ -2,6 +2,7 @@ package org.snpsift.lang.expression;
 
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
 import org.snpsift.lang.Value;
 
 /**
@@ -19,6 +20,11 @@ public abstract class ExpressionUnary extends Expression {
 		this.operator = operator;
 	}
 
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		expr.bind(vcfHeader);
+	}
+
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
 		Value val = expr.eval(vcfEntry);
@@ -19,10 +19,49 @@ import org.snpsift.lang.expression.FieldConstant.FieldConstantNames;
  */
 public class Field extends Expression {
 
+	/**
+	 * Where is a field's value: One of the fixed VCF columns or an INFO field
+	 * Note: Same order as in VCF files (i.e. 'ordinal()' is the zero-based column number)
+	 */
+	public enum VcfColumn {
+		CHROM, POS, ID, REF, ALT, QUAL, FILTER, INFO, FORMAT;
+
+		/**
+		 * Column for a field name
+		 */
+		public static VcfColumn column(String name) {
+			if (name == null) return INFO;
+			switch (name) {
+			case "CHROM":
+				return CHROM;
+			case "POS":
+				return POS;
+			case "ID":
+				return ID;
+			case "REF":
+				return REF;
+			case "ALT":
+				return ALT;
+			case "QUAL":
+				return QUAL;
+			case "FILTER":
+				return FILTER;
+			case "FORMAT":
+				return FORMAT;
+			default:
+				return INFO;
+			}
+		}
+	}
+
 	public static final int TYPE_ALL = -2;
 	public static final int TYPE_ANY = -1;
 
 	protected String name;
+	protected VcfColumn column; // Column (resolved when the field is created)
+	protected boolean genotypeGt; // Is this the genotype's 'GT' field?
+	protected boolean bound; // Has this field been bound to a VCF header?
+	protected int sampleNum = -1; // Sample number, if the field is a sample name (resolved when bound)
 	protected VcfInfoType returnType;
 	protected boolean exceptionIfNotFound = true;
 	protected VcfHeaderInfo vcfInfo;
@@ -31,19 +70,45 @@ public class Field extends Expression {
 
 	public Field(String name) {
 		this.name = name;
+		column = VcfColumn.column(name);
+		genotypeGt = "GT".equals(name);
 
 		// Field from first 10 columns => Set returnType
 		if (name == null) returnType = VcfInfoType.String;
-		else if (name.equals("CHROM") //
-				|| name.equals("ID") //
-				|| name.equals("REF") //
-				|| name.equals("ALT") //
-				|| name.equals("FILTER") //
-				|| name.equals("FORMAT") //
-		) returnType = VcfInfoType.String;
-		else if (name.equals("QUAL")) returnType = VcfInfoType.Float;
-		else if (name.equals("POS")) returnType = VcfInfoType.Integer;
-		else returnType = VcfInfoType.UNKNOWN;
+		else {
+			switch (column) {
+			case QUAL:
+				returnType = VcfInfoType.Float;
+				break;
+
+			case POS:
+				returnType = VcfInfoType.Integer;
+				break;
+
+			case INFO:
+				returnType = VcfInfoType.UNKNOWN;
+				break;
+
+			default:
+				returnType = VcfInfoType.String;
+			}
+		}
+	}
+
+	/**
+	 * Bind this field to a VCF header: Resolve field's type, header
+	 * entry and sample number once, instead of for every VCF entry.
+	 * Fields not found in the header are not an error here, they are
+	 * reported when evaluated (same as unbound fields)
+	 */
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		if (vcfHeader == null) return;
+		if (column == VcfColumn.INFO && name != null) {
+			sampleNum = vcfHeader.getSampleNum(name);
+			if (returnType == VcfInfoType.UNKNOWN) resolveReturnType(vcfHeader);
+		}
+		bound = true;
 	}
 
 	//	protected VcfInfoType calcReturnType(VcfHeaderInfo vcfInfo) {
@@ -57,23 +122,64 @@ public class Field extends Expression {
 	//		//		return VcfInfoType.String;
 	//	}
 
+	/**
+	 * Compare to a numeric constant, without creating 'Value' (or boxed) objects
+	 */
+	@Override
+	public int compareFloat(VcfEntry vcfEntry, double constant) {
+		VcfInfoType type = getReturnType(vcfEntry);
+		switch (type) {
+		case Integer:
+			if (column == VcfColumn.POS) return Double.compare(vcfEntry.getStart() + 1L, constant);
+
+			int sampleNum = bound ? this.sampleNum : getSampleNum(vcfEntry, name);
+			if (sampleNum >= 0) return Double.compare(sampleNum, constant);
+			break;
+
+		case Float:
+			if (column == VcfColumn.QUAL) return Double.compare(vcfEntry.getQuality(), constant);
+			break;
+
+		case Flag:
+			return Double.compare(getFieldFlag(vcfEntry) ? 1.0 : 0.0, constant);
+
+		case Character:
+		case String:
+			break;
+
+		default:
+			throw new RuntimeException("Unknown return type '" + returnType + "'");
+		}
+
+		String value = getFieldString(vcfEntry);
+		if (value == null) {
+			if (type == VcfInfoType.Integer || type == VcfInfoType.Float) fieldNotFound(vcfEntry);
+			return NOT_COMPARABLE;
+		}
+
+		double num = (type == VcfInfoType.Integer ? Gpr.parseLongSafe(value) : Gpr.parseDoubleSafe(value));
+		return Double.compare(num, constant);
+	}
+
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
 
 		switch (getReturnType(vcfEntry)) {
 
 		case Integer:
-			return new Value(getFieldInt(vcfEntry));
+			Long l = getFieldInt(vcfEntry);
+			return l == null ? Value.NULL : Value.valueOf(l.longValue());
 
 		case Float:
-			return new Value(getFieldFloat(vcfEntry));
+			Double d = getFieldFloat(vcfEntry);
+			return d == null ? Value.NULL : Value.valueOf(d.doubleValue());
 
 		case Flag:
-			return new Value(getFieldFlag(vcfEntry));
+			return Value.valueOf(getFieldFlag(vcfEntry));
 
 		case Character:
 		case String:
-			return new Value(getFieldString(vcfEntry));
+			return Value.valueOf(getFieldString(vcfEntry));
 
 		default:
 			throw new RuntimeException("Unknown return type '" + returnType + "'");
@@ -85,17 +191,19 @@ public class Field extends Expression {
 		switch (getReturnType(vcfGenotype)) {
 
 		case Integer:
-			return new Value(getFieldInt(vcfGenotype));
+			Long l = getFieldInt(vcfGenotype);
+			return l == null ? Value.NULL : Value.valueOf(l.longValue());
 
 		case Float:
-			return new Value(getFieldFloat(vcfGenotype));
+			Double d = getFieldFloat(vcfGenotype);
+			return d == null ? Value.NULL : Value.valueOf(d.doubleValue());
 
 		case Flag:
-			return new Value(getFieldString(vcfGenotype) != null);
+			return Value.valueOf(getFieldString(vcfGenotype) != null);
 
 		case Character:
 		case String:
-			return new Value(getFieldString(vcfGenotype));
+			return Value.valueOf(getFieldString(vcfGenotype));
 
 		default:
 			throw new RuntimeException("Unknown return type '" + returnType + "'");
@@ -128,7 +236,7 @@ public class Field extends Expression {
 	 * Note: 'Float' according to VCF spec., not according to java (that is why it returns a double)
 	 */
 	Double getFieldFloat(VcfEntry vcfEntry) {
-		if (name.equals("QUAL")) return vcfEntry.getQuality();
+		if (column == VcfColumn.QUAL) return vcfEntry.getQuality();
 
 		String value = getFieldString(vcfEntry);
 		if (value == null) return (Double) fieldNotFound(vcfEntry);
@@ -152,9 +260,10 @@ public class Field extends Expression {
 	 * Note: 'Int' according to VCF spec., not according to java (that is why it returns a long)
 	 */
 	Long getFieldInt(VcfEntry vcfEntry) {
-		if (name.equals("POS")) return vcfEntry.getStart() + 1L;
+		if (column == VcfColumn.POS) return vcfEntry.getStart() + 1L;
 
-		if (isSampleName(vcfEntry, name)) return (long) getSampleNum(vcfEntry, name);
+		int sampleNum = bound ? this.sampleNum : getSampleNum(vcfEntry, name);
+		if (sampleNum >= 0) return (long) sampleNum;
 
 		String value = getFieldString(vcfEntry);
 		if (value == null) return (Long) fieldNotFound(vcfEntry);
@@ -167,7 +276,7 @@ public class Field extends Expression {
 	 * Note: 'Int' according to VCF spec., not according to java (that is why it returns a long)
 	 */
 	Long getFieldInt(VcfGenotype vcfGenotype) {
-		if (name.equals("GT")) return (long) vcfGenotype.getGenotypeCode();
+		if (genotypeGt) return (long) vcfGenotype.getGenotypeCode();
 
 		String value = getFieldString(vcfGenotype);
 		if (value == null) return (Long) gtFieldNotFound(vcfGenotype);
@@ -179,19 +288,39 @@ public class Field extends Expression {
 	 */
 	String getFieldString(VcfEntry vcfEntry) {
 		// Field from first 10 columns
-		// if (name.equals("CHROM")) return vcfEntry.getChromosomeName();
-		if (name.equals("CHROM")) return vcfEntry.getChromosomeNameOri();
-		if (name.equals("ID")) return vcfEntry.getId();
-		if (name.equals("REF")) return vcfEntry.getRef();
-		if (name.equals("ALT")) return vcfEntry.getAltsStr();
-		if (name.equals("FILTER")) return vcfEntry.getFilter();
-		if (name.equals("FORMAT")) return vcfEntry.getFormat();
-		if (name.equals("POS")) return "" + (vcfEntry.getStart() + 1);
-		if (name.equals("QUAL")) return "" + vcfEntry.getQuality();
+		switch (column) {
+		case CHROM:
+			// return vcfEntry.getChromosomeName();
+			return vcfEntry.getChromosomeNameOri();
+
+		case ID:
+			return vcfEntry.getId();
+
+		case REF:
+			return vcfEntry.getRef();
+
+		case ALT:
+			return vcfEntry.getAltsStr();
+
+		case FILTER:
+			return vcfEntry.getFilter();
+
+		case FORMAT:
+			return vcfEntry.getFormat();
+
+		case POS:
+			return "" + (vcfEntry.getStart() + 1);
+
+		case QUAL:
+			return "" + vcfEntry.getQuality();
+
+		default:
+			break;
+		}
 
 		// Is there a filed 'name'
 		if (vcfInfo == null) {
-			vcfInfo = vcfEntry.getVcfFileIterator().getVcfHeader().getVcfHeaderInfo(name);
+			if (!bound) vcfInfo = vcfEntry.getVcfFileIterator().getVcfHeader().getVcfHeaderInfo(name);
 			if (vcfInfo == null) return (String) fieldHeaderNotFound(vcfEntry);
 		}
 
@@ -204,7 +333,7 @@ public class Field extends Expression {
 
 	public String getFieldString(VcfGenotype vcfGenotype) {
 		// Special fields
-		if (name.equals("GT")) return vcfGenotype.getGenotypeStr();
+		if (genotypeGt) return vcfGenotype.getGenotypeStr();
 
 		// Find field
 		String value = vcfGenotype.get(name);
@@ -223,25 +352,7 @@ public class Field extends Expression {
 		if (returnType != VcfInfoType.UNKNOWN) return returnType(vcfEntry);
 
 		VcfHeader vcfHeader = vcfEntry.getVcfFileIterator().getVcfHeader();
-
-		// Is there a filed 'name'
-		vcfInfo = vcfHeader.getVcfHeaderInfo(name);
-		if (vcfInfo != null) {
-			returnType = vcfInfo.getVcfInfoType();
-			number = vcfInfo.getNumber();
-			vcfInfoNumber = vcfInfo.getVcfInfoNumber();
-		} else {
-			// Is there a genotype 'name'
-			VcfHeaderFormat vcfFormat = vcfHeader.getVcfHeaderFormat(name);
-			if (vcfFormat != null) {
-				returnType = vcfFormat.getVcfInfoType();
-			} else {
-				// Is this a special field name?
-				if (FieldConstant.isConstantField(name)) returnType = FieldConstantNames.valueOf(name).getType();
-				else if (isSampleName(vcfEntry, name)) returnType = VcfInfoType.Integer;
-				else throw new RuntimeException("INFO field '" + name + "' not found in VCF header");
-			}
-		}
+		if (!resolveReturnType(vcfHeader)) throw new RuntimeException("INFO field '" + name + "' not found in VCF header");
 
 		return returnType(vcfEntry);
 	}
@@ -309,6 +420,35 @@ public class Field extends Expression {
 		return Gpr.parseIntSafe(text);
 	}
 
+	/**
+	 * Find field 'name' in VCF header and set return type
+	 * @return false if the field was not found
+	 */
+	protected boolean resolveReturnType(VcfHeader vcfHeader) {
+		// Is there a filed 'name'
+		vcfInfo = vcfHeader.getVcfHeaderInfo(name);
+		if (vcfInfo != null) {
+			returnType = vcfInfo.getVcfInfoType();
+			number = vcfInfo.getNumber();
+			vcfInfoNumber = vcfInfo.getVcfInfoNumber();
+			return true;
+		}
+
+		// Is there a genotype 'name'
+		VcfHeaderFormat vcfFormat = vcfHeader.getVcfHeaderFormat(name);
+		if (vcfFormat != null) {
+			returnType = vcfFormat.getVcfInfoType();
+			return true;
+		}
+
+		// Is this a special field name?
+		if (FieldConstant.isConstantField(name)) returnType = FieldConstantNames.valueOf(name).getType();
+		else if (vcfHeader.getSampleNum(name) >= 0) returnType = VcfInfoType.Integer;
+		else return false;
+
+		return true;
+	}
+
 	public VcfInfoType returnType(VcfEntry vcfEntry) {
 		if (returnType == null || returnType == VcfInfoType.String) return VcfInfoType.String;
 		if (number == 0 || number == 1) return returnType;
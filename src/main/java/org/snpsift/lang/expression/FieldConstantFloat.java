@@ -19,6 +19,11 @@ public class FieldConstantFloat extends FieldConstant {
 		returnType = VcfInfoType.Float;
 	}
 
+	@Override
+	public int compareFloat(VcfEntry vcfEntry, double constant) {
+		return Double.compare(value.asFloat(), constant);
+	}
+
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
 		return value;
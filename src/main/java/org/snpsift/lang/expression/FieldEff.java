@@ -40,6 +40,22 @@ public class FieldEff extends FieldSub {
 		return (formatVersion.isAnn() ? "ANN" : "EFF");
 	}
 
+	/**
+	 * Bind to VCF header: Resolve sub-field's type (if the sub-field
+	 * is not in the header, an error is reported when evaluated)
+	 */
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		indexExpr.bind(vcfHeader);
+		if (vcfHeader == null) return;
+
+		if (name != null && returnType == VcfInfoType.UNKNOWN) {
+			VcfHeaderInfo vcfInfo = vcfHeader.getVcfHeaderInfo(annEff() + "." + name);
+			if (vcfInfo != null) returnType = vcfInfo.getVcfInfoType();
+		}
+		bound = true;
+	}
+
 	/**
 	 * Get a field from VcfEntry
 	 */
@@ -58,9 +74,10 @@ public class FieldEff extends FieldSub {
 		// Is this field 'iterable'?
 		int idx = index;
 		if (index < 0) {
-			FieldIterator.get().setMax(IteratorType.EFFECT, effects.size() - 1);
-			FieldIterator.get().setType(index);
-			idx = FieldIterator.get().get(IteratorType.EFFECT);
+			FieldIterator fieldIterator = FieldIterator.get();
+			fieldIterator.setMax(IteratorType.EFFECT, effects.size() - 1);
+			fieldIterator.setType(index);
+			idx = fieldIterator.get(IteratorType.EFFECT);
 		}
 
 		// Find sub-field
@@ -30,9 +30,10 @@ public class FieldGenotype extends FieldSub {
 		// Is this field 'iterable'?
 		int idx = genotypeIndex;
 		if (genotypeIndex < 0) {
-			FieldIterator.get().setMax(IteratorType.GENOTYPE, vcfEntry.getVcfGenotypes().size() - 1);
-			FieldIterator.get().setType(genotypeIndex);
-			idx = FieldIterator.get().get(IteratorType.GENOTYPE);
+			FieldIterator fieldIterator = FieldIterator.get();
+			fieldIterator.setMax(IteratorType.GENOTYPE, vcfEntry.getVcfGenotypes().size() - 1);
+			fieldIterator.setType(genotypeIndex);
+			idx = fieldIterator.get(IteratorType.GENOTYPE);
 		}
 
 		// Genotype field => Look for genotype and then field
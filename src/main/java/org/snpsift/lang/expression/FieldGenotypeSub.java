@@ -2,6 +2,7 @@ package org.snpsift.lang.expression;
 
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
 import org.snpsift.lang.expression.FieldIterator.IteratorType;
 
 /**
@@ -13,10 +14,26 @@ import org.snpsift.lang.expression.FieldIterator.IteratorType;
 public class FieldGenotypeSub extends FieldGenotype {
 
 	Expression indexExpr2;
+	Integer indexConst2; // Second index value, if the expression is a constant (null otherwise)
 
 	public FieldGenotypeSub(String name, Expression indexExpr, Expression indexExpr2) {
 		super(name, indexExpr);
 		this.indexExpr2 = indexExpr2;
+		indexConst2 = indexConst(indexExpr2);
+	}
+
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		super.bind(vcfHeader);
+		indexExpr2.bind(vcfHeader);
+	}
+
+	/**
+	 * Evaluate second index expression
+	 */
+	protected int evalIndex2(VcfGenotype vcfGenotype) {
+		if (indexConst2 != null) return indexConst2;
+		return evalIndex(vcfGenotype, indexExpr2);
 	}
 
 	/**
@@ -31,14 +48,15 @@ public class FieldGenotypeSub extends FieldGenotype {
 		String sub[] = value.split(",");
 
 		// Find second index value
-		int index = evalIndex(vcfGenotype, indexExpr2);
+		int index = evalIndex2(vcfGenotype);
 
 		// Is this field 'iterable'?
 		int idx = index;
 		if (index < 0) {
-			FieldIterator.get().setMax(IteratorType.GENOTYPE_VAR, sub.length - 1);
-			FieldIterator.get().setType(index);
-			idx = FieldIterator.get().get(IteratorType.GENOTYPE_VAR);
+			FieldIterator fieldIterator = FieldIterator.get();
+			fieldIterator.setMax(IteratorType.GENOTYPE_VAR, sub.length - 1);
+			fieldIterator.setType(index);
+			idx = fieldIterator.get(IteratorType.GENOTYPE_VAR);
 		}
 
 		if (sub.length <= idx) return "";
@@ -55,14 +73,15 @@ public class FieldGenotypeSub extends FieldGenotype {
 		String sub[] = value.split(",");
 
 		// Find second index value
-		int index = evalIndex(vcfGenotype, indexExpr2);
+		int index = evalIndex2(vcfGenotype);
 
 		// Is this field 'iterable'?
 		int idx = index;
 		if (index < 0) {
-			FieldIterator.get().setMax(IteratorType.GENOTYPE_VAR, sub.length - 1);
-			FieldIterator.get().setType(index);
-			idx = FieldIterator.get().get(IteratorType.GENOTYPE_VAR);
+			FieldIterator fieldIterator = FieldIterator.get();
+			fieldIterator.setMax(IteratorType.GENOTYPE_VAR, sub.length - 1);
+			fieldIterator.setType(index);
+			idx = fieldIterator.get(IteratorType.GENOTYPE_VAR);
 		}
 
 		if (sub.length <= idx) return "";
@@ -2,8 +2,10 @@ package org.snpsift.lang.expression;
 
 /**
  * Iterates on fields / sub-fields
- * It's a singleton
- * 
+ *
+ * Iterators are thread-confined: Each thread has its own instance (see 'get()'),
+ * so the same expression can be evaluated by many threads at the same time.
+ *
  * @author pcingola
  */
 public class FieldIterator {
@@ -12,9 +14,10 @@ public class FieldIterator {
 		VAR, EFFECT, GENOTYPE, GENOTYPE_VAR, LOF, NMD
 	}
 
-	private static final FieldIterator fieldIterator = new FieldIterator();
+	private static final ThreadLocal<FieldIterator> fieldIterator = ThreadLocal.withInitial(FieldIterator::new);
 
 	int type = 0;
+	long countIterated; // Number of times an iterated field (e.g. 'GEN[*]') has been evaluated (see SharedExpression)
 	SimpleIterator var = new SimpleIterator();
 	SimpleIterator gentype = new SimpleIterator();
 	SimpleIterator effect = new SimpleIterator();
@@ -22,8 +25,11 @@ public class FieldIterator {
 	SimpleIterator lof = new SimpleIterator();
 	SimpleIterator nmd = new SimpleIterator();
 
+	/**
+	 * Get the iterator for the current thread
+	 */
 	public static FieldIterator get() {
-		return fieldIterator;
+		return fieldIterator.get();
 	}
 
 	/**
@@ -56,6 +62,10 @@ public class FieldIterator {
 		}
 	}
 
+	public long getCountIterated() {
+		return countIterated;
+	}
+
 	public int getType() {
 		return type;
 	}
@@ -170,6 +180,7 @@ public class FieldIterator {
 	}
 
 	public void setType(int type) {
+		countIterated++;
 		if ((this.type != 0) && (this.type != type)) throw new RuntimeException("Mixing 'ANY' and 'ALL' (or '*' and '?') is not supported!");
 		this.type = type;
 	}
@@ -25,6 +25,22 @@ public class FieldLof extends FieldSub {
 		init();
 	}
 
+	/**
+	 * Bind to VCF header: Resolve sub-field's type (if the sub-field
+	 * is not in the header, an error is reported when evaluated)
+	 */
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		indexExpr.bind(vcfHeader);
+		if (vcfHeader == null) return;
+
+		if (name != null && returnType == VcfInfoType.UNKNOWN) {
+			VcfHeaderInfo vcfInfo = vcfHeader.getVcfHeaderInfo(infoFieldName + "." + name);
+			if (vcfInfo != null) returnType = vcfInfo.getVcfInfoType();
+		}
+		bound = true;
+	}
+
 	/**
 	 * Get a field from VcfEntry
 	 */
@@ -44,9 +60,10 @@ public class FieldLof extends FieldSub {
 		// Is this field 'iterable'?
 		int idx = index;
 		if (index < 0) {
-			FieldIterator.get().setMax(IteratorType.LOF, lofEntries.length - 1);
-			FieldIterator.get().setType(index);
-			idx = FieldIterator.get().get(IteratorType.LOF);
+			FieldIterator fieldIterator = FieldIterator.get();
+			fieldIterator.setMax(IteratorType.LOF, lofEntries.length - 1);
+			fieldIterator.setType(index);
+			idx = fieldIterator.get(IteratorType.LOF);
 		}
 
 		// Find sub-field
@@ -2,6 +2,9 @@ package org.snpsift.lang.expression;
 
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
+import org.snpeff.vcf.VcfInfoType;
+import org.snpsift.lang.StringSet;
 import org.snpsift.lang.Value;
 import org.snpsift.lang.expression.FieldIterator.IteratorType;
 
@@ -14,16 +17,25 @@ import org.snpsift.lang.expression.FieldIterator.IteratorType;
 public class FieldSub extends Field {
 
 	Expression indexExpr;
+	Integer indexConst; // Index value, if the index expression is a constant (null otherwise)
 
 	public FieldSub(String name, Expression indexExpr) {
 		super(name);
 		this.indexExpr = indexExpr;
+		indexConst = indexConst(indexExpr);
+	}
+
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		super.bind(vcfHeader);
+		indexExpr.bind(vcfHeader);
 	}
 
 	/**
 	 * Evaluate index expression
 	 */
 	protected int evalIndex(VcfEntry vcfEntry) {
+		if (indexConst != null) return indexConst;
 		return evalIndex(vcfEntry, indexExpr);
 	}
 
@@ -32,15 +44,14 @@ public class FieldSub extends Field {
 	 */
 	protected int evalIndex(VcfEntry vcfEntry, Expression idxExpr) {
 		// Find index value
-		Value idxVal = idxExpr.eval(vcfEntry);
-		int index = (int) (idxVal.isString() ? parseIndexField(idxVal.asString()) : idxVal.asInt());
-		return index;
+		return index(idxExpr.eval(vcfEntry));
 	}
 
 	/**
 	 * Evaluate index expression (VCF genotype)
 	 */
 	protected int evalIndex(VcfGenotype vcfGenotype) {
+		if (indexConst != null) return indexConst;
 		return evalIndex(vcfGenotype, indexExpr);
 	}
 
@@ -49,9 +60,24 @@ public class FieldSub extends Field {
 	 */
 	protected int evalIndex(VcfGenotype vcfGenotype, Expression idxExpr) {
 		// Find index value
-		Value idxVal = idxExpr.eval(vcfGenotype);
-		int index = (int) (idxVal.isString() ? parseIndexField(idxVal.asString()) : idxVal.asInt());
-		return index;
+		return index(idxExpr.eval(vcfGenotype));
+	}
+
+	/**
+	 * Number of sub-fields, same as 'value.split(",").length' (without creating sub-field strings)
+	 */
+	static int countSubFields(String value) {
+		int commas = 0, trailing = 0;
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) == ',') {
+				commas++;
+				trailing++;
+			} else trailing = 0;
+		}
+
+		if (commas == 0) return 1;
+		if (trailing == value.length()) return 0; // Only commas: All sub-fields are empty
+		return commas + 1 - trailing; // Trailing empty sub-fields are removed
 	}
 
 	/**
@@ -63,21 +89,14 @@ public class FieldSub extends Field {
 
 		// Can this be split?
 		if (value == null) return (String) fieldNotFound(vcfEntry);
-		String sub[] = value.split(",");
+		int count = countSubFields(value);
 
 		// Find index value
-		int index = evalIndex(vcfEntry);
-
-		// Is this field 'iterable'?
-		int idx = index;
-		if (index < 0) {
-			FieldIterator.get().setMax(IteratorType.VAR, sub.length - 1);
-			FieldIterator.get().setType(index);
-			idx = FieldIterator.get().get(IteratorType.VAR);
-		}
+		int idx = subFieldIndex(vcfEntry, count);
+		if (count <= idx) return "";
 
-		if (sub.length <= idx) return "";
-		return sub[idx];
+		int start = subFieldStart(value, idx);
+		return value.substring(start, subFieldEnd(value, start));
 	}
 
 	/**
@@ -89,22 +108,60 @@ public class FieldSub extends Field {
 
 		// Can this be split?
 		if (value == null) return (String) gtFieldNotFound(vcfGenotype);
-		String sub[] = value.split(",");
+		int count = countSubFields(value);
 
 		// Find index value
-		Value idxVal = indexExpr.eval(vcfGenotype);
-		int index = (int) (idxVal.isString() ? parseIndexField(idxVal.asString()) : idxVal.asInt());
+		int index = evalIndex(vcfGenotype);
 
 		// Is this field 'iterable'?
 		int idx = index;
 		if (index < 0) {
-			FieldIterator.get().setMax(IteratorType.GENOTYPE_VAR, sub.length - 1);
-			FieldIterator.get().setType(index);
-			idx = FieldIterator.get().get(IteratorType.VAR);
+			FieldIterator fieldIterator = FieldIterator.get();
+			fieldIterator.setMax(IteratorType.GENOTYPE_VAR, count - 1);
+			fieldIterator.setType(index);
+			idx = fieldIterator.get(IteratorType.VAR);
 		}
 
-		if (sub.length <= idx) return "";
-		return sub[idx];
+		if (count <= idx) return "";
+		int start = subFieldStart(value, idx);
+		return value.substring(start, subFieldEnd(value, start));
+	}
+
+	/**
+	 * Is the sub-field in a set? Sub-fields are looked-up without creating new strings
+	 */
+	@Override
+	public boolean in(VcfEntry vcfEntry, StringSet set) {
+		// Only plain string sub-fields (sub-classes have their own 'getFieldString()' methods)
+		if (getClass() != FieldSub.class || returnType != VcfInfoType.String) return super.in(vcfEntry, set);
+
+		String value = super.getFieldString(vcfEntry);
+		if (value == null) {
+			fieldNotFound(vcfEntry);
+			return set.contains(""); // Same as a 'null' value
+		}
+		int count = countSubFields(value);
+
+		int idx = subFieldIndex(vcfEntry, count);
+		if (count <= idx) return set.contains("");
+
+		int start = subFieldStart(value, idx);
+		return set.contains(value, start, subFieldEnd(value, start));
+	}
+
+	/**
+	 * Convert an index value into a number
+	 */
+	protected int index(Value idxVal) {
+		return (int) (idxVal.isString() ? parseIndexField(idxVal.asString()) : idxVal.asInt());
+	}
+
+	/**
+	 * Index value, if the index expression is a constant (null otherwise)
+	 */
+	protected Integer indexConst(Expression idxExpr) {
+		if (!(idxExpr instanceof Literal)) return null;
+		return index(idxExpr.eval((VcfEntry) null));
 	}
 
 	@Override
@@ -112,6 +169,39 @@ public class FieldSub extends Field {
 		return true;
 	}
 
+	/**
+	 * End (exclusive) of the sub-field starting at 'start'
+	 */
+	static int subFieldEnd(String value, int start) {
+		int end = value.indexOf(',', start);
+		return end < 0 ? value.length() : end;
+	}
+
+	/**
+	 * Sub-field number to use, given the number of sub-fields
+	 * (iterates over sub-fields if the index is '*', 'ANY' or 'ALL')
+	 */
+	protected int subFieldIndex(VcfEntry vcfEntry, int count) {
+		int index = evalIndex(vcfEntry);
+		if (index >= 0) return index;
+
+		// This field is 'iterable'
+		FieldIterator fieldIterator = FieldIterator.get();
+		fieldIterator.setMax(IteratorType.VAR, count - 1);
+		fieldIterator.setType(index);
+		return fieldIterator.get(IteratorType.VAR);
+	}
+
+	/**
+	 * Start of sub-field number 'idx'
+	 */
+	static int subFieldStart(String value, int idx) {
+		int start = 0;
+		for (int i = 0; i < idx; i++)
+			start = value.indexOf(',', start) + 1;
+		return start;
+	}
+
 	@Override
 	public String toString() {
 		return name + "[" + indexExpr + "]";
@@ -19,7 +19,7 @@ public class Le extends ExpressionBinary {
 		if (!lval.canCompare(rval)) return Value.FALSE;
 
 		boolean retVal = (lval.compareTo(rval) <= 0);
-		return new Value(negated ? !retVal : retVal);
+		return Value.valueOf(negated ? !retVal : retVal);
 	}
 
 }
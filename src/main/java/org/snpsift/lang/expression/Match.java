@@ -1,6 +1,8 @@
 package org.snpsift.lang.expression;
 
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import org.snpsift.lang.Value;
@@ -8,12 +10,77 @@ import org.snpsift.lang.Value;
 /**
  * Match a regular expression (string)
  *
+ * Regular expressions are compiled once: When the regular expression is
+ * a literal, it is compiled when the expression is created. Otherwise
+ * compiled regular expressions are kept in a (bounded) cache.
+ *
+ * Regular expressions that are just a literal string (optionally
+ * anchored using '^' or '$') are matched without using the regex engine.
+ *
  * @author pcingola
  */
 public class Match extends ExpressionBinary {
 
+	public static final int MAX_CACHE_SIZE = 1024;
+	public static final String REGEX_META_CHARS = "\\.[]{}()<>*+-=!?^$|";
+
+	static final Map<String, Predicate<String>> cache = new ConcurrentHashMap<>();
+
+	Predicate<String> matcherConst; // Matcher for a literal (constant) regular expression
+
+	/**
+	 * Get a matcher from the cache (or create a new one)
+	 */
+	static Predicate<String> cached(String regexp) {
+		Predicate<String> matcher = cache.get(regexp);
+		if (matcher == null) {
+			if (cache.size() >= MAX_CACHE_SIZE) cache.clear(); // Keep cache bounded
+			matcher = matcher(regexp);
+			cache.put(regexp, matcher);
+		}
+		return matcher;
+	}
+
+	/**
+	 * Is this string free of regular expression meta-characters?
+	 */
+	static boolean isLiteral(String str) {
+		for (int i = 0; i < str.length(); i++)
+			if (REGEX_META_CHARS.indexOf(str.charAt(i)) >= 0) return false;
+		return true;
+	}
+
+	/**
+	 * Create a matcher for a regular expression: Returns true if the
+	 * regular expression is found in the string (i.e. 'Matcher.find()')
+	 */
+	public static Predicate<String> matcher(String regexp) {
+		// Plain substring?
+		if (isLiteral(regexp)) return str -> str.contains(regexp);
+
+		// Anchored substring?
+		boolean start = regexp.startsWith("^");
+		boolean end = regexp.endsWith("$") && !regexp.endsWith("\\$");
+		String literal = regexp.substring(start ? 1 : 0, regexp.length() - (end ? 1 : 0));
+		if ((start || end) && isLiteral(literal)) {
+			if (start && end) return str -> str.equals(literal);
+			if (start) return str -> str.startsWith(literal);
+			return str -> str.endsWith(literal);
+		}
+
+		// Regular expression
+		Pattern pattern = Pattern.compile(regexp);
+		return str -> pattern.matcher(str).find();
+	}
+
 	public Match(Expression left, Expression right) {
 		super(left, right, "~=");
+
+		// Regular expression is a constant? Compile it now
+		if (right instanceof Literal) {
+			Value regexp = ((Literal) right).value;
+			if (!regexp.isNull()) matcherConst = matcher(regexp.asString());
+		}
 	}
 
 	@Override
@@ -28,14 +95,11 @@ public class Match extends ExpressionBinary {
 			// Empty doesn't match anything
 			retVal = false;
 		} else {
-			String regexp = rval.asString();
-
-			Pattern pattern = Pattern.compile(regexp);
-			Matcher matcher = pattern.matcher(value);
-			retVal = matcher.find();
+			Predicate<String> matcher = (matcherConst != null ? matcherConst : cached(rval.asString()));
+			retVal = matcher.test(value);
 		}
 
-		return new Value(negated ? !retVal : retVal);
+		return Value.valueOf(negated ? !retVal : retVal);
 	}
 
 }
@@ -30,7 +30,7 @@ public class Or extends ExpressionBinary {
 
 	@Override
 	protected Value evalOp(Value lval, Value rval) {
-		if (lval.isBool() && rval.isBool()) return new Value(lval.asBool() || rval.asBool());
+		if (lval.isBool() && rval.isBool()) return Value.valueOf(lval.asBool() || rval.asBool());
 		if (lval.canBeInt() && rval.canBeInt()) return new Value(lval.asInt() | rval.asInt());
 		throw new RuntimeException("Cannot peroform '|' between " + lval.type() + " and " + rval.type());
 	}
@@ -0,0 +1,236 @@
+package org.snpsift.lang.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.snpeff.vcf.VcfHeader;
+import org.snpsift.lang.Value;
+import org.snpsift.lang.expression.Field.VcfColumn;
+
+/**
+ * A filter on raw (i.e. not parsed) VCF lines.
+ *
+ * It is built from the top level conjuncts ('&') of a filter expression that
+ * compare a fixed column (CHROM, POS, ID, QUAL, FILTER) to a constant or test
+ * the presence of an INFO field (e.g. 'exists DP'). Lines failing any of these
+ * conjuncts cannot satisfy the expression, so they can be discarded without
+ * creating (and parsing) a VcfEntry.
+ *
+ * The filter is conservative: when in doubt (e.g. a missing or malformed value)
+ * the line is accepted. Accepted lines must still be evaluated using the full expression.
+ *
+ * @author pcingola
+ */
+public class RawLineFilter implements Predicate<String> {
+
+	public static final String MISSING = ".";
+
+	List<Predicate<String>> conjuncts;
+	List<Expression> expressions; // Conjuncts used (for debugging)
+
+	/**
+	 * Create a raw line filter for an expression
+	 * @return A filter, or null if no part of the expression can be evaluated on raw lines
+	 */
+	public static RawLineFilter create(Expression expr, VcfHeader vcfHeader) {
+		RawLineFilter rawLineFilter = new RawLineFilter();
+
+		List<Expression> exprs = new ArrayList<>();
+		conjuncts(expr, exprs);
+		for (Expression e : exprs) {
+			Predicate<String> conjunct = predicate(e, vcfHeader);
+			if (conjunct != null) {
+				rawLineFilter.conjuncts.add(conjunct);
+				rawLineFilter.expressions.add(e);
+			}
+		}
+
+		return rawLineFilter.conjuncts.isEmpty() ? null : rawLineFilter;
+	}
+
+	/**
+	 * Find the start of a column (zero-based column number)
+	 * @return Position of the first character in the column, -1 if the line does not have enough columns
+	 */
+	static int columnStart(String line, int col) {
+		int start = 0;
+		for (int i = 0; i < col; i++) {
+			start = line.indexOf('\t', start) + 1;
+			if (start <= 0) return -1;
+		}
+		return start;
+	}
+
+	/**
+	 * Find the end of a column (i.e. position of the next tab or the end of the line)
+	 */
+	static int columnEnd(String line, int start) {
+		int end = line.indexOf('\t', start);
+		return end < 0 ? line.length() : end;
+	}
+
+	/**
+	 * Comparison between a numeric column and a constant
+	 * @param op : Comparison operator code (see ExpressionCompiler), or -1 for equality
+	 */
+	static Predicate<String> compareNumber(int col, boolean isInt, int op, boolean negated, double constant) {
+		return line -> {
+			int start = columnStart(line, col);
+			if (start < 0) return true;
+			int end = columnEnd(line, start);
+
+			double num;
+			try {
+				num = isInt ? Long.parseLong(line, start, end, 10) : Double.parseDouble(line.substring(start, end));
+			} catch (NumberFormatException e) {
+				return true; // Missing or malformed value: Let the expression decide
+			}
+
+			int cmp = Double.compare(num, constant);
+			if (op < 0) return (cmp == 0) ^ negated;
+			return ExpressionCompiler.result(op, cmp, negated);
+		};
+	}
+
+	/**
+	 * Equality between a string column and a constant
+	 */
+	static Predicate<String> compareString(int col, boolean negated, String constant) {
+		return line -> {
+			int start = columnStart(line, col);
+			if (start < 0) return true;
+			int end = columnEnd(line, start);
+
+			// Missing values might be represented differently once parsed
+			if (end - start == MISSING.length() && line.startsWith(MISSING, start)) return true;
+
+			boolean eq = (end - start == constant.length()) && line.startsWith(constant, start);
+			return eq ^ negated;
+		};
+	}
+
+	/**
+	 * Split an expression into conjuncts (i.e. 'a & b & c' => [a, b, c])
+	 */
+	static void conjuncts(Expression expr, List<Expression> exprs) {
+		if (expr instanceof And && ExpressionCompiler.isPredicate(expr)) {
+			And and = (And) expr;
+			conjuncts(and.left, exprs);
+			conjuncts(and.right, exprs);
+		} else exprs.add(expr);
+	}
+
+	/**
+	 * Does the INFO column have a field 'name'?
+	 */
+	static Predicate<String> infoExists(String name) {
+		return line -> {
+			int start = columnStart(line, VcfColumn.INFO.ordinal());
+			if (start < 0) return true;
+			int end = columnEnd(line, start);
+
+			for (int i = start; i < end;) {
+				int next = line.indexOf(';', i);
+				if (next < 0 || next > end) next = end;
+
+				// Key matches? Key ends with '=' (key-value) or ';' (flag)
+				int keyEnd = i + name.length();
+				if (keyEnd <= next && line.startsWith(name, i) && (keyEnd == next || line.charAt(keyEnd) == '=')) return true;
+
+				i = next + 1;
+			}
+
+			return false;
+		};
+	}
+
+	/**
+	 * Is this a plain field (i.e. not a sub-field, genotype field, constant, etc.)
+	 */
+	static boolean isField(Expression expr) {
+		return expr.getClass() == Field.class && ((Field) expr).name != null;
+	}
+
+	/**
+	 * Create a predicate for a conjunct
+	 * @return A predicate or null if the conjunct cannot be evaluated on raw lines
+	 */
+	static Predicate<String> predicate(Expression expr, VcfHeader vcfHeader) {
+		// INFO field presence
+		if (expr instanceof Exists) {
+			Exists exists = (Exists) expr;
+			if (exists.negated || !isField(exists.expr)) return null;
+
+			// Field must be an INFO field, otherwise the expression might behave differently (e.g. sample names)
+			Field field = (Field) exists.expr;
+			if (field.column != VcfColumn.INFO //
+					|| vcfHeader == null //
+					|| vcfHeader.getVcfHeaderInfo(field.name) == null //
+					|| vcfHeader.getSampleNum(field.name) >= 0 //
+					|| FieldConstant.isConstantField(field.name) //
+			) return null;
+
+			return infoExists(field.name);
+		}
+
+		// Comparisons
+		int op = ExpressionCompiler.compareOp(expr);
+		if (op < 0 && !(expr instanceof Eq)) return null;
+
+		ExpressionBinary eb = (ExpressionBinary) expr;
+		Field field;
+		Value constant;
+		if (isField(eb.left) && eb.right instanceof Literal) {
+			field = (Field) eb.left;
+			constant = ((Literal) eb.right).value;
+		} else if (isField(eb.right) && eb.left instanceof Literal) {
+			field = (Field) eb.right;
+			constant = ((Literal) eb.left).value;
+			if (op >= 0) op = ExpressionCompiler.swap(op);
+		} else return null;
+
+		int col = field.column.ordinal();
+		switch (field.column) {
+		case POS:
+			// Equality: Integer values are only equal to integer constants
+			if (op < 0) return constant.isInt() ? compareNumber(col, true, op, eb.negated, constant.asFloat()) : null;
+			return constant.canBeFloat() ? compareNumber(col, true, op, eb.negated, constant.asFloat()) : null;
+
+		case QUAL:
+			if (op < 0) return constant.isFloat() ? compareNumber(col, false, op, eb.negated, constant.asFloat()) : null;
+			return constant.canBeFloat() ? compareNumber(col, false, op, eb.negated, constant.asFloat()) : null;
+
+		case CHROM:
+		case ID:
+		case FILTER:
+			// Only string equality
+			return (op < 0 && constant.isString()) ? compareString(col, eb.negated, constant.asString()) : null;
+
+		default:
+			return null;
+		}
+	}
+
+	RawLineFilter() {
+		conjuncts = new ArrayList<>();
+		expressions = new ArrayList<>();
+	}
+
+	/**
+	 * Can this line satisfy the expression?
+	 * @return false if the line does not satisfy the expression, true if it might
+	 */
+	@Override
+	public boolean test(String line) {
+		for (Predicate<String> conjunct : conjuncts)
+			if (!conjunct.test(line)) return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "RawLineFilter" + expressions;
+	}
+
+}
@@ -0,0 +1,173 @@
+package org.snpsift.lang.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snpeff.vcf.VcfEntry;
+import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
+import org.snpsift.lang.Value;
+
+/**
+ * A sub-expression shared by several expressions (e.g. many filters evaluated
+ * in a single pass), it is evaluated only once per VCF entry.
+ *
+ * Values are cached for the last VcfEntry evaluated by each thread. Values that
+ * depend on field iterators (e.g. 'GEN[*].GT') are not cached, since they change
+ * in each iteration.
+ *
+ * @author pcingola
+ */
+public class SharedExpression extends Expression {
+
+	/**
+	 * Values of all shared expressions for a VCF entry
+	 */
+	static class Cache {
+		VcfEntry vcfEntry;
+		Value[] values = new Value[0];
+	}
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+	private static final ThreadLocal<Cache> cache = ThreadLocal.withInitial(Cache::new);
+
+	int id; // Index in cache
+	Expression expr;
+
+	/**
+	 * Count number of times each sub-expression appears
+	 */
+	static void count(Expression expr, Map<String, Integer> counts) {
+		String key = key(expr);
+		if (key != null) counts.merge(key, 1, Integer::sum);
+
+		if (expr instanceof ExpressionBinary) {
+			ExpressionBinary eb = (ExpressionBinary) expr;
+			count(eb.left, counts);
+			if (eb.right != null) count(eb.right, counts);
+		} else if (expr instanceof ExpressionUnary) {
+			count(((ExpressionUnary) expr).expr, counts);
+		}
+	}
+
+	/**
+	 * A key identifying equivalent sub-expressions
+	 * @return A key or null if the expression cannot be shared
+	 */
+	static String key(Expression expr) {
+		if (expr == null) return null;
+
+		String name = expr.getClass().getSimpleName() + (expr.negated ? "!" : "");
+		if (expr instanceof Literal) {
+			Value val = ((Literal) expr).value;
+			return name + "<" + (val.isString() ? "s" : "") + (val.isInt() ? "i" : "") + (val.isFloat() ? "f" : "") + (val.isBool() ? "b" : "") + ">" + val;
+		}
+
+		if (expr instanceof ExpressionBinary) {
+			ExpressionBinary eb = (ExpressionBinary) expr;
+			String lkey = key(eb.left);
+			String rkey = (eb.right != null ? key(eb.right) : "");
+			if (lkey == null || rkey == null) return null;
+			return name + "(" + lkey + "," + rkey + ")";
+		}
+
+		if (expr instanceof ExpressionUnary) {
+			String key = key(((ExpressionUnary) expr).expr);
+			return key != null ? name + "(" + key + ")" : null;
+		}
+
+		return name + ":" + expr;
+	}
+
+	/**
+	 * Share sub-expressions: Sub-expressions appearing more than once (in any
+	 * of the expressions) are replaced by the same SharedExpression instance
+	 * @return Expressions, using shared sub-expressions
+	 */
+	public static List<Expression> share(List<Expression> exprs) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (Expression expr : exprs)
+			count(expr, counts);
+
+		Map<String, SharedExpression> shared = new HashMap<>();
+		List<Expression> sharedExprs = new ArrayList<>(exprs.size());
+		for (Expression expr : exprs)
+			sharedExprs.add(share(expr, counts, shared));
+
+		return sharedExprs;
+	}
+
+	static Expression share(Expression expr, Map<String, Integer> counts, Map<String, SharedExpression> shared) {
+		String key = key(expr);
+		boolean share = (key != null) && !(expr instanceof Literal) && counts.get(key) > 1;
+		if (share && shared.containsKey(key)) return shared.get(key);
+
+		// Share sub-expressions
+		if (expr instanceof ExpressionBinary) {
+			ExpressionBinary eb = (ExpressionBinary) expr;
+			eb.left = share(eb.left, counts, shared);
+			if (eb.right != null) eb.right = share(eb.right, counts, shared);
+		} else if (expr instanceof ExpressionUnary) {
+			ExpressionUnary eu = (ExpressionUnary) expr;
+			eu.expr = share(eu.expr, counts, shared);
+		}
+
+		if (!share) return expr;
+
+		SharedExpression se = new SharedExpression(expr);
+		shared.put(key, se);
+		return se;
+	}
+
+	public SharedExpression(Expression expr) {
+		super();
+		this.expr = expr;
+		id = nextId.getAndIncrement();
+	}
+
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		expr.bind(vcfHeader);
+	}
+
+	@Override
+	public Value eval(VcfEntry vcfEntry) {
+		// New entry? Invalidate all cached values
+		Cache c = cache.get();
+		if (c.vcfEntry != vcfEntry) {
+			c.vcfEntry = vcfEntry;
+			Arrays.fill(c.values, null);
+		}
+		if (c.values.length <= id) c.values = Arrays.copyOf(c.values, Math.max(id + 1, 2 * c.values.length));
+
+		Value val = c.values[id];
+		if (val != null) return val;
+
+		// Evaluate and cache value (unless it depends on a field iterator)
+		FieldIterator fieldIterator = FieldIterator.get();
+		long countIterated = fieldIterator.getCountIterated();
+		val = expr.eval(vcfEntry);
+		if (fieldIterator.getCountIterated() == countIterated) c.values[id] = val;
+
+		return val;
+	}
+
+	@Override
+	public Value eval(VcfGenotype vcfGenotype) {
+		return expr.eval(vcfGenotype);
+	}
+
+	public Expression getExpression() {
+		return expr;
+	}
+
+	@Override
+	public String toString() {
+		return expr.toString();
+	}
+
+}
@@ -16,17 +16,25 @@ public class CountHom extends Function {
 	}
 
 	@Override
-	public Value eval(VcfEntry vcfEntry) {
-		long count = 0;
-		for (VcfGenotype gen : vcfEntry)
-			if (gen.isHomozygous()) count++;
+	public int compareFloat(VcfEntry vcfEntry, double constant) {
+		return Double.compare(count(vcfEntry), constant);
+	}
+
+	/**
+	 * Count number of homozygous samples
+	 */
+	long count(VcfEntry vcfEntry) {
+		return GenotypeCodes.get(vcfEntry).count(GenotypeCodes.HOM);
+	}
 
-		return new Value(count);
+	@Override
+	public Value eval(VcfEntry vcfEntry) {
+		return Value.valueOf(count(vcfEntry));
 	}
 
 	@Override
 	public Value eval(VcfGenotype vcfGenotype) {
-		return new Value(vcfGenotype.isHomozygous() ? 1L : 0L);
+		return Value.valueOf(vcfGenotype.isHomozygous() ? 1L : 0L);
 	}
 
 }
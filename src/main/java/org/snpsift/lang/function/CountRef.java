@@ -16,17 +16,26 @@ public class CountRef extends Function {
 	}
 
 	@Override
-	public Value eval(VcfEntry vcfEntry) {
-		long count = 0;
-		for (VcfGenotype gen : vcfEntry)
-			if (!gen.isVariant()) count++;
+	public int compareFloat(VcfEntry vcfEntry, double constant) {
+		return Double.compare(count(vcfEntry), constant);
+	}
+
+	/**
+	 * Count number of reference samples
+	 */
+	long count(VcfEntry vcfEntry) {
+		GenotypeCodes codes = GenotypeCodes.get(vcfEntry);
+		return codes.size() - codes.count(GenotypeCodes.VARIANT);
+	}
 
-		return new Value(count);
+	@Override
+	public Value eval(VcfEntry vcfEntry) {
+		return Value.valueOf(count(vcfEntry));
 	}
 
 	@Override
 	public Value eval(VcfGenotype vcfGenotype) {
-		return new Value(vcfGenotype.isRef() ? 1L : 0L);
+		return Value.valueOf(vcfGenotype.isRef() ? 1L : 0L);
 	}
 
 }
@@ -16,17 +16,25 @@ public class CountVariant extends Function {
 	}
 
 	@Override
-	public Value eval(VcfEntry vcfEntry) {
-		long count = 0;
-		for (VcfGenotype gen : vcfEntry)
-			if (gen.isVariant()) count++;
+	public int compareFloat(VcfEntry vcfEntry, double constant) {
+		return Double.compare(count(vcfEntry), constant);
+	}
+
+	/**
+	 * Count number of ALT samples
+	 */
+	long count(VcfEntry vcfEntry) {
+		return GenotypeCodes.get(vcfEntry).count(GenotypeCodes.VARIANT);
+	}
 
-		return new Value(count);
+	@Override
+	public Value eval(VcfEntry vcfEntry) {
+		return Value.valueOf(count(vcfEntry));
 	}
 
 	@Override
 	public Value eval(VcfGenotype vcfGenotype) {
-		return new Value(vcfGenotype.isVariant() ? 1L : 0L);
+		return Value.valueOf(vcfGenotype.isVariant() ? 1L : 0L);
 	}
 
 }
@@ -1,7 +1,10 @@
 package org.snpsift.lang.function;
 
+import java.util.function.Predicate;
+
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
 import org.snpsift.lang.Value;
 import org.snpsift.lang.expression.Expression;
 
@@ -21,6 +24,11 @@ public abstract class FunctionBoolGenotype extends Function {
 		this.exprIdx = exprIdx;
 	}
 
+	@Override
+	public void bind(VcfHeader vcfHeader) {
+		exprIdx.bind(vcfHeader);
+	}
+
 	/**
 	 * Evaluate index expression and obtein genotype
 	 */
@@ -31,6 +39,20 @@ public abstract class FunctionBoolGenotype extends Function {
 		return gen;
 	}
 
+	/**
+	 * Evaluate index expression and check a genotype flag (see GenotypeCodes).
+	 * Note: Genotype codes are used only if they have already been decoded for
+	 * this entry (e.g. by 'countHet()'), decoding all genotypes to check only
+	 * one of them would be slower than evaluating the genotype.
+	 */
+	protected boolean evalFlag(VcfEntry vcfEntry, int flag, Predicate<VcfGenotype> predicate) {
+		int idx = (int) exprIdx.eval(vcfEntry).asInt();
+		GenotypeCodes codes = GenotypeCodes.peek(vcfEntry);
+		if (codes != null && idx >= 0 && idx < codes.size()) return codes.is(idx, flag);
+
+		return predicate.test(vcfEntry.getVcfGenotype(idx));
+	}
+
 	@Override
 	public String toString() {
 		return operator + "( GEN[" + exprIdx + "] )";
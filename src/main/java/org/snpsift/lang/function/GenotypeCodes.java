@@ -0,0 +1,257 @@
+package org.snpsift.lang.function;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snpeff.vcf.VcfEntry;
+import org.snpeff.vcf.VcfGenotype;
+
+/**
+ * Genotypes of a VCF entry, decoded once into a compact primitive array.
+ *
+ * Each sample is represented by a 4 bit code (HET, HOM, VARIANT and REF flags),
+ * 16 samples are packed in each 'long'. Counting samples having a flag is a
+ * tight loop over the array (mask and 'Long.bitCount()').
+ *
+ * Codes only depend on the genotype string (GT field), so they are calculated
+ * once for each distinct GT string (e.g. '0/1', '1|1', './.') using VcfGenotype's
+ * methods, which keeps the same semantics as evaluating each VcfGenotype.
+ *
+ * GT strings are read from the raw VCF line (the prefix of each sample column,
+ * up to the first ':'), without parsing genotypes. Common GT strings (haploid or
+ * diploid, single digit alleles) are looked up in an array indexed by their
+ * characters. Entries without a raw line, or whose FORMAT does not start with
+ * 'GT', are decoded from their parsed genotypes.
+ *
+ * Codes are cached for the last VcfEntry decoded by each thread (filter
+ * expressions are evaluated concurrently, see FieldIterator).
+ *
+ * @author pcingola
+ */
+public class GenotypeCodes {
+
+	// Flags (bit number within each sample's code)
+	public static final int HET = 0;
+	public static final int HOM = 1;
+	public static final int VARIANT = 2;
+	public static final int REF = 3;
+
+	public static final int BITS_PER_SAMPLE = 4;
+	public static final int SAMPLES_PER_WORD = Long.SIZE / BITS_PER_SAMPLE;
+	public static final int MAX_GT_CODES = 1024; // Maximum number of cached GT strings
+	static final long FLAG_MASK = 0x1111111111111111L; // Lowest bit of every sample's code
+	static final int ALLELE_CHARS = 11; // Allele characters in common GT strings: '0' to '9' and '.'
+	static final int NUM_COMMON_GT = ALLELE_CHARS + ALLELE_CHARS * 2 * ALLELE_CHARS; // Haploid ('1') and diploid ('0/1', '0|1') GT strings
+
+	private static final ThreadLocal<GenotypeCodes> genotypeCodes = ThreadLocal.withInitial(GenotypeCodes::new);
+
+	VcfEntry vcfEntry; // Last VcfEntry decoded
+	long[] words = new long[0];
+	int size; // Number of samples
+	int[] codeByCommonGt = new int[NUM_COMMON_GT]; // Codes for common GT strings (-1 if not yet calculated)
+	Map<String, Integer> codeByGt = new HashMap<>(); // Codes for other GT strings
+
+	/**
+	 * Index of an allele character in common GT strings, -1 if not a common allele
+	 */
+	static int alleleIndex(char c) {
+		if (c >= '0' && c <= '9') return c - '0';
+		if (c == '.') return ALLELE_CHARS - 1;
+		return -1;
+	}
+
+	/**
+	 * Code for a genotype
+	 */
+	public static int code(VcfGenotype gen) {
+		return (gen.isHeterozygous() ? 1 << HET : 0) //
+				| (gen.isHomozygous() ? 1 << HOM : 0) //
+				| (gen.isVariant() ? 1 << VARIANT : 0) //
+				| (gen.isRef() ? 1 << REF : 0);
+	}
+
+	/**
+	 * Index of a common GT string (line.substring(start, end)) in 'codeByCommonGt', -1 if not a common GT string
+	 */
+	static int commonGtIndex(String line, int start, int end) {
+		switch (end - start) {
+		case 1:
+			return alleleIndex(line.charAt(start));
+
+		case 3:
+			int a1 = alleleIndex(line.charAt(start));
+			int a2 = alleleIndex(line.charAt(start + 2));
+			char sep = line.charAt(start + 1);
+			int phased = (sep == '|' ? 1 : (sep == '/' ? 0 : -1));
+			if (a1 < 0 || a2 < 0 || phased < 0) return -1;
+			return ALLELE_CHARS + (a1 * 2 + phased) * ALLELE_CHARS + a2;
+
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Get genotype codes for a VCF entry (decoded if not already done by this thread)
+	 */
+	public static GenotypeCodes get(VcfEntry vcfEntry) {
+		GenotypeCodes gc = genotypeCodes.get();
+		if (gc.vcfEntry != vcfEntry) gc.decode(vcfEntry);
+		return gc;
+	}
+
+	/**
+	 * Get genotype codes for a VCF entry, only if they have already been decoded by this thread
+	 * @return Genotype codes or null
+	 */
+	public static GenotypeCodes peek(VcfEntry vcfEntry) {
+		GenotypeCodes gc = genotypeCodes.get();
+		return gc.vcfEntry == vcfEntry ? gc : null;
+	}
+
+	GenotypeCodes() {
+		Arrays.fill(codeByCommonGt, -1);
+	}
+
+	/**
+	 * Code for a sample
+	 */
+	public int code(int sampleNum) {
+		int shift = (sampleNum % SAMPLES_PER_WORD) * BITS_PER_SAMPLE;
+		return (int) (words[sampleNum / SAMPLES_PER_WORD] >>> shift) & 0xf;
+	}
+
+	/**
+	 * Count number of samples having a flag
+	 */
+	public long count(int flag) {
+		long mask = FLAG_MASK << flag;
+		long count = 0;
+		for (int i = 0; i < words.length; i++)
+			count += Long.bitCount(words[i] & mask);
+		return count;
+	}
+
+	/**
+	 * Code for a GT string (line.substring(start, end)) from a raw VCF line
+	 */
+	int code(VcfEntry vcfEntry, String line, int start, int end) {
+		int idx = commonGtIndex(line, start, end);
+		if (idx >= 0) {
+			int code = codeByCommonGt[idx];
+			if (code < 0) {
+				code = code(new VcfGenotype(vcfEntry, "GT", line.substring(start, end)));
+				codeByCommonGt[idx] = code;
+			}
+			return code;
+		}
+
+		// Uncommon GT string (e.g. multi-digit alleles, polyploid)
+		String gt = line.substring(start, end);
+		Integer code = codeByGt.get(gt);
+		if (code == null) {
+			code = code(new VcfGenotype(vcfEntry, "GT", gt));
+			codeByGt.put(gt, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Decode all genotypes
+	 */
+	void decode(VcfEntry vcfEntry) {
+		if (codeByGt.size() > MAX_GT_CODES) codeByGt.clear(); // Unusual GT strings, don't let the cache grow
+
+		String line = vcfEntry.getLine();
+		String format = vcfEntry.getFormat();
+		boolean gtFirst = format != null && (format.equals("GT") || format.startsWith("GT:"));
+		if (line != null && gtFirst) decodeLine(vcfEntry, line);
+		else decodeGenotypes(vcfEntry);
+
+		this.vcfEntry = vcfEntry;
+	}
+
+	/**
+	 * Decode all genotypes from parsed VcfGenotypes
+	 */
+	void decodeGenotypes(VcfEntry vcfEntry) {
+		List<VcfGenotype> gens = vcfEntry.getVcfGenotypes();
+		resize(gens.size());
+
+		for (int i = 0; i < size; i++) {
+			VcfGenotype gen = gens.get(i);
+			String gt = gen.getGenotypeStr();
+			Integer code = codeByGt.get(gt);
+			if (code == null) {
+				code = code(gen);
+				codeByGt.put(gt, code);
+			}
+			set(i, code);
+		}
+	}
+
+	/**
+	 * Decode all genotypes from a raw VCF line: GT is the prefix of each sample column (FORMAT starts with 'GT')
+	 */
+	void decodeLine(VcfEntry vcfEntry, String line) {
+		// Find first sample column (column 9) and count samples
+		int first = 0;
+		for (int col = 0; col < 9 && first >= 0; col++) {
+			int tab = line.indexOf('\t', first);
+			first = (tab < 0 ? -1 : tab + 1);
+		}
+
+		int numSamples = 0;
+		if (first >= 0) {
+			numSamples = 1;
+			for (int i = first; i < line.length(); i++)
+				if (line.charAt(i) == '\t') numSamples++;
+		}
+		resize(numSamples);
+
+		// Decode GT strings
+		int start = first;
+		for (int i = 0; i < numSamples; i++) {
+			int end = start;
+			char c;
+			while (end < line.length() && (c = line.charAt(end)) != ':' && c != '\t')
+				end++;
+			set(i, code(vcfEntry, line, start, end));
+
+			// Next sample column
+			int tab = line.indexOf('\t', end);
+			start = (tab < 0 ? line.length() : tab + 1);
+		}
+	}
+
+	/**
+	 * Does sample 'sampleNum' have a flag?
+	 */
+	public boolean is(int sampleNum, int flag) {
+		return ((code(sampleNum) >>> flag) & 1) != 0;
+	}
+
+	/**
+	 * Set the number of samples, all codes are cleared
+	 */
+	void resize(int size) {
+		this.size = size;
+		int len = (size + SAMPLES_PER_WORD - 1) / SAMPLES_PER_WORD;
+		if (words.length != len) words = new long[len];
+		else Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * Set code for a sample (codes must be cleared)
+	 */
+	void set(int sampleNum, int code) {
+		words[sampleNum / SAMPLES_PER_WORD] |= ((long) code) << ((sampleNum % SAMPLES_PER_WORD) * BITS_PER_SAMPLE);
+	}
+
+	public int size() {
+		return size;
+	}
+
+}
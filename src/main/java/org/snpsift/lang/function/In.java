@@ -6,37 +6,61 @@ import java.util.Set;
 
 import org.snpeff.vcf.VcfEntry;
 import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfHeader;
+import org.snpsift.lang.StringSet;
 import org.snpsift.lang.Value;
 import org.snpsift.lang.expression.Expression;
 
 /**
  * Is an expression in a set?
  *
+ * Once the expression is bound, look-ups use StringSets (created
+ * once for each set and shared by all 'in' expressions), so that
+ * values can be looked-up without creating new strings (see Expression.in())
+ *
  * @author pablocingolani
  */
 public class In extends Function {
 
 	ArrayList<HashSet<String>> sets;
+	ArrayList<StringSet> stringSets; // Look-up sets, created from 'sets'
 	Expression expression;
 	Expression setIdxExpr;
+	boolean bound;
 
-	public In(ArrayList<HashSet<String>> sets, Expression expression, Expression setIdxExpr) {
+	public In(ArrayList<HashSet<String>> sets, ArrayList<StringSet> stringSets, Expression expression, Expression setIdxExpr) {
 		super("in");
 		this.sets = sets;
+		this.stringSets = stringSets;
 		this.expression = expression;
 		this.setIdxExpr = setIdxExpr;
 	}
 
+	public In(ArrayList<HashSet<String>> sets, Expression expression, Expression setIdxExpr) {
+		this(sets, new ArrayList<>(), expression, setIdxExpr);
+	}
+
 	@Override
-	public Value eval(VcfEntry vcfEntry) {
-		// Evaluate expression
-		String val = expression.eval(vcfEntry).asString();
+	public void bind(VcfHeader vcfHeader) {
+		expression.bind(vcfHeader);
+		setIdxExpr.bind(vcfHeader);
+
+		// Create look-up sets
+		if (!sets.isEmpty()) getStringSet(sets.size() - 1);
+		bound = true;
+	}
 
+	@Override
+	public Value eval(VcfEntry vcfEntry) {
 		// Get set
 		Value idx = setIdxExpr.eval(vcfEntry);
-		Set<String> set = sets.get((int) idx.asInt());
 
 		// Is 'expression' in set?
+		if (bound) return Value.valueOf(expression.in(vcfEntry, stringSets.get((int) idx.asInt())));
+
+		// Evaluate expression
+		String val = expression.eval(vcfEntry).asString();
+		Set<String> set = sets.get((int) idx.asInt());
 		return set.contains(val) ? Value.TRUE : Value.FALSE;
 	}
 
@@ -52,6 +76,29 @@ public class In extends Function {
 		return set.contains(val) ? Value.TRUE : Value.FALSE;
 	}
 
+	public Expression getExpression() {
+		return expression;
+	}
+
+	public Expression getSetIdxExpr() {
+		return setIdxExpr;
+	}
+
+	public ArrayList<HashSet<String>> getSets() {
+		return sets;
+	}
+
+	/**
+	 * Get look-up set number 'idx' (look-up sets up to 'idx' are created, if needed)
+	 */
+	public StringSet getStringSet(int idx) {
+		synchronized (stringSets) {
+			for (int i = stringSets.size(); i <= idx; i++)
+				stringSets.add(new StringSet(sets.get(i)));
+			return stringSets.get(idx);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return expression + " " + operator + " SET[" + setIdxExpr + "]";
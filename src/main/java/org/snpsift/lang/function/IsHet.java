@@ -18,8 +18,7 @@ public class IsHet extends FunctionBoolGenotype {
 
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
-		VcfGenotype gen = evalGenotype(vcfEntry);
-		return gen.isHeterozygous() ? Value.TRUE : Value.FALSE;
+		return evalFlag(vcfEntry, GenotypeCodes.HET, VcfGenotype::isHeterozygous) ? Value.TRUE : Value.FALSE;
 	}
 
 	@Override
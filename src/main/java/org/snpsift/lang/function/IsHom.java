@@ -18,8 +18,7 @@ public class IsHom extends FunctionBoolGenotype {
 
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
-		VcfGenotype gen = evalGenotype(vcfEntry);
-		return gen.isHomozygous() ? Value.TRUE : Value.FALSE;
+		return evalFlag(vcfEntry, GenotypeCodes.HOM, VcfGenotype::isHomozygous) ? Value.TRUE : Value.FALSE;
 	}
 
 	@Override
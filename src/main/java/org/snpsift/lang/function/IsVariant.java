@@ -18,8 +18,7 @@ public class IsVariant extends FunctionBoolGenotype {
 
 	@Override
 	public Value eval(VcfEntry vcfEntry) {
-		VcfGenotype gen = evalGenotype(vcfEntry);
-		return gen.isVariant() ? Value.TRUE : Value.FALSE;
+		return evalFlag(vcfEntry, GenotypeCodes.VARIANT, VcfGenotype::isVariant) ? Value.TRUE : Value.FALSE;
 	}
 
 	@Override
@@ -0,0 +1,202 @@
+package org.snpsift.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+
+/**
+ * An output stream that writes BGZF (block gzip) compressed data.
+ *
+ * Blocks are compressed in parallel using a thread pool and written in
+ * the original order. The output is identical in format to 'bgzip', so
+ * it can be decompressed by any gzip reader and tabix-indexed.
+ *
+ * @author pcingola
+ */
+public class BgzfOutputStream extends OutputStream {
+
+	public static final int BLOCK_SIZE = 0xff00; // Uncompressed block size (same as 'bgzip')
+	public static final int MAX_BLOCK_SIZE = 64 * 1024; // Maximum compressed block size (including header and footer)
+	public static final int BLOCK_HEADER_SIZE = 18;
+	public static final int BLOCK_FOOTER_SIZE = 8; // CRC32 and ISIZE
+	public static final int BLOCKS_PER_THREAD = 4; // Maximum number of blocks 'in flight' per thread
+
+	OutputStream out;
+	ExecutorService compressors;
+	Queue<Future<byte[]>> pending; // Blocks being compressed, in output order
+	int maxPending;
+	int level;
+	byte buffer[];
+	int bufferLen;
+	boolean closed;
+
+	/**
+	 * Compress a block
+	 * @return A BGZF block (header, deflated data and footer)
+	 */
+	public static byte[] compressBlock(byte data[], int len, int level) {
+		byte block[] = new byte[MAX_BLOCK_SIZE];
+		int compressedLen = deflate(data, len, level, block);
+		if (compressedLen < 0) compressedLen = deflate(data, len, Deflater.NO_COMPRESSION, block); // Does not fit, store uncompressed
+		if (compressedLen < 0) throw new RuntimeException("Cannot compress block of " + len + " bytes");
+
+		int blockSize = BLOCK_HEADER_SIZE + compressedLen + BLOCK_FOOTER_SIZE;
+
+		// Header: gzip header with a 'BC' extra field (block size - 1)
+		block[0] = 31; // ID1
+		block[1] = (byte) 139; // ID2
+		block[2] = 8; // CM: Deflate
+		block[3] = 4; // FLG: FEXTRA
+		block[9] = (byte) 255; // OS: Unknown
+		block[10] = 6; // XLEN
+		block[12] = 'B';
+		block[13] = 'C';
+		block[14] = 2; // SLEN
+		writeShort(block, 16, blockSize - 1);
+
+		// Footer
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, len);
+		int pos = BLOCK_HEADER_SIZE + compressedLen;
+		writeInt(block, pos, (int) crc.getValue());
+		writeInt(block, pos + 4, len);
+
+		return Arrays.copyOf(block, blockSize);
+	}
+
+	/**
+	 * Deflate 'len' bytes of 'data' into 'block' (after the header)
+	 * @return Compressed length or -1 if the compressed data does not fit in a block
+	 */
+	static int deflate(byte data[], int len, int level, byte block[]) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(data, 0, len);
+			deflater.finish();
+			int maxLen = MAX_BLOCK_SIZE - BLOCK_HEADER_SIZE - BLOCK_FOOTER_SIZE;
+			int compressedLen = deflater.deflate(block, BLOCK_HEADER_SIZE, maxLen);
+			return deflater.finished() ? compressedLen : -1;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	static void writeInt(byte buf[], int pos, int value) {
+		buf[pos] = (byte) value;
+		buf[pos + 1] = (byte) (value >>> 8);
+		buf[pos + 2] = (byte) (value >>> 16);
+		buf[pos + 3] = (byte) (value >>> 24);
+	}
+
+	static void writeShort(byte buf[], int pos, int value) {
+		buf[pos] = (byte) value;
+		buf[pos + 1] = (byte) (value >>> 8);
+	}
+
+	public BgzfOutputStream(OutputStream out, int numThreads) {
+		this(out, numThreads, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public BgzfOutputStream(OutputStream out, int numThreads, int level) {
+		this.out = out;
+		this.level = level;
+		numThreads = Math.max(1, numThreads);
+		compressors = Executors.newFixedThreadPool(numThreads, r -> {
+			Thread t = new Thread(r, "BgzfOutputStream-compressor");
+			t.setDaemon(true);
+			return t;
+		});
+		pending = new ArrayDeque<>();
+		maxPending = BLOCKS_PER_THREAD * numThreads;
+		buffer = new byte[BLOCK_SIZE];
+	}
+
+	/**
+	 * Write all pending blocks, add an EOF marker and close the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		try {
+			submitBlock();
+			drain(0);
+			out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+			out.close();
+		} finally {
+			closed = true;
+			compressors.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write compressed blocks until there are at most 'maxBlocks' pending
+	 */
+	void drain(int maxBlocks) throws IOException {
+		while (pending.size() > maxBlocks) {
+			try {
+				out.write(pending.remove().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Flush: Compress current (partial) block and write all pending blocks
+	 */
+	@Override
+	public void flush() throws IOException {
+		submitBlock();
+		drain(0);
+		out.flush();
+	}
+
+	/**
+	 * Submit current block for compression
+	 */
+	void submitBlock() throws IOException {
+		if (bufferLen <= 0) return;
+
+		byte data[] = buffer;
+		int len = bufferLen;
+		pending.add(compressors.submit(() -> compressBlock(data, len, level)));
+		buffer = new byte[BLOCK_SIZE];
+		bufferLen = 0;
+
+		drain(maxPending);
+	}
+
+	@Override
+	public void write(byte b[], int off, int len) throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		while (len > 0) {
+			int n = Math.min(len, BLOCK_SIZE - bufferLen);
+			System.arraycopy(b, off, buffer, bufferLen, n);
+			bufferLen += n;
+			off += n;
+			len -= n;
+			if (bufferLen >= BLOCK_SIZE) submitBlock();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		buffer[bufferLen++] = (byte) b;
+		if (bufferLen >= BLOCK_SIZE) submitBlock();
+	}
+
+}
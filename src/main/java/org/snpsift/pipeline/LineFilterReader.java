@@ -0,0 +1,116 @@
+package org.snpsift.pipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A reader that skips data lines (i.e. non-header lines) not accepted by a filter.
+ * Skipped lines are never seen by the VCF parser.
+ *
+ * The filter is created when the first data line is read (i.e. once
+ * all header lines have been read), so it can use the VCF header.
+ *
+ * @author pcingola
+ */
+public class LineFilterReader extends BufferedReader {
+
+	public static final int BUFFER_SIZE = 1024 * 1024;
+
+	Supplier<Predicate<String>> filterFactory; // Create the filter, once the header has been read
+	Predicate<String> filter; // Filter data lines (null means 'accept all lines')
+	boolean headerDone;
+	long countSkipped;
+
+	/**
+	 * Open a (possibly gzip / bgzip compressed) file, "-" means STDIN
+	 */
+	public static LineFilterReader open(String fileName) {
+		return new LineFilterReader(reader(fileName));
+	}
+
+	/**
+	 * Create a reader for a (possibly gzip / bgzip compressed) file, "-" means STDIN
+	 */
+	protected static Reader reader(String fileName) {
+		try {
+			InputStream is;
+			if (fileName.equals("-")) is = System.in;
+			else {
+				is = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+
+				// Gzip magic number?
+				is.mark(2);
+				int id1 = is.read(), id2 = is.read();
+				is.reset();
+				if (id1 == 0x1f && id2 == 0x8b) is = new GZIPInputStream(is, BUFFER_SIZE);
+			}
+
+			return new InputStreamReader(is, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException("Error opening file '" + fileName + "'", e);
+		}
+	}
+
+	public LineFilterReader(Reader reader) {
+		super(reader, BUFFER_SIZE);
+	}
+
+	public long getCountSkipped() {
+		return countSkipped;
+	}
+
+	public Predicate<String> getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Header is complete (i.e. first data line found): Create filter
+	 */
+	protected void headerDone() {
+		if (filterFactory != null) filter = filterFactory.get();
+	}
+
+	/**
+	 * Read next (unfiltered) line
+	 */
+	protected String nextLine() throws IOException {
+		return super.readLine();
+	}
+
+	/**
+	 * Read next line, skipping data lines not accepted by the filter
+	 */
+	@Override
+	public String readLine() throws IOException {
+		while (true) {
+			String line = nextLine();
+			if (line == null || line.isEmpty() || line.charAt(0) == '#') return line; // End of file, empty line or header
+
+			// First data line: Header is complete, create filter
+			if (!headerDone) {
+				headerDone = true;
+				headerDone();
+			}
+
+			if (filter == null || filter.test(line)) return line;
+			countSkipped++;
+		}
+	}
+
+	/**
+	 * Set filter factory, invoked when the first data line is read
+	 */
+	public void setFilterFactory(Supplier<Predicate<String>> filterFactory) {
+		this.filterFactory = filterFactory;
+	}
+
+}
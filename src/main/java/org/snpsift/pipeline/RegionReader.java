@@ -0,0 +1,387 @@
+package org.snpsift.pipeline;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.annotate.VcfIndex;
+
+import htsjdk.tribble.readers.TabixReader;
+
+/**
+ * A reader that only returns VCF data lines overlapping a set of regions.
+ *
+ * Header lines are read from the file. If the file is indexed (bgzip + tabix '.tbi'
+ * or SnpSift's '.sidx' index), data lines are obtained by querying the index, so only
+ * the file blocks overlapping the regions are read. Otherwise the whole file is
+ * scanned and lines outside the regions are skipped.
+ *
+ * Regions are created when the first data line is read (i.e. once all header
+ * lines have been read). A null region set means 'the whole file'.
+ *
+ * Note: Data lines are returned in the same order as in the file: regions are
+ * merged and sorted by position within each chromosome, and chromosomes are
+ * sorted in the index's (i.e. the file's) order. Entries overlapping several
+ * regions are only returned once.
+ *
+ * @author pcingola
+ */
+public class RegionReader extends LineFilterReader {
+
+	public static final String TABIX_EXT = "tbi";
+	public static final int SIDX_QUERY_SLACK = 1000; // '.sidx' queries intersect variants, which might not start at the VCF entry's position (e.g. trimmed MNPs)
+
+	String fileName;
+	boolean useIndex = true; // Use index to read only blocks overlapping the regions
+	boolean verbose;
+	Supplier<Markers> regionsFactory; // Create regions, once the header has been read
+	List<Marker> regions; // Merged and sorted regions (null means 'whole file')
+	Map<String, List<Marker>> regionsByChr; // Regions by chromosome (only when scanning the file)
+	Predicate<String> regionFilter; // Skip data lines outside regions (only when scanning the file)
+	boolean seek; // Are we querying an index?
+	Iterator<Marker> regionIt;
+	Marker region, regionPrev; // Current and previous region
+	TabixReader tabixReader;
+	TabixReader.Iterator tabixIt;
+	VcfIndex vcfIndex;
+	Iterator<VcfEntry> vcfEntryIt;
+
+	/**
+	 * Open a (possibly gzip / bgzip compressed) file, "-" means STDIN
+	 */
+	public static RegionReader open(String fileName) {
+		return new RegionReader(fileName, reader(fileName));
+	}
+
+	/**
+	 * Does a VCF entry [start, end] (zero-based coordinates) overlap the region?
+	 */
+	static boolean overlaps(int start, int end, Marker region) {
+		return start <= region.getEnd() && region.getStart() <= end;
+	}
+
+	/**
+	 * Does a VCF line overlap the region?
+	 * Malformed lines are accepted (let the VCF parser report the error)
+	 */
+	static boolean overlaps(String line, Marker region) {
+		int posStart = line.indexOf('\t') + 1;
+		int posEnd = line.indexOf('\t', posStart);
+		int refStart = (posEnd < 0 ? -1 : line.indexOf('\t', posEnd + 1) + 1);
+		int refEnd = (refStart <= 0 ? -1 : line.indexOf('\t', refStart));
+		if (refEnd < 0) return true;
+
+		int start;
+		try {
+			start = Integer.parseInt(line, posStart, posEnd, 10) - 1;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+		int end = start + Math.max(refEnd - refStart, 1) - 1;
+		return overlaps(start, end, region);
+	}
+
+	/**
+	 * Merge overlapping (or adjacent) regions and sort them
+	 */
+	static List<Marker> merge(Markers markers) {
+		// Group by chromosome (e.g. 'chr1' and '1' are the same chromosome), keep chromosome order
+		Map<String, List<Marker>> byChr = new LinkedHashMap<>();
+		for (Marker m : markers)
+			byChr.computeIfAbsent(Chromosome.simpleName(m.getChromosomeName()), k -> new ArrayList<>()).add(m);
+
+		List<Marker> merged = new ArrayList<>();
+		for (List<Marker> ms : byChr.values()) {
+			ms.sort(Comparator.comparingInt(Marker::getStart));
+
+			Marker prev = null;
+			for (Marker m : ms) {
+				if (prev != null && m.getStart() <= prev.getEnd() + 1) {
+					if (m.getEnd() > prev.getEnd()) prev = new Marker(prev.getParent(), prev.getStart(), m.getEnd());
+				} else {
+					if (prev != null) merged.add(prev);
+					prev = m;
+				}
+			}
+			if (prev != null) merged.add(prev);
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Start position of a VCF line (zero-based)
+	 * Malformed lines return Integer.MAX_VALUE
+	 */
+	static int start(String line) {
+		int posStart = line.indexOf('\t') + 1;
+		int posEnd = line.indexOf('\t', posStart);
+		if (posStart <= 0 || posEnd < 0) return Integer.MAX_VALUE;
+
+		try {
+			return Integer.parseInt(line, posStart, posEnd, 10) - 1;
+		} catch (NumberFormatException e) {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	public RegionReader(String fileName, Reader reader) {
+		super(reader);
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Chromosome's order in the indexed file (Long.MAX_VALUE if the chromosome is not in the index)
+	 */
+	long chromosomeOrder(String chr) {
+		if (tabixReader != null) {
+			String chrTabix = tabixChromosome(chr);
+			return chrTabix != null ? tabixReader.chr2tid(chrTabix) : Long.MAX_VALUE;
+		}
+		return vcfIndex.getFilePosStart(chr);
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		if (tabixReader != null) tabixReader.close();
+		if (vcfIndex != null) vcfIndex.close();
+		tabixReader = null;
+		vcfIndex = null;
+	}
+
+	/**
+	 * Header is complete: Create filters
+	 */
+	@Override
+	protected void headerDone() {
+		super.headerDone();
+		if (regionFilter == null) return;
+
+		Predicate<String> f = filter;
+		filter = (f == null ? regionFilter : regionFilter.and(f));
+	}
+
+	public boolean isSeek() {
+		return seek;
+	}
+
+	/**
+	 * Read next line (from the file or from an index query)
+	 */
+	@Override
+	protected String nextLine() throws IOException {
+		if (seek) return nextRegionLine();
+
+		String line = super.nextLine();
+		if (headerDone || line == null || line.isEmpty() || line.charAt(0) == '#') return line;
+
+		// First data line: Header is complete, create regions
+		Markers markers = (regionsFactory != null ? regionsFactory.get() : null);
+		if (markers == null) return line; // No regions: Read the whole file
+		regions = merge(markers);
+		if (verbose) Log.info("Reading " + regions.size() + " regions from '" + fileName + "'");
+
+		// Indexed file? Query regions
+		if (useIndex && openIndex()) {
+			seek = true;
+			sortChromosomes();
+			regionIt = regions.iterator();
+			return nextRegionLine();
+		}
+
+		// Not indexed: Scan the whole file
+		if (verbose) Log.info("File '" + fileName + "' is not indexed, reading the whole file");
+		regionsByChr = new HashMap<>();
+		for (Marker r : regions)
+			regionsByChr.computeIfAbsent(Chromosome.simpleName(r.getChromosomeName()), k -> new ArrayList<>()).add(r);
+		regionFilter = this::overlapsRegions;
+		return line;
+	}
+
+	/**
+	 * Next data line from index queries
+	 */
+	String nextRegionLine() throws IOException {
+		while (true) {
+			String line = null;
+			int start = 0, end = 0;
+			if (tabixIt != null) {
+				line = tabixIt.next();
+				if (line != null) line = Gpr.removeBackslashR(line);
+				else tabixIt = null;
+			} else if (vcfEntryIt != null) {
+				if (vcfEntryIt.hasNext()) {
+					VcfEntry ve = vcfEntryIt.next();
+					line = ve.getLine(); // Raw line, same as tabix queries or scanning the file
+					start = ve.getStart();
+					end = ve.getEnd();
+				} else vcfEntryIt = null;
+			}
+
+			if (line != null) {
+				// Index queries might return entries that do not overlap the region
+				boolean inRegion = (tabixReader != null ? overlaps(line, region) : overlaps(start, end, region));
+
+				// Regions are sorted and disjoint: Entries overlapping the region that start before the
+				// previous region's end also overlap the previous region, so they have already been returned
+				if (tabixReader != null) start = start(line);
+				boolean returned = regionPrev != null //
+						&& Chromosome.simpleName(regionPrev.getChromosomeName()).equals(Chromosome.simpleName(region.getChromosomeName())) //
+						&& start <= regionPrev.getEnd();
+				if (inRegion && !returned) return line;
+				continue;
+			}
+
+			// Next region
+			if (!regionIt.hasNext()) return null;
+			regionPrev = region;
+			region = regionIt.next();
+			query(region);
+		}
+	}
+
+	/**
+	 * Open index file, if any
+	 * @return true if the file is indexed
+	 */
+	boolean openIndex() {
+		if (fileName.equals("-")) return false;
+
+		try {
+			if (Gpr.exists(fileName + "." + TABIX_EXT)) {
+				if (verbose) Log.info("Using tabix index '" + fileName + "." + TABIX_EXT + "'");
+				tabixReader = new TabixReader(fileName);
+			} else if (Gpr.exists(fileName + "." + VcfIndex.INDEX_EXT)) {
+				if (verbose) Log.info("Using index '" + fileName + "." + VcfIndex.INDEX_EXT + "'");
+				vcfIndex = new VcfIndex(fileName);
+				vcfIndex.setVerbose(verbose);
+				vcfIndex.open();
+				vcfIndex.index();
+			} else return false;
+		} catch (IOException e) {
+			throw new RuntimeException("Error opening index for file '" + fileName + "'", e);
+		}
+
+		// We won't read the rest of the file from this stream
+		try {
+			super.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Does a data line overlap any region (used when scanning the whole file)
+	 */
+	boolean overlapsRegions(String line) {
+		int chrEnd = line.indexOf('\t');
+		if (chrEnd < 0) return true;
+		List<Marker> rs = regionsByChr.get(Chromosome.simpleName(line.substring(0, chrEnd)));
+		if (rs == null) return false;
+
+		// Regions are sorted and disjoint: Only the last region starting before the line's position can overlap it
+		int posStart = chrEnd + 1;
+		int posEnd = line.indexOf('\t', posStart);
+		int start;
+		try {
+			start = Integer.parseInt(line, posStart, posEnd < 0 ? line.length() : posEnd, 10) - 1;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+
+		int lo = 0, hi = rs.size() - 1, idx = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (rs.get(mid).getStart() <= start) {
+				idx = mid;
+				lo = mid + 1;
+			} else hi = mid - 1;
+		}
+
+		// Entries can span several bases (REF length), so the next region might also overlap
+		if (idx >= 0 && overlaps(line, rs.get(idx))) return true;
+		return idx + 1 < rs.size() && overlaps(line, rs.get(idx + 1));
+	}
+
+	/**
+	 * Query index for a region
+	 */
+	void query(Marker region) {
+		if (tabixReader != null) {
+			String chr = tabixChromosome(region.getChromosomeName());
+			tabixIt = (chr != null ? tabixReader.query(chr, region.getStart(), region.getEnd() + 1) : null); // Tabix query interval is zero-based, half open
+		} else {
+			Marker query = new Marker(region.getParent(), Math.max(region.getStart() - SIDX_QUERY_SLACK, 0), (int) Math.min((long) region.getEnd() + SIDX_QUERY_SLACK, Integer.MAX_VALUE));
+			List<VcfEntry> ves = new ArrayList<>();
+			for (Marker m : vcfIndex.query(query))
+				ves.add((VcfEntry) m);
+			Collections.sort(ves, Comparator.comparingInt(VcfEntry::getStart));
+
+			// Remove duplicated entries
+			VcfEntry prev = null;
+			for (Iterator<VcfEntry> it = ves.iterator(); it.hasNext();) {
+				VcfEntry ve = it.next();
+				if (ve == prev) it.remove();
+				else prev = ve;
+			}
+
+			vcfEntryIt = ves.iterator();
+		}
+	}
+
+	public void setRegionsFactory(Supplier<Markers> regionsFactory) {
+		this.regionsFactory = regionsFactory;
+	}
+
+	public void setUseIndex(boolean useIndex) {
+		this.useIndex = useIndex;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Sort regions by chromosome, in the file's order (regions within a chromosome are already sorted by position)
+	 */
+	void sortChromosomes() {
+		Map<String, Long> order = new HashMap<>();
+		for (Marker r : regions)
+			order.computeIfAbsent(Chromosome.simpleName(r.getChromosomeName()), this::chromosomeOrder);
+		regions.sort(Comparator.comparingLong(r -> order.get(Chromosome.simpleName(r.getChromosomeName()))));
+	}
+
+	/**
+	 * Find chromosome name used in the tabix index
+	 * @return Chromosome name or null if not found
+	 */
+	String tabixChromosome(String chr) {
+		for (String c : tabixReader.getChromosomes())
+			if (c.equals(chr)) return c;
+
+		String chrSimple = Chromosome.simpleName(chr);
+		for (String c : tabixReader.getChromosomes())
+			if (Chromosome.simpleName(c).equals(chrSimple)) return c;
+
+		return null;
+	}
+
+}
@@ -0,0 +1,342 @@
+package org.snpsift.pipeline;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfEntry;
+
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.vcf.VCFCodec;
+
+/**
+ * Process a VCF file using a pipeline of threads:
+ *
+ *   - Reader: Reads (and decompresses) the input file, creates batches of VcfEntries
+ *   - Workers: Process (e.g. annotate) each batch and format the output lines
+ *   - Writer: Writes batches in the original order to a buffered output, optionally BGZF
+ *     compressed using 'bgzipThreads' threads (see BgzfOutputStream)
+ *
+ * Batches are processed by 'numWorkers' threads. If the processor
+ * is not thread safe, use a single worker: Reading, processing and
+ * writing still happen in parallel.
+ *
+ * @author pcingola
+ */
+public class VcfPipeline {
+
+	/**
+	 * Process a batch of VCF entries
+	 */
+	public interface VcfBatchProcessor {
+		/**
+		 * @return Output line for each entry in the batch (null if the entry should not be shown)
+		 */
+		String[] process(List<VcfEntry> batch);
+	}
+
+	/**
+	 * A batch of VCF entries and the corresponding output lines
+	 */
+	class Batch {
+		String header; // Header to output before this batch (can be null)
+		List<VcfEntry> entries;
+		String lines[];
+
+		Batch(String header, List<VcfEntry> entries) {
+			this.header = header;
+			this.entries = entries;
+		}
+	}
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int BATCHES_PER_WORKER = 4; // Maximum number of batches 'in flight' per worker
+	public static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+	boolean bgzip; // Compress output using BGZF
+	int bgzipThreads = 1; // Number of threads used to compress output
+	boolean debug;
+	int batchSize = DEFAULT_BATCH_SIZE;
+	int numWorkers = 1;
+	long countIn, countOut;
+	VcfFileIterator vcf;
+	VcfBatchProcessor processor;
+	Function<VcfFileIterator, String> headerProcessor; // Invoked once the VCF header has been read, returns the header to output
+	Consumer<VcfEntry> readListener; // Invoked (in the reader thread, in input order) for each entry read
+	BiConsumer<VcfEntry, String> writeListener; // Invoked (in the writer thread, in input order) for each output line
+	OutputStream out; // Output (null means no output)
+	List<VcfEntry> list; // Add all shown entries to this list (can be null)
+	volatile Throwable readerError;
+
+	/**
+	 * Create a tabix index ('.tbi') for a BGZF compressed VCF file
+	 */
+	public static void createTabixIndex(String vcfFileName) {
+		try {
+			File file = new File(vcfFileName);
+			Index index = IndexFactory.createIndex(file, new VCFCodec(), IndexFactory.IndexType.TABIX);
+			index.writeBasedOnFeatureFile(file);
+		} catch (IOException e) {
+			throw new RuntimeException("Error creating tabix index for file '" + vcfFileName + "'", e);
+		}
+	}
+
+	/**
+	 * Create a batch processor from a function that processes a single entry
+	 * @param processEntry : Returns an output line for the entry or null if the entry should not be shown
+	 */
+	public static VcfBatchProcessor processor(Function<VcfEntry, String> processEntry) {
+		return batch -> {
+			String lines[] = new String[batch.size()];
+			for (int i = 0; i < lines.length; i++)
+				lines[i] = processEntry.apply(batch.get(i));
+			return lines;
+		};
+	}
+
+	public VcfPipeline(VcfFileIterator vcf, VcfBatchProcessor processor) {
+		this.vcf = vcf;
+		this.processor = processor;
+	}
+
+	public long getCountIn() {
+		return countIn;
+	}
+
+	public long getCountOut() {
+		return countOut;
+	}
+
+	/**
+	 * Open output: Buffered (and optionally compressed) stream.
+	 * Closing this stream does not close 'out'
+	 */
+	Writer openOutput() {
+		if (out == null) return null;
+
+		OutputStream os = new FilterOutputStream(out) {
+			@Override
+			public void close() throws IOException {
+				flush(); // Do not close underlying stream (e.g. STDOUT)
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len); // FilterOutputStream writes one byte at a time
+			}
+		};
+
+		if (bgzip) os = new BgzfOutputStream(os, bgzipThreads);
+		return new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Process a batch (invoked from a worker thread)
+	 */
+	Batch process(Batch batch) {
+		batch.lines = processor.process(batch.entries);
+		if (batch.lines.length != batch.entries.size()) throw new RuntimeException("Batch processor returned " + batch.lines.length + " lines, expected " + batch.entries.size());
+		return batch;
+	}
+
+	/**
+	 * Read input and submit batches to workers (invoked from the reader thread)
+	 * Futures are added to 'queue' in input order, a 'null' batch signals the end of the input
+	 */
+	void read(ExecutorService workers, BlockingQueue<Future<Batch>> queue) {
+		try {
+			boolean headerDone = false;
+			List<VcfEntry> entries = new ArrayList<>(batchSize);
+			for (VcfEntry ve : vcf) {
+				String header = null;
+				if (!headerDone) {
+					header = header();
+					headerDone = true;
+				}
+
+				if (readListener != null) readListener.accept(ve);
+				countIn++;
+
+				// Header is sent in its own batch, so it is written before any entry
+				if (header != null) queue.put(CompletableFuture.completedFuture(new Batch(header, new ArrayList<>())));
+
+				entries.add(ve);
+				if (entries.size() >= batchSize) {
+					submit(workers, queue, entries);
+					entries = new ArrayList<>(batchSize);
+				}
+			}
+
+			// Empty input (only header)?
+			if (!headerDone) queue.put(CompletableFuture.completedFuture(new Batch(header(), new ArrayList<>())));
+
+			if (!entries.isEmpty()) submit(workers, queue, entries);
+		} catch (InterruptedException e) {
+			// Writer stopped (e.g. an error occurred), nothing else to do
+			return;
+		} catch (Throwable t) {
+			readerError = t;
+		}
+
+		// Signal end of input
+		try {
+			queue.put(CompletableFuture.completedFuture(null));
+		} catch (InterruptedException e) {
+			// Nothing to do
+		}
+	}
+
+	/**
+	 * Process VCF header
+	 */
+	String header() {
+		return headerProcessor != null ? headerProcessor.apply(vcf) : null;
+	}
+
+	/**
+	 * Run pipeline: Read, process and write all entries
+	 */
+	public void run() {
+		ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+		BlockingQueue<Future<Batch>> queue = new ArrayBlockingQueue<>(BATCHES_PER_WORKER * numWorkers + 1);
+		Thread reader = new Thread(() -> read(workers, queue), "VcfPipeline-reader");
+		reader.setDaemon(true);
+
+		Writer writer = openOutput();
+		try {
+			reader.start();
+			write(writer, queue);
+			if (writer != null) writer.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing output", e);
+		} finally {
+			reader.interrupt(); // Make sure the reader is not blocked (e.g. if an error occurred)
+			workers.shutdownNow();
+		}
+
+		if (debug) Log.debug("VCF pipeline finished. Entries read: " + countIn + ", entries written: " + countOut);
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Compress output using BGZF
+	 */
+	public void setBgzip(boolean bgzip) {
+		this.bgzip = bgzip;
+	}
+
+	/**
+	 * Number of threads used for BGZF compression
+	 */
+	public void setBgzipThreads(int bgzipThreads) {
+		this.bgzipThreads = Math.max(1, bgzipThreads);
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void setHeaderProcessor(Function<VcfFileIterator, String> headerProcessor) {
+		this.headerProcessor = headerProcessor;
+	}
+
+	/**
+	 * Add all shown entries to this list
+	 */
+	public void setList(List<VcfEntry> list) {
+		this.list = list;
+	}
+
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = Math.max(1, numWorkers);
+	}
+
+	public void setOutput(OutputStream out) {
+		this.out = out;
+	}
+
+	public void setReadListener(Consumer<VcfEntry> readListener) {
+		this.readListener = readListener;
+	}
+
+	public void setWriteListener(BiConsumer<VcfEntry, String> writeListener) {
+		this.writeListener = writeListener;
+	}
+
+	/**
+	 * Submit a batch to the workers
+	 */
+	void submit(ExecutorService workers, BlockingQueue<Future<Batch>> queue, List<VcfEntry> entries) throws InterruptedException {
+		Batch batch = new Batch(null, entries);
+		queue.put(workers.submit(() -> process(batch)));
+	}
+
+	/**
+	 * Write batches in the original order (invoked from the calling thread)
+	 */
+	void write(Writer writer, BlockingQueue<Future<Batch>> queue) throws IOException {
+		try {
+			while (true) {
+				Batch batch = queue.take().get();
+				if (batch == null) break; // End of input
+
+				// Write header
+				if (batch.header != null && !batch.header.isEmpty() && writer != null) {
+					writer.write(batch.header);
+					writer.write('\n');
+				}
+
+				// Write entries
+				if (batch.lines == null) continue;
+				for (int i = 0; i < batch.lines.length; i++) {
+					String line = batch.lines[i];
+					if (line == null) continue;
+
+					if (writer != null) {
+						writer.write(line);
+						writer.write('\n');
+					}
+					if (list != null) list.add(batch.entries.get(i));
+					if (writeListener != null) writeListener.accept(batch.entries.get(i), line);
+					countOut++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+
+		if (readerError != null) {
+			if (readerError instanceof RuntimeException) throw (RuntimeException) readerError;
+			throw new RuntimeException(readerError);
+		}
+	}
+
+}
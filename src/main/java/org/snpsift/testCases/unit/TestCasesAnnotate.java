@@ -5,13 +5,16 @@ import org.snpeff.util.Log;
 import org.snpeff.vcf.VcfEntry;
 import org.snpsift.SnpSift;
 import org.snpsift.SnpSiftCmdAnnotate;
+import org.snpsift.annotate.VcfFileIteratorDb;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -880,4 +883,45 @@ public class TestCasesAnnotate {
         assertEquals(expectedValue, value);
     }
 
+    /**
+     * Database lines are projected: Only requested INFO fields are kept and genotypes are removed
+     */
+    @Test
+    public void test_46_project_db_line() {
+        Log.debug("Test");
+        String line = "1\t12345\trs123\tA\tT\t.\tPASS\tAC=1;AF=0.5;DB;AN=2\tGT\t0/1\t0/0";
+        Set<String> infoFields = new HashSet<>(Arrays.asList("AF", "DB"));
+
+        assertEquals("1\t12345\trs123\tA\tT\t.\tPASS\tAF=0.5;DB", VcfFileIteratorDb.project(line, infoFields, false));
+        assertEquals("1\t12345\trs123\tA\tT\t.\tPASS\tAF=0.5;DB\tGT\t0/1\t0/0", VcfFileIteratorDb.project(line, infoFields, true));
+        assertEquals("1\t12345\trs123\tA\tT\t.\tPASS\tAC=1;AF=0.5;DB;AN=2", VcfFileIteratorDb.project(line, null, false));
+        assertEquals("1\t12345\trs123\tA\tT\t.\tPASS\t.", VcfFileIteratorDb.project(line, new HashSet<>(), false));
+
+        // Fields defining coordinates are always kept
+        String lineSv = "1\t1000\tsv1\tN\t<DEL>\t.\tPASS\tSVTYPE=DEL;END=2000;SVLEN=-1000;AF=0.1;AC=3";
+        assertEquals("1\t1000\tsv1\tN\t<DEL>\t.\tPASS\tSVTYPE=DEL;END=2000;SVLEN=-1000;AF=0.1", VcfFileIteratorDb.project(lineSv, infoFields, false));
+    }
+
+    /**
+     * Annotate structural variants using '-info': Database entries must keep
+     * their END coordinate, even if 'END' is not one of the requested fields
+     */
+    @Test
+    public void test_47_sv_info() {
+        Log.debug("Test");
+        String dbFileName = "./test/db_test_sv.vcf";
+        String fileName = "./test/annotate_sv.vcf";
+        String extraArgs[] = {"-info", "AF"};
+        List<VcfEntry> results = annotate(dbFileName, fileName, extraArgs);
+
+        assertEquals(3, results.size());
+        String expectedIds[] = {"sv_del_1", "sv_del_2", "sv_dup_1"};
+        for (int i = 0; i < results.size(); i++) {
+            VcfEntry ve = results.get(i);
+            if (verbose) Log.info(ve);
+            assertEquals(expectedIds[i], ve.getId());
+            assertEquals(ve.getInfo("EXP_AF"), ve.getInfo("AF"));
+        }
+    }
+
 }
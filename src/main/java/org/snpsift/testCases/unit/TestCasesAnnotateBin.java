@@ -0,0 +1,112 @@
+package org.snpsift.testCases.unit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Variant;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.SnpSift;
+import org.snpsift.SnpSiftCmdAnnotate;
+import org.snpsift.annotate.DbVcf;
+import org.snpsift.annotate.DbVcfBin;
+import org.snpsift.annotate.DbVcfBinBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Annotate test case using binary databases (created using 'db build')
+ *
+ * @author pcingola
+ */
+public class TestCasesAnnotateBin extends TestCasesAnnotate {
+
+	public TestCasesAnnotateBin() {
+		String[] binExtraArgs = { "-binary" };
+		defaultExtraArgs = binExtraArgs;
+	}
+
+	/**
+	 * Build a binary database and use it instead of the VCF database
+	 */
+	@Override
+	protected String[] argsList(String dbFileName, String fileName, String[] extraArgs) {
+		// Test uses a specific annotation method? Use the original database
+		List<String> methods = Arrays.asList("-mem", "-sorted", "-tabix");
+		if (extraArgs != null && Arrays.stream(extraArgs).anyMatch(methods::contains)) return super.argsList(dbFileName, fileName, extraArgs);
+
+		String dbBinFileName = dbFileName + "." + DbVcfBin.EXT;
+		DbVcfBinBuilder builder = new DbVcfBinBuilder(dbFileName, dbBinFileName);
+		builder.setBlockSize(4); // Use small blocks, so that queries span several blocks
+		builder.setVerbose(verbose);
+		builder.build();
+		new File(dbBinFileName).deleteOnExit();
+
+		return super.argsList(dbBinFileName, fileName, extraArgs);
+	}
+
+	/**
+	 * Binary database built using only some INFO fields: Structural
+	 * variants must keep their END coordinate
+	 */
+	@Test
+	public void test_bin_01_sv_info_fields() {
+		Log.debug("Test");
+		String dbFileName = "./test/db_test_sv.vcf";
+		String dbBinFileName = dbFileName + ".info." + DbVcfBin.EXT;
+		String fileName = "./test/annotate_sv.vcf";
+
+		DbVcfBinBuilder builder = new DbVcfBinBuilder(dbFileName, dbBinFileName);
+		builder.setInfoFields(Arrays.asList("AF"));
+		builder.setVerbose(verbose);
+		builder.build();
+		new File(dbBinFileName).deleteOnExit();
+
+		String args[] = { "annotate", "-binary", dbBinFileName, fileName };
+		SnpSiftCmdAnnotate snpSiftAnnotate = (SnpSiftCmdAnnotate) new SnpSift(args).cmd();
+		snpSiftAnnotate.setVerbose(verbose);
+		snpSiftAnnotate.setSuppressOutput(!verbose);
+		List<VcfEntry> results = snpSiftAnnotate.run(true);
+
+		assertEquals(3, results.size());
+		String expectedIds[] = { "sv_del_1", "sv_del_2", "sv_dup_1" };
+		for (int i = 0; i < results.size(); i++) {
+			VcfEntry ve = results.get(i);
+			assertEquals(expectedIds[i], ve.getId());
+			assertEquals(ve.getInfo("EXP_AF"), ve.getInfo("AF"));
+		}
+	}
+
+	/**
+	 * Window variants: Skip records that cannot match any variant's REF and ALT
+	 */
+	@Test
+	public void test_bin_02_window_variants_ref_alt() {
+		Log.debug("Test");
+		Chromosome chr = new Genome("test").getOrCreateChromosome("1");
+		List<Variant> variants = new ArrayList<>();
+		variants.add(new Variant(chr, 100, "A", "T"));
+		variants.add(new Variant(chr, 5000, "C", "G"));
+
+		DbVcf.WindowVariants wv = new DbVcf.WindowVariants(variants, Arrays.asList(0, 1), true);
+		assertFalse(wv.intersects(100, 100, "A", "G")); // Different ALT
+		assertTrue(wv.intersects(100, 100, "A", "G,T")); // Multi-allelic
+		assertTrue(wv.intersects(100, 100, "a", "t")); // Case is ignored
+		assertTrue(wv.intersects(100, 1000, "N", "<DEL>")); // Symbolic ALTs are not compared
+		assertFalse(wv.intersects(5000, 5000, "A", "G")); // Different REF
+		assertTrue(wv.intersects(5000, 5000, "C", "G"));
+		assertTrue(wv.intersects(100, 100, "A", "T")); // Records not sorted: Search starts over
+
+		// REF and ALT are not compared
+		wv = new DbVcf.WindowVariants(variants, Arrays.asList(0, 1));
+		assertTrue(wv.intersects(100, 100, "A", "G"));
+	}
+
+}
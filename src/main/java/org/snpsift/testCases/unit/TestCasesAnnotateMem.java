@@ -1,5 +1,30 @@
 package org.snpsift.testCases.unit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.snpeff.util.Log;
+import org.snpsift.annotate.DbVcfMemChromo;
+import org.snpsift.annotate.InfoColumn;
+import org.snpsift.annotate.InfoColumnFloat;
+import org.snpsift.annotate.InfoColumnInt;
+import org.snpsift.annotate.InfoColumnString;
+import org.snpsift.annotate.StringDictionary;
+
+import gnu.trove.list.array.TIntArrayList;
+
 /**
  * Annotate test case
  *
@@ -12,4 +37,140 @@ public class TestCasesAnnotateMem extends TestCasesAnnotate {
 		defaultExtraArgs = memExtraArgs;
 	}
 
+	/**
+	 * Typed INFO columns must preserve values' string representation
+	 */
+	@Test
+	public void test_mem_01_info_columns() {
+		Log.debug("Test");
+
+		// Integer column
+		InfoColumn col = InfoColumn.factory("AC", "12");
+		assertTrue(col instanceof InfoColumnInt);
+		assertTrue(col.add(0, "12"));
+		assertTrue(col.add(2, "-3"));
+		assertFalse(col.add(3, "007")); // Leading zeros would be lost
+		assertEquals("12", col.get(0));
+		assertEquals("-3", col.get(2));
+		assertFalse(col.has(1));
+
+		// Float column
+		col = InfoColumn.factory("AF", "0.25");
+		assertTrue(col instanceof InfoColumnFloat);
+		assertTrue(col.add(0, "0.25"));
+		assertTrue(col.add(1, "2.5e-05"));
+		assertFalse(col.add(2, "0.3,0.7")); // Not a float
+
+		// Convert to string column
+		col = col.toInfoColumnString();
+		assertTrue(col instanceof InfoColumnString);
+		assertTrue(col.add(2, "0.3,0.7"));
+		assertEquals("0.25", col.get(0));
+		assertEquals("2.5e-05", col.get(1));
+		assertEquals("0.3,0.7", col.get(2));
+
+		// Flags
+		col = InfoColumn.factory("DB", null);
+		assertTrue(col.add(5, null));
+		assertTrue(col.has(5));
+		assertNull(col.get(5));
+	}
+
+	/**
+	 * Float columns must keep values' original representation (decimals, exponent notation)
+	 * and integer columns must be promoted to float columns
+	 */
+	@Test
+	public void test_mem_01_info_columns_float() throws IOException {
+		Log.debug("Test");
+		String values[] = { "0.10", "1.23e-05", "0.0001", "1E-4", "1e+05", "-0.5", "0.123456789", "0.25" };
+
+		Map<String, InfoColumn> columns = new HashMap<>();
+		InfoColumn.addInfo(columns, 0, "AF=3");
+		assertTrue(columns.get("AF") instanceof InfoColumnInt);
+		for (int i = 0; i < values.length; i++)
+			InfoColumn.addInfo(columns, i + 1, "AF=" + values[i]);
+
+		InfoColumn col = columns.get("AF");
+		assertTrue(col instanceof InfoColumnFloat, "Unexpected column type " + col.getClass().getSimpleName());
+		assertEquals("3", col.get(0));
+		for (int i = 0; i < values.length; i++)
+			assertEquals(values[i], col.get(i + 1));
+
+		// Write and read back
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		col.write(out);
+		out.close();
+
+		InfoColumn colRead = InfoColumn.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), "AF");
+		assertTrue(colRead instanceof InfoColumnFloat);
+		assertEquals("3", colRead.get(0));
+		for (int i = 0; i < values.length; i++)
+			assertEquals(values[i], colRead.get(i + 1));
+	}
+
+	/**
+	 * Interval tree queries must find the same records (sorted by start) as a linear scan,
+	 * including a few long intervals (e.g. structural variants)
+	 */
+	@Test
+	public void test_mem_02_interval_tree() {
+		Log.debug("Test");
+		Random rand = new Random(20260101);
+
+		for (int n = 0; n < 100; n++) {
+			int size = rand.nextInt(2000);
+			int start[] = new int[size], end[] = new int[size];
+			DbVcfMemChromo dbChr = new DbVcfMemChromo("1");
+			for (int i = 0; i < size; i++) {
+				start[i] = rand.nextInt(100000);
+				end[i] = start[i] + (rand.nextInt(50) == 0 ? rand.nextInt(20000) : rand.nextInt(10));
+				dbChr.add(start[i], end[i], i);
+			}
+			dbChr.build();
+
+			for (int q = 0; q < 100; q++) {
+				int qstart = rand.nextInt(110000), qend = qstart + rand.nextInt(300);
+				TIntArrayList results = dbChr.query(qstart, qend);
+
+				int count = 0;
+				for (int i = 0; i < size; i++)
+					if (start[i] <= qend && qstart <= end[i]) count++;
+				assertEquals(count, results.size());
+
+				for (int i = 0; i < results.size(); i++) {
+					int recIdx = results.get(i);
+					assertTrue(start[recIdx] <= qend && qstart <= end[recIdx]);
+					if (i > 0) assertTrue(start[results.get(i - 1)] <= start[recIdx]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compacted dictionaries and columns must keep their values and codes
+	 */
+	@Test
+	public void test_mem_03_compact() {
+		Log.debug("Test");
+		StringDictionary dictionary = new StringDictionary();
+		assertEquals(0, dictionary.add("A"));
+		assertEquals(1, dictionary.add("C"));
+		dictionary.compact();
+		assertEquals("C", dictionary.get(1));
+		assertEquals(1, dictionary.add("C"));
+		assertEquals(2, dictionary.add("G"));
+
+		InfoColumn col = InfoColumn.factory("ANN", "x");
+		col.add(3, "x");
+		col.add(7, "y");
+		col.compact();
+		assertEquals("x", col.get(3));
+		assertEquals("y", col.get(7));
+		assertTrue(col.add(5000, "x"));
+		assertEquals("x", col.get(5000));
+		assertFalse(col.has(4));
+	}
+
 }
@@ -0,0 +1,16 @@
+package org.snpsift.testCases.unit;
+
+/**
+ * Annotate test case
+ * Uses several worker threads (each one with its own database)
+ *
+ * @author pcingola
+ */
+public class TestCasesAnnotateMultiThreaded extends TestCasesAnnotate {
+
+	public TestCasesAnnotateMultiThreaded() {
+		String[] memExtraArgs = { "-sorted", "-cpus", "4" };
+		defaultExtraArgs = memExtraArgs;
+	}
+
+}
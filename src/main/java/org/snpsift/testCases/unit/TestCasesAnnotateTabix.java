@@ -1,7 +1,22 @@
 package org.snpsift.testCases.unit;
 
 import org.junit.jupiter.api.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Variant;
 import org.snpeff.util.Log;
+import org.snpeff.vcf.VariantVcfEntry;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.annotate.DbVcf;
+import org.snpsift.annotate.DbVcfTabix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Annotate test case using TABIX indexed files
@@ -14,4 +29,65 @@ public class TestCasesAnnotateTabix extends TestCasesAnnotate {
         String[] memExtraArgs = {"-tabix"};
         defaultExtraArgs = memExtraArgs;
     }
+
+    /**
+     * Window variants: Skip database entries that cannot intersect any variant
+     */
+    @Test
+    public void test_tabix_01_window_variants() {
+        Log.debug("Test");
+        Chromosome chr = new Genome("test").getOrCreateChromosome("1");
+        List<Variant> variants = new ArrayList<>();
+        variants.add(new Variant(chr, 100, "A", "T"));
+        variants.add(new Variant(chr, 200, "ACGT", "A"));
+        variants.add(new Variant(chr, 5000, "C", "G"));
+
+        DbVcf.WindowVariants wv = new DbVcf.WindowVariants(variants, Arrays.asList(0, 1, 2));
+        assertTrue(wv.intersects(50, 100)); // Ends at first variant
+        assertFalse(wv.intersects(150, 180));
+        assertTrue(wv.intersects(160, 4000)); // Large entry (e.g. structural variant)
+        assertTrue(wv.intersects(203, 203)); // Next to the deletion
+        assertFalse(wv.intersects(300, 400));
+        assertTrue(wv.intersects(5000, 5000));
+        assertFalse(wv.intersects(6000, 6000));
+    }
+
+    /**
+     * Batched queries must return the same entries as single variant queries
+     */
+    @Test
+    public void test_tabix_02_batched_query() {
+        Log.debug("Test");
+        String dbFileName = "./test/db_test_chr22.vcf.gz";
+
+        // Query every 7th database entry (shifted, so some queries do not match)
+        List<Variant> variants = new ArrayList<>();
+        int n = 0;
+        for (VcfEntry ve : new VcfFileIterator(dbFileName)) {
+            if (n++ % 7 != 0) continue;
+            int shift = (n % 3 == 0 ? 1 : 0);
+            variants.add(new Variant(ve.getChromosome(), ve.getStart() + shift, ve.getRef(), ve.getAltsStr()));
+        }
+
+        DbVcfTabix db = new DbVcfTabix(dbFileName);
+        db.open();
+        List<Collection<VariantVcfEntry>> batched = db.query(variants);
+        assertEquals(variants.size(), batched.size());
+
+        int count = 0;
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(toStr(db.query(variants.get(i))), toStr(batched.get(i)), "Variant " + variants.get(i).toStr());
+            count += batched.get(i).size();
+        }
+        db.close();
+        assertTrue(count > 0);
+    }
+
+    String toStr(Collection<VariantVcfEntry> entries) {
+        List<String> strs = new ArrayList<>();
+        for (VariantVcfEntry ve : entries)
+            strs.add(ve.toStr() + "\t" + ve.getVcfEntry().getInfoStr());
+        strs.sort(null);
+        return String.join("\n", strs);
+    }
 }
@@ -1,14 +1,29 @@
 package org.snpsift.testCases.unit;
 
+import htsjdk.tribble.readers.TabixReader;
 import org.junit.jupiter.api.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Variant;
+import org.snpeff.util.Gpr;
 import org.snpeff.util.Log;
 import org.snpeff.vcf.VcfEntry;
 import org.snpsift.SnpSift;
 import org.snpsift.SnpSiftCmdDbNsfp;
+import org.snpsift.annotate.InfoColumn;
+import org.snpsift.annotate.InfoColumnFloat;
+import org.snpsift.annotate.InfoColumnInt;
 import org.snpsift.fileIterator.DbNsfp;
+import org.snpsift.fileIterator.DbNsfpBin;
+import org.snpsift.fileIterator.DbNsfpBinBlock;
+import org.snpsift.fileIterator.DbNsfpBinBuilder;
+import org.snpsift.fileIterator.DbNsfpEntry;
+import org.snpsift.fileIterator.DbNsfpWindow;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -312,4 +327,292 @@ public class TestCasesDbNsfp {
         assertEquals(".,1.0", vcfEntry.getInfo(SnpSiftCmdDbNsfp.DBNSFP_VCF_INFO_PREFIX + "Polyphen2_HDIV_score"));
     }
 
+    /**
+     * Sliding window: Same results as querying the tabix index for each variant
+     */
+    @Test
+    public void test_12_window() throws IOException {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        String[] vcfFileNames = {"test/test_dbNSFP_04.vcf", "test/test_dbNSFP_05.vcf", "test/test_dbNSFP_06.vcf"};
+        TabixReader tabixReader = new TabixReader(dbFileName);
+
+        for (int windowSize : new int[]{0, DbNsfpWindow.DEFAULT_WINDOW_SIZE, 1000 * 1000}) {
+            DbNsfp dbNsfp = new DbNsfp(dbFileName);
+            dbNsfp.setWindowSize(windowSize);
+            dbNsfp.open();
+
+            int countResults = 0;
+            for (String vcfFileName : vcfFileNames) {
+                for (VcfEntry ve : new VcfFileIterator(vcfFileName)) {
+                    for (Variant var : ve.variants()) {
+                        String expected = queryTabix(dbNsfp, tabixReader, var);
+                        Collection<DbNsfpEntry> results = dbNsfp.query(var);
+                        assertEquals(expected, toStr(results), "Window size " + windowSize + ", variant " + var.toStr());
+                        if (results != null) countResults += results.size();
+                    }
+                }
+            }
+
+            dbNsfp.close();
+            assertTrue(countResults > 0);
+        }
+        tabixReader.close();
+    }
+
+    /**
+     * Projected parsing: Only selected columns are parsed, values are the same as parsing all columns
+     */
+    @Test
+    public void test_13_projection() {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        String vcfFileName = "test/test_dbNSFP_04.vcf";
+        List<String> fields = Arrays.asList("SIFT_pred", "GERP++_RS", "Uniprot_acc", "Ensembl_transcriptid");
+
+        DbNsfp dbNsfpAll = new DbNsfp(dbFileName);
+        dbNsfpAll.open();
+
+        DbNsfp dbNsfp = new DbNsfp(dbFileName);
+        dbNsfp.open();
+        dbNsfp.setFields(fields);
+
+        int count = 0;
+        for (VcfEntry ve : new VcfFileIterator(vcfFileName)) {
+            for (Variant var : ve.variants()) {
+                Collection<DbNsfpEntry> resultsAll = dbNsfpAll.query(var);
+                Collection<DbNsfpEntry> results = dbNsfp.query(var);
+                assertEquals(toStr(resultsAll), toStr(results), "Variant " + var.toStr());
+                if (results == null) continue;
+
+                // Compare values
+                List<DbNsfpEntry> listAll = new ArrayList<>(resultsAll);
+                List<DbNsfpEntry> list = new ArrayList<>(results);
+                for (int i = 0; i < list.size(); i++) {
+                    for (String field : fields)
+                        assertEquals(listAll.get(i).getVcfInfo(field), list.get(i).getVcfInfo(field), "Variant " + var.toStr() + ", field " + field);
+                    assertNull(list.get(i).getVcfInfo("Interpro_domain")); // Not parsed
+                    count++;
+                }
+            }
+        }
+
+        dbNsfpAll.close();
+        dbNsfp.close();
+        assertTrue(count > 0);
+    }
+
+    /**
+     * Binary dbNSFP database: Same results as querying the (bgzip + tabix) text file
+     */
+    @Test
+    public void test_14_binary() throws IOException {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        String vcfFileName = "test/test_dbNSFP_04.vcf";
+        List<String> fields = Arrays.asList("SIFT_pred", "GERP++_RS", "Uniprot_acc", "Ensembl_transcriptid");
+
+        // Build binary database (small blocks, so that many blocks are used)
+        File binFile = File.createTempFile("dbNSFP2.3.test.", "." + DbNsfpBin.EXT);
+        binFile.deleteOnExit();
+        DbNsfpBinBuilder builder = new DbNsfpBinBuilder(dbFileName, binFile.getPath());
+        builder.setVerbose(verbose);
+        builder.setBlockSize(16);
+        builder.build();
+        assertTrue(DbNsfpBin.isDbNsfpBin(binFile.getPath()));
+
+        for (boolean projection : new boolean[] { false, true }) {
+            DbNsfp dbNsfp = new DbNsfp(dbFileName);
+            dbNsfp.open();
+
+            DbNsfpBin dbNsfpBin = new DbNsfpBin(binFile.getPath());
+            dbNsfpBin.open();
+            if (projection) dbNsfpBin.setFields(fields);
+
+            int count = 0;
+            for (VcfEntry ve : new VcfFileIterator(vcfFileName)) {
+                for (Variant var : ve.variants()) {
+                    Collection<DbNsfpEntry> results = dbNsfp.query(var);
+                    Collection<DbNsfpEntry> resultsBin = dbNsfpBin.query(var);
+                    assertEquals(toStr(results), toStr(resultsBin), "Variant " + var.toStr());
+                    if (results == null) continue;
+
+                    // Compare values
+                    List<DbNsfpEntry> list = new ArrayList<>(results);
+                    List<DbNsfpEntry> listBin = new ArrayList<>(resultsBin);
+                    for (int i = 0; i < list.size(); i++) {
+                        for (String field : fields)
+                            assertEquals(list.get(i).getVcfInfo(field), listBin.get(i).getVcfInfo(field), "Variant " + var.toStr() + ", field " + field);
+                        if (projection) assertNull(listBin.get(i).getVcfInfo("Interpro_domain")); // Not read
+                        else assertEquals(list.get(i).getVcfInfo("Interpro_domain"), listBin.get(i).getVcfInfo("Interpro_domain"), "Variant " + var.toStr());
+                        count++;
+                    }
+                }
+            }
+
+            dbNsfp.close();
+            dbNsfpBin.close();
+            assertTrue(count > 0);
+        }
+    }
+
+    /**
+     * Binary dbNSFP database: Numeric fields must be stored in numeric columns (not as strings)
+     */
+    @Test
+    public void test_14_binary_column_types() throws IOException {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        List<String> fields = Arrays.asList("MutationTaster_score", "GERP++_NR", "GERP++_RS");
+
+        File binFile = File.createTempFile("dbNSFP2.3.test.", "." + DbNsfpBin.EXT);
+        binFile.deleteOnExit();
+        DbNsfpBinBuilder builder = new DbNsfpBinBuilder(dbFileName, binFile.getPath());
+        builder.setVerbose(verbose);
+        builder.build();
+
+        DbNsfpBin dbNsfpBin = new DbNsfpBin(binFile.getPath());
+        dbNsfpBin.open();
+
+        int countFloat = 0;
+        for (int blockIdx = 0; blockIdx < dbNsfpBin.getBlockCount(); blockIdx++) {
+            DbNsfpBinBlock block = dbNsfpBin.getBlock(blockIdx);
+            for (String field : fields) {
+                InfoColumn col = block.getColumn(dbNsfpBin.getIndex(field));
+                assertTrue(col instanceof InfoColumnInt || col instanceof InfoColumnFloat, "Block " + blockIdx + ", field '" + field + "': " + col);
+                if (col instanceof InfoColumnFloat) countFloat++;
+            }
+        }
+
+        dbNsfpBin.close();
+        assertTrue(countFloat > 0);
+    }
+
+    /**
+     * Multi-threaded annotation: Same results (and order) as single threaded
+     */
+    @Test
+    public void test_15_parallel() {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        String vcfFileName = "test/test_dbNSFP_04.vcf";
+
+        List<String> expected = new ArrayList<>();
+        for (VcfEntry ve : annotate(dbFileName, vcfFileName, null))
+            expected.add(ve.toString());
+
+        // Small batches, so that workers use their database readers on different regions
+        String[] args = argsList(dbFileName, vcfFileName, null);
+        SnpSiftCmdDbNsfp cmd = (SnpSiftCmdDbNsfp) new SnpSift(args).cmd();
+        cmd.setDbFileName(dbFileName);
+        cmd.setVerbose(verbose);
+        cmd.setSuppressOutput(!verbose);
+        cmd.setDebug(debug);
+        cmd.setTabixCheck(false);
+        cmd.setNumWorkers(4);
+        cmd.setBatchSize(3);
+
+        List<String> results = new ArrayList<>();
+        for (VcfEntry ve : cmd.run(true))
+            results.add(ve.toString());
+
+        assertEquals(String.join("\n", expected), String.join("\n", results));
+    }
+
+    /**
+     * Data types guessed from samples (spread across the file) must be the same as the
+     * ones in the data types cache (guessed from all lines in the file)
+     */
+    @Test
+    public void test_16_data_types_sampled() throws IOException {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        File dtcFile = File.createTempFile("dbNSFP2.3.test.", DbNsfp.DATA_TYPES_CACHE_EXT);
+        dtcFile.deleteOnExit();
+
+        DbNsfp dbNsfp = new DbNsfp(dbFileName) {
+            @Override
+            public void open() {
+                assertTrue(guessDataTypes());
+                saveDataTypesCache(dtcFile.getPath());
+            }
+        };
+        dbNsfp.setVerbose(verbose);
+        dbNsfp.open();
+
+        assertEquals(Gpr.readFile(dbFileName + DbNsfp.DATA_TYPES_CACHE_EXT), Gpr.readFile(dtcFile.getPath()));
+    }
+
+    /**
+     * Sparse variants (most queries seek): Same results as querying the tabix index for each
+     * variant, also when streaming continues over several (small) tabix queries
+     */
+    @Test
+    public void test_17_window_sparse() throws IOException {
+        Log.debug("Test");
+        String dbFileName = "test/dbNSFP2.3.test.txt.gz";
+        String vcfFileName = "test/test_dbNSFP_sparse.vcf";
+
+        DbNsfp dbNsfp = new DbNsfp(dbFileName);
+        dbNsfp.open();
+
+        // Expected results: Query the tabix index for each variant
+        List<Variant> variants = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        TabixReader tabixReaderSeek = new TabixReader(dbFileName);
+        for (VcfEntry ve : new VcfFileIterator(vcfFileName)) {
+            for (Variant var : ve.variants()) {
+                variants.add(var);
+                expected.add(queryTabix(dbNsfp, tabixReaderSeek, var));
+            }
+        }
+        tabixReaderSeek.close();
+        assertTrue(expected.stream().anyMatch(e -> !e.equals("null") && !e.isEmpty()));
+        for (int querySize : new int[]{1, 1000, DbNsfpWindow.DEFAULT_QUERY_SIZE}) {
+            for (int windowSize : new int[]{0, DbNsfpWindow.DEFAULT_WINDOW_SIZE, 1000 * 1000}) {
+                TabixReader tabixReader = new TabixReader(dbFileName);
+                DbNsfpWindow window = new DbNsfpWindow(dbNsfp, tabixReader, windowSize);
+                window.setQuerySize(querySize);
+
+                int countResults = 0;
+                for (int i = 0; i < variants.size(); i++) {
+                    Collection<DbNsfpEntry> results = window.query(variants.get(i));
+                    assertEquals(expected.get(i), toStr(results), "Query size " + querySize + ", window size " + windowSize + ", variant " + variants.get(i).toStr());
+                    if (results != null) countResults += results.size();
+                }
+
+                tabixReader.close();
+                assertTrue(countResults > 0);
+            }
+        }
+        dbNsfp.close();
+    }
+
+    /**
+     * Expected query results, independent of DbNsfpWindow: Query the tabix index at
+     * the variant's position and parse all lines matching the variant
+     */
+    String queryTabix(DbNsfp dbNsfp, TabixReader tabixReader, Variant var) throws IOException {
+        TabixReader.Iterator it = tabixReader.query(var.getChromosomeName(), var.getStart(), var.getStart() + 1);
+        if (it == null) return "null"; // Chromosome not found
+
+        List<DbNsfpEntry> entries = new ArrayList<>();
+        for (String line = it.next(); line != null; line = it.next()) {
+            DbNsfpEntry de = new DbNsfpEntry(dbNsfp, line);
+            if (de.getStart() == var.getStart() //
+                    && de.getEnd() == var.getEnd() //
+                    && de.getReference().equalsIgnoreCase(var.getReference()) //
+                    && de.getAlt().equalsIgnoreCase(var.getAlt()) //
+            ) entries.add(de);
+        }
+        return toStr(entries);
+    }
+
+    String toStr(Collection<DbNsfpEntry> entries) {
+        if (entries == null) return "null";
+        StringBuilder sb = new StringBuilder();
+        for (DbNsfpEntry de : entries)
+            sb.append(de.toStr()).append('\n');
+        return sb.toString();
+    }
 }
@@ -1,6 +1,11 @@
 package org.snpsift.testCases.unit;
 
 import org.junit.jupiter.api.Test;
+import org.snpeff.fileIterator.BedFileIterator;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
 import org.snpeff.util.Log;
 import org.snpeff.vcf.VcfEffect;
@@ -9,10 +14,25 @@ import org.snpeff.vcf.VcfGenotype;
 import org.snpeff.vcf.VcfLof;
 import org.snpsift.SnpSift;
 import org.snpsift.SnpSiftCmdFilter;
+import org.snpsift.annotate.VcfIndex;
+import org.snpsift.lang.LangFactory;
+import org.snpsift.lang.StringSet;
+import org.snpsift.lang.Value;
+import org.snpsift.lang.expression.Expression;
+import org.snpsift.lang.expression.Match;
+import org.snpsift.lang.function.GenotypeCodes;
+import org.snpsift.pipeline.RegionReader;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,6 +46,87 @@ public class TestCasesFilter {
     public static final int STDOUT_BUFFER_SIZE = 10 * 1024 * 1024;
     public static boolean verbose = false;
 
+    /**
+     * Entries must be the same, in the same order
+     */
+    void assertSameEntries(List<VcfEntry> expected, List<VcfEntry> actual, String msg) {
+        assertEquals(expected.size(), actual.size(), msg);
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i).toString(), actual.get(i).toString(), msg);
+    }
+
+    /**
+     * Genotype codes must be the same as evaluating each genotype
+     */
+    void checkGenotypeCodes(VcfEntry ve) {
+        GenotypeCodes codes = GenotypeCodes.get(ve);
+        assertEquals(ve.getVcfGenotypes().size(), codes.size(), "Entry: " + ve.toStr());
+
+        long het = 0, hom = 0, var = 0, ref = 0;
+        int i = 0;
+        for (VcfGenotype gen : ve) {
+            if (gen.isHeterozygous()) het++;
+            if (gen.isHomozygous()) hom++;
+            if (gen.isVariant()) var++;
+            if (gen.isRef()) ref++;
+
+            assertEquals(gen.isHeterozygous(), codes.is(i, GenotypeCodes.HET), "Entry: " + ve.toStr() + ", sample " + i);
+            assertEquals(gen.isHomozygous(), codes.is(i, GenotypeCodes.HOM), "Entry: " + ve.toStr() + ", sample " + i);
+            assertEquals(gen.isVariant(), codes.is(i, GenotypeCodes.VARIANT), "Entry: " + ve.toStr() + ", sample " + i);
+            assertEquals(gen.isRef(), codes.is(i, GenotypeCodes.REF), "Entry: " + ve.toStr() + ", sample " + i);
+            i++;
+        }
+
+        assertEquals(het, codes.count(GenotypeCodes.HET));
+        assertEquals(hom, codes.count(GenotypeCodes.HOM));
+        assertEquals(var, codes.count(GenotypeCodes.VARIANT));
+        assertEquals(ref, codes.count(GenotypeCodes.REF));
+    }
+
+    /**
+     * Filter a file using two differently configured filters (e.g. interpreted and compiled),
+     * both must produce the same entries
+     *
+     * @return Filtered entries
+     */
+    List<VcfEntry> filterCompare(String vcfFileName, String expression, Consumer<SnpSiftCmdFilter> configExpected, Consumer<SnpSiftCmdFilter> configActual) {
+        if (verbose) Log.info("File: '" + vcfFileName + "', expression: '" + expression + "'");
+
+        SnpSiftCmdFilter expectedFilter = new SnpSiftCmdFilter();
+        if (configExpected != null) configExpected.accept(expectedFilter);
+        List<VcfEntry> expected = expectedFilter.filter(vcfFileName, expression, true);
+
+        SnpSiftCmdFilter actualFilter = new SnpSiftCmdFilter();
+        if (configActual != null) configActual.accept(actualFilter);
+        List<VcfEntry> actual = actualFilter.filter(vcfFileName, expression, true);
+
+        assertSameEntries(expected, actual, "File: '" + vcfFileName + "', expression: '" + expression + "'");
+        return actual;
+    }
+
+    /**
+     * Read data lines overlapping regions in a BED file using a RegionReader
+     */
+    List<String> readRegionLines(String fileName, String bedFileName, boolean useIndex) throws IOException {
+        RegionReader reader = RegionReader.open(fileName);
+        reader.setUseIndex(useIndex);
+        reader.setRegionsFactory(() -> {
+            BedFileIterator bedFile = new BedFileIterator(bedFileName, new Genome("genome"));
+            bedFile.setCreateChromos(true);
+            Markers regions = new Markers();
+            for (Variant var : bedFile.load())
+                regions.add(var);
+            return regions;
+        });
+
+        List<String> lines = new ArrayList<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine())
+            if (!line.startsWith("#")) lines.add(line);
+        assertEquals(useIndex, reader.isSeek(), "File: " + fileName);
+        reader.close();
+        return lines;
+    }
+
     List<VcfEntry> snpSiftFilter(String[] args) {
         SnpSift snpSift = new SnpSift(args);
         SnpSiftCmdFilter snpSiftFilter = (SnpSiftCmdFilter) snpSift.cmd();
@@ -1793,4 +1894,424 @@ public class TestCasesFilter {
         assertEquals(countOk, 4);
 
     }
+
+    /**
+     * Compiled expressions must give the same results as the interpreter
+     */
+    @Test
+    public void test_59_compiled_vs_interpreted() {
+        Log.debug("Test");
+
+        String[] expressions = { //
+                "(QUAL >= 50)", //
+                "(50 < QUAL) && (DP > 5)", //
+                "!(CHROM = 'NT_166464') | (POS < 1000)", //
+                "(exists INDEL) || (AF1 <= 0.5) && (DP4[2] > 1)", //
+                "(DP = 3) | (MQ != 60)", //
+                "(CHROM =~ '^NT') & !(na FQ) & (FQ > -50.5)", //
+                "(GEN[0].GT = '1/1') && (DP4[*] > 0)", //
+                "(true) && (QUAL > 20)", //
+                "DP", //
+                "(countVariant() >= 1) & (countRef() < 1)", //
+                "(5 <= DP) & (INDEL > 0) | (FQ < NaN)", //
+                "(ID > 0) | (GEN[0].GQ >= 4)", //
+        };
+
+        for (String expression : expressions)
+            filterCompare("test/test01.vcf", expression, interpreted -> interpreted.setCompile(false), null);
+
+        // Expected results
+        List<VcfEntry> list = filterCompare("test/test01.vcf", "(QUAL >= 50)", interpreted -> interpreted.setCompile(false), null);
+        assertEquals(274, list.size());
+        for (VcfEntry ve : list)
+            assertTrue(ve.getQuality() >= 50);
+    }
+
+    /**
+     * Regular expression fast paths (literal / anchored substrings) must match the regex engine
+     */
+    @Test
+    public void test_60_match_fast_path() {
+        Log.debug("Test");
+
+        String[] regexps = {"missense", "^missense", "variant$", "^missense_variant$", "sense", "", "^", "$", "mis.ense", "a\\$", "stop_gained|missense"};
+        String[] values = {"missense_variant", "synonymous_variant", "missense", "stop_gained&missense_variant", "a$", "variant$x"};
+
+        for (String regexp : regexps) {
+            Pattern pattern = Pattern.compile(regexp);
+            Predicate<String> matcher = Match.matcher(regexp);
+            for (String value : values)
+                assertEquals(pattern.matcher(value).find(), matcher.test(value), "Regexp '" + regexp + "', value '" + value + "'");
+        }
+    }
+
+    /**
+     * Fields bound to the VCF header must evaluate to the same values as unbound fields
+     */
+    @Test
+    public void test_61_bind_header() {
+        Log.debug("Test");
+
+        String[] expressions = { "CHROM", "POS", "ID", "REF", "ALT", "QUAL", "FILTER", "FORMAT", "DP", "DP4[2]", "AF1", "INDEL", "CI95[1]", "GEN[0].GT", "GEN[0].PL[1]", "(QUAL >= 50) && (DP4[3] > 0)" };
+
+        for (String expression : expressions) {
+            Expression unbound = new LangFactory().compile(expression);
+            Expression bound = new LangFactory().compile(expression);
+
+            VcfFileIterator vcf = new VcfFileIterator("test/test01.vcf");
+            boolean first = true;
+            for (VcfEntry ve : vcf) {
+                if (first) bound.bind(vcf.getVcfHeader()); // Header is read together with the first entry
+                first = false;
+
+                Value expected = unbound.eval(ve);
+                Value actual = bound.eval(ve);
+                if (verbose) Log.info(expression + "\t" + expected + "\t" + actual);
+                assertEquals(expected.toString(), actual.toString(), "Expression: '" + expression + "'");
+            }
+        }
+    }
+
+    /**
+     * Multi-threaded filter: Iterated fields ('ANN[*]', 'GEN[*]') are evaluated concurrently
+     * by several worker threads, results must be the same as a single threaded filter
+     */
+    @Test
+    public void test_62_parallel() {
+        Log.debug("Test");
+
+        String[][] tests = { //
+                { "test/test03.ann.vcf", "ANN[*].EFFECT = 'synonymous_variant'" }, //
+                { "test/test03.ann.vcf", "ANN[*].IMPACT = 'LOW' | ANN[*].IMPACT = 'MODERATE'" }, //
+                { "test/test03.ann.vcf", "(ANN[ALL].EFFECT = 'downstream_gene_variant')" }, //
+                { "test/test01.vcf", "( GEN[0].PL[1] > 100 ) " }, //
+                { "test/test02.vcf", "GEN[*].AP[*] > 0.95" }, //
+        };
+
+        for (String[] test : tests)
+            filterCompare(test[0], test[1], null, parallel -> parallel.setNumWorkers(4));
+
+        // Expected results
+        List<VcfEntry> list = filterCompare("test/test03.ann.vcf", "ANN[*].IMPACT = 'LOW' | ANN[*].IMPACT = 'MODERATE'", null, parallel -> parallel.setNumWorkers(4));
+        assertEquals(13, list.size());
+        for (VcfEntry ve : list) {
+            String ann = ve.getInfo("ANN");
+            assertTrue(ann.contains("|LOW|") || ann.contains("|MODERATE|"), "Entry: " + ve.toStr());
+        }
+    }
+
+    /**
+     * Raw line filter: Lines discarded before parsing must not change the results
+     */
+    @Test
+    public void test_63_raw_line_filter() {
+        Log.debug("Test");
+
+        String[] expressions = { //
+                "(CHROM = '19') & (POS > 200000) & (POS <= 400000)", //
+                "(QUAL >= 50) && (exists INDEL)", //
+                "(FILTER = 'PASS') & (50 > QUAL)", //
+                "(ID != '.') & (DP > 3)", //
+                "(CHROM = 'NT_166464') | (POS < 1000)", //
+                "(POS = 10020) & (CHROM != 'XYZ')", //
+        };
+
+        for (String expression : expressions)
+            filterCompare("test/test01.vcf", expression, noRawFilter -> noRawFilter.setRawLineFilter(false), null);
+
+        // Expected results
+        List<VcfEntry> list = filterCompare("test/test01.vcf", "(QUAL >= 50) && (exists INDEL)", noRawFilter -> noRawFilter.setRawLineFilter(false), null);
+        assertEquals(50, list.size());
+        for (VcfEntry ve : list)
+            assertTrue(ve.getQuality() >= 50 && ve.getInfo("INDEL") != null, "Entry: " + ve.toStr());
+    }
+
+    /**
+     * Region filtering: Seek into indexed files (tabix and sidx), results must be the same as scanning the whole file
+     */
+    @Test
+    public void test_64_regions() throws IOException {
+        Log.debug("Test");
+
+        String[] expressions = { //
+                "(CHROM = '2') & (POS > 30000) & (POS <= 90000)", //
+                "(POS >= 66784) & (CHROM = '3') & (exists ID)", //
+                "(CHROM = '6') & (POS < 149746.5)", //
+                "(CHROM = '7') & (POS > 400000) & (POS < 100)", //
+                "(CHROM = 'chr3')", //
+                "(POS < 100000)", //
+        };
+
+        // Create sidx index for uncompressed file
+        String vcfFileName = "test/db_test_38.vcf";
+        String indexFileName = vcfFileName + "." + VcfIndex.INDEX_EXT;
+        (new File(indexFileName)).delete();
+        VcfIndex vcfIndex = new VcfIndex(vcfFileName);
+        vcfIndex.open();
+        vcfIndex.index();
+        vcfIndex.close();
+
+        try {
+            for (String expression : expressions)
+                for (String fileName : new String[] { vcfFileName, vcfFileName + ".gz" })
+                    filterCompare(fileName, expression, noIndex -> noIndex.setUseIndex(false), null);
+
+            // Expected results
+            List<VcfEntry> list = filterCompare(vcfFileName + ".gz", expressions[0], noIndex -> noIndex.setUseIndex(false), null);
+            assertEquals(6, list.size());
+            for (VcfEntry ve : list)
+                assertTrue(ve.getChromosomeName().equals("2") && ve.getStart() + 1 > 30000 && ve.getStart() + 1 <= 90000, "Entry: " + ve.toStr());
+
+            // BED regions: Same as an expression selecting entries in these regions
+            String expression = "((CHROM = '2') & (POS > 30000) & (POS <= 90000)) | ((CHROM = '3') & (POS > 60000) & (POS <= 160000))";
+            SnpSiftCmdFilter exprFilter = new SnpSiftCmdFilter();
+            List<VcfEntry> listExpr = exprFilter.filter(vcfFileName, expression, true);
+            assertEquals(9, listExpr.size());
+
+            // Unsorted BED file, overlapping regions, different chromosome names ('chr2' and '2'): Same entries, in the VCF file's order
+            for (String bedFileName : new String[] { "test/filter_regions.bed", "test/filter_regions_unsorted.bed" }) {
+                for (String fileName : new String[] { vcfFileName, vcfFileName + ".gz" }) {
+                    for (boolean useIndex : new boolean[] { true, false }) {
+                        SnpSiftCmdFilter regionsFilter = new SnpSiftCmdFilter();
+                        regionsFilter.setRegionsFile(bedFileName);
+                        regionsFilter.setUseIndex(useIndex);
+                        List<VcfEntry> listRegions = regionsFilter.filter(fileName, "POS > 0", true);
+                        assertSameEntries(listExpr, listRegions, "BED: '" + bedFileName + "', file: '" + fileName + "', use index: " + useIndex);
+                    }
+                }
+
+                // Raw lines: Same lines using 'sidx' index, tabix index and scanning the file
+                List<String> lines = readRegionLines(vcfFileName, bedFileName, false);
+                assertEquals(listExpr.size(), lines.size());
+                assertEquals(lines, readRegionLines(vcfFileName, bedFileName, true), "BED: '" + bedFileName + "', sidx index");
+                assertEquals(lines, readRegionLines(vcfFileName + ".gz", bedFileName, true), "BED: '" + bedFileName + "', tabix index");
+            }
+        } finally {
+            (new File(indexFileName)).delete();
+        }
+    }
+
+    /**
+     * Genotype codes: Same results as evaluating each genotype
+     */
+    @Test
+    public void test_65_genotype_codes() {
+        Log.debug("Test");
+
+        // Unusual genotypes (multi-digit alleles, polyploid, haploid, GT not first in FORMAT) in 'gt_codes.vcf'
+        for (String vcfFileName : new String[] { "test/gt_test.01.vcf", "test/gt_codes.vcf" }) {
+            VcfFileIterator vcf = new VcfFileIterator(vcfFileName);
+            for (VcfEntry ve : vcf)
+                checkGenotypeCodes(ve);
+        }
+
+        // Functions using genotype codes and single genotypes: Same results as the interpreter
+        String[] expressions = { //
+                "(countHet() > 3) & isHet(GEN[7])", //
+                "isVariant(GEN[98]) | (countHom() < 97)", //
+                "(countRef() = 99) & isRef(GEN[0])", //
+                "(countVariant() >= 2) & !isHom(GEN[3])", //
+        };
+
+        for (String expression : expressions)
+            filterCompare("test/gt_test.01.vcf", expression, interpreter -> interpreter.setCompile(false), null);
+
+        // Expected results
+        List<VcfEntry> list = filterCompare("test/gt_test.01.vcf", expressions[0], interpreter -> interpreter.setCompile(false), null);
+        assertEquals(5, list.size());
+        for (VcfEntry ve : list)
+            assertTrue(ve.getVcfGenotype(7).isHeterozygous(), "Entry: " + ve.toStr());
+    }
+
+    /**
+     * Many named expressions in a single pass: Same results as filtering with each expression
+     */
+    @Test
+    public void test_66_named_expressions() {
+        Log.debug("Test");
+
+        String vcfFileName = "test/test01.vcf";
+        String exprsFile = "test/filter_exprs.txt";
+        String[] names = { "lowQual", "highQualDp", "deep", "chr19deep", "gqDeep", "gqHighQual" };
+        String[] expressions = { //
+                "(QUAL < 50)", //
+                "(QUAL >= 50) & (DP > 3)", //
+                "(DP > 3)", //
+                "(CHROM = '19') & (DP > 3)", //
+                "(GEN[*].GQ > 10) & (DP > 3)", //
+                "(GEN[*].GQ > 10) & (QUAL >= 50)", //
+        };
+
+        // Add names to FILTER field
+        SnpSiftCmdFilter tagFilter = new SnpSiftCmdFilter();
+        tagFilter.setExprsFile(exprsFile);
+        List<VcfEntry> listTag = tagFilter.filter(vcfFileName, null, true);
+
+        // Write to one file per expression
+        String prefix = System.getProperty("java.io.tmpdir") + "/test_66_";
+        SnpSiftCmdFilter filesFilter = new SnpSiftCmdFilter();
+        filesFilter.setExprsFile(exprsFile);
+        filesFilter.setExprsOutPrefix(prefix);
+        filesFilter.filter(vcfFileName, null, true);
+
+        for (int i = 0; i < names.length; i++) {
+            SnpSiftCmdFilter filter = new SnpSiftCmdFilter();
+            List<VcfEntry> list = filter.filter(vcfFileName, expressions[i], true);
+            assertTrue(list.size() > 0, "Expression: '" + expressions[i] + "'");
+
+            // Check output file
+            String fileName = prefix + names[i] + ".vcf";
+            List<VcfEntry> listFile = new ArrayList<>();
+            for (VcfEntry ve : new VcfFileIterator(fileName))
+                listFile.add(ve);
+            assertEquals(list.size(), listFile.size(), "Expression: '" + expressions[i] + "'");
+            for (int j = 0; j < list.size(); j++)
+                assertEquals(list.get(j).toString(), listFile.get(j).toString(), "Expression: '" + expressions[i] + "'");
+            (new File(fileName)).delete();
+
+            // Check FILTER field
+            int count = 0;
+            for (VcfEntry ve : listTag)
+                if (Arrays.asList(ve.getFilter().split(";")).contains(names[i])) count++;
+            assertEquals(list.size(), count, "Expression: '" + expressions[i] + "'");
+        }
+    }
+
+    /**
+     * Set look-ups ('in SET[n]') on sub-fields: Same results as checking each entry
+     */
+    @Test
+    public void test_67_in_set() {
+        Log.debug("Test");
+
+        // Look-up set: Strings and regions of strings
+        StringSet set = new StringSet(Arrays.asList("T", "CA", "CAAA"));
+        assertEquals(3, set.size());
+        assertTrue(set.contains("CA"));
+        assertFalse(set.contains("C"));
+        assertTrue(set.contains("C,CA,G", 2, 4));
+        assertFalse(set.contains("C,CAA,G", 2, 5));
+
+        // Count expected results
+        String vcfFileName = "test/db_test_chr22.vcf";
+        int countFirst = 0, countAny = 0;
+        for (VcfEntry ve : new VcfFileIterator(vcfFileName)) {
+            String[] alts = ve.getAltsStr().split(",");
+            if (set.contains(alts[0])) countFirst++;
+            for (String alt : alts)
+                if (set.contains(alt)) {
+                    countAny++;
+                    break;
+                }
+        }
+
+        String[] expressions = { "ALT[0] in SET[0]", "ALT[*] in SET[0]" };
+        int[] expected = { countFirst, countAny };
+        for (int i = 0; i < expressions.length; i++) {
+            List<VcfEntry> list = filterCompare(vcfFileName, expressions[i], interpreter -> {
+                interpreter.setCompile(false);
+                interpreter.addSet("test/set_alt_test01.txt");
+            }, compiled -> compiled.addSet("test/set_alt_test01.txt"));
+            assertEquals(expected[i], list.size(), "Expression: '" + expressions[i] + "'");
+        }
+    }
+
+    /**
+     * Output to a file ('-out'), optionally BGZF compressed and tabix indexed ('-tbi')
+     */
+    @Test
+    public void test_68_output_file() {
+        Log.debug("Test");
+
+        String vcfFileName = "test/test01.vcf";
+        String expression = "(QUAL >= 50)";
+        List<VcfEntry> list = new SnpSiftCmdFilter().filter(vcfFileName, expression, true);
+        assertTrue(list.size() > 0);
+
+        String tmpDir = System.getProperty("java.io.tmpdir");
+        String[][] tests = { //
+                { tmpDir + "/test_68.vcf" }, //
+                { tmpDir + "/test_68.vcf.gz", "-tbi" }, //
+        };
+
+        for (String[] test : tests) {
+            String outFile = test[0];
+            List<String> args = new ArrayList<>(Arrays.asList("filter", "-out", outFile));
+            if (test.length > 1) args.add(test[1]);
+            args.add(expression);
+            args.add(vcfFileName);
+
+            SnpSiftCmdFilter cmd = (SnpSiftCmdFilter) new SnpSift(args.toArray(new String[0])).cmd();
+            cmd.run();
+
+            // Output file has the same entries
+            List<VcfEntry> listFile = new ArrayList<>();
+            for (VcfEntry ve : new VcfFileIterator(outFile))
+                listFile.add(ve);
+            assertEquals(list.size(), listFile.size(), "Output file: " + outFile);
+            for (int i = 0; i < list.size(); i++)
+                assertEquals(list.get(i).toString(), listFile.get(i).toString(), "Output file: " + outFile);
+
+            // Tabix index
+            File tbi = new File(outFile + ".tbi");
+            if (test.length > 1) assertTrue(tbi.exists(), "Missing tabix index: " + tbi);
+            tbi.delete();
+            new File(outFile).delete();
+        }
+
+        // Tabix index requires a '.gz' output file
+        assertNull(SnpSift.checkOutputArgs(tmpDir + "/test_68.vcf.gz", true, true));
+        assertNull(SnpSift.checkOutputArgs(tmpDir + "/test_68.vcf", false, false));
+        assertNull(SnpSift.checkOutputArgs(null, true, false));
+        assertNotNull(SnpSift.checkOutputArgs(tmpDir + "/test_68.vcf", true, true));
+        assertNotNull(SnpSift.checkOutputArgs(tmpDir + "/test_68.vcf", true, false));
+        assertNotNull(SnpSift.checkOutputArgs(null, true, true));
+    }
+
+    /**
+     * Missing fields are errors ('--errMissing'): Lines must not be discarded
+     * before evaluating the expression (raw line filter), otherwise the error is not reported
+     */
+    @Test
+    public void test_69_raw_line_filter_err_missing() {
+        Log.debug("Test");
+
+        String vcfFileName = "test/filter_err_missing.vcf";
+        String expression = "(DP > 3) & (QUAL > 1000)";
+
+        // Missing fields are not errors: No entry satisfies the expression
+        List<VcfEntry> list = new SnpSiftCmdFilter().filter(vcfFileName, expression, true);
+        assertEquals(0, list.size());
+
+        // Missing 'DP' in the second entry is reported, even if 'QUAL' could discard the line
+        for (boolean compile : new boolean[] { true, false }) {
+            SnpSiftCmdFilter filter = new SnpSiftCmdFilter();
+            filter.setExceptionIfNotFound(true);
+            filter.setCompile(compile);
+            assertThrows(RuntimeException.class, () -> filter.filter(vcfFileName, expression, true), "Compile: " + compile);
+        }
+    }
+
+    /**
+     * Named expressions are evaluated before adding any name to the FILTER field,
+     * so expressions using FILTER do not depend on the order of the expressions
+     */
+    @Test
+    public void test_70_named_expressions_order() {
+        Log.debug("Test");
+
+        SnpSiftCmdFilter tagFilter = new SnpSiftCmdFilter();
+        tagFilter.setExprsFile("test/filter_exprs_order.txt");
+        List<VcfEntry> listTag = tagFilter.filter("test/test01.vcf", null, true);
+        assertEquals(977, listTag.size());
+
+        int countHq = 0, countNotHq = 0;
+        for (VcfEntry ve : listTag) {
+            List<String> filters = Arrays.asList(ve.getFilter().split(";"));
+            if (filters.contains("hq")) countHq++;
+            if (filters.contains("notHq")) countNotHq++;
+        }
+        assertEquals(274, countHq);
+        assertEquals(977, countNotHq);
+    }
 }
@@ -2,9 +2,12 @@ package org.snpsift.testCases.unit;
 
 import org.junit.jupiter.api.Test;
 import org.snpeff.util.Log;
+import org.snpsift.SnpSift;
+import org.snpsift.hwe.SnpSiftCmdHwe;
 import org.snpsift.hwe.VcfHwe;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * HWE test cases
@@ -136,4 +139,21 @@ public class TestCasesHwe {
             assertEquals(ps[i], p, 0.0000000001);
         }
     }
+
+    /**
+     * Run 'hwe' command (pipeline): Header and INFO fields are added
+     */
+    @Test
+    public void test_05_cmd() {
+        String[] args = {"hwe", "-t", "2", "test/test.private.02.vcf"};
+        SnpSiftCmdHwe cmd = (SnpSiftCmdHwe) new SnpSift(args).cmd();
+        cmd.setSaveOutput(true);
+        cmd.run();
+
+        String out = cmd.getOutput();
+        if (verbose) Log.info(out);
+        assertTrue(out.contains("##INFO=<ID=HWE,"), "Missing HWE header line");
+        for (String line : out.split("\n"))
+            if (!line.startsWith("#")) assertTrue(line.contains("HWE="), "Missing HWE INFO field: " + line);
+    }
 }
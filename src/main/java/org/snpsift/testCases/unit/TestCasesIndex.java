@@ -9,9 +9,11 @@ import org.snpeff.util.Gpr;
 import org.snpeff.util.Log;
 import org.snpeff.vcf.VcfEntry;
 import org.snpsift.annotate.VcfIndex;
+import org.snpsift.annotate.VcfIndexTreeMapped;
 
 import java.io.File;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -135,4 +137,81 @@ public class TestCasesIndex {
         vcfIndex.close();
     }
 
+    /**
+     * Index a VCF file, then load the (memory mapped) index and query all entries
+     */
+    @Test
+    public void test_03() {
+        Log.debug("Test");
+        String dbFileName = "./test/db_test_index_02.vcf";
+
+        // Create index file
+        String indexFileName = dbFileName + "." + VcfIndex.INDEX_EXT;
+        (new File(indexFileName)).delete();
+        VcfIndex vcfIndex = new VcfIndex(dbFileName);
+        vcfIndex.setVerbose(verbose);
+        vcfIndex.open();
+        vcfIndex.index();
+        vcfIndex.close();
+
+        // Load index: Trees should be mapped from the index file
+        vcfIndex = new VcfIndex(dbFileName);
+        vcfIndex.setVerbose(verbose);
+        vcfIndex.open();
+        vcfIndex.index();
+
+        VcfFileIterator vcf = new VcfFileIterator(dbFileName);
+        for (VcfEntry ve : vcf) {
+            assertTrue(vcfIndex.getTree(ve.getChromosomeName()) instanceof VcfIndexTreeMapped, "Index tree is not memory mapped");
+
+            // Query database, we should find the entry itself
+            for (Variant var : ve.variants()) {
+                boolean found = false;
+                for (Marker res : vcfIndex.query(var))
+                    found |= ve.toStr().equals(((VcfEntry) res).toStr());
+
+                assertTrue(found, "Entry not found in index:\n\t" + ve);
+            }
+        }
+
+        vcfIndex.close();
+    }
+
+    /**
+     * Query all entries twice: Second time entries should be retrieved from the cache
+     */
+    @Test
+    public void test_04() {
+        Log.debug("Test");
+        String dbFileName = "./test/db_test_index_01.vcf";
+
+        VcfIndex vcfIndex = new VcfIndex(dbFileName);
+        vcfIndex.setVerbose(verbose);
+        vcfIndex.open();
+        vcfIndex.index();
+
+        // Query all entries
+        VcfFileIterator vcf = new VcfFileIterator(dbFileName);
+        int count = 0;
+        for (VcfEntry ve : vcf) {
+            for (Variant var : ve.variants())
+                count += vcfIndex.query(var).size();
+        }
+        long misses = vcfIndex.getCache().getMisses();
+
+        // Query again: Same results, no new entries read from file
+        vcf = new VcfFileIterator(dbFileName);
+        int countCached = 0;
+        for (VcfEntry ve : vcf) {
+            for (Variant var : ve.variants())
+                countCached += vcfIndex.query(var).size();
+        }
+
+        assertEquals(count, countCached, "Different number of results when using cached entries");
+        assertTrue(vcfIndex.getCache().getHits() > 0, "No cache hits");
+        assertEquals(misses, vcfIndex.getCache().getMisses(), "Entries read from file when they should be cached");
+
+        vcfIndex.close();
+    }
+
 }
@@ -0,0 +1,128 @@
+package org.snpsift.testCases.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Log;
+import org.snpeff.vcf.VcfEntry;
+import org.snpsift.pipeline.BgzfOutputStream;
+import org.snpsift.pipeline.VcfPipeline;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+/**
+ * VcfPipeline test cases
+ *
+ * @author pcingola
+ */
+public class TestCasesVcfPipeline {
+
+	public static boolean debug = false;
+
+	/**
+	 * Non-header lines
+	 */
+	List<String> lines(String str) {
+		List<String> lines = new ArrayList<>();
+		for (String line : str.split("\n"))
+			if (!line.isEmpty() && !line.startsWith("#")) lines.add(line);
+		return lines;
+	}
+
+	/**
+	 * Output must be in the same order as the input, regardless of the number of workers
+	 */
+	@Test
+	public void test_01_order() {
+		Log.debug("Test");
+		String file = "test/gt_test.01.vcf";
+
+		VcfFileIterator vcf = new VcfFileIterator(file);
+		VcfPipeline pipeline = new VcfPipeline(vcf, VcfPipeline.processor(ve -> ve.toString()));
+		pipeline.setHeaderProcessor(v -> v.getVcfHeader().toString());
+		pipeline.setBatchSize(3);
+		pipeline.setNumWorkers(4);
+		pipeline.setDebug(debug);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		pipeline.setOutput(out);
+		pipeline.run();
+
+		String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertEquals(lines(Gpr.readFile(file)), lines(output));
+		assertEquals(pipeline.getCountIn(), pipeline.getCountOut());
+		assertTrue(output.startsWith("##"), "Header should be written first");
+	}
+
+	/**
+	 * Entries can be skipped by returning null
+	 */
+	@Test
+	public void test_02_skip() {
+		Log.debug("Test");
+		String file = "test/gt_test.01.vcf";
+
+		VcfFileIterator vcf = new VcfFileIterator(file);
+		VcfPipeline pipeline = new VcfPipeline(vcf, VcfPipeline.processor(ve -> ve.getStart() % 2 == 0 ? ve.toString() : null));
+		pipeline.setBatchSize(2);
+		pipeline.setNumWorkers(3);
+
+		List<VcfEntry> list = new ArrayList<>();
+		pipeline.setList(list);
+		pipeline.run();
+
+		// Compare to a sequential run
+		int count = 0, countIn = 0;
+		for (VcfEntry ve : new VcfFileIterator(file)) {
+			countIn++;
+			if (ve.getStart() % 2 == 0) {
+				assertEquals(ve.toString(), list.get(count).toString());
+				count++;
+			}
+		}
+		assertEquals(count, list.size());
+		assertEquals(countIn, pipeline.getCountIn());
+	}
+
+	/**
+	 * Parallel BGZF compression: Output must be readable by htsjdk
+	 */
+	@Test
+	public void test_03_bgzf() throws IOException {
+		Log.debug("Test");
+
+		// Create some data, larger than several blocks
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 5 * BgzfOutputStream.BLOCK_SIZE; i++)
+			sb.append("line\t" + i + "\t" + (i * 7919 % 1000) + "\n");
+		byte data[] = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		// Compress
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BgzfOutputStream bgzf = new BgzfOutputStream(out, 3)) {
+			bgzf.write(data, 0, 1000);
+			bgzf.write(data, 1000, data.length - 1000);
+		}
+
+		// Decompress
+		ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+		try (BlockCompressedInputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			byte buf[] = new byte[4096];
+			for (int len; (len = in.read(buf)) > 0;)
+				uncompressed.write(buf, 0, len);
+		}
+
+		assertEquals(sb.toString(), new String(uncompressed.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+}